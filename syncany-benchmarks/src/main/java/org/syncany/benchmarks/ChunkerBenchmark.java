@@ -0,0 +1,117 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.MimeTypeChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.config.Logging;
+
+/**
+ * Measures the throughput of the {@link Chunker}s (reading, breaking and hashing)
+ * on the file corpora. The score is in MB/s per thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChunkerBenchmark {
+	@Param({ "TTTD", "FIXED", "MIMETYPE" })
+	private String chunkerType;
+
+	@Param({ "RANDOM", "TEXT", "COMPRESSED", "TINY_FILES" })
+	private String corpus;
+
+	private File tempDir;
+	private List<File> files;
+	private Chunker chunker;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logging.disableLogging();
+
+		tempDir = Corpus.createTempDirectory();
+		files = Corpus.valueOf(corpus).createFiles(tempDir);
+		chunker = createChunker(chunkerType);
+	}
+
+	@TearDown
+	public void tearDown() {
+		Corpus.deleteTempDirectory(tempDir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public void createChunks(Blackhole blackhole) throws Exception {
+		for (File file : files) {
+			ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+
+			while (chunkEnumeration.hasMoreElements()) {
+				Chunk chunk = chunkEnumeration.nextElement();
+				blackhole.consume(chunk.getChecksum());
+			}
+
+			chunkEnumeration.close();
+		}
+	}
+
+	/**
+	 * Creates the chunkers as configured by default ({@link FixedChunker}), and as
+	 * used by the chunking tests ({@link TttdChunker}, {@link MimeTypeChunker}).
+	 */
+	public static Chunker createChunker(String chunkerType) throws Exception {
+		switch (chunkerType) {
+		case "TTTD":
+			return new TttdChunker(16 * 1024);
+
+		case "FIXED":
+			return new FixedChunker(512 * 1024, "SHA1");
+
+		case "MIMETYPE":
+			return new MimeTypeChunker(new TttdChunker(16 * 1024), new FixedChunker(512 * 1024, "SHA1"),
+					Arrays.asList(new String[] { "application/(x-)?gzip", "application/zip", "image/.+", "video/.+" }));
+
+		default:
+			throw new IllegalArgumentException("Unknown chunker: " + chunkerType);
+		}
+	}
+}
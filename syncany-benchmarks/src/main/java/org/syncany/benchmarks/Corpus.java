@@ -0,0 +1,142 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Synthetic, reproducible data sets used by the benchmarks. Every corpus has
+ * a total size of {@link #SIZE_MB} MB, so that benchmarks annotated with
+ * <tt>@OperationsPerInvocation(Corpus.SIZE_MB)</tt> report their score in MB/s
+ * (or s/MB), independent of the corpus type.
+ *
+ * <ul>
+ *  <li>{@link #RANDOM}: Random bytes, i.e. incompressible and without duplicates</li>
+ *  <li>{@link #TEXT}: Repetitive, well compressible text</li>
+ *  <li>{@link #COMPRESSED}: GZIP compressed text, i.e. incompressible but with structure</li>
+ *  <li>{@link #TINY_FILES}: Many small text files of {@link #TINY_FILE_SIZE} bytes</li>
+ * </ul>
+ */
+public enum Corpus {
+	RANDOM, TEXT, COMPRESSED, TINY_FILES;
+
+	public static final int SIZE_MB = 16;
+	public static final int SIZE = SIZE_MB * 1024 * 1024;
+
+	public static final int LARGE_FILE_SIZE = 4 * 1024 * 1024;
+	public static final int TINY_FILE_SIZE = 2 * 1024;
+
+	private static final long SEED = 4711;
+	private static final String[] WORDS = new String[] { "sync", "any", "file", "chunk", "cloud", "storage", "version", "database",
+			"the", "of", "and", "a", "to", "in", "is", "you", "that", "it" };
+
+	/**
+	 * Creates the data of this corpus in memory. For {@link #TINY_FILES}, this
+	 * equals the {@link #TEXT} corpus.
+	 */
+	public byte[] createBytes() throws IOException {
+		Random random = new Random(SEED);
+
+		switch (this) {
+		case RANDOM:
+			return createRandomBytes(random, SIZE);
+
+		case COMPRESSED:
+			return createCompressedBytes(random, SIZE);
+
+		default:
+			return createTextBytes(random, SIZE);
+		}
+	}
+
+	/**
+	 * Writes the data of this corpus to files in the given directory. All corpora except
+	 * {@link #TINY_FILES} are split into files of {@link #LARGE_FILE_SIZE} bytes.
+	 * Compressed files carry a <tt>.gz</tt> extension, so that their mime type
+	 * can be detected.
+	 */
+	public List<File> createFiles(File directory) throws IOException {
+		byte[] bytes = createBytes();
+
+		int fileSize = (this == TINY_FILES) ? TINY_FILE_SIZE : LARGE_FILE_SIZE;
+		String fileExtension = (this == COMPRESSED) ? ".gz" : ".txt";
+
+		List<File> files = new ArrayList<File>();
+
+		for (int offset = 0, fileNumber = 0; offset < bytes.length; offset += fileSize, fileNumber++) {
+			File file = new File(directory, String.format("%s-%06d%s", name().toLowerCase(), fileNumber, fileExtension));
+
+			try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+				fileOutputStream.write(bytes, offset, Math.min(fileSize, bytes.length - offset));
+			}
+
+			files.add(file);
+		}
+
+		return files;
+	}
+
+	public static File createTempDirectory() throws IOException {
+		return Files.createTempDirectory("syncany-benchmark-").toFile();
+	}
+
+	public static void deleteTempDirectory(File directory) {
+		FileUtils.deleteQuietly(directory);
+	}
+
+	private static byte[] createRandomBytes(Random random, int size) {
+		byte[] bytes = new byte[size];
+		random.nextBytes(bytes);
+
+		return bytes;
+	}
+
+	private static byte[] createTextBytes(Random random, int size) {
+		StringBuilder text = new StringBuilder(size + 32);
+
+		while (text.length() < size) {
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+			text.append((random.nextInt(12) == 0) ? '\n' : ' ');
+		}
+
+		return Arrays.copyOf(text.toString().getBytes(), size);
+	}
+
+	private static byte[] createCompressedBytes(Random random, int size) throws IOException {
+		ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(size + 1024);
+
+		while (compressedBytes.size() < size) {
+			try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedBytes)) {
+				gzipOutputStream.write(createTextBytes(random, 1024 * 1024));
+			}
+		}
+
+		return Arrays.copyOf(compressedBytes.toByteArray(), size);
+	}
+}
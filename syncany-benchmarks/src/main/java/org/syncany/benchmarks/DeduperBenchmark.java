@@ -0,0 +1,183 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Deduper;
+import org.syncany.chunk.DeduperListener;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Logging;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.util.StringUtil;
+
+/**
+ * Measures the full {@link Deduper} pipeline with the default configuration
+ * (512 KB fixed chunks, 4 MB ZIP multichunks, GZIP and AES/Twofish-GCM), writing
+ * the multichunks to a temporary folder. Each invocation deduplicates the corpus
+ * from scratch, i.e. with an empty chunk index.
+ *
+ * <p>The score is in MB/s. For the pipelined runs (<tt>threads</tt> &gt; 1), divide
+ * by the number of threads to get the throughput per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DeduperBenchmark {
+	@Param({ "RANDOM", "TEXT", "COMPRESSED", "TINY_FILES" })
+	private String corpus;
+
+	@Param({ "1", "4" })
+	private int threads;
+
+	private File tempDir;
+	private File multiChunkDir;
+	private List<File> files;
+	private Deduper deduper;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logging.disableLogging();
+
+		tempDir = Corpus.createTempDirectory();
+		multiChunkDir = new File(tempDir, "multichunks");
+
+		File corpusDir = new File(tempDir, "corpus");
+		corpusDir.mkdir();
+
+		files = Corpus.valueOf(corpus).createFiles(corpusDir);
+		deduper = new Deduper(new FixedChunker(512 * 1024, "SHA1"), new ZipMultiChunker(4 * 1024),
+				TransformerBenchmark.createTransformer("GZIP_AES_128_GCM_TWOFISH_128_GCM"), threads);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		multiChunkDir.mkdir();
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() {
+		FileUtils.deleteQuietly(multiChunkDir);
+	}
+
+	@TearDown
+	public void tearDown() {
+		Corpus.deleteTempDirectory(tempDir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public void deduplicate() throws Exception {
+		deduper.deduplicate(files, new BenchmarkDeduperListener(multiChunkDir));
+	}
+
+	private static class BenchmarkDeduperListener implements DeduperListener {
+		private File multiChunkDir;
+		private Set<String> knownChunks;
+
+		public BenchmarkDeduperListener(File multiChunkDir) {
+			this.multiChunkDir = multiChunkDir;
+			this.knownChunks = new HashSet<String>();
+		}
+
+		@Override
+		public boolean onFileFilter(File file) {
+			return true;
+		}
+
+		@Override
+		public boolean onFileStart(File file, int fileNumber) {
+			return file.isFile();
+		}
+
+		@Override
+		public void onFileAddChunk(File file, Chunk chunk) {
+			// Nothing
+		}
+
+		@Override
+		public void onFileEnd(File file, byte[] checksum) {
+			// Nothing
+		}
+
+		@Override
+		public boolean onChunk(Chunk chunk) {
+			return knownChunks.add(StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		@Override
+		public void onMultiChunkOpen(MultiChunk multiChunk) {
+			// Nothing
+		}
+
+		@Override
+		public MultiChunkId createNewMultiChunkId(Chunk firstChunk) {
+			return MultiChunkId.secureRandomMultiChunkId();
+		}
+
+		@Override
+		public File getMultiChunkFile(MultiChunkId multiChunkId) {
+			return new File(multiChunkDir, "multichunk-" + multiChunkId);
+		}
+
+		@Override
+		public void onMultiChunkWrite(MultiChunk multiChunk, Chunk chunk) {
+			// Nothing
+		}
+
+		@Override
+		public void onMultiChunkClose(MultiChunk multiChunk) {
+			// Nothing
+		}
+
+		@Override
+		public void onStart(int size) {
+			// Nothing
+		}
+
+		@Override
+		public void onFinish() {
+			// Nothing
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.chunk.Adler32Fingerprinter;
+import org.syncany.chunk.TttdChunker;
+
+/**
+ * Measures the rolling speed of the {@link Adler32Fingerprinter}, i.e. the inner
+ * loop of the {@link TttdChunker}. The score is in MB/s per thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FingerprinterBenchmark {
+	@Param({ "RANDOM", "TEXT", "COMPRESSED" })
+	private String corpus;
+
+	private byte[] bytes;
+	private Adler32Fingerprinter fingerprinter;
+
+	@Setup
+	public void setUp() throws Exception {
+		bytes = Corpus.valueOf(corpus).createBytes();
+		fingerprinter = new Adler32Fingerprinter();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public int roll() {
+		int windowSize = TttdChunker.DEFAULT_WINDOW_SIZE;
+		int breakpoints = 0;
+
+		fingerprinter.check(bytes, 0, windowSize);
+
+		for (int i = windowSize; i < bytes.length; i++) {
+			fingerprinter.roll(bytes[i]);
+
+			if ((fingerprinter.getValue() & 0x3fff) == 0x3fff) {
+				breakpoints++;
+			}
+		}
+
+		return breakpoints;
+	}
+}
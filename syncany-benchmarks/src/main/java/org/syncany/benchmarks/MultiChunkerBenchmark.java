@@ -0,0 +1,183 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.PackMultiChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Logging;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * Measures writing chunks to and reading chunks from {@link ZipMultiChunker} and
+ * {@link PackMultiChunker} multichunks, without any transformers. The score is in MB/s (of chunk data) per thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultiChunkerBenchmark {
+	private static final int MULTICHUNK_SIZE = 4 * 1024; // in KB
+
+	@Param({ "RANDOM", "TEXT", "COMPRESSED", "TINY_FILES" })
+	private String corpus;
+
+	@Param({ ZipMultiChunker.TYPE, PackMultiChunker.TYPE })
+	private String multiChunkerType;
+
+	private MultiChunker multiChunker;
+	private List<Chunk> chunks;
+	private List<byte[]> multiChunks;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logging.disableLogging();
+
+		if (PackMultiChunker.TYPE.equals(multiChunkerType)) {
+			multiChunker = new PackMultiChunker(MULTICHUNK_SIZE);
+		}
+		else {
+			multiChunker = new ZipMultiChunker(MULTICHUNK_SIZE);
+		}
+
+		multiChunks = new ArrayList<byte[]>();
+		chunks = new ArrayList<Chunk>();
+
+		// Chunk the corpus and write the chunks to multichunks (chunkers re-use their
+		// chunk buffers, so chunks are kept by reading them back from the multichunks)
+		File tempDir = Corpus.createTempDirectory();
+
+		try {
+			Chunker chunker = new FixedChunker(512 * 1024, "SHA1");
+			List<File> files = Corpus.valueOf(corpus).createFiles(tempDir);
+
+			ByteArrayOutputStream multiChunkOutputStream = null;
+			MultiChunk multiChunk = null;
+
+			for (File file : files) {
+				ChunkEnumeration chunkEnumeration = chunker.createChunks(file);
+
+				while (chunkEnumeration.hasMoreElements()) {
+					Chunk chunk = chunkEnumeration.nextElement();
+
+					if (multiChunk == null) {
+						multiChunkOutputStream = new ByteArrayOutputStream();
+						multiChunk = multiChunker.createMultiChunk(new MultiChunkId(chunk.getChecksum()), multiChunkOutputStream);
+					}
+
+					multiChunk.write(chunk);
+
+					if (multiChunk.isFull()) {
+						multiChunk.close();
+						multiChunks.add(multiChunkOutputStream.toByteArray());
+						multiChunk = null;
+					}
+				}
+
+				chunkEnumeration.close();
+			}
+
+			if (multiChunk != null) {
+				multiChunk.close();
+				multiChunks.add(multiChunkOutputStream.toByteArray());
+			}
+		}
+		finally {
+			Corpus.deleteTempDirectory(tempDir);
+		}
+
+		for (byte[] multiChunkBytes : multiChunks) {
+			MultiChunk multiChunk = multiChunker.createMultiChunk(new ByteArrayInputStream(multiChunkBytes));
+			Chunk chunk = null;
+
+			while (null != (chunk = multiChunk.read())) {
+				chunks.add(chunk);
+			}
+
+			multiChunk.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public void write() throws Exception {
+		MultiChunk multiChunk = null;
+
+		for (Chunk chunk : chunks) {
+			if (multiChunk == null) {
+				multiChunk = multiChunker.createMultiChunk(new MultiChunkId(chunk.getChecksum()), new NullOutputStream());
+			}
+
+			multiChunk.write(chunk);
+
+			if (multiChunk.isFull()) {
+				multiChunk.close();
+				multiChunk = null;
+			}
+		}
+
+		if (multiChunk != null) {
+			multiChunk.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public void read(Blackhole blackhole) throws Exception {
+		for (byte[] multiChunkBytes : multiChunks) {
+			MultiChunk multiChunk = multiChunker.createMultiChunk(new ByteArrayInputStream(multiChunkBytes));
+			Chunk chunk = null;
+			byte[] chunkBuffer = null;
+
+			while (null != (chunk = multiChunk.read(chunkBuffer))) {
+				blackhole.consume(chunk.getContent());
+				chunkBuffer = chunk.getContent();
+			}
+
+			multiChunk.close();
+		}
+	}
+}
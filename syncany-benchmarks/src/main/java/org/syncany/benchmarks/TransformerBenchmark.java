@@ -0,0 +1,151 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Logging;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.MasterKey;
+
+/**
+ * Measures the {@link GzipTransformer} and the {@link CipherTransformer} (AES-GCM and
+ * Twofish-GCM, as well as the default combination of both) in both directions. The
+ * score is in MB/s (of untransformed data) per thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformerBenchmark {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Param({ "GZIP", "AES_128_GCM", "TWOFISH_128_GCM", "GZIP_AES_128_GCM_TWOFISH_128_GCM" })
+	private String transformerType;
+
+	@Param({ "RANDOM", "TEXT", "COMPRESSED" })
+	private String corpus;
+
+	private Transformer transformer;
+	private byte[] bytes;
+	private byte[] transformedBytes;
+	private byte[] buffer;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logging.disableLogging();
+
+		transformer = createTransformer(transformerType);
+		bytes = Corpus.valueOf(corpus).createBytes();
+		buffer = new byte[BUFFER_SIZE];
+
+		ByteArrayOutputStream transformedOutputStream = new ByteArrayOutputStream();
+
+		try (OutputStream outputStream = transformer.createOutputStream(transformedOutputStream)) {
+			outputStream.write(bytes);
+		}
+
+		transformedBytes = transformedOutputStream.toByteArray();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public void transform() throws Exception {
+		try (OutputStream outputStream = transformer.createOutputStream(new NullOutputStream())) {
+			for (int offset = 0; offset < bytes.length; offset += BUFFER_SIZE) {
+				outputStream.write(bytes, offset, Math.min(BUFFER_SIZE, bytes.length - offset));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE_MB)
+	public long restore() throws Exception {
+		long totalBytesRead = 0;
+
+		try (InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(transformedBytes))) {
+			int bytesRead = 0;
+
+			while (-1 != (bytesRead = inputStream.read(buffer))) {
+				totalBytesRead += bytesRead;
+			}
+		}
+
+		return totalBytesRead;
+	}
+
+	/**
+	 * Creates the transformer chain for the given type. Cipher transformers use a
+	 * master key derived from a fixed password; key derivation happens only once.
+	 */
+	public static Transformer createTransformer(String transformerType) throws Exception {
+		switch (transformerType) {
+		case "GZIP":
+			return new GzipTransformer();
+
+		case "AES_128_GCM":
+			return createCipherTransformer(CipherSpecs.AES_128_GCM);
+
+		case "TWOFISH_128_GCM":
+			return createCipherTransformer(CipherSpecs.TWOFISH_128_GCM);
+
+		case "GZIP_AES_128_GCM_TWOFISH_128_GCM":
+			return new GzipTransformer(createCipherTransformer(CipherSpecs.AES_128_GCM, CipherSpecs.TWOFISH_128_GCM));
+
+		default:
+			throw new IllegalArgumentException("Unknown transformer: " + transformerType);
+		}
+	}
+
+	private static CipherTransformer createCipherTransformer(int... cipherSpecIds) throws Exception {
+		MasterKey masterKey = CipherUtil.createMasterKey("benchmark password", null);
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+
+		for (int cipherSpecId : cipherSpecIds) {
+			cipherSpecs.add(CipherSpecs.getCipherSpec(cipherSpecId));
+		}
+
+		return new CipherTransformer(cipherSpecs, masterKey);
+	}
+}
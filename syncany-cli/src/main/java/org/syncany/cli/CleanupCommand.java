@@ -60,6 +60,7 @@ public class CleanupCommand extends Command {
 		OptionSpec<Void> optionForce = parser.acceptsAll(asList("f", "force"));
 		OptionSpec<Void> optionNoOldVersionRemoval = parser.acceptsAll(asList("V", "no-version-removal"));
 		OptionSpec<Void> optionNoRemoveTempFiles = parser.acceptsAll(asList("T", "no-temp-removal"));
+		OptionSpec<Void> optionNoRepackaging = parser.acceptsAll(asList("R", "no-repackaging"));
 		OptionSpec<Integer> optionKeepVersions = parser.acceptsAll(asList("k", "keep-versions")).withRequiredArg().ofType(Integer.class);
 		OptionSpec<String> optionSecondsBetweenCleanups = parser.acceptsAll(asList("t", "time-between-cleanups")).withRequiredArg()
 				.ofType(String.class);
@@ -76,6 +77,9 @@ public class CleanupCommand extends Command {
 		// -T, --no-temp-removal
 		operationOptions.setRemoveUnreferencedTemporaryFiles(!options.has(optionNoRemoveTempFiles));
 
+		// -R, --no-repackaging
+		operationOptions.setRepackageMultiChunks(!options.has(optionNoRepackaging));
+
 		// -k=<count>, --keep-versions=<count>		
 		if (options.has(optionKeepVersions)) {
 			int keepVersionCount = options.valueOf(optionKeepVersions);
@@ -163,6 +167,10 @@ public class CleanupCommand extends Command {
 						concreteOperationResult.getRemovedMultiChunks().size(), (double) totalRemovedMultiChunkSize / 1024 / 1024);
 			}
 
+			if (concreteOperationResult.getRepackagedMultiChunks().size() > 0) {
+				out.println(concreteOperationResult.getRepackagedMultiChunks().size() + " multichunk(s) repackaged on remote storage.");
+			}
+
 			if (concreteOperationResult.getRemovedOldVersionsCount() > 0) {
 				out.println(concreteOperationResult.getRemovedOldVersionsCount() + " file histories shortened.");
 				// TODO [low] This counts only the file histories, not file versions; not very helpful!
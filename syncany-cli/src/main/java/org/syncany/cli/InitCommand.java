@@ -27,6 +27,8 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import org.syncany.chunk.PackMultiChunker;
+import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.DefaultRepoTOFactory;
 import org.syncany.config.to.RepoTO;
@@ -34,6 +36,7 @@ import org.syncany.config.to.RepoTOFactory;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
 import org.syncany.crypto.CipherUtil;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseFormat;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.init.GenlinkOperationOptions;
 import org.syncany.operations.init.InitOperationOptions;
@@ -97,6 +100,8 @@ public class InitCommand extends AbstractInitCommand {
 		OptionSpec<Void> optionShortUrl = parser.acceptsAll(asList("s", "short"));
 		OptionSpec<String> optionEncryptPassword = parser.acceptsAll(asList("password", "encryptpassword")).withRequiredArg();
 		OptionSpec<String> optionSignPassword = parser.acceptsAll(asList("signpassword")).withRequiredArg();
+		OptionSpec<String> optionDatabaseFormat = parser.acceptsAll(asList("database-format")).withRequiredArg();
+		OptionSpec<String> optionMultiChunker = parser.acceptsAll(asList("multichunker")).withRequiredArg();
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -130,6 +135,16 @@ public class InitCommand extends AbstractInitCommand {
 		ConfigTO configTO = createConfigTO(transferSettings);
 		RepoTO repoTO = repoTOFactory.createRepoTO();
 
+		// Database format: --database-format=<xml|binary>
+		if (options.has(optionDatabaseFormat)) {
+			repoTO.setDatabaseFormat(parseDatabaseFormat(options.valueOf(optionDatabaseFormat)));
+		}
+
+		// Multichunker: --multichunker=<zip|pack>
+		if (options.has(optionMultiChunker)) {
+			repoTO.getMultiChunker().setType(parseMultiChunkerType(options.valueOf(optionMultiChunker)));
+		}
+
 		operationOptions.setLocalDir(localDir);
 		operationOptions.setConfigTO(configTO);
 		operationOptions.setRepoTO(repoTO);
@@ -205,6 +220,23 @@ public class InitCommand extends AbstractInitCommand {
 		}
 	}
 
+	private String parseDatabaseFormat(String databaseFormatStr) throws Exception {
+		try {
+			return DatabaseFormat.valueOf(databaseFormatStr.toUpperCase()).toString().toLowerCase();
+		}
+		catch (IllegalArgumentException e) {
+			throw new Exception("Invalid value for --database-format=" + databaseFormatStr + "; must be 'xml' or 'binary'");
+		}
+	}
+
+	private String parseMultiChunkerType(String multiChunkerType) throws Exception {
+		if (!ZipMultiChunker.TYPE.equals(multiChunkerType) && !PackMultiChunker.TYPE.equals(multiChunkerType)) {
+			throw new Exception("Invalid value for --multichunker=" + multiChunkerType + "; must be 'zip' or 'pack'");
+		}
+
+		return multiChunkerType;
+	}
+
 	private List<CipherSpec> getCipherSpecs(boolean encryptionEnabled, boolean advancedModeEnabled) throws Exception {
 		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
 
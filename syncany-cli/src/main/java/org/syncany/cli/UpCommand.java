@@ -18,6 +18,10 @@
 package org.syncany.cli;
 
 import static java.util.Arrays.asList;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
@@ -39,6 +43,8 @@ import org.syncany.util.FileUtil;
 import com.google.common.eventbus.Subscribe;
 
 public class UpCommand extends Command {
+	private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)([kmg]?)", Pattern.CASE_INSENSITIVE);
+
 	private long uploadedFileSize;
 
 	@Override
@@ -70,6 +76,8 @@ public class UpCommand extends Command {
 
 		OptionSpec<Void> optionForceUpload = parser.acceptsAll(asList("F", "force-upload"));
 		OptionSpec<Void> optionNoResumeUpload = parser.acceptsAll(asList("R", "no-resume"));
+		OptionSpec<Integer> optionTransactionFileLimit = parser.acceptsAll(asList("transaction-files")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<String> optionTransactionSizeLimit = parser.acceptsAll(asList("transaction-size")).withRequiredArg();
 
 		OptionSet options = parser.parse(operationArgs);
 
@@ -82,9 +90,43 @@ public class UpCommand extends Command {
 		// -R, --no-resume
 		operationOptions.setResume(!options.has(optionNoResumeUpload));
 
+		// --transaction-files=<count>
+		if (options.has(optionTransactionFileLimit)) {
+			operationOptions.setTransactionFileLimit(options.valueOf(optionTransactionFileLimit));
+		}
+
+		// --transaction-size=<size>
+		if (options.has(optionTransactionSizeLimit)) {
+			operationOptions.setTransactionSizeLimit(parseSize(options.valueOf(optionTransactionSizeLimit)));
+		}
+
 		return operationOptions;
 	}
 
+	private long parseSize(String sizeStr) throws Exception {
+		Matcher sizeMatcher = SIZE_PATTERN.matcher(sizeStr.trim());
+
+		if (!sizeMatcher.matches()) {
+			throw new Exception("Invalid size given: " + sizeStr + "; expected e.g. 500k, 100m or 2g");
+		}
+
+		long size = Long.parseLong(sizeMatcher.group(1));
+
+		switch (sizeMatcher.group(2).toLowerCase()) {
+		case "k":
+			return size * 1024;
+
+		case "m":
+			return size * 1024 * 1024;
+
+		case "g":
+			return size * 1024 * 1024 * 1024;
+
+		default:
+			return size;
+		}
+	}
+
 	private StatusOperationOptions parseStatusOptions(String[] operationArgs) throws Exception {
 		StatusCommand statusCommand = new StatusCommand();
 		statusCommand.setOut(out);
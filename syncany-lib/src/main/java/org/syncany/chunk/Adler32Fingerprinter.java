@@ -131,7 +131,10 @@ public class Adler32Fingerprinter extends Fingerprinter {
 
     @Override
     public void check(byte[] buf, int off, int len) {
-        block = new byte[len];
+        if (block == null || block.length != len) {
+            block = new byte[len]; // Re-used for windows of the same size
+        }
+        
         System.arraycopy(buf, off, block, 0, len);
         reset();
         this.len = block.length;
@@ -20,6 +20,7 @@ package org.syncany.chunk;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.syncany.chunk.Chunker.ChunkEnumeration;
@@ -36,6 +37,11 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * <p>This class does not maintain a chunk index itself. Instead, it calls a listener to
  * lookup a chunk, and skips further chunk processing if the chunk already exists. 
  * 
+ * <p>If the deduper is created with more than one thread, files are read and chunked ahead
+ * of time, and multichunks are transformed concurrently by a {@link DeduperPipeline}. The 
+ * listener is still called from the calling thread only, and in the same order as in the 
+ * sequential mode.
+ * 
  * <p>For a detailed description of the algorithm, please refer to chapter 5.3 of the thesis:
  * <i>"Minimizing remote storage usage and synchronization time using deduplication and
  * multichunking: Syncany as an example"</i>
@@ -47,11 +53,26 @@ public class Deduper {
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private int threads;
 
 	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer) {		
+		this(chunker, multiChunker, transformer, 1);
+	}
+	
+	/**
+	 * Creates a new deduper. If the number of threads is greater than one, chunking and 
+	 * the multichunk transformation is performed concurrently (see {@link DeduperPipeline}). 
+	 * 
+	 * @param chunker Chunker used to break files into chunks
+	 * @param multiChunker Multichunker used to combine chunks to multichunks
+	 * @param transformer Transformer (chain) used to transform multichunks before writing them
+	 * @param threads Number of threads per pipeline stage; one or less for sequential mode
+	 */
+	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, int threads) {		
 		this.chunker = chunker;
 		this.multiChunker = multiChunker;
 		this.transformer = transformer;
+		this.threads = threads;
 	}
 	
 	/**
@@ -65,6 +86,22 @@ public class Deduper {
 	 * @throws IOException If a file cannot be read or an unexpected exception occurs
 	 */
 	public void deduplicate(List<File> files, DeduperListener listener) throws IOException {
+		if (threads > 1) {
+			DeduperPipeline pipeline = new DeduperPipeline(chunker, transformer, files, threads);
+			
+			try {
+				deduplicate(files, listener, pipeline);
+			}
+			finally {
+				pipeline.shutdown();
+			}
+		}
+		else {
+			deduplicate(files, listener, null);
+		}
+	}
+	
+	private void deduplicate(List<File> files, DeduperListener listener, DeduperPipeline pipeline) throws IOException {
 		Chunk chunk = null;
 		MultiChunk multiChunk = null;
 		
@@ -73,6 +110,10 @@ public class Deduper {
 		for (int i=0; i<files.size(); i++) {
 			File file = files.get(i);
 			
+			if (pipeline != null) {
+				pipeline.advanceTo(i);
+			}
+			
 			// Filter ignored files
 			boolean fileAccepted = listener.onFileFilter(file);
 			
@@ -85,7 +126,7 @@ public class Deduper {
 
 			if (dedupContents) {
 				// Create chunks from file
-				ChunkEnumeration chunksEnum = chunker.createChunks(file);
+				ChunkEnumeration chunksEnum = (pipeline != null) ? pipeline.createChunks(file, i) : chunker.createChunks(file);
 
 				while (chunksEnum.hasMoreElements()) {
 					chunk = chunksEnum.nextElement();
@@ -111,8 +152,10 @@ public class Deduper {
 							MultiChunkId newMultiChunkId = listener.createNewMultiChunkId(chunk);
 							File multiChunkFile = listener.getMultiChunkFile(newMultiChunkId);
 							
-							multiChunk = multiChunker.createMultiChunk(newMultiChunkId, 
-								transformer.createOutputStream(new FileOutputStream(multiChunkFile)));
+							OutputStream multiChunkOutputStream = (pipeline != null) ? pipeline.createMultiChunkOutputStream(multiChunkFile)
+									: transformer.createOutputStream(new FileOutputStream(multiChunkFile));
+							
+							multiChunk = multiChunker.createMultiChunk(newMultiChunkId, multiChunkOutputStream);
 
 							listener.onMultiChunkOpen(multiChunk);
 						}
@@ -149,6 +192,11 @@ public class Deduper {
 			multiChunk = null;
 		}	
 		
+		// Wait for pending multichunks to be written
+		if (pipeline != null) {
+			pipeline.finish();
+		}
+		
 		listener.onFinish();
 	}	
 }
@@ -0,0 +1,616 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+
+/**
+ * The deduper pipeline implements the concurrent stages used by the {@link Deduper}
+ * if it is configured with more than one thread.
+ *
+ * <p>The pipeline consists of two worker pools, each of which is bounded to avoid
+ * unlimited memory usage:
+ *
+ * <ul>
+ *  <li>The <b>chunking stage</b> reads upcoming files ahead of the deduper, and breaks them
+ *      into checksummed {@link Chunk}s using the {@link Chunker}. Chunks are handed to the
+ *      deduper via a bounded queue per file, and only a limited window of files is read ahead.
+ *  <li>The <b>transformer stage</b> takes the output of each {@link MultiChunk} and pipes it
+ *      through the {@link Transformer} chain (e.g. gzip and cipher) into the multichunk file.
+ *      Each multichunk is transformed by its own task, and the number of multichunks
+ *      in-flight is limited.
+ * </ul>
+ *
+ * <p>The {@link Deduper} itself (and therefore all {@link DeduperListener} calls and the
+ * multichunk assembly) remains on the calling thread, so that listener callbacks are delivered
+ * in the exact same order as in the sequential mode.
+ *
+ * <p>Files that change after they have been read ahead are re-chunked synchronously,
+ * so that the listener's file change detection still applies to the delivered chunks.
+ */
+/*package*/ class DeduperPipeline {
+	private static final Logger logger = Logger.getLogger(DeduperPipeline.class.getSimpleName());
+
+	private static final int READ_AHEAD_FILES_PER_THREAD = 2;
+	private static final int READ_AHEAD_QUEUE_CHUNKS = 4;
+
+	private static final int TRANSFORM_BLOCK_SIZE = 64 * 1024;
+	private static final int TRANSFORM_QUEUE_BLOCKS = 16;
+	private static final int TRANSFORM_MULTICHUNKS_PER_THREAD = 2;
+
+	private static final Chunk END_OF_FILE = new Chunk(null, null, 0, null);
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private Chunker chunker;
+	private Transformer transformer;
+	private List<File> files;
+
+	private int readAheadWindow;
+	private int nextReadAheadIndex;
+	private Map<Integer, FileReadAhead> readAheads;
+
+	private ExecutorService chunkingExecutor;
+	private ExecutorService transformExecutor;
+	private Semaphore transformPermits;
+	private List<TransformerPipeOutputStream> transformStreams;
+
+	private StageStatistics chunkingStatistics;
+	private StageStatistics transformStatistics;
+	private long startTime;
+
+	public DeduperPipeline(Chunker chunker, Transformer transformer, List<File> files, int threads) {
+		this.chunker = chunker;
+		this.transformer = transformer;
+		this.files = files;
+
+		this.readAheadWindow = threads * READ_AHEAD_FILES_PER_THREAD;
+		this.nextReadAheadIndex = 0;
+		this.readAheads = new HashMap<Integer, FileReadAhead>();
+
+		this.chunkingExecutor = Executors.newFixedThreadPool(threads, new DeduperThreadFactory("DedupChunk"));
+		this.transformExecutor = Executors.newFixedThreadPool(threads, new DeduperThreadFactory("DedupTransform"));
+		this.transformPermits = new Semaphore(threads * TRANSFORM_MULTICHUNKS_PER_THREAD);
+		this.transformStreams = new ArrayList<TransformerPipeOutputStream>();
+
+		this.chunkingStatistics = new StageStatistics("Chunking", threads);
+		this.transformStatistics = new StageStatistics("Transform", threads);
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Moves the read-ahead window to the given file index. All files before this index that
+	 * have not been claimed by {@link #createChunks(File, int) createChunks()} are cancelled,
+	 * and new files are submitted to the chunking stage until the window is full.
+	 */
+	public void advanceTo(int fileIndex) {
+		Iterator<Map.Entry<Integer, FileReadAhead>> readAheadIterator = readAheads.entrySet().iterator();
+
+		while (readAheadIterator.hasNext()) {
+			Map.Entry<Integer, FileReadAhead> readAheadEntry = readAheadIterator.next();
+
+			if (readAheadEntry.getKey() < fileIndex) {
+				readAheadEntry.getValue().cancel();
+				readAheadIterator.remove();
+			}
+		}
+
+		nextReadAheadIndex = Math.max(nextReadAheadIndex, fileIndex);
+
+		while (nextReadAheadIndex < files.size() && nextReadAheadIndex < fileIndex + readAheadWindow) {
+			File file = files.get(nextReadAheadIndex);
+
+			if (Files.isRegularFile(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+				FileReadAhead readAhead = new FileReadAhead(file);
+
+				readAheads.put(nextReadAheadIndex, readAhead);
+				chunkingExecutor.execute(readAhead);
+			}
+
+			nextReadAheadIndex++;
+		}
+	}
+
+	/**
+	 * Returns the chunks of the given file, preferably from the chunking stage. If the file
+	 * was not read ahead, if reading it failed, or if it has changed since it was read ahead,
+	 * the file is chunked synchronously using the {@link Chunker}.
+	 */
+	public ChunkEnumeration createChunks(File file, int fileIndex) throws IOException {
+		FileReadAhead readAhead = readAheads.remove(fileIndex);
+
+		if (readAhead != null && readAhead.claim()) {
+			return readAhead;
+		}
+		else {
+			if (readAhead != null) {
+				readAhead.cancel();
+			}
+
+			logger.log(Level.FINE, "- Chunking {0} synchronously (not read ahead, changed or failed)", file);
+			return chunker.createChunks(file);
+		}
+	}
+
+	/**
+	 * Creates an output stream for a new multichunk file. Data written to this stream is
+	 * transformed and written to the given file by the transformer stage. Blocks if too many
+	 * multichunks are currently being transformed.
+	 */
+	public OutputStream createMultiChunkOutputStream(File multiChunkFile) throws IOException {
+		checkTransformFailures();
+
+		try {
+			transformPermits.acquire();
+		}
+		catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for transformer stage.", e);
+		}
+
+		TransformerPipeOutputStream transformStream = new TransformerPipeOutputStream(multiChunkFile);
+
+		transformStreams.add(transformStream);
+		transformExecutor.execute(transformStream);
+
+		return transformStream;
+	}
+
+	/**
+	 * Waits until all multichunks have been transformed and written, and throws
+	 * an exception if any of them could not be written.
+	 */
+	public void finish() throws IOException {
+		for (TransformerPipeOutputStream transformStream : transformStreams) {
+			transformStream.awaitCompletion();
+		}
+
+		transformStreams.clear();
+		logStatistics();
+	}
+
+	/**
+	 * Stops all workers. This method must always be called, even if
+	 * the deduplication process failed.
+	 */
+	public void shutdown() {
+		for (FileReadAhead readAhead : readAheads.values()) {
+			readAhead.cancel();
+		}
+
+		readAheads.clear();
+
+		chunkingExecutor.shutdownNow();
+		transformExecutor.shutdownNow();
+	}
+
+	private void checkTransformFailures() throws IOException {
+		Iterator<TransformerPipeOutputStream> transformStreamIterator = transformStreams.iterator();
+
+		while (transformStreamIterator.hasNext()) {
+			TransformerPipeOutputStream transformStream = transformStreamIterator.next();
+
+			if (transformStream.isCompleted()) {
+				transformStream.awaitCompletion(); // Throws if failed
+				transformStreamIterator.remove();
+			}
+		}
+	}
+
+	private void logStatistics() {
+		if (logger.isLoggable(Level.INFO)) {
+			long wallTime = System.nanoTime() - startTime;
+
+			logger.log(Level.INFO, "Deduper pipeline finished in {0} ms:", wallTime / 1000000);
+			logger.log(Level.INFO, "- {0}", chunkingStatistics.toString(wallTime));
+			logger.log(Level.INFO, "- {0}", transformStatistics.toString(wallTime));
+		}
+	}
+
+	private static double toMegabytesPerSecond(long bytes, long nanos) {
+		return (nanos > 0) ? (bytes / 1024.0 / 1024.0) / (nanos / 1000000000.0) : 0;
+	}
+
+	/**
+	 * Chunks a single file ahead of the deduper and offers the resulting chunks
+	 * through a bounded queue. Implements {@link ChunkEnumeration} so the deduper
+	 * can consume it just like any other chunk enumeration.
+	 */
+	private class FileReadAhead implements ChunkEnumeration, Runnable {
+		private static final int STATE_NEW = 0;
+		private static final int STATE_RUNNING = 1;
+		private static final int STATE_CANCELLED = 2;
+
+		private File file;
+		private BlockingQueue<Chunk> chunkQueue;
+		private AtomicInteger state;
+		private volatile Exception failure;
+
+		private long sizeBeforeRead;
+		private long lastModifiedBeforeRead;
+
+		private Chunk nextChunk;
+		private boolean emittedChunks;
+
+		public FileReadAhead(File file) {
+			this.file = file;
+			this.chunkQueue = new ArrayBlockingQueue<Chunk>(READ_AHEAD_QUEUE_CHUNKS);
+			this.state = new AtomicInteger(STATE_NEW);
+			this.failure = null;
+
+			this.nextChunk = null;
+			this.emittedChunks = false;
+		}
+
+		@Override
+		public void run() {
+			if (!state.compareAndSet(STATE_NEW, STATE_RUNNING)) {
+				return;
+			}
+
+			sizeBeforeRead = file.length();
+			lastModifiedBeforeRead = file.lastModified();
+
+			ChunkEnumeration chunkEnumeration = null;
+
+			try {
+				chunkEnumeration = chunker.createChunks(file);
+
+				while (!isCancelled() && chunkEnumeration.hasMoreElements()) {
+					long chunkStartTime = System.nanoTime();
+					Chunk chunk = chunkEnumeration.nextElement();
+
+					if (chunk == null) {
+						throw new IOException("Chunker did not return a chunk for file " + file);
+					}
+
+					// Chunkers may re-use their buffer; copy to allow read-ahead
+					byte[] chunkContents = Arrays.copyOf(chunk.getContent(), chunk.getSize());
+					chunkingStatistics.add(chunk.getSize(), System.nanoTime() - chunkStartTime);
+
+					chunkQueue.put(new Chunk(chunk.getChecksum(), chunkContents, chunk.getSize(), chunk.getFileChecksum()));
+				}
+			}
+			catch (InterruptedException e) {
+				return; // Shutting down
+			}
+			catch (Exception e) {
+				logger.log(Level.FINE, "Reading ahead failed for file " + file, e);
+				failure = e;
+			}
+			finally {
+				if (chunkEnumeration != null) {
+					chunkEnumeration.close();
+				}
+			}
+
+			try {
+				if (!isCancelled()) {
+					chunkQueue.put(END_OF_FILE);
+				}
+			}
+			catch (InterruptedException e) {
+				// Shutting down
+			}
+		}
+
+		/**
+		 * Claims the read-ahead for the deduper. Returns <tt>true</tt> if the read-ahead
+		 * can be used, and <tt>false</tt> if the file must be chunked synchronously.
+		 */
+		public boolean claim() {
+			if (!state.compareAndSet(STATE_NEW, STATE_CANCELLED) && state.get() == STATE_RUNNING) {
+				nextChunk = take();
+
+				boolean failedBeforeFirstChunk = nextChunk == END_OF_FILE && failure != null;
+				boolean fileChangedSinceRead = file.length() != sizeBeforeRead || file.lastModified() != lastModifiedBeforeRead;
+
+				return !failedBeforeFirstChunk && !fileChangedSinceRead;
+			}
+			else {
+				return false;
+			}
+		}
+
+		public void cancel() {
+			state.set(STATE_CANCELLED);
+			chunkQueue.clear();
+		}
+
+		private boolean isCancelled() {
+			return state.get() == STATE_CANCELLED;
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			if (nextChunk == null) {
+				nextChunk = take();
+			}
+
+			if (nextChunk == END_OF_FILE) {
+				if (failure != null && emittedChunks) {
+					throw new RuntimeException("Reading ahead failed for file " + file, failure);
+				}
+
+				return false;
+			}
+			else {
+				return true;
+			}
+		}
+
+		@Override
+		public Chunk nextElement() {
+			if (!hasMoreElements()) {
+				return null;
+			}
+
+			Chunk chunk = nextChunk;
+
+			nextChunk = null;
+			emittedChunks = true;
+
+			return chunk;
+		}
+
+		@Override
+		public void close() {
+			cancel();
+		}
+
+		private Chunk take() {
+			try {
+				return chunkQueue.take();
+			}
+			catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted while waiting for chunks of file " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Output stream that collects the (untransformed) multichunk data in blocks, and hands
+	 * them to a worker of the transformer stage via a bounded queue. The worker writes the
+	 * blocks through the {@link Transformer} chain to the multichunk file.
+	 */
+	private class TransformerPipeOutputStream extends OutputStream implements Runnable {
+		private File multiChunkFile;
+		private BlockingQueue<byte[]> blockQueue;
+
+		private byte[] block;
+		private int blockPosition;
+		private boolean closed;
+
+		private volatile boolean completed;
+		private volatile Exception failure;
+		private Object completionLock;
+
+		public TransformerPipeOutputStream(File multiChunkFile) {
+			this.multiChunkFile = multiChunkFile;
+			this.blockQueue = new ArrayBlockingQueue<byte[]>(TRANSFORM_QUEUE_BLOCKS);
+
+			this.block = new byte[TRANSFORM_BLOCK_SIZE];
+			this.blockPosition = 0;
+			this.closed = false;
+
+			this.completed = false;
+			this.failure = null;
+			this.completionLock = new Object();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (blockPosition == block.length) {
+				flushBlock();
+			}
+
+			block[blockPosition++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (blockPosition == block.length) {
+					flushBlock();
+				}
+
+				int copyLength = Math.min(len, block.length - blockPosition);
+				System.arraycopy(b, off, block, blockPosition, copyLength);
+
+				blockPosition += copyLength;
+				off += copyLength;
+				len -= copyLength;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+
+				flushBlock();
+				putBlock(END_OF_STREAM);
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			if (blockPosition > 0) {
+				putBlock(Arrays.copyOf(block, blockPosition));
+				blockPosition = 0;
+			}
+		}
+
+		private void putBlock(byte[] queueBlock) throws IOException {
+			if (failure != null) {
+				throw new IOException("Cannot write multichunk " + multiChunkFile, failure);
+			}
+
+			try {
+				blockQueue.put(queueBlock);
+			}
+			catch (InterruptedException e) {
+				throw new IOException("Interrupted while writing multichunk " + multiChunkFile, e);
+			}
+		}
+
+		@Override
+		public void run() {
+			OutputStream transformedOutputStream = null;
+
+			try {
+				transformedOutputStream = transformer.createOutputStream(new FileOutputStream(multiChunkFile));
+
+				byte[] queueBlock;
+
+				while ((queueBlock = blockQueue.take()) != END_OF_STREAM) {
+					long blockStartTime = System.nanoTime();
+
+					transformedOutputStream.write(queueBlock);
+					transformStatistics.add(queueBlock.length, System.nanoTime() - blockStartTime);
+				}
+
+				transformedOutputStream.close();
+				transformedOutputStream = null;
+			}
+			catch (Exception e) {
+				failure = e;
+				drainQueue();
+			}
+			finally {
+				closeQuietly(transformedOutputStream);
+				transformPermits.release();
+
+				synchronized (completionLock) {
+					completed = true;
+					completionLock.notifyAll();
+				}
+			}
+		}
+
+		public boolean isCompleted() {
+			return completed;
+		}
+
+		public void awaitCompletion() throws IOException {
+			synchronized (completionLock) {
+				while (!completed) {
+					try {
+						completionLock.wait();
+					}
+					catch (InterruptedException e) {
+						throw new IOException("Interrupted while waiting for multichunk " + multiChunkFile, e);
+					}
+				}
+			}
+
+			if (failure != null) {
+				throw new IOException("Cannot write multichunk " + multiChunkFile, failure);
+			}
+		}
+
+		private void drainQueue() {
+			// Keep consuming so the deduper does not block on a full queue
+			try {
+				while (blockQueue.take() != END_OF_STREAM) {
+					// Discard
+				}
+			}
+			catch (InterruptedException e) {
+				// Shutting down
+			}
+		}
+
+		private void closeQuietly(OutputStream outputStream) {
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				}
+				catch (IOException e) {
+					// Ignore, already failed
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the number of bytes processed by a stage and the time its workers
+	 * spent processing them, to report the per-stage throughput.
+	 */
+	private static class StageStatistics {
+		private String name;
+		private int threads;
+		private AtomicLong bytes;
+		private AtomicLong busyTime;
+
+		public StageStatistics(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+			this.bytes = new AtomicLong(0);
+			this.busyTime = new AtomicLong(0);
+		}
+
+		public void add(long processedBytes, long processingTime) {
+			bytes.addAndGet(processedBytes);
+			busyTime.addAndGet(processingTime);
+		}
+
+		public String toString(long wallTime) {
+			return String.format("%s stage (%d threads): %d bytes, %.1f MB/s total, %.1f MB/s per thread", name, threads, bytes.get(),
+					toMegabytesPerSecond(bytes.get(), wallTime), toMegabytesPerSecond(bytes.get(), busyTime.get()));
+		}
+	}
+
+	private static class DeduperThreadFactory implements ThreadFactory {
+		private String namePrefix;
+		private AtomicInteger threadNumber;
+
+		public DeduperThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+			this.threadNumber = new AtomicInteger(1);
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
@@ -19,6 +19,7 @@ package org.syncany.chunk;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 
@@ -103,6 +104,24 @@ public abstract class MultiChunk {
     // TODO [low] Method is only used by tests, not necessary anymore? Required for 'cleanup'?
     public abstract Chunk read() throws IOException; 
 
+    /**
+     * In read mode, this method can be used to <b>sequentially</b> read {@link Chunk}s from a multichunk,
+     * just like {@link #read()}. If the given buffer is large enough, the chunk's contents are read into
+     * the buffer instead of a newly allocated array, i.e. {@link Chunk#getContent()} returns the buffer
+     * and only the first {@link Chunk#getSize()} bytes are valid.
+     * 
+     * <p>This allows reading many chunks without allocating a new array for each of them: Callers 
+     * should pass the content array of the previously returned chunk, and must not use a chunk's content
+     * after the next call. Implementations that cannot fill a given buffer may ignore it.
+     *   
+     * @param buffer Buffer to read the chunk contents to (may be <tt>null</tt>)
+     * @return Returns the next chunk in the opened multichunk, or <tt>null</tt> if no chunk is available (anymore) 
+     * @throws IOException If an exception occurs when reading from the multichunk
+     */
+    public Chunk read(byte[] buffer) throws IOException {
+    	return read();
+    }
+
     /** 
      * In read mode, this method can be used to read {@link Chunk}s in <b>random access mode</b>, using a chunk 
      * checksum as identifier. The method returns a chunk input stream (the chunk's data) if the chunk is
@@ -117,6 +136,45 @@ public abstract class MultiChunk {
     // TODO [low] Method should be named 'read(checksum)' and return a Chunk object, not an input stream, right?!
     public abstract InputStream getChunkInputStream(byte[] checksum) throws IOException;
 
+    /**
+     * In read mode, this method can be used to read {@link Chunk}s in <b>random access mode</b>, using a chunk
+     * checksum as identifier. Like {@link #read(byte[])}, the chunk's contents are read into the given buffer
+     * if it is large enough, or into a newly allocated array otherwise.
+     * 
+     * <p>The default implementation reads the chunk via {@link #getChunkInputStream(byte[]) getChunkInputStream()}.
+     * 
+     * @param checksum The checksum identifying a chunk instance 
+     * @param buffer Buffer to read the chunk contents to (may be <tt>null</tt>)
+     * @return Returns the chunk if it can be found in the multichunk, or <tt>null</tt> otherwise
+     * @throws IOException If an exception occurs when reading from the multichunk
+     */
+    public Chunk read(byte[] checksum, byte[] buffer) throws IOException {
+    	InputStream chunkInputStream = getChunkInputStream(checksum);
+    	
+    	if (chunkInputStream == null) {
+    		return null;
+    	}
+    	
+    	try {
+    		byte[] contents = (buffer != null && buffer.length > 0) ? buffer : new byte[4096];
+    		int chunkSize = 0;
+    		int read = 0;
+    		
+    		while (-1 != (read = chunkInputStream.read(contents, chunkSize, contents.length - chunkSize))) {
+    			chunkSize += read;
+    			
+    			if (chunkSize == contents.length) {
+    				contents = Arrays.copyOf(contents, contents.length * 2);
+    			}
+    		}
+    		
+    		return new Chunk(checksum, contents, chunkSize, null);
+    	}
+    	finally {
+    		chunkInputStream.close();
+    	}
+    }
+
     /**
      * Closes a multichunk after writing/reading. 
      * 
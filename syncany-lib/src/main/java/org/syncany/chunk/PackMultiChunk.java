@@ -0,0 +1,402 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.util.StringUtil;
+
+/**
+ * A pack multichunk is a simple container format for chunks, written and read
+ * by the {@link PackMultiChunker}.
+ *
+ * <p>A pack multichunk starts with the magic bytes <tt>SYMC</tt> and a format version,
+ * followed by one record per chunk (record type, checksum length, checksum, content length,
+ * content), and an index record that holds the checksum, offset and length of each chunk's
+ * content. The last twelve bytes of the file are the offset of the index record and the magic
+ * bytes again. Unlike ZIP entries, records have no CRC, because chunks are identified (and
+ * verified) by their checksum anyway.
+ *
+ * <p>If opened from an input stream, chunks can only be read sequentially. If opened from a file,
+ * the index is read from the end of the file, and chunks can be read in random access mode.
+ * Random access reads use positional reads on a {@link FileChannel}, so they may be used
+ * by multiple threads at once.
+ */
+public class PackMultiChunk extends MultiChunk {
+	private static final byte[] MAGIC = "SYMC".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int RECORD_TYPE_CHUNK = 1;
+	private static final int RECORD_TYPE_INDEX = 2;
+
+	private static final int HEADER_LENGTH = MAGIC.length + 1;
+	private static final int TRAILER_LENGTH = 8 + MAGIC.length;
+
+	// Write mode
+	private DataOutputStream dataOut;
+	private long dataOutOffset;
+	private List<IndexEntry> writtenIndexEntries;
+
+	// Sequential read mode
+	private DataInputStream dataIn;
+	private boolean dataInHeaderRead;
+	private boolean dataInIndexReached;
+
+	// Random access read mode
+	private RandomAccessFile randomAccessFile;
+	private FileChannel fileChannel;
+	private Map<String, IndexEntry> indexEntries;
+
+	public PackMultiChunk(InputStream is) {
+		super(0);
+		this.dataIn = new DataInputStream(new BufferedInputStream(is));
+	}
+
+	public PackMultiChunk(File file) throws IOException {
+		super(0);
+
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+		this.fileChannel = randomAccessFile.getChannel();
+
+		try {
+			readIndex();
+		}
+		catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	public PackMultiChunk(MultiChunkId id, int minSize, OutputStream os) throws IOException {
+		super(id, minSize);
+
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(os));
+		this.writtenIndexEntries = new ArrayList<IndexEntry>();
+
+		dataOut.write(MAGIC);
+		dataOut.writeByte(FORMAT_VERSION);
+
+		this.dataOutOffset = HEADER_LENGTH;
+	}
+
+	@Override
+	public boolean isFull() {
+		return size >= minSize * 1024; // minSize is in KB!
+	}
+
+	@Override
+	public void write(Chunk chunk) throws IOException {
+		byte[] checksum = chunk.getChecksum();
+
+		dataOut.writeByte(RECORD_TYPE_CHUNK);
+		dataOut.writeByte(checksum.length);
+		dataOut.write(checksum);
+		dataOut.writeInt(chunk.getSize());
+		dataOutOffset += 1 + 1 + checksum.length + 4;
+
+		dataOut.write(chunk.getContent(), 0, chunk.getSize());
+		writtenIndexEntries.add(new IndexEntry(checksum, dataOutOffset, chunk.getSize()));
+
+		dataOutOffset += chunk.getSize();
+		size += chunk.getSize();
+	}
+
+	@Override
+	public Chunk read() throws IOException {
+		return read(null);
+	}
+
+	@Override
+	public Chunk read(byte[] buffer) throws IOException {
+		if (!dataInHeaderRead) {
+			readHeader(dataIn);
+			dataInHeaderRead = true;
+		}
+
+		if (dataInIndexReached) {
+			return null;
+		}
+
+		int recordType = dataIn.readUnsignedByte();
+
+		if (recordType == RECORD_TYPE_INDEX) {
+			dataInIndexReached = true;
+			return null;
+		}
+		else if (recordType != RECORD_TYPE_CHUNK) {
+			throw new IOException("Invalid multichunk; unknown record type " + recordType);
+		}
+
+		byte[] checksum = new byte[dataIn.readUnsignedByte()];
+		dataIn.readFully(checksum);
+
+		int chunkSize = dataIn.readInt();
+		byte[] contents = (buffer != null && buffer.length >= chunkSize) ? buffer : new byte[chunkSize];
+
+		dataIn.readFully(contents, 0, chunkSize);
+
+		return new Chunk(checksum, contents, chunkSize, null);
+	}
+
+	@Override
+	public Chunk read(byte[] checksum, byte[] buffer) throws IOException {
+		IndexEntry indexEntry = indexEntries.get(StringUtil.toHex(checksum));
+
+		if (indexEntry == null) {
+			return null;
+		}
+
+		byte[] contents = (buffer != null && buffer.length >= indexEntry.length) ? buffer : new byte[indexEntry.length];
+		readFully(ByteBuffer.wrap(contents, 0, indexEntry.length), indexEntry.offset);
+
+		return new Chunk(checksum, contents, indexEntry.length, null);
+	}
+
+	@Override
+	public InputStream getChunkInputStream(byte[] checksum) throws IOException {
+		IndexEntry indexEntry = indexEntries.get(StringUtil.toHex(checksum));
+
+		if (indexEntry == null) {
+			return null;
+		}
+
+		return new ChunkInputStream(indexEntry.offset, indexEntry.length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (dataOut != null) {
+			writeIndex();
+			dataOut.close();
+		}
+
+		if (dataIn != null) {
+			dataIn.close();
+		}
+
+		if (randomAccessFile != null) {
+			randomAccessFile.close();
+		}
+	}
+
+	private void writeIndex() throws IOException {
+		long indexOffset = dataOutOffset;
+
+		dataOut.writeByte(RECORD_TYPE_INDEX);
+		dataOut.writeInt(writtenIndexEntries.size());
+
+		for (IndexEntry indexEntry : writtenIndexEntries) {
+			dataOut.writeByte(indexEntry.checksum.length);
+			dataOut.write(indexEntry.checksum);
+			dataOut.writeLong(indexEntry.offset);
+			dataOut.writeInt(indexEntry.length);
+		}
+
+		dataOut.writeLong(indexOffset);
+		dataOut.write(MAGIC);
+	}
+
+	private void readHeader(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+
+		try {
+			in.readFully(magic);
+		}
+		catch (EOFException e) {
+			throw new IOException("Invalid multichunk; file too short.", e);
+		}
+
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("Invalid multichunk; magic bytes do not match.");
+		}
+
+		int formatVersion = in.readUnsignedByte();
+
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported multichunk format version " + formatVersion + ".");
+		}
+	}
+
+	private void readIndex() throws IOException {
+		long fileLength = fileChannel.size();
+
+		if (fileLength < HEADER_LENGTH + TRAILER_LENGTH) {
+			throw new IOException("Invalid multichunk; file too short.");
+		}
+
+		// Read header and trailer
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		readFully(header, 0);
+
+		readHeader(new DataInputStream(new ByteBufferInputStream(header)));
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+		readFully(trailer, fileLength - TRAILER_LENGTH);
+
+		long indexOffset = trailer.getLong(0);
+		byte[] trailerMagic = Arrays.copyOfRange(trailer.array(), 8, TRAILER_LENGTH);
+
+		if (!Arrays.equals(MAGIC, trailerMagic) || indexOffset < HEADER_LENGTH || indexOffset >= fileLength - TRAILER_LENGTH) {
+			throw new IOException("Invalid multichunk; trailer does not match.");
+		}
+
+		// Read index
+		ByteBuffer index = ByteBuffer.allocate((int) (fileLength - TRAILER_LENGTH - indexOffset));
+		readFully(index, indexOffset);
+
+		DataInputStream indexIn = new DataInputStream(new ByteBufferInputStream(index));
+
+		if (indexIn.readUnsignedByte() != RECORD_TYPE_INDEX) {
+			throw new IOException("Invalid multichunk; index not found.");
+		}
+
+		int indexEntryCount = indexIn.readInt();
+		indexEntries = new HashMap<String, IndexEntry>();
+
+		for (int i = 0; i < indexEntryCount; i++) {
+			byte[] checksum = new byte[indexIn.readUnsignedByte()];
+			indexIn.readFully(checksum);
+
+			long offset = indexIn.readLong();
+			int length = indexIn.readInt();
+
+			if (offset < HEADER_LENGTH || length < 0 || offset + length > indexOffset) {
+				throw new IOException("Invalid multichunk; invalid index entry for chunk " + StringUtil.toHex(checksum));
+			}
+
+			indexEntries.put(StringUtil.toHex(checksum), new IndexEntry(checksum, offset, length));
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		buffer.mark();
+
+		while (buffer.hasRemaining()) {
+			int read = fileChannel.read(buffer, position);
+
+			if (read < 0) {
+				throw new EOFException("Unexpected end of multichunk.");
+			}
+
+			position += read;
+		}
+
+		buffer.reset();
+	}
+
+	private static class IndexEntry {
+		private byte[] checksum;
+		private long offset;
+		private int length;
+
+		public IndexEntry(byte[] checksum, long offset, int length) {
+			this.checksum = checksum;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Reads the contents of a single chunk from the multichunk file, using
+	 * positional reads, i.e. without changing the position of the file channel.
+	 */
+	private class ChunkInputStream extends InputStream {
+		private long position;
+		private long remaining;
+
+		public ChunkInputStream(long offset, int length) {
+			this.position = offset;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] singleByte = new byte[1];
+			return (read(singleByte, 0, 1) < 0) ? -1 : singleByte[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			else if (len == 0) {
+				return 0;
+			}
+
+			int read = fileChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+
+			if (read < 0) {
+				throw new EOFException("Unexpected end of multichunk.");
+			}
+
+			position += read;
+			remaining -= read;
+
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return (buffer.hasRemaining()) ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			int read = Math.min(len, buffer.remaining());
+			buffer.get(b, off, read);
+
+			return read;
+		}
+	}
+}
@@ -21,7 +21,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -61,6 +65,9 @@ public class TttdChunker extends Chunker {
     public static final String DEFAULT_DIGEST_ALG = "SHA1";
     public static final String DEFAULT_FINGERPRINT_ALG = "Adler32";
     
+    private static final int READ_BUFFER_SIZE = 1024*1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    
     private int Tmin;
     private int Tmax;
     private int D;
@@ -69,6 +76,7 @@ public class TttdChunker extends Chunker {
     private String checksumAlgorithm;
     private String fingerprintAlgorithm;
     private String name;   
+    private Queue<TTTDBuffers> bufferPool;
     
     public TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize) {
         this(Tmin, Tmax, D, Ddash, windowSize, DEFAULT_DIGEST_ALG, DEFAULT_FINGERPRINT_ALG);
@@ -108,6 +116,7 @@ public class TttdChunker extends Chunker {
         this.checksumAlgorithm = digestAlg;
         this.fingerprintAlgorithm = fingerprintAlg;
         this.name = name;
+        this.bufferPool = new ConcurrentLinkedQueue<TTTDBuffers>();
         
         if (windowSize > Tmin) {
             throw new IllegalArgumentException("Window size must be smaller than Tmin.");
@@ -116,7 +125,8 @@ public class TttdChunker extends Chunker {
    
     @Override
     public ChunkEnumeration createChunks(File file) throws IOException {
-        return new TTTDEnumeration(new FileInputStream(file));
+        FileInputStream fileInputStream = new FileInputStream(file);
+        return new TTTDEnumeration(fileInputStream, fileInputStream.getChannel());
     }    
 
 	@Override
@@ -129,34 +139,95 @@ public class TttdChunker extends Chunker {
         return name;
     }
     
-    public class TTTDEnumeration implements ChunkEnumeration {        
-        private InputStream in;           
-        private boolean closed;
-        private byte[] c;
-        private int clen;
-        private int cpos;
+    /**
+     * Takes a set of enumeration buffers from the pool, or creates a new one
+     * if no released buffers are available. 
+     */
+    private TTTDBuffers takeBuffers() {
+        TTTDBuffers buffers = bufferPool.poll();
+        return (buffers != null) ? buffers : new TTTDBuffers();
+    }
+    
+    /**
+     * Returns a set of enumeration buffers to the pool, so that subsequent
+     * enumerations (i.e. files) can re-use them. 
+     */
+    private void releaseBuffers(TTTDBuffers buffers) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffers);
+        }
+    }
+    
+    /**
+     * Holds all objects an enumeration needs to chunk a file: the read buffer, the
+     * chunk buffer, the digests and the fingerprinter. Creating these per file (or
+     * even per chunk) is relatively expensive, so they are pooled by the chunker
+     * and handed from one enumeration to the next.
+     */
+    private class TTTDBuffers {
+        private byte[] readBuffer;
+        private ByteBuffer readByteBuffer;
+        private byte[] chunkBuffer;
         
         private MessageDigest chunkDigest;
         private MessageDigest fileDigest;
         private Fingerprinter fingerprinter;
-
-        public TTTDEnumeration(InputStream in) throws IOException {
-            this.in = in;
-            this.closed = false;
-            this.c = new byte[8192];
-            this.clen = -1;
-            this.cpos = -1;         
-
+        
+        public TTTDBuffers() {
+            this.readBuffer = new byte[Math.max(READ_BUFFER_SIZE, 2*Tmax)];
+            this.readByteBuffer = ByteBuffer.wrap(readBuffer);
+            this.chunkBuffer = new byte[Tmax];
+            
             try {
                 this.fingerprinter = Fingerprinter.getInstance(fingerprintAlgorithm);                
                 this.chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
                 this.fileDigest = MessageDigest.getInstance(checksumAlgorithm);
-                
-                this.fileDigest.reset();
             }
             catch (Exception e) {
                 throw new RuntimeException(e);
-            }                          
+            }       
+        }
+    }
+    
+    /**
+     * Emits the TTTD chunks of a single file or input stream. 
+     * 
+     * <p>The enumeration reads the input in large blocks and runs the fingerprinter
+     * directly over its read buffer. For each chunk, the contents are copied once into
+     * a chunk buffer that is re-used for every chunk of the enumeration. The contents of
+     * a returned {@link Chunk} are hence only valid until the next call to
+     * {@link #nextElement()}. Callers that need to keep them must copy them.
+     * 
+     * <p>Once the enumeration is closed, its buffers are returned to the chunker and
+     * re-used by the next enumeration.
+     */
+    public class TTTDEnumeration implements ChunkEnumeration {        
+        private InputStream in;           
+        private FileChannel channel;
+        private boolean closed;
+        private boolean released;
+        
+        private TTTDBuffers buffers;
+        private byte[] readBuffer;
+        private int readPosition;
+        private int readLimit;
+        
+        public TTTDEnumeration(InputStream in) throws IOException {
+        	this(in, null);
+        }
+
+        private TTTDEnumeration(InputStream in, FileChannel channel) throws IOException {
+            this.in = in;
+            this.channel = channel;
+            this.closed = false;
+            this.released = false;
+            
+            this.buffers = takeBuffers();
+            this.readBuffer = buffers.readBuffer;
+            this.readPosition = 0;
+            this.readLimit = 0;
+
+            this.buffers.fileDigest.reset();
         }
         
         @Override
@@ -170,88 +241,66 @@ public class TttdChunker extends Chunker {
                 return null;
             }                       
             
+            MessageDigest chunkDigest = buffers.chunkDigest;
+            Fingerprinter fingerprinter = buffers.fingerprinter;
+            
             chunkDigest.reset();
             fingerprinter.reset();
                 
             try {
-                int backupBreak = 0;                
-                int breakpoint = -1;
-                                
-                byte[] buf = new byte[Tmax];
-                int bufpos = -1;
-                                
-                while (bufpos < buf.length-1) {
-                    if (cpos == -1 || cpos == clen-1) {
-                        cpos = -1;
-                        clen = readFromInputStreamFixed(c, in);//in.read(c);
+                int chunkStart = readPosition;
+                int chunkLength = 0;
+                boolean endOfStream = false;
+                
+                // Note: The backup divisor D' is not applied. A chunk without a regular 
+                //       breakpoint is cut at Tmax. Changing this would alter chunk boundaries.
+                
+                while (chunkLength < Tmax) {
+                    if (readPosition == readLimit) {
+                        chunkStart = compactReadBuffer(chunkStart);
                         
-                        if (clen == -1) {
+                        if (!fillReadBuffer()) {
+                            endOfStream = true;
                             break;
                         }
-                                            
-                        fileDigest.update(c, 0, clen);                        
                     }
                         
-                    bufpos++; cpos++;
-                    buf[bufpos] = c[cpos];   
-
+                    int bufpos = chunkLength;
+                    byte nextByte = readBuffer[readPosition];
+                    
+                    readPosition++;
+                    chunkLength++;
+                    
                     if (bufpos < Tmin) {
                         continue;
                     }
                     else if (bufpos == Tmin) {
-                        fingerprinter.check(buf, bufpos-windowSize, windowSize);
+                        fingerprinter.check(readBuffer, chunkStart+bufpos-windowSize, windowSize);
                     }
                     else {
-                        fingerprinter.roll(buf[bufpos]);
+                        fingerprinter.roll(nextByte);
                     }
 
-                    int hash = fingerprinter.getValue();
-
                     // The value of r (right side) plays no role! #39  
-                    if ((hash % Ddash) == Ddash-1) {      
-                        backupBreak = bufpos;     
-                    }
-
-                    if ((hash % D) == D-1) {
-                        breakpoint = bufpos;
-                        break;
-                    }
-
-                    if (bufpos < Tmax){
-                        continue;
-                    }
-
-                    if (backupBreak != 0) {
-                        breakpoint = backupBreak;
-                        break;
-                    }
-                    else {
-                        breakpoint = bufpos;
+                    if ((fingerprinter.getValue() % D) == D-1) {
                         break;
                     }
                 }
                                     
                 // Close if this was the last bytes
-                if (clen == -1) {
+                if (endOfStream) {
                     in.close();
                     closed = true;
                 }         
                 
-                // EOF as breakpoint
-                if (breakpoint == -1) {
-                    breakpoint = bufpos;
-                }
-                
-                // Increase breakpoint
-                breakpoint++;
-                
                 // Create chunk
-                chunkDigest.update(buf, 0, breakpoint);
+                chunkDigest.update(readBuffer, chunkStart, chunkLength);
+                System.arraycopy(readBuffer, chunkStart, buffers.chunkBuffer, 0, chunkLength);
                 
                 byte[] chunkChecksum = chunkDigest.digest();
-                byte[] chunkContents = buf;
-                int chunkSize = breakpoint;
-                byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
+                byte[] chunkContents = buffers.chunkBuffer;
+                int chunkSize = chunkLength;
+                byte[] fileChecksum = (endOfStream) ? buffers.fileDigest.digest() : null;
                 
                 return new Chunk(chunkChecksum, chunkContents, chunkSize, fileChecksum);
             } 
@@ -265,27 +314,92 @@ public class TttdChunker extends Chunker {
         public void close() {
         	try { in.close(); }
         	catch (Exception e) { /* Not necessary */ }
+        	
+        	if (!released) {
+        		released = true;
+        		releaseBuffers(buffers);
+        	}
         }   
         
         /**
-         * Fixes the read errors occurring with Cipher streams in the standard
-         * Java read implementation.
+         * Moves the bytes of the current (incomplete) chunk to the beginning of the
+         * read buffer to make room for the next read. Returns the new chunk start.
+         */
+        private int compactReadBuffer(int chunkStart) {
+        	int chunkLength = readLimit - chunkStart;
+        	
+        	if (chunkStart > 0 && chunkLength > 0) {
+        		System.arraycopy(readBuffer, chunkStart, readBuffer, 0, chunkLength);
+        	}
+        	
+        	readPosition = chunkLength;
+        	readLimit = chunkLength;
+        	
+        	return 0;
+        }
+        
+        /**
+         * Reads the next block of the input into the free part of the read buffer
+         * and updates the file digest. Returns false if the end of the input
+         * has been reached.
          */
-        private int readFromInputStreamFixed(byte[] readToBuffer, InputStream inputStream) throws IOException {    		
+        private boolean fillReadBuffer() throws IOException {
+        	int bytesRead = (channel != null) ? readFromChannel() : readFromInputStream();
+        	
+        	if (bytesRead == -1) {
+        		return false;
+        	}
+        	
+        	buffers.fileDigest.update(readBuffer, readLimit, bytesRead);
+        	readLimit += bytesRead;
+        	
+        	return true;
+        }
+        
+        private int readFromChannel() throws IOException {
+        	ByteBuffer readByteBuffer = buffers.readByteBuffer;
+        	readByteBuffer.limit(readBuffer.length);
+        	readByteBuffer.position(readLimit);
+
+        	int bytesRead = 0;
+        	
+        	while (bytesRead == 0) {
+        		bytesRead = channel.read(readByteBuffer);
+        	}
+        	
+        	return bytesRead;
+        }
+        
+        /**
+         * Fills the free part of the read buffer from the input stream. Cipher streams
+         * may return less bytes than requested (or none at all) before the end of the stream, 
+         * so this method keeps reading until the buffer is full or the stream ends.
+         */
+        private int readFromInputStream() throws IOException {    		
     		int bytesRead = 0;
+    		int bytesToRead = readBuffer.length - readLimit;
     		
-    		while (bytesRead < readToBuffer.length) {
-    			int byteRead = inputStream.read();
+    		while (bytesRead < bytesToRead) {
+    			int read = in.read(readBuffer, readLimit + bytesRead, bytesToRead - bytesRead);
     			
-    			if (byteRead == -1) {
-    				return (bytesRead != 0) ? bytesRead : -1;
+    			if (read == -1) {
+    				break;
+    			}
+    			else if (read == 0) {
+    				int byteRead = in.read();
+    				
+    				if (byteRead == -1) {
+    					break;
+    				}
+    				
+    				readBuffer[readLimit + bytesRead] = (byte) byteRead;
+    				read = 1;
     			}
     			
-    			readToBuffer[bytesRead] = (byte) byteRead;
-    			bytesRead++;
+    			bytesRead += read;
     		}
     		
     		return (bytesRead != 0) ? bytesRead : -1;
     	}
     }
-}
\ No newline at end of file
+}
@@ -28,6 +28,7 @@ import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.util.StringUtil;
 
@@ -77,6 +78,11 @@ public class ZipMultiChunk extends MultiChunk {
     @Override
     public InputStream getChunkInputStream(byte[] checksum) throws IOException {
     	ZipEntry chunkEntry = zipFile.getEntry(StringUtil.toHex(checksum));
+    	
+    	if (chunkEntry == null) {
+    		return null;
+    	}
+    	
     	InputStream chunkInputStream = zipFile.getInputStream(chunkEntry);
     	
     	return chunkInputStream;
@@ -90,12 +96,8 @@ public class ZipMultiChunk extends MultiChunk {
             return null;
         }
         
-        int read;
         ByteArrayOutputStream contentByteArray = new ByteArrayOutputStream();
-        
-        while (-1 != (read = zipIn.read())) {
-        	contentByteArray.write(read);
-        }       
+        IOUtils.copy(zipIn, contentByteArray);
         
         return new Chunk(StringUtil.fromHex(entry.getName()), contentByteArray.toByteArray(), contentByteArray.size(), null);
     }
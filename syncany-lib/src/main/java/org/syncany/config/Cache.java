@@ -17,14 +17,24 @@
  */
 package org.syncany.config;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,10 +45,20 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * or other metadata files before upload, and as a download location for the same
  * files. 
  * 
- * <p>The cache implements an LRU strategy based on the last modified date of the 
- * cached files. When files are accessed using the respective getters, the last modified
- * date is updated. Using the {@link #clear()}/{@link #clear(long)} method, the cache
- * can be cleaned.
+ * <p>The cache implements an LRU strategy based on an in-memory index of the cached
+ * files and their sizes. When files are accessed using the respective getters, the
+ * file is moved to the end of the index. Using the {@link #clear()}/{@link #clear(long)} 
+ * method, the cache can be cleaned.
+ * 
+ * <p>The cache directory is only listed once, when the index is loaded: Files that are not
+ * in the index (e.g. files that were created by other means than the getters) are then added,
+ * ordered by their last modified date. After that, the size of a file is determined when the
+ * cache is cleaned for the first time after the file was returned by a getter, so that cleaning
+ * only touches new and evicted files. If an index file is given, the index is written to it
+ * after every cleaning and read from it when the cache is first used, so that the LRU order
+ * is kept across restarts.
+ * 
+ * <p>The cache counts hits, misses and evicted files. All methods are thread-safe.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -49,13 +69,35 @@ public class Cache {
 	private static String FILE_FORMAT_MULTICHUNK_ENCRYPTED = "multichunk-%s";
 	private static String FILE_FORMAT_MULTICHUNK_DECRYPTED = "multichunk-%s-decrypted";
     private static String FILE_FORMAT_DATABASE_FILE_ENCRYPTED = "%s";
+    private static String FILE_FORMAT_DATABASE_FILE_DECRYPTED = "%s-decrypted";
+    private static final long UNKNOWN_SIZE = -1;
     
     private long keepBytes;
     private File cacheDir;
+    private File indexFile;
+    
+    private Map<String, CacheEntry> cacheEntries;
+    private Map<String, CacheEntry> unknownSizeEntries;
+    private long totalSize;
+    private boolean indexLoaded;
+    
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
     
     public Cache(File cacheDir) {
+    	this(cacheDir, null);
+    }
+    
+    public Cache(File cacheDir, File indexFile) {
     	this.cacheDir = cacheDir;
+    	this.indexFile = indexFile;
     	this.keepBytes = DEFAULT_CACHE_KEEP_BYTES;
+    	
+    	this.cacheEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true); // Access order!
+    	this.unknownSizeEntries = new HashMap<String, CacheEntry>();
+    	this.totalSize = 0;
+    	this.indexLoaded = false;
     }
     
     /**
@@ -81,6 +123,13 @@ public class Cache {
 		return getFileInCache(FILE_FORMAT_DATABASE_FILE_ENCRYPTED, name);		
 	}    
 
+    /**
+     * Returns a file path of a decrypted database remote file.
+     */
+	public File getDecryptedDatabaseFile(String name) {
+		return getFileInCache(FILE_FORMAT_DATABASE_FILE_DECRYPTED, name);		
+	}    
+
 	public long getKeepBytes() {
 		return keepBytes;
 	}
@@ -88,6 +137,27 @@ public class Cache {
 	public void setKeepBytes(long keepBytes) {
 		this.keepBytes = keepBytes;
 	}
+	
+	/**
+	 * Returns the number of accesses to files that were in the cache.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of accesses to files that were not in the cache.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of files deleted by {@link #clear(long)} to free up space.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
 
 	/**
 	 * Deletes files in the the cache directory using a LRU-strategy until <tt>keepBytes</tt>
@@ -104,37 +174,41 @@ public class Cache {
 	 * Deletes files in the the cache directory using a LRU-strategy until <tt>keepBytes</tt>
 	 * bytes are left.
 	 * 
+	 * <p>The method first determines the sizes of the files that were returned by the getters
+	 * since the last cleaning, and then deletes the least recently used files from the head of 
+	 * the index. The cache directory itself is not listed.
+	 * 
 	 * <p>This method should not be run while an operation is executed.
 	 */
-	public void clear(long keepBytes) {		
-		List<File> cacheFiles = getSortedFileList();
-			
-		// Determine total size
-		long totalSize = 0;
-		
-		for (File cacheFile : cacheFiles) {
-			totalSize += cacheFile.length();
-		}
+	public synchronized void clear(long keepBytes) {		
+		loadIndexIfNecessary();
+		determineUnknownSizes();
 		
 		// Delete until total cache size <= keep size
 		if (totalSize > keepBytes) {
 			logger.log(Level.INFO, "Cache too large (" + (totalSize/1024) + " KB), deleting until <= " + (keepBytes/1024/1024) + " MB ...");
 
-			while (totalSize > keepBytes && cacheFiles.size() > 0) {
-				File eldestCacheFile = cacheFiles.remove(0);
-				
-				long fileSize = eldestCacheFile.length();
-				long fileLastModified = eldestCacheFile.lastModified();
-				
-				logger.log(Level.INFO, "- Deleting from cache (" + new Date(fileLastModified) + ", " + (fileSize/1024) + " KB): " + eldestCacheFile.getName());
+			Iterator<Entry<String, CacheEntry>> cacheEntryIterator = cacheEntries.entrySet().iterator();
+			
+			while (totalSize > keepBytes && cacheEntryIterator.hasNext()) {
+				Entry<String, CacheEntry> eldestCacheEntry = cacheEntryIterator.next();
+				File eldestCacheFile = new File(cacheDir, eldestCacheEntry.getKey());
+				long fileSize = eldestCacheEntry.getValue().size;
 				
 				totalSize -= fileSize;
-				eldestCacheFile.delete();				
+				cacheEntryIterator.remove();
+
+				if (eldestCacheFile.delete()) { // File may have been deleted by other means
+					logger.log(Level.INFO, "- Deleted from cache (" + (fileSize/1024) + " KB): " + eldestCacheFile.getName());
+					evictionCount++;
+				}
 			}
 		}
 		else {
 			logger.log(Level.INFO, "Cache size okay (" + (totalSize/1024) + " KB), no need to clean (keep size is " + (keepBytes/1024/1024) + " MB)");
 		}
+		
+		saveIndex();
 	}
 
 	/**
@@ -153,44 +227,202 @@ public class Cache {
     
     /**
      * Returns the file using the given format and parameters, and 
-     * updates the last modified date of the file (used for LRU strategy).
+     * moves the file to the end of the index (used for LRU strategy).
+     * 
+     * <p>If the file is not in the index, it is added -- even if it does not
+     * exist yet, because the caller typically writes to the returned file. Its size
+     * is determined when the cache is cleaned; entries of files that are never written 
+     * are then removed. The known size of an existing file is kept.
      */
-    private File getFileInCache(String format, Object... params) {
-        File fileInCache = new File(cacheDir.getAbsoluteFile(), String.format(format, params));
-
-        if (fileInCache.exists()) {
-        	touchFile(fileInCache);
+    private synchronized File getFileInCache(String format, Object... params) {
+    	String fileName = String.format(format, params);
+        File fileInCache = new File(cacheDir.getAbsoluteFile(), fileName);
+        
+        loadIndexIfNecessary();
+        
+        CacheEntry cacheEntry = cacheEntries.get(fileName); // Updates access order
+        boolean fileExists = fileInCache.exists();
+        
+        if (cacheEntry == null) {
+        	cacheEntry = new CacheEntry(UNKNOWN_SIZE);
+        	
+        	cacheEntries.put(fileName, cacheEntry);
+        	unknownSizeEntries.put(fileName, cacheEntry);
+        }
+        else if (!fileExists && cacheEntry.size != UNKNOWN_SIZE) { // Deleted, and likely to be written again
+        	totalSize -= cacheEntry.size;
+        	cacheEntry.size = UNKNOWN_SIZE;
+        	
+        	unknownSizeEntries.put(fileName, cacheEntry);
+        }
+        
+        if (fileExists) {
+        	hitCount++;
+        }
+        else {
+        	missCount++;
         }
         
         return fileInCache;
     }
     
     /**
-     * Sets the last modified date of the given file to the current date/time.
+     * Reads the index from the index file (if any), and synchronizes it with the
+     * cache directory. This method is only run once, and it is the only method that
+     * lists the cache directory.
      */
-    private void touchFile(File fileInCache) {
-    	fileInCache.setLastModified(System.currentTimeMillis());
+    private void loadIndexIfNecessary() {
+    	if (!indexLoaded) {
+    		if (indexFile != null && indexFile.exists()) {
+    			readIndex();
+    		}
+    		
+    		loadCacheDirectory();
+    		indexLoaded = true;
+    	}
     }
     
     /**
-     * Returns a list of all files in the cache, sorted by the last modified
+     * Synchronizes the index with the cache directory: Removes entries of files that
+     * do not exist anymore, determines the size of entries with an unknown size, and
+     * appends new files (sorted by their last modified date -- eldest first).
+     */
+    private void loadCacheDirectory() {
+    	Set<String> cacheFileNames = getCacheFileNames();
+    	
+    	// Remove vanished files, and determine unknown sizes
+    	Iterator<Entry<String, CacheEntry>> cacheEntryIterator = cacheEntries.entrySet().iterator();
+    	
+    	while (cacheEntryIterator.hasNext()) {
+    		Entry<String, CacheEntry> cacheEntry = cacheEntryIterator.next();
+    		
+    		if (!cacheFileNames.remove(cacheEntry.getKey())) {
+    			cacheEntryIterator.remove();
+    		}
+    		else {
+    			if (cacheEntry.getValue().size == UNKNOWN_SIZE) {
+    				cacheEntry.getValue().size = new File(cacheDir, cacheEntry.getKey()).length();
+    			}
+    			
+    			totalSize += cacheEntry.getValue().size;
+    		}
+    	}
+    	
+    	// Add new files
+    	for (File newCacheFile : getSortedFileList(cacheFileNames)) {
+    		long fileSize = newCacheFile.length();
+    		
+    		cacheEntries.put(newCacheFile.getName(), new CacheEntry(fileSize));
+    		totalSize += fileSize;
+    	}
+    }
+    
+    /**
+     * Determines the size of all entries that were added (or whose file was deleted) since
+     * the last cleaning, and removes the entries of files that were never written.
+     */
+    private void determineUnknownSizes() {
+    	for (Entry<String, CacheEntry> unknownSizeEntry : unknownSizeEntries.entrySet()) {
+    		File cacheFile = new File(cacheDir, unknownSizeEntry.getKey());
+    		
+    		if (cacheFile.exists()) {
+    			unknownSizeEntry.getValue().size = cacheFile.length();
+    			totalSize += unknownSizeEntry.getValue().size;
+    		}
+    		else {
+    			cacheEntries.remove(unknownSizeEntry.getKey());
+    		}
+    	}
+    	
+    	unknownSizeEntries.clear();
+    }
+    
+    /**
+     * Returns the names of all files in the cache directory.
+     */
+    private Set<String> getCacheFileNames() {
+    	String[] cacheFileNames = cacheDir.list();
+    	
+    	if (cacheFileNames != null) {
+    		return new HashSet<String>(Arrays.asList(cacheFileNames));
+    	}
+    	else {
+    		return new HashSet<String>();
+    	}
+    }
+    
+    /**
+     * Returns a list of the given files in the cache, sorted by the last modified
      * date -- eldest first.
      */
-	private List<File> getSortedFileList() {
-		File[] cacheFilesList = cacheDir.listFiles();
+	private List<File> getSortedFileList(Set<String> cacheFileNames) {
 		List<File> sortedCacheFiles = new ArrayList<File>();
+		final Map<File, Long> lastModifiedDates = new HashMap<File, Long>();
+		
+		for (String cacheFileName : cacheFileNames) {
+			File cacheFile = new File(cacheDir, cacheFileName);
+
+			sortedCacheFiles.add(cacheFile);
+			lastModifiedDates.put(cacheFile, cacheFile.lastModified());			
+		}
 		
-		if (cacheFilesList != null) {
-			sortedCacheFiles.addAll(Arrays.asList(cacheFilesList));
+		Collections.sort(sortedCacheFiles, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {				
+				return Long.compare(lastModifiedDates.get(file1), lastModifiedDates.get(file2));
+			}
+		});
+		
+		return sortedCacheFiles;
+	}
+	
+	/**
+	 * Reads the index file. Each line contains the size and the name of a file
+	 * in the cache, the least recently used file first.
+	 */
+	private void readIndex() {
+		try (BufferedReader indexReader = new BufferedReader(new FileReader(indexFile))) {
+			String line;
 			
-			Collections.sort(sortedCacheFiles, new Comparator<File>() {
-				@Override
-				public int compare(File file1, File file2) {				
-					return Long.compare(file1.lastModified(), file2.lastModified());
+			while ((line = indexReader.readLine()) != null) {
+				String[] sizeAndName = line.split(" ", 2);
+				
+				if (sizeAndName.length == 2) {
+					cacheEntries.put(sizeAndName[1], new CacheEntry(Long.parseLong(sizeAndName[0])));
 				}
-			});
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			logger.log(Level.WARNING, "Cannot read cache index " + indexFile + ". Rebuilding index.", e);
+			cacheEntries.clear();
 		}
+	}
+	
+	/**
+	 * Writes the index to the index file, if an index file is given. 
+	 */
+	private void saveIndex() {
+		if (indexFile != null && indexFile.getParentFile().isDirectory()) {
+			try (PrintWriter indexWriter = new PrintWriter(new FileWriter(indexFile))) {
+				for (Entry<String, CacheEntry> cacheEntry : cacheEntries.entrySet()) {
+					indexWriter.println(cacheEntry.getValue().size + " " + cacheEntry.getKey());
+				}
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot write cache index " + indexFile + ".", e);
+			}
+		}
+	}
+	
+	/**
+	 * Size of a cached file. The size is mutable, so that it can be updated 
+	 * without changing the access order of the index.
+	 */
+	private static class CacheEntry {
+		private long size;
 		
-		return sortedCacheFiles;
+		public CacheEntry(long size) {
+			this.size = size;
+		}
 	}
 }
@@ -36,8 +36,12 @@ import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.crypto.MasterKey;
 import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.AbstractSqlDao;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseFormat;
 import org.syncany.plugins.Plugins;
+import org.syncany.plugins.transfer.TransactionFileCache;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
 import org.syncany.util.FileUtil;
@@ -70,11 +74,29 @@ public class Config {
 
 	// File in .syncany/db
 	public static final String FILE_DATABASE = "local.db";
+	public static final String FILE_CHUNK_INDEX = "chunk-index";
+	public static final String FILE_FILE_TREE_INDEX = "file-tree-index";
 
 	// Files in .syncany/state
 	public static final String FILE_PORT = "port.xml";
 	public static final String FILE_TRANSACTION = "transaction-actions.xml";
 	public static final String FILE_TRANSACTION_DATABASE = "transaction-database.xml";
+	public static final String FILE_CACHE_INDEX = "cache-index.txt";
+
+	// Deduplication
+	public static final int DEFAULT_DEDUPER_THREADS = 1;
+
+	// Downloads
+	public static final int DEFAULT_DOWNLOADER_THREADS = 1;
+
+	// Uploads
+	public static final int DEFAULT_UPLOADER_THREADS = 1;
+
+	// Applying file system actions
+	public static final int DEFAULT_APPLIER_THREADS = 1;
+
+	// Writing to the local database
+	public static final int DEFAULT_DATABASE_BATCH_SIZE = AbstractSqlDao.DEFAULT_BATCH_SIZE;
 
 	private byte[] repoId;
 	private String machineName;
@@ -91,12 +113,20 @@ public class Config {
 	private PublicKey verifyKey;
 
 	private Cache cache;
+	private TransactionFileCache transactionFileCache;
 	private TransferPlugin plugin;
 	private TransferSettings transferSettings;
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private DatabaseFormat databaseFormat;
 	private IgnoredFiles ignoredFiles;
+	private SqlDatabase database;
+	private int deduperThreads;
+	private int downloaderThreads;
+	private int uploaderThreads;
+	private int applierThreads;
+	private int databaseBatchSize;
 
 	static {
 		UserConfig.init();
@@ -113,6 +143,11 @@ public class Config {
 		initVerifyKey(repoTO);
 		initDirectories(aLocalDir);
 		initCache(configTO);
+		initDeduper(configTO);
+		initDownloader(configTO);
+		initUploader(configTO);
+		initApplier(configTO);
+		initDatabaseBatchSize(configTO);
 		initIgnoredFile();
 		initRepo(repoTO);
 		initConnection(configTO);
@@ -141,13 +176,59 @@ public class Config {
 	}
 
 	private void initCache(ConfigTO configTO) {
-		cache = new Cache(cacheDir);
+		cache = new Cache(cacheDir, new File(stateDir, FILE_CACHE_INDEX));
+		transactionFileCache = new TransactionFileCache();
 
 		if (configTO.getCacheKeepBytes() != null && configTO.getCacheKeepBytes() >= 0) {
 			cache.setKeepBytes(configTO.getCacheKeepBytes());
 		}
 	}
 
+	private void initDeduper(ConfigTO configTO) {
+		if (configTO.getDeduperThreads() != null && configTO.getDeduperThreads() > 0) {
+			deduperThreads = configTO.getDeduperThreads();
+		}
+		else {
+			deduperThreads = DEFAULT_DEDUPER_THREADS;
+		}
+	}
+
+	private void initDownloader(ConfigTO configTO) {
+		if (configTO.getDownloaderThreads() != null && configTO.getDownloaderThreads() > 0) {
+			downloaderThreads = configTO.getDownloaderThreads();
+		}
+		else {
+			downloaderThreads = DEFAULT_DOWNLOADER_THREADS;
+		}
+	}
+
+	private void initUploader(ConfigTO configTO) {
+		if (configTO.getUploaderThreads() != null && configTO.getUploaderThreads() > 0) {
+			uploaderThreads = configTO.getUploaderThreads();
+		}
+		else {
+			uploaderThreads = DEFAULT_UPLOADER_THREADS;
+		}
+	}
+
+	private void initApplier(ConfigTO configTO) {
+		if (configTO.getApplierThreads() != null && configTO.getApplierThreads() > 0) {
+			applierThreads = configTO.getApplierThreads();
+		}
+		else {
+			applierThreads = DEFAULT_APPLIER_THREADS;
+		}
+	}
+
+	private void initDatabaseBatchSize(ConfigTO configTO) {
+		if (configTO.getDatabaseBatchSize() != null && configTO.getDatabaseBatchSize() > 0) {
+			databaseBatchSize = configTO.getDatabaseBatchSize();
+		}
+		else {
+			databaseBatchSize = DEFAULT_DATABASE_BATCH_SIZE;
+		}
+	}
+
 	private void initIgnoredFile() throws ConfigException {
 		File ignoreFile = new File(localDir, FILE_IGNORE);
 		ignoredFiles = new IgnoredFiles(ignoreFile);
@@ -159,6 +240,7 @@ public class Config {
 			initChunker(repoTO);
 			initMultiChunker(repoTO);
 			initTransformers(repoTO);
+			initDatabaseFormat(repoTO);
 		}
 		catch (Exception e) {
 			throw new ConfigException("Unable to initialize repository information from config.", e);
@@ -192,6 +274,20 @@ public class Config {
 		multiChunker.init(multiChunkerTO.getSettings());
 	}
 
+	private void initDatabaseFormat(RepoTO repoTO) throws ConfigException {
+		if (repoTO.getDatabaseFormat() == null) {
+			databaseFormat = DatabaseFormat.XML;
+		}
+		else {
+			try {
+				databaseFormat = DatabaseFormat.valueOf(repoTO.getDatabaseFormat().toUpperCase());
+			}
+			catch (IllegalArgumentException e) {
+				throw new ConfigException("Invalid database format in repository config: " + repoTO.getDatabaseFormat());
+			}
+		}
+	}
+
 	private void initTransformers(RepoTO repoTO) throws Exception {
 		if (repoTO.getTransformers() == null || repoTO.getTransformers().size() == 0) {
 			transformer = new NoTransformer();
@@ -266,9 +362,36 @@ public class Config {
 		return DatabaseConnectionFactory.createConnection(getDatabaseFile());
 	}
 
+	/**
+	 * Returns the local database session shared by all operations and file system actions
+	 * using this config. The session (and its connection) is created on first use, and re-created
+	 * if it has been closed.
+	 *
+	 * <p>Borrowers must not close or shut down the shared session; use {@link #closeDatabase()}
+	 * instead. Since all borrowers use the same connection, a commit or rollback affects all
+	 * uncommitted changes made through this session.
+	 */
+	public synchronized SqlDatabase getDatabase() {
+		if (database == null || database.isClosed()) {
+			database = new SqlDatabase(this);
+		}
+
+		return database;
+	}
+
+	/**
+	 * Shuts down the shared local database session, if it has been created.
+	 */
+	public synchronized void closeDatabase() {
+		if (database != null) {
+			database.shutdown();
+			database = null;
+		}
+	}
+
 	public void setCacheDir(File file) {
 		cacheDir = file;
-		cache = new Cache(cacheDir);
+		cache = new Cache(cacheDir, new File(stateDir, FILE_CACHE_INDEX));
 	}
 
 	public File getCacheDir() {
@@ -323,6 +446,10 @@ public class Config {
 		return cache;
 	}
 
+	public TransactionFileCache getTransactionFileCache() {
+		return transactionFileCache;
+	}
+
 	public IgnoredFiles getIgnoredFiles() {
 		return ignoredFiles;
 	}
@@ -335,6 +462,54 @@ public class Config {
 		return transformer;
 	}
 
+	public DatabaseFormat getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(DatabaseFormat databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
+	public int getDeduperThreads() {
+		return deduperThreads;
+	}
+
+	public void setDeduperThreads(int deduperThreads) {
+		this.deduperThreads = deduperThreads;
+	}
+
+	public int getDownloaderThreads() {
+		return downloaderThreads;
+	}
+
+	public void setDownloaderThreads(int downloaderThreads) {
+		this.downloaderThreads = downloaderThreads;
+	}
+
+	public int getUploaderThreads() {
+		return uploaderThreads;
+	}
+
+	public void setUploaderThreads(int uploaderThreads) {
+		this.uploaderThreads = uploaderThreads;
+	}
+
+	public int getApplierThreads() {
+		return applierThreads;
+	}
+
+	public void setApplierThreads(int applierThreads) {
+		this.applierThreads = applierThreads;
+	}
+
+	public int getDatabaseBatchSize() {
+		return databaseBatchSize;
+	}
+
+	public void setDatabaseBatchSize(int databaseBatchSize) {
+		this.databaseBatchSize = databaseBatchSize;
+	}
+
 	public void setCache(Cache cache) {
 		this.cache = cache;
 	}
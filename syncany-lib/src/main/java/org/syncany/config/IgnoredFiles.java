@@ -19,28 +19,44 @@ package org.syncany.config;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * This class serves as a container of patterns of filenames
  * that should be ignored.
  * 
+ * <p>Ignore rules are compiled once when the ignore file is loaded: Exact paths
+ * are kept in a hash set, and all wildcard and regular expression rules are combined
+ * into a single {@link Pattern} (rules that cannot be safely combined, e.g. because they
+ * use back-references, are matched one by one). {@link #reloadPatternsIfModified()}
+ * only re-reads the ignore file if it has changed since it was last loaded.
+ * 
+ * <p>Since the status operation skips the entire subtree of an ignored folder,
+ * folder rules do not need to match the paths below the folder.
+ * 
  * @author Pim Otte 
  */
 public class IgnoredFiles {
-	private static final Logger logger = Logger.getLogger(ConfigHelper.class.getSimpleName());	
-	private Set<String> ignorePatterns;
-	private Set<String> ignorePaths;
+	private static final Logger logger = Logger.getLogger(IgnoredFiles.class.getSimpleName());	
+	private static final Pattern BACK_REFERENCE_PATTERN = Pattern.compile("\\\\([1-9]|k<)");
+	
 	private File ignoreFile;
+	private volatile IgnoreRules ignoreRules;
+	
+	private long ignoreFileLastModified;
+	private long ignoreFileLength;
 	
 	public IgnoredFiles(File ignoreFile) {
 		this.ignoreFile = ignoreFile;
-		this.ignorePatterns = new HashSet<String>();
-		this.ignorePaths = new HashSet<String>();
+		this.ignoreRules = new IgnoreRules();
 
 		loadPatterns();
 	}
@@ -50,16 +66,20 @@ public class IgnoredFiles {
 	 * Should only be called at indexing time.
 	 */
 	public boolean isFileIgnored(String filePath) {
+		IgnoreRules currentIgnoreRules = ignoreRules;
+		
 		// Check all exact paths
-		for (String path : ignorePaths) {
-			if (path.equals(filePath)) {
-				return true;
-			}
-		} 
+		if (currentIgnoreRules.paths.contains(filePath)) {
+			return true;
+		}
 		
 		// Check all regular expressions
-		for (String pattern : ignorePatterns) {
-			if (filePath.matches(pattern)) {
+		if (currentIgnoreRules.combinedPattern != null && currentIgnoreRules.combinedPattern.matcher(filePath).matches()) {
+			return true;
+		}
+		
+		for (Pattern pattern : currentIgnoreRules.separatePatterns) {
+			if (pattern.matcher(filePath).matches()) {
 				return true;
 			}
 		}
@@ -67,10 +87,35 @@ public class IgnoredFiles {
 		return false;
 	}
 	
-	public void loadPatterns() {
+	/**
+	 * Reloads the ignore patterns if the ignore file has been created, changed 
+	 * or deleted since the patterns were last loaded. 
+	 * 
+	 * @return True if the patterns were reloaded, false otherwise
+	 */
+	public synchronized boolean reloadPatternsIfModified() {
+		boolean ignoreFileExists = ignoreFile != null && ignoreFile.exists();
+		long lastModified = (ignoreFileExists) ? ignoreFile.lastModified() : 0;
+		long length = (ignoreFileExists) ? ignoreFile.length() : 0;
+		
+		if (lastModified == ignoreFileLastModified && length == ignoreFileLength) {
+			return false;
+		}
+		
+		loadPatterns();
+		return true;
+	}
+	
+	public synchronized void loadPatterns() {
+		IgnoreRules newIgnoreRules = new IgnoreRules();
+		
 		if (ignoreFile != null && ignoreFile.exists()) {
+			ignoreFileLastModified = ignoreFile.lastModified();
+			ignoreFileLength = ignoreFile.length();
+			
 			try {
 				Scanner scanner = new Scanner(ignoreFile);
+				List<String> patterns = new ArrayList<String>();
 				
 				while (scanner.hasNextLine()) {
 					String ignorePattern = scanner.nextLine();
@@ -78,20 +123,22 @@ public class IgnoredFiles {
 					if (!ignorePattern.isEmpty()) {
 						if (ignorePattern.startsWith("regex:")) {
 							// Chop off regex: indicator
-							ignorePatterns.add(ignorePattern.substring(6));
+							patterns.add(ignorePattern.substring(6));
 						}
 						else {
 							if (ignorePattern.contains("*") || ignorePattern.contains("?")) {
 								// wildcards handling, converting them to regexps
-								ignorePatterns.add(convertWildcardsToRegexp(ignorePattern));
+								patterns.add(convertWildcardsToRegexp(ignorePattern));
 							}
 							else {
-								ignorePaths.add(ignorePattern);
+								newIgnoreRules.paths.add(ignorePattern);
 							}
 						}
 					}
 				}
+				
 				scanner.close();
+				compilePatterns(patterns, newIgnoreRules);
 			}
 			catch (FileNotFoundException e) {
 				logger.log(Level.INFO, "Ignore file not found (existed before).");
@@ -99,8 +146,47 @@ public class IgnoredFiles {
 		}
 		else {
 			// In case the ignoreFile has been deleted, reset patterns
-			ignorePatterns = new HashSet<String>();
-			ignorePaths = new HashSet<String>();
+			ignoreFileLastModified = 0;
+			ignoreFileLength = 0;			
+		}
+		
+		ignoreRules = newIgnoreRules;
+	}
+	
+	private void compilePatterns(List<String> patterns, IgnoreRules newIgnoreRules) {
+		List<Pattern> combinedPatterns = new ArrayList<Pattern>();
+		StringBuilder combinedRegex = new StringBuilder();
+		
+		for (String pattern : patterns) {
+			try {
+				Pattern compiledPattern = Pattern.compile(pattern);
+				
+				if (BACK_REFERENCE_PATTERN.matcher(pattern).find()) {
+					newIgnoreRules.separatePatterns.add(compiledPattern);
+				}
+				else {
+					if (combinedRegex.length() > 0) {
+						combinedRegex.append('|');
+					}
+					
+					combinedRegex.append("(?:").append(pattern).append(')');
+					combinedPatterns.add(compiledPattern);
+				}
+			}
+			catch (PatternSyntaxException e) {
+				logger.log(Level.WARNING, "Invalid ignore pattern, skipping: " + pattern, e);
+			}
+		}
+		
+		if (combinedRegex.length() > 0) {
+			try {
+				newIgnoreRules.combinedPattern = Pattern.compile(combinedRegex.toString());
+			}
+			catch (PatternSyntaxException e) {
+				// Valid patterns can conflict when combined, e.g. duplicate named groups
+				logger.log(Level.INFO, "Cannot combine ignore patterns, matching them separately.", e);
+				newIgnoreRules.separatePatterns.addAll(combinedPatterns);
+			}
 		}
 	}
         
@@ -132,4 +218,10 @@ public class IgnoredFiles {
 		
 		return out.toString();
 	}
-} 
+
+	private static class IgnoreRules {
+		private Set<String> paths = new HashSet<String>();
+		private Pattern combinedPattern = null;
+		private List<Pattern> separatePatterns = new ArrayList<Pattern>();
+	}
+}
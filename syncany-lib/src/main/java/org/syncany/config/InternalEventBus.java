@@ -18,10 +18,19 @@
 package org.syncany.config;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.operations.daemon.messages.api.ProgressEvent;
+
 import com.google.common.eventbus.EventBus;
 
 /**
@@ -29,6 +38,12 @@ import com.google.common.eventbus.EventBus;
  * daemon. It provides a publish/subscribe mechanism within a
  * single JVM.
  * 
+ * <p>Subscribers registered via {@link #register(Object)} are called synchronously
+ * by the posting thread. Subscribers registered via {@link #registerAsync(Object, int, int)}
+ * receive events through their own bounded queue and dispatch thread, so that slow
+ * subscribers (e.g. web socket clients) do not slow down the posting thread. For these
+ * subscribers, {@link ProgressEvent}s are coalesced and rate-limited per progress key.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class InternalEventBus {
@@ -36,6 +51,7 @@ public abstract class InternalEventBus {
 	private static Map<Class<? extends InternalEventBus>, InternalEventBus> instances = new HashMap<>();
 	
 	protected EventBus eventBus;
+	protected List<AsyncSubscriber> asyncSubscribers;
 	
 	@SuppressWarnings("unchecked")
 	protected static <T extends InternalEventBus> T getInstance(Class<T> eventBusClass) {
@@ -58,6 +74,8 @@ public abstract class InternalEventBus {
 	
 	protected InternalEventBus() {
 		this.eventBus = new EventBus(this.getClass().getName());
+		this.asyncSubscribers = new CopyOnWriteArrayList<AsyncSubscriber>();
+		
 		logger.log(Level.INFO, "Event bus: Created event bus " + this.getClass().getName());
 	}
 	
@@ -66,13 +84,243 @@ public abstract class InternalEventBus {
 		eventBus.register(object);
 	}
 	
+	/**
+	 * Registers a subscriber that receives its events asynchronously, in the order
+	 * they were posted, from a dedicated dispatch thread. 
+	 * 
+	 * <p>If the subscriber's queue is full, the posting thread blocks for all events
+	 * except {@link ProgressEvent}s. Progress events that are still queued are replaced by 
+	 * newer progress events with the same type and progress key. If the queue is full or the
+	 * rate limit is exceeded, only the latest progress event per type and progress key is kept,
+	 * and delivered once the interval has passed, or before the next non-progress event.
+	 * 
+	 * @param object Subscriber with {@link com.google.common.eventbus.Subscribe Subscribe}-annotated methods
+	 * @param maxQueueSize Maximum number of queued events for this subscriber
+	 * @param maxProgressEventsPerSecond Maximum number of progress events per second, type and progress key; 0 for no limit 
+	 */
+	public void registerAsync(Object object, int maxQueueSize, int maxProgressEventsPerSecond) {
+		logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Registering " + object.getClass().getSimpleName() + " (" + object + ", async) ...");
+		
+		AsyncSubscriber asyncSubscriber = new AsyncSubscriber(object, maxQueueSize, maxProgressEventsPerSecond);
+		asyncSubscriber.start();
+		
+		asyncSubscribers.add(asyncSubscriber);
+	}
+	
 	public void unregister(Object object) {
 		logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Unregistering " + object.getClass().getSimpleName() + " (" + object + ") ...");
+		
+		for (AsyncSubscriber asyncSubscriber : asyncSubscribers) {
+			if (asyncSubscriber.subscriber == object) {
+				asyncSubscribers.remove(asyncSubscriber);
+				asyncSubscriber.stop();
+				
+				return;
+			}
+		}
+		
 		eventBus.unregister(object);
 	}	
 	
 	public void post(Object event) {
-		logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Posting event " + event.getClass().getSimpleName() + " (" + event + ") ...");
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "Event bus '" + this.getClass().getSimpleName() + "': Posting event " + event.getClass().getSimpleName() + " (" + event + ") ...");
+		}
+		else if (!(event instanceof ProgressEvent) && logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Posting event " + event.getClass().getSimpleName() + " ...");
+		}
+		
 		eventBus.post(event);
+		
+		for (AsyncSubscriber asyncSubscriber : asyncSubscribers) {
+			asyncSubscriber.offer(event);
+		}
+	}
+	
+	/**
+	 * Holds the queue and the dispatch thread of a subscriber registered via 
+	 * {@link InternalEventBus#registerAsync(Object, int, int)}. Events are delivered
+	 * by a subscriber-local {@link EventBus}, so that the subscriber methods are
+	 * resolved exactly like for synchronous subscribers.
+	 */
+	protected static class AsyncSubscriber implements Runnable {
+		private Object subscriber;
+		private EventBus subscriberEventBus;
+		
+		private int maxQueueSize;
+		private long minProgressEventIntervalMillis;
+		
+		private LinkedList<Object> queue;
+		private Map<String, Long> lastProgressEventTimes;
+		private Map<String, Object> pendingProgressEvents;
+		
+		private Thread dispatchThread;
+		private volatile boolean running;
+		
+		public AsyncSubscriber(Object subscriber, int maxQueueSize, int maxProgressEventsPerSecond) {
+			this.subscriber = subscriber;
+			this.subscriberEventBus = new EventBus(subscriber.getClass().getName());
+			this.subscriberEventBus.register(subscriber);
+			
+			this.maxQueueSize = Math.max(1, maxQueueSize);
+			this.minProgressEventIntervalMillis = (maxProgressEventsPerSecond > 0) ? 1000 / maxProgressEventsPerSecond : 0;
+			
+			this.queue = new LinkedList<Object>();
+			this.lastProgressEventTimes = new HashMap<String, Long>();
+			this.pendingProgressEvents = new LinkedHashMap<String, Object>();
+		}
+		
+		public void start() {
+			running = true;
+			
+			dispatchThread = new Thread(this, "EventBus/" + subscriber.getClass().getSimpleName());
+			dispatchThread.setDaemon(true);
+			dispatchThread.start();
+		}
+		
+		public void stop() {
+			running = false;
+			dispatchThread.interrupt();
+		}
+		
+		public synchronized void offer(Object event) {
+			if (!running) {
+				return;
+			}
+			
+			if (event instanceof ProgressEvent) {
+				offerProgressEvent(event, ((ProgressEvent) event).getProgressKey());
+			}
+			else {
+				// Events posted by the subscriber itself must not wait for its own queue
+				boolean postedByDispatchThread = Thread.currentThread() == dispatchThread;
+				
+				while (running && !postedByDispatchThread && queue.size() >= maxQueueSize) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				
+				// Deliver held back progress events first, so that the final progress arrives before e.g. an end event
+				enqueuePendingProgressEvents(true);
+				
+				queue.add(event);
+				notifyAll();
+			}
+		}
+
+		private void offerProgressEvent(Object event, String progressKey) {
+			// Replace queued progress event (if any), keeping its position in the queue
+			for (ListIterator<Object> queueIterator = queue.listIterator(); queueIterator.hasNext(); ) {
+				Object queuedEvent = queueIterator.next();
+				
+				if (queuedEvent.getClass() == event.getClass() && isSameProgressKey(queuedEvent, progressKey)) {
+					queueIterator.set(event);
+					return;
+				}
+			}
+			
+			// Hold back event if queue is full, or if the rate limit is exceeded (replacing older held back events)
+			String rateLimitKey = event.getClass().getName() + "/" + progressKey;
+			
+			long now = System.currentTimeMillis();
+			Long lastProgressEventTime = lastProgressEventTimes.get(rateLimitKey);
+			
+			boolean queueFull = queue.size() >= maxQueueSize;
+			boolean rateLimitExceeded = lastProgressEventTime != null && now - lastProgressEventTime < minProgressEventIntervalMillis;
+			
+			if (queueFull || rateLimitExceeded) {
+				pendingProgressEvents.put(rateLimitKey, event);
+				notifyAll(); // Dispatch thread recalculates its wait time
+				
+				return;
+			}
+			
+			pendingProgressEvents.remove(rateLimitKey);
+			lastProgressEventTimes.put(rateLimitKey, now);
+			
+			queue.add(event);
+			notifyAll();
+		}
+		
+		/**
+		 * Moves held back progress events to the queue, either all of them or only the
+		 * ones whose rate limit interval has passed (and only while the queue is not full).
+		 * 
+		 * @return Milliseconds until the next held back event is due, or -1 if there is none
+		 */
+		private long enqueuePendingProgressEvents(boolean enqueueAll) {
+			long now = System.currentTimeMillis();
+			long nextDueMillis = -1;
+			
+			Iterator<Entry<String, Object>> pendingIterator = pendingProgressEvents.entrySet().iterator();
+			
+			while (pendingIterator.hasNext()) {
+				Entry<String, Object> pendingProgressEvent = pendingIterator.next();
+				Long lastProgressEventTime = lastProgressEventTimes.get(pendingProgressEvent.getKey());
+				
+				long dueMillis = (lastProgressEventTime != null) ? lastProgressEventTime + minProgressEventIntervalMillis - now : 0;
+				boolean canEnqueue = enqueueAll || (dueMillis <= 0 && queue.size() < maxQueueSize);
+				
+				if (canEnqueue) {
+					lastProgressEventTimes.put(pendingProgressEvent.getKey(), now);
+					queue.add(pendingProgressEvent.getValue());
+					
+					pendingIterator.remove();
+				}
+				else if (nextDueMillis < 0 || dueMillis < nextDueMillis) {
+					nextDueMillis = Math.max(1, dueMillis);
+				}
+			}
+			
+			return nextDueMillis;
+		}
+		
+		private boolean isSameProgressKey(Object queuedEvent, String progressKey) {
+			String queuedProgressKey = ((ProgressEvent) queuedEvent).getProgressKey();
+			return (queuedProgressKey != null) ? queuedProgressKey.equals(progressKey) : progressKey == null;
+		}
+		
+		private synchronized Object take() throws InterruptedException {
+			long nextDueMillis = enqueuePendingProgressEvents(false);
+			
+			while (queue.isEmpty()) {
+				if (nextDueMillis > 0) {
+					wait(nextDueMillis);
+				}
+				else {
+					wait();
+				}
+				
+				nextDueMillis = enqueuePendingProgressEvents(false);
+			}
+			
+			Object event = queue.removeFirst();
+			notifyAll();
+			
+			return event;
+		}
+		
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					subscriberEventBus.post(take());
+				}
+				catch (InterruptedException e) {
+					break;
+				}
+			}
+			
+			synchronized (this) {
+				queue.clear();
+				pendingProgressEvents.clear();
+				notifyAll();
+			}
+		}
 	}
 }
@@ -62,6 +62,21 @@ public class ConfigTO {
 	@Element(name = "cacheKeepBytes", required = false)
 	private Long cacheKeepBytes;
 
+	@Element(name = "deduperThreads", required = false)
+	private Integer deduperThreads;
+
+	@Element(name = "downloaderThreads", required = false)
+	private Integer downloaderThreads;
+
+	@Element(name = "uploaderThreads", required = false)
+	private Integer uploaderThreads;
+
+	@Element(name = "applierThreads", required = false)
+	private Integer applierThreads;
+
+	@Element(name = "databaseBatchSize", required = false)
+	private Integer databaseBatchSize;
+
 	public static ConfigTO load(File file) throws ConfigException {
 		try {
 			return new ConfigTO().createPersister().read(ConfigTO.class, file);
@@ -137,4 +152,44 @@ public class ConfigTO {
 		this.cacheKeepBytes = cacheKeepBytes;
 	}
 
+	public Integer getDeduperThreads() {
+		return deduperThreads;
+	}
+
+	public void setDeduperThreads(Integer deduperThreads) {
+		this.deduperThreads = deduperThreads;
+	}
+
+	public Integer getDownloaderThreads() {
+		return downloaderThreads;
+	}
+
+	public void setDownloaderThreads(Integer downloaderThreads) {
+		this.downloaderThreads = downloaderThreads;
+	}
+
+	public Integer getUploaderThreads() {
+		return uploaderThreads;
+	}
+
+	public void setUploaderThreads(Integer uploaderThreads) {
+		this.uploaderThreads = uploaderThreads;
+	}
+
+	public Integer getApplierThreads() {
+		return applierThreads;
+	}
+
+	public void setApplierThreads(Integer applierThreads) {
+		this.applierThreads = applierThreads;
+	}
+
+	public Integer getDatabaseBatchSize() {
+		return databaseBatchSize;
+	}
+
+	public void setDatabaseBatchSize(Integer databaseBatchSize) {
+		this.databaseBatchSize = databaseBatchSize;
+	}
+
 }
@@ -40,6 +40,9 @@ public class DaemonConfigTO {
 	@Element(name = "hooks", required = false)
 	private HooksTO hooks;
 
+	@Element(name = "scheduler", required = false)
+	private SyncSchedulerTO syncScheduler = new SyncSchedulerTO();
+
 	private PortTO portTO; // This is generated dynamically by the daemon. It should't be in the XML.
 
 	public static DaemonConfigTO load(File file) throws ConfigException {
@@ -99,4 +102,12 @@ public class DaemonConfigTO {
 	public void setHooks(HooksTO hooks) {
 		this.hooks = hooks;
 	}
+
+	public SyncSchedulerTO getSyncScheduler() {
+		return syncScheduler;
+	}
+
+	public void setSyncScheduler(SyncSchedulerTO syncScheduler) {
+		this.syncScheduler = syncScheduler;
+	}
 }
@@ -70,6 +70,9 @@ public class RepoTO {
 	private String verifyKeyEncoded;
 	private PublicKey verifyKey;
 
+	@Element(name="databaseformat", required=false)
+	private String databaseFormat;
+
 	public byte[] getRepoId() {
 		return repoId;
 	}
@@ -141,6 +144,14 @@ public class RepoTO {
 		return verifyKey;
 	}
 	
+	public String getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(String databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
 	public MultiChunkerTO getMultiChunker() {
 		return multiChunker;
 	}
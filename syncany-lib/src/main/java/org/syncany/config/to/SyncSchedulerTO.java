@@ -0,0 +1,46 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.config.to;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.Root;
+
+@Root(strict = false)
+public class SyncSchedulerTO {
+	@Element(required = false)
+	private int maxConcurrentSyncs = 4; // 0 = one thread per folder 
+	
+	@Element(required = false)
+	private int intervalJitter = 10; // in percent of the folder's sync interval
+
+	public int getMaxConcurrentSyncs() {
+		return maxConcurrentSyncs;
+	}
+
+	public void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+		this.maxConcurrentSyncs = maxConcurrentSyncs;
+	}
+
+	public int getIntervalJitter() {
+		return intervalJitter;
+	}
+
+	public void setIntervalJitter(int intervalJitter) {
+		this.intervalJitter = intervalJitter;
+	}
+}
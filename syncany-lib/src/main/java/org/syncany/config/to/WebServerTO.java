@@ -36,6 +36,12 @@ public class WebServerTO {
 	
 	@Element(required = false)
 	private String certificateCommonName = "localhost";
+	
+	@Element(required = false)
+	private int eventQueueSize = 1000; // 0 = synchronous event delivery
+	
+	@Element(required = false)
+	private int maxProgressEventsPerSecond = 10; // Per folder and event type, 0 = unlimited
 
 	public boolean isEnabled() {
 		return enabled;
@@ -59,5 +65,13 @@ public class WebServerTO {
 	
 	public String getCertificateCommonName() {
 		return certificateCommonName;
-	}	
+	}
+	
+	public int getEventQueueSize() {
+		return eventQueueSize;
+	}
+	
+	public int getMaxProgressEventsPerSecond() {
+		return maxProgressEventsPerSecond;
+	}
 }
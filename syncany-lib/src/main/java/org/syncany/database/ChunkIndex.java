@@ -0,0 +1,431 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+
+/**
+ * The chunk index is a compact, off-heap map from chunk checksums to chunk sizes.
+ * It is used by the {@link org.syncany.database.dao.ChunkSqlDao ChunkSqlDao} to quickly
+ * determine whether a chunk is already known, without holding a {@link ChunkEntry}
+ * object for every chunk on the Java heap.
+ *
+ * <p>The index is an open-addressing hash table with linear probing, stored in direct
+ * {@link ByteBuffer}s. Each slot consists of the fixed-width checksum, followed by the
+ * size of the chunk (plus one, so that zero marks an empty slot). All checksums in an
+ * index must have the same length. A Bloom filter in front of the table answers lookups
+ * of new chunks without touching the table.
+ *
+ * <p>The index can be saved to a snapshot file, and additions since the last snapshot can
+ * be appended to a log file. {@link #load(File, File)} reads the snapshot and replays
+ * the log. Entries cannot be removed; to remove entries, the index must be rebuilt.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class ChunkIndex {
+	private static final int FILE_MAGIC = 0x53594349; // "SYCI"
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 64;
+
+	private static final int MIN_CAPACITY = 1024;
+	private static final double MAX_LOAD_FACTOR = 0.75;
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+	private static final int MAX_BLOOM_FILTER_SIZE = 1 << 30;
+	private static final int BLOOM_FILTER_HASH_COUNT = 4;
+
+	private int checksumLength;
+	private int slotSize;
+	private long capacity;
+	private long size;
+
+	private int segmentShift;
+	private long segmentMask;
+	private ByteBuffer[] segments;
+
+	private ByteBuffer bloomFilter;
+	private long bloomFilterMask;
+
+	/**
+	 * Creates a new empty index for checksums of the given length, large enough
+	 * to hold the expected number of entries without growing.
+	 */
+	public ChunkIndex(int checksumLength, long expectedSize) {
+		allocate(checksumLength, calculateCapacity(expectedSize));
+	}
+
+	private ChunkIndex() {
+		// Used by createWithCapacity()
+	}
+
+	private static ChunkIndex createWithCapacity(int checksumLength, long capacity) {
+		ChunkIndex chunkIndex = new ChunkIndex();
+		chunkIndex.allocate(checksumLength, capacity);
+
+		return chunkIndex;
+	}
+
+	private void allocate(int checksumLength, long capacity) {
+		this.checksumLength = checksumLength;
+		this.slotSize = checksumLength + 4;
+		this.capacity = capacity;
+		this.size = 0;
+
+		long slotsPerSegment = Math.min(capacity, Long.highestOneBit(MAX_SEGMENT_SIZE / slotSize));
+
+		this.segmentShift = Long.numberOfTrailingZeros(slotsPerSegment);
+		this.segmentMask = slotsPerSegment - 1;
+		this.segments = new ByteBuffer[(int) (capacity / slotsPerSegment)];
+
+		int bloomFilterSize = (int) Math.min(capacity, MAX_BLOOM_FILTER_SIZE);
+		this.bloomFilterMask = bloomFilterSize * 8L - 1;
+
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = ByteBuffer.allocateDirect((int) (slotsPerSegment * slotSize));
+		}
+
+		this.bloomFilter = ByteBuffer.allocateDirect(bloomFilterSize);
+	}
+
+	public int getChecksumLength() {
+		return checksumLength;
+	}
+
+	/**
+	 * Returns the number of entries in the index.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the size of the chunk with the given checksum, or <tt>-1</tt>
+	 * if the checksum is not in the index.
+	 */
+	public int get(ChunkChecksum chunkChecksum) {
+		byte[] checksum = chunkChecksum.getBytes();
+
+		if (checksum.length != checksumLength) {
+			return -1;
+		}
+
+		long hash = hash(checksum);
+
+		if (!mightContain(hash)) {
+			return -1;
+		}
+
+		for (long slot = hash & (capacity - 1);; slot = (slot + 1) & (capacity - 1)) {
+			ByteBuffer segment = segments[(int) (slot >>> segmentShift)];
+			int offset = (int) (slot & segmentMask) * slotSize;
+			int sizePlusOne = segment.getInt(offset + checksumLength);
+
+			if (sizePlusOne == 0) {
+				return -1;
+			}
+			else if (checksumEquals(segment, offset, checksum)) {
+				return sizePlusOne - 1;
+			}
+		}
+	}
+
+	/**
+	 * Adds the given checksum and chunk size to the index, or updates the size if
+	 * the checksum is already in the index. The index grows if necessary.
+	 *
+	 * <p>If the index is empty, the checksum length is adjusted to the length of
+	 * the given checksum. Otherwise, all checksums must have the same length.
+	 */
+	public void put(ChunkChecksum chunkChecksum, int chunkSize) {
+		byte[] checksum = chunkChecksum.getBytes();
+
+		if (size == 0 && checksum.length != checksumLength) {
+			replaceWith(createWithCapacity(checksum.length, capacity));
+		}
+		else if (checksum.length != checksumLength) {
+			throw new IllegalArgumentException("Invalid checksum length " + checksum.length + ", expected " + checksumLength + ": " + chunkChecksum);
+		}
+
+		if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+			grow();
+		}
+
+		putInternal(checksum, chunkSize);
+	}
+
+	/**
+	 * Adds all given chunks to the index.
+	 */
+	public void putAll(Collection<ChunkEntry> chunks) {
+		for (ChunkEntry chunk : chunks) {
+			put(chunk.getChecksum(), chunk.getSize());
+		}
+	}
+
+	/**
+	 * Writes the entire index to the given snapshot file.
+	 */
+	public void save(File snapshotFile) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(snapshotFile, "rw")) {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+			fileChannel.truncate(0);
+
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(checksumLength).putLong(capacity).putLong(size);
+			header.clear();
+
+			writeFully(fileChannel, header);
+
+			for (ByteBuffer segment : segments) {
+				writeFully(fileChannel, segment.duplicate());
+			}
+
+			writeFully(fileChannel, bloomFilter.duplicate());
+		}
+	}
+
+	/**
+	 * Appends the given chunks to the log file. This method does not add the
+	 * chunks to any index in memory.
+	 */
+	public static void appendToLog(File logFile, Collection<ChunkEntry> chunks) throws IOException {
+		try (DataOutputStream logOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)))) {
+			for (ChunkEntry chunk : chunks) {
+				byte[] checksum = chunk.getChecksum().getBytes();
+
+				logOutputStream.writeByte(checksum.length);
+				logOutputStream.write(checksum);
+				logOutputStream.writeInt(chunk.getSize());
+			}
+		}
+	}
+
+	/**
+	 * Loads an index from the given snapshot file, and replays the entries in the log
+	 * file (if it exists). An incomplete last log entry is ignored.
+	 */
+	public static ChunkIndex load(File snapshotFile, File logFile) throws IOException {
+		ChunkIndex chunkIndex = readSnapshot(snapshotFile);
+
+		if (logFile.exists()) {
+			try (DataInputStream logInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+				while (true) {
+					byte[] checksum = new byte[logInputStream.readUnsignedByte()];
+
+					logInputStream.readFully(checksum);
+					chunkIndex.put(new ChunkChecksum(checksum), logInputStream.readInt());
+				}
+			}
+			catch (EOFException e) {
+				// End of log
+			}
+		}
+
+		return chunkIndex;
+	}
+
+	private static ChunkIndex readSnapshot(File snapshotFile) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(snapshotFile, "r")) {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			readFully(fileChannel, header);
+			header.flip();
+
+			if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+				throw new IOException("Invalid chunk index file: " + snapshotFile);
+			}
+
+			int checksumLength = header.getInt();
+			long capacity = header.getLong();
+			long size = header.getLong();
+
+			if (checksumLength <= 0 || capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1 || size > capacity) {
+				throw new IOException("Invalid chunk index header in file: " + snapshotFile);
+			}
+
+			ChunkIndex chunkIndex = createWithCapacity(checksumLength, capacity);
+			chunkIndex.size = size;
+
+			for (ByteBuffer segment : chunkIndex.segments) {
+				readFully(fileChannel, segment);
+				segment.clear();
+			}
+
+			readFully(fileChannel, chunkIndex.bloomFilter);
+			chunkIndex.bloomFilter.clear();
+
+			return chunkIndex;
+		}
+	}
+
+	private void putInternal(byte[] checksum, int chunkSize) {
+		long hash = hash(checksum);
+
+		for (long slot = hash & (capacity - 1);; slot = (slot + 1) & (capacity - 1)) {
+			ByteBuffer segment = segments[(int) (slot >>> segmentShift)];
+			int offset = (int) (slot & segmentMask) * slotSize;
+			int sizePlusOne = segment.getInt(offset + checksumLength);
+
+			if (sizePlusOne == 0) {
+				for (int i = 0; i < checksumLength; i++) {
+					segment.put(offset + i, checksum[i]);
+				}
+
+				segment.putInt(offset + checksumLength, chunkSize + 1);
+				addToBloomFilter(hash);
+				size++;
+
+				return;
+			}
+			else if (checksumEquals(segment, offset, checksum)) {
+				segment.putInt(offset + checksumLength, chunkSize + 1);
+				return;
+			}
+		}
+	}
+
+	private void grow() {
+		ChunkIndex largerChunkIndex = createWithCapacity(checksumLength, capacity * 2);
+		byte[] checksum = new byte[checksumLength];
+
+		for (ByteBuffer segment : segments) {
+			for (int offset = 0; offset < segment.capacity(); offset += slotSize) {
+				int sizePlusOne = segment.getInt(offset + checksumLength);
+
+				if (sizePlusOne != 0) {
+					for (int i = 0; i < checksumLength; i++) {
+						checksum[i] = segment.get(offset + i);
+					}
+
+					largerChunkIndex.putInternal(checksum, sizePlusOne - 1);
+				}
+			}
+		}
+
+		replaceWith(largerChunkIndex);
+	}
+
+	private void replaceWith(ChunkIndex otherChunkIndex) {
+		this.checksumLength = otherChunkIndex.checksumLength;
+		this.slotSize = otherChunkIndex.slotSize;
+		this.capacity = otherChunkIndex.capacity;
+		this.size = otherChunkIndex.size;
+		this.segmentShift = otherChunkIndex.segmentShift;
+		this.segmentMask = otherChunkIndex.segmentMask;
+		this.segments = otherChunkIndex.segments;
+		this.bloomFilter = otherChunkIndex.bloomFilter;
+		this.bloomFilterMask = otherChunkIndex.bloomFilterMask;
+	}
+
+	private boolean checksumEquals(ByteBuffer segment, int offset, byte[] checksum) {
+		for (int i = 0; i < checksumLength; i++) {
+			if (segment.get(offset + i) != checksum[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean mightContain(long hash) {
+		long secondHash = secondHash(hash);
+
+		for (int i = 0; i < BLOOM_FILTER_HASH_COUNT; i++) {
+			long bit = (hash + i * secondHash) & bloomFilterMask;
+
+			if ((bloomFilter.get((int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void addToBloomFilter(long hash) {
+		long secondHash = secondHash(hash);
+
+		for (int i = 0; i < BLOOM_FILTER_HASH_COUNT; i++) {
+			long bit = (hash + i * secondHash) & bloomFilterMask;
+			int index = (int) (bit >>> 3);
+
+			bloomFilter.put(index, (byte) (bloomFilter.get(index) | (1 << (bit & 7))));
+		}
+	}
+
+	/**
+	 * Hashes all bytes of the checksum (FNV-1a), and mixes the result
+	 * (MurmurHash3 finalizer), so that short checksums are spread well, too.
+	 */
+	private static long hash(byte[] checksum) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (byte checksumByte : checksum) {
+			hash ^= checksumByte & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		return mix(hash);
+	}
+
+	private static long secondHash(long hash) {
+		return mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	private static long calculateCapacity(long expectedSize) {
+		long minCapacity = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedSize / MAX_LOAD_FACTOR) + 1);
+		return Long.highestOneBit(minCapacity - 1) << 1;
+	}
+
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (fileChannel.read(buffer) < 0) {
+				throw new EOFException("Unexpected end of chunk index file.");
+			}
+		}
+	}
+}
@@ -17,13 +17,17 @@
  */
 package org.syncany.database;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 
@@ -39,6 +43,9 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
  * {@link ChunkEntry}s and {@link MultiChunkEntry}s.
  * 
  * <p>The current implementation of the database version keeps all references in memory. 
+ * In addition to the primary maps, file histories are indexed by the path and the checksum
+ * of their last {@link FileVersion}. These indexes are updated whenever a file history is
+ * added, so a file history that is modified afterwards must be added again.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -58,6 +65,11 @@ public class DatabaseVersion {
 
     // Quick access cache
     private Map<ChunkChecksum, MultiChunkId> chunkMultiChunkCache;    
+    
+    // File history indexes (by last version)
+    private Map<FileHistoryId, FileVersion> indexedLastVersions;
+    private Map<String, PartialFileHistory> fileHistoryPathIndex;
+    private Map<FileChecksum, List<PartialFileHistory>> fileHistoryChecksumIndex;
 
     public DatabaseVersion() {
     	header = new DatabaseVersionHeader();
@@ -70,6 +82,11 @@ public class DatabaseVersion {
 
         // Quick access cache
         chunkMultiChunkCache = new HashMap<ChunkChecksum, MultiChunkId>();
+        
+        // File history indexes
+        indexedLastVersions = new HashMap<FileHistoryId, FileVersion>();
+        fileHistoryPathIndex = new HashMap<String, PartialFileHistory>();
+        fileHistoryChecksumIndex = new HashMap<FileChecksum, List<PartialFileHistory>>();
     }
     
 	public DatabaseVersionHeader getHeader() {
@@ -171,8 +188,19 @@ public class DatabaseVersion {
 	
     // History
     
+    /**
+     * Adds the given file history to this database version, or replaces the file history
+     * with the same identifier. The path and checksum indexes are updated to reflect
+     * the current last version of the file history. 
+     */
     public void addFileHistory(PartialFileHistory history) {
-        fileHistories.put(history.getFileHistoryId(), history);
+        PartialFileHistory replacedHistory = fileHistories.put(history.getFileHistoryId(), history);
+        
+        if (replacedHistory != null) {
+        	removeFromFileHistoryIndexes(replacedHistory.getFileHistoryId());
+        }
+        
+        addToFileHistoryIndexes(history);
     }
     
     public PartialFileHistory getFileHistory(FileHistoryId fileId) {
@@ -183,6 +211,79 @@ public class DatabaseVersion {
         return fileHistories.values();
     }    
     
+    /**
+     * Returns the file history whose last version has the given path and is not
+     * marked as deleted, or <tt>null</tt> if no such file history exists.
+     */
+    public PartialFileHistory getFileHistoryByPath(String path) {
+    	return fileHistoryPathIndex.get(path);
+    }
+    
+    /**
+     * Returns all file histories whose last version has the given checksum, or
+     * <tt>null</tt> if there are none. 
+     */
+    public List<PartialFileHistory> getFileHistoriesByChecksum(FileChecksum checksum) {
+    	return fileHistoryChecksumIndex.get(checksum);
+    }
+    
+    private void addToFileHistoryIndexes(PartialFileHistory history) {
+    	FileVersion lastVersion = history.getLastVersion();
+    	
+    	if (lastVersion == null) {
+    		return;
+    	}
+    	
+    	indexedLastVersions.put(history.getFileHistoryId(), lastVersion);
+    	
+    	if (lastVersion.getStatus() != FileStatus.DELETED) {
+    		fileHistoryPathIndex.put(lastVersion.getPath(), history);
+    	}
+    	
+    	if (lastVersion.getChecksum() != null) {
+    		List<PartialFileHistory> historiesWithSameChecksum = fileHistoryChecksumIndex.get(lastVersion.getChecksum());
+    		
+    		if (historiesWithSameChecksum == null) {
+    			historiesWithSameChecksum = new ArrayList<PartialFileHistory>();
+    			fileHistoryChecksumIndex.put(lastVersion.getChecksum(), historiesWithSameChecksum);
+    		}
+    		
+    		historiesWithSameChecksum.add(history);
+    	}
+    }
+    
+    private void removeFromFileHistoryIndexes(FileHistoryId fileHistoryId) {
+    	FileVersion indexedLastVersion = indexedLastVersions.remove(fileHistoryId);
+    	
+    	if (indexedLastVersion == null) {
+    		return;
+    	}
+    	
+    	PartialFileHistory pathIndexHistory = fileHistoryPathIndex.get(indexedLastVersion.getPath());
+    	
+    	if (pathIndexHistory != null && pathIndexHistory.getFileHistoryId().equals(fileHistoryId)) {
+    		fileHistoryPathIndex.remove(indexedLastVersion.getPath());
+    	}
+    	
+    	if (indexedLastVersion.getChecksum() != null) {
+    		List<PartialFileHistory> historiesWithSameChecksum = fileHistoryChecksumIndex.get(indexedLastVersion.getChecksum());
+    		
+    		if (historiesWithSameChecksum != null) {
+    			Iterator<PartialFileHistory> historyIterator = historiesWithSameChecksum.iterator();
+    			
+    			while (historyIterator.hasNext()) {
+    				if (historyIterator.next().getFileHistoryId().equals(fileHistoryId)) {
+    					historyIterator.remove();
+    				}
+    			}
+    			
+    			if (historiesWithSameChecksum.isEmpty()) {
+    				fileHistoryChecksumIndex.remove(indexedLastVersion.getChecksum());
+    			}
+    		}
+    	}
+    }
+    
     @Override
     public DatabaseVersion clone() {
     	DatabaseVersion clonedDatabaseVersion = new DatabaseVersion();
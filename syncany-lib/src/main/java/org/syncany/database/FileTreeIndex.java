@@ -0,0 +1,418 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+
+/**
+ * The file tree index is a compact, read-only snapshot of the current file tree, i.e. of the
+ * last {@link FileVersion} of every file in the local database. It is used by the
+ * {@link org.syncany.operations.status.StatusOperation StatusOperation} to compare the local
+ * folder to the database without querying and materializing the entire file tree each time.
+ *
+ * <p>The index file starts with the magic bytes <tt>SYFT</tt>, a format version, a stamp
+ * identifying the state of the database the index was built from, and the number of entries.
+ * It is followed by one record per file version (path, type, status, size, last modified date,
+ * checksum, link target, and permissions/attributes), sorted by the UTF-8 bytes of the path, and an
+ * offset table pointing to these records. The last twelve bytes are the offset of the offset table
+ * and the magic bytes again.
+ *
+ * <p>Loaded indexes are memory-mapped. Lookups by path use a binary search over the offset table,
+ * and records are only decoded to {@link FileVersion}s when they are accessed. Decoded file versions
+ * only contain the fields listed above; in particular, they have no file history ID or version number.
+ *
+ * <p>The index implements a read-only {@link Map} from relative paths to file versions.
+ * Concurrent reads are safe.
+ */
+public class FileTreeIndex extends AbstractMap<String, FileVersion> {
+	private static final byte[] MAGIC = "SYFT".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 1;
+	private static final int TRAILER_LENGTH = 8 + MAGIC.length;
+
+	private static final Comparator<IndexEntry> INDEX_ENTRY_COMPARATOR = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(IndexEntry indexEntry1, IndexEntry indexEntry2) {
+			byte[] path1 = indexEntry1.path;
+			byte[] path2 = indexEntry2.path;
+
+			int length = Math.min(path1.length, path2.length);
+
+			for (int i = 0; i < length; i++) {
+				if (path1[i] != path2[i]) {
+					return (path1[i] & 0xff) - (path2[i] & 0xff);
+				}
+			}
+
+			return path1.length - path2.length;
+		}
+	};
+
+	private String stamp;
+	private int size;
+
+	private ByteBuffer buffer;
+	private int offsetTablePosition;
+
+	private FileTreeIndex(String stamp, int size, ByteBuffer buffer, int offsetTablePosition) {
+		this.stamp = stamp;
+		this.size = size;
+		this.buffer = buffer;
+		this.offsetTablePosition = offsetTablePosition;
+	}
+
+	/**
+	 * Returns the stamp given when the index was written. The stamp identifies the
+	 * state of the database the index was built from.
+	 */
+	public String getStamp() {
+		return stamp;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object path) {
+		return path instanceof String && find(toBytes((String) path)) >= 0;
+	}
+
+	@Override
+	public FileVersion get(Object path) {
+		if (!(path instanceof String)) {
+			return null;
+		}
+
+		int index = find(toBytes((String) path));
+		return (index >= 0) ? readFileVersion(index) : null;
+	}
+
+	/**
+	 * Returns the file version with the given path, and all file versions below it,
+	 * i.e. the subtree of the given path.
+	 */
+	public Map<String, FileVersion> getSubtree(String path) {
+		Map<String, FileVersion> subtree = new HashMap<String, FileVersion>();
+		FileVersion fileVersion = get(path);
+
+		if (fileVersion != null) {
+			subtree.put(path, fileVersion);
+		}
+
+		byte[] prefix = toBytes(path + "/");
+		int index = find(prefix);
+
+		for (index = (index >= 0) ? index : -index - 1; index < size && hasPrefix(index, prefix); index++) {
+			fileVersion = readFileVersion(index);
+			subtree.put(fileVersion.getPath(), fileVersion);
+		}
+
+		return subtree;
+	}
+
+	@Override
+	public Set<Map.Entry<String, FileVersion>> entrySet() {
+		return new AbstractSet<Map.Entry<String, FileVersion>>() {
+			@Override
+			public Iterator<Map.Entry<String, FileVersion>> iterator() {
+				return new FileTreeIndexIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Writes the given file versions to a new index file, identified by the given stamp.
+	 * Existing files are overwritten.
+	 */
+	public static void write(File indexFile, String stamp, Collection<FileVersion> fileVersions) throws IOException {
+		List<IndexEntry> indexEntries = new ArrayList<IndexEntry>(fileVersions.size());
+
+		for (FileVersion fileVersion : fileVersions) {
+			indexEntries.add(new IndexEntry(toBytes(fileVersion.getPath()), fileVersion));
+		}
+
+		Collections.sort(indexEntries, INDEX_ENTRY_COMPARATOR);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.write(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeUTF(stamp);
+			out.writeInt(indexEntries.size());
+
+			int[] offsets = new int[indexEntries.size()];
+
+			for (int i = 0; i < indexEntries.size(); i++) {
+				offsets[i] = out.size(); // Saturates at 2 GB; such files are rejected by load()
+				writeFileVersion(out, indexEntries.get(i).path, indexEntries.get(i).fileVersion);
+			}
+
+			long offsetTablePosition = out.size();
+
+			for (int offset : offsets) {
+				out.writeInt(offset);
+			}
+
+			out.writeLong(offsetTablePosition);
+			out.write(MAGIC);
+		}
+	}
+
+	/**
+	 * Memory-maps the given index file and reads its header. Records are read lazily
+	 * when they are accessed.
+	 */
+	public static FileTreeIndex load(File indexFile) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r")) {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+			long fileLength = fileChannel.size();
+
+			if (fileLength > Integer.MAX_VALUE || fileLength < MAGIC.length + 1 + TRAILER_LENGTH) {
+				throw new IOException("Invalid file tree index; unexpected file length " + fileLength);
+			}
+
+			ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+
+			// Header
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+
+			if (!Arrays.equals(MAGIC, magic) || buffer.get() != FORMAT_VERSION) {
+				throw new IOException("Invalid file tree index; magic bytes or version do not match.");
+			}
+
+			byte[] stampBytes = new byte[buffer.getShort() & 0xffff];
+			buffer.get(stampBytes);
+
+			String stamp = new String(stampBytes, StandardCharsets.UTF_8); // ASCII; 'modified UTF-8' of writeUTF() is identical
+			int size = buffer.getInt();
+
+			// Trailer
+			long offsetTablePosition = buffer.getLong((int) fileLength - TRAILER_LENGTH);
+			buffer.position((int) fileLength - MAGIC.length);
+			buffer.get(magic);
+
+			if (!Arrays.equals(MAGIC, magic) || size < 0 || offsetTablePosition + size * 4L != fileLength - TRAILER_LENGTH) {
+				throw new IOException("Invalid file tree index; trailer does not match.");
+			}
+
+			return new FileTreeIndex(stamp, size, buffer, (int) offsetTablePosition);
+		}
+	}
+
+	private static void writeFileVersion(DataOutputStream out, byte[] path, FileVersion fileVersion) throws IOException {
+		out.writeInt(path.length);
+		out.write(path);
+		out.writeByte(fileVersion.getType().ordinal());
+		out.writeByte(fileVersion.getStatus().ordinal());
+		out.writeLong((fileVersion.getSize() != null) ? fileVersion.getSize() : -1);
+		out.writeLong((fileVersion.getLastModified() != null) ? fileVersion.getLastModified().getTime() : -1);
+		writeBytes(out, (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().getBytes() : null);
+		writeBytes(out, (fileVersion.getLinkTarget() != null) ? toBytes(fileVersion.getLinkTarget()) : null);
+		writeBytes(out, (fileVersion.getPosixPermissions() != null) ? toBytes(fileVersion.getPosixPermissions()) : null);
+		writeBytes(out, (fileVersion.getDosAttributes() != null) ? toBytes(fileVersion.getDosAttributes()) : null);
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes != null) {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		else {
+			out.writeInt(-1);
+		}
+	}
+
+	private FileVersion readFileVersion(int index) {
+		ByteBuffer record = buffer.duplicate();
+		record.position(getOffset(index));
+
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setPath(new String(readBytes(record), StandardCharsets.UTF_8));
+		fileVersion.setType(FileType.values()[record.get()]);
+		fileVersion.setStatus(FileStatus.values()[record.get()]);
+
+		long size = record.getLong();
+		long lastModified = record.getLong();
+
+		fileVersion.setSize((size >= 0) ? size : null);
+		fileVersion.setLastModified((lastModified >= 0) ? new Date(lastModified) : null);
+
+		byte[] checksum = readBytes(record);
+		byte[] linkTarget = readBytes(record);
+		byte[] posixPermissions = readBytes(record);
+		byte[] dosAttributes = readBytes(record);
+
+		fileVersion.setChecksum((checksum != null) ? new FileChecksum(checksum) : null);
+		fileVersion.setLinkTarget((linkTarget != null) ? new String(linkTarget, StandardCharsets.UTF_8) : null);
+		fileVersion.setPosixPermissions((posixPermissions != null) ? new String(posixPermissions, StandardCharsets.UTF_8) : null);
+		fileVersion.setDosAttributes((dosAttributes != null) ? new String(dosAttributes, StandardCharsets.UTF_8) : null);
+
+		return fileVersion;
+	}
+
+	private static byte[] readBytes(ByteBuffer record) {
+		int length = record.getInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * Binary search for the given path. Returns the index of the path if it is found,
+	 * or <tt>(-(insertion point) - 1)</tt> if it is not (like {@link Arrays#binarySearch(Object[], Object)}).
+	 */
+	private int find(byte[] path) {
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = comparePathAt(getOffset(middle), path);
+
+			if (comparison < 0) {
+				low = middle + 1;
+			}
+			else if (comparison > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	private boolean hasPrefix(int index, byte[] prefix) {
+		int offset = getOffset(index);
+		int pathLength = buffer.getInt(offset);
+
+		if (pathLength < prefix.length) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(offset + 4 + i) != prefix[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares the path of the record at the given offset to the given path. Bytes are
+	 * compared unsigned, i.e. in the order of their UTF-8 code points.
+	 */
+	private int comparePathAt(int offset, byte[] path) {
+		int recordPathLength = buffer.getInt(offset);
+		int length = Math.min(recordPathLength, path.length);
+
+		for (int i = 0; i < length; i++) {
+			int recordPathByte = buffer.get(offset + 4 + i) & 0xff;
+			int pathByte = path[i] & 0xff;
+
+			if (recordPathByte != pathByte) {
+				return recordPathByte - pathByte;
+			}
+		}
+
+		return recordPathLength - path.length;
+	}
+
+	private int getOffset(int index) {
+		return buffer.getInt(offsetTablePosition + index * 4);
+	}
+
+	private static byte[] toBytes(String str) {
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static class IndexEntry {
+		private byte[] path;
+		private FileVersion fileVersion;
+
+		public IndexEntry(byte[] path, FileVersion fileVersion) {
+			this.path = path;
+			this.fileVersion = fileVersion;
+		}
+	}
+
+	private class FileTreeIndexIterator implements Iterator<Map.Entry<String, FileVersion>> {
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		@Override
+		public Map.Entry<String, FileVersion> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			FileVersion fileVersion = readFileVersion(index++);
+			return new SimpleImmutableEntry<String, FileVersion>(fileVersion.getPath(), fileVersion);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -17,6 +17,7 @@
  */
 package org.syncany.database;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
@@ -49,6 +50,10 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
  * <p>This class combines all specific SQL database data access objects (DAOs) into
  * a single class, and forwards all method calls to the responsible DAO.  
  * 
+ * <p>Operations and file system actions should not create their own instances, but borrow
+ * the session shared per repository via {@link Config#getDatabase()}. This keeps a single 
+ * connection, and the DAOs' prepared statements and chunk index, for the lifetime of the config.
+ * 
  * @see {@link ApplicationSqlDao}
  * @see {@link ChunkSqlDao}
  * @see {@link FileContentSqlDao}
@@ -73,12 +78,23 @@ public class SqlDatabase {
 	public SqlDatabase(Config config) {
 		this.connection = config.createDatabaseConnection();
 		this.applicationDao = new ApplicationSqlDao(connection);
-		this.chunkDao = new ChunkSqlDao(connection);
+		this.chunkDao = new ChunkSqlDao(connection, new File(config.getDatabaseDir(), Config.FILE_CHUNK_INDEX));
 		this.fileContentDao = new FileContentSqlDao(connection);
-		this.fileVersionDao = new FileVersionSqlDao(connection);
+		this.fileVersionDao = new FileVersionSqlDao(connection, new File(config.getDatabaseDir(), Config.FILE_FILE_TREE_INDEX));
 		this.fileHistoryDao = new FileHistorySqlDao(connection, fileVersionDao);
 		this.multiChunkDao = new MultiChunkSqlDao(connection);
 		this.databaseVersionDao = new DatabaseVersionSqlDao(connection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
+
+		setBatchSize(config.getDatabaseBatchSize());
+	}
+	
+	private void setBatchSize(int batchSize) {
+		chunkDao.setBatchSize(batchSize);
+		fileContentDao.setBatchSize(batchSize);
+		fileVersionDao.setBatchSize(batchSize);
+		fileHistoryDao.setBatchSize(batchSize);
+		multiChunkDao.setBatchSize(batchSize);
+		databaseVersionDao.setBatchSize(batchSize);
 	}
 
 	// General
@@ -89,10 +105,32 @@ public class SqlDatabase {
 
 	public void commit() throws SQLException {
 		connection.commit();
+		chunkDao.commitChunkIndex();
 	}
 
 	public void rollback() throws SQLException {
 		connection.rollback();
+		chunkDao.rollbackChunkIndex();
+		
+		clearBatches();
+	}
+	
+	public boolean isClosed() {
+		try {
+			return connection.isClosed();
+		}
+		catch (SQLException e) {
+			return true;
+		}
+	}
+	
+	private void clearBatches() throws SQLException {
+		chunkDao.clearBatches();
+		fileContentDao.clearBatches();
+		fileVersionDao.clearBatches();
+		fileHistoryDao.clearBatches();
+		multiChunkDao.clearBatches();
+		databaseVersionDao.clearBatches();
 	}
 
 	public void removeUnreferencedDatabaseEntities() {
@@ -145,6 +183,7 @@ public class SqlDatabase {
 
 	public void deleteAll() {
 		applicationDao.deleteAll();
+		chunkDao.discardChunkIndex();
 	}
 
 	public void shutdown() {
@@ -231,10 +270,18 @@ public class SqlDatabase {
 		return fileVersionDao.getCurrentFileTree();
 	}
 
+	public Map<String, FileVersion> getCurrentFileTreeIndex() {
+		return fileVersionDao.getCurrentFileTreeIndex();
+	}
+
 	public Map<String, FileVersion> getCurrentFileTree(String prefix) {
 		return fileVersionDao.getCurrentFileTree(prefix);
 	}
 
+	public Map<String, FileVersion> getCurrentFileSubtree(String path) {
+		return fileVersionDao.getCurrentFileSubtree(path);
+	}
+
 	public void removeSmallerOrEqualFileVersions(Map<FileHistoryId, FileVersion> purgeFileVersions) throws SQLException {
 		fileVersionDao.removeFileVersions(purgeFileVersions);
 	}
@@ -269,6 +316,10 @@ public class SqlDatabase {
 		return fileVersionDao.getFileVersion(fileHistoryId, version);
 	}
 
+	public Map<ChunkChecksum, List<FileVersion>> getFileVersionsByChunkChecksums(Collection<ChunkChecksum> chunkChecksums) {
+		return fileVersionDao.getFileVersionsByChunkChecksums(chunkChecksums);
+	}
+
 	// Multi Chunk
 
 	public List<MultiChunkId> getMultiChunkIds(FileChecksum fileChecksum) {
@@ -291,6 +342,14 @@ public class SqlDatabase {
 		return multiChunkDao.getUnusedMultiChunks();
 	}
 
+	public Map<MultiChunkId, MultiChunkEntry> getSparseMultiChunks(double maxUsedRatio) {
+		return multiChunkDao.getSparseMultiChunks(maxUsedRatio);
+	}
+
+	public void replaceMultiChunk(MultiChunkId oldMultiChunkId, MultiChunkEntry newMultiChunk) throws SQLException {
+		multiChunkDao.replaceMultiChunk(oldMultiChunkId, newMultiChunk);
+	}
+
 	private void removeUnreferencedMultiChunks() throws SQLException {
 		multiChunkDao.removeUnreferencedMultiChunks();
 	}
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.util.SqlRunner;
@@ -29,19 +31,42 @@ import org.syncany.util.SqlRunner;
  * Small helper class to implement common tasks for the inheriting 
  * SQL data access objects.
  * 
+ * <p>Write paths may use {@link #getCachedStatement(Connection, String) getCachedStatement()} 
+ * and {@link #addBatch(PreparedStatement) addBatch()} / {@link #executeBatch(PreparedStatement) executeBatch()}
+ * to re-use their prepared statements for the lifetime of the connection, and to send 
+ * their inserts to the database in batches of {@link #getBatchSize() batch size} rows.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class AbstractSqlDao {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
 	protected Connection connection;
+	protected int batchSize;
+	
+	private Map<String, PreparedStatement> cachedStatements;
+	private Map<PreparedStatement, Integer> pendingBatchCounts;
 	
 	public AbstractSqlDao(Connection connection) {
 		this.connection = connection;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		
+		this.cachedStatements = new HashMap<String, PreparedStatement>();
+		this.pendingBatchCounts = new HashMap<PreparedStatement, Integer>();
 	}
 	
 	public Connection getConnection() {
 		return connection;
 	}
 	
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	
 	protected PreparedStatement getStatement(String resourceId) throws SQLException {
 		return getStatement(connection, resourceId);
 	}
@@ -50,6 +75,68 @@ public abstract class AbstractSqlDao {
 		return overrideConnection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
 	}
 	
+	/**
+	 * Returns a prepared statement for the given resource identifier that is kept open 
+	 * and re-used for subsequent calls with the same connection. Cached statements must 
+	 * <b>not be closed</b> by the caller; they are closed with the connection.
+	 * 
+	 * <p>Cached statements must only be used by write paths that do not hold an open 
+	 * {@link java.sql.ResultSet} of the statement while calling another method that uses it.
+	 */
+	protected PreparedStatement getCachedStatement(Connection overrideConnection, String resourceId) throws SQLException {
+		PreparedStatement preparedStatement = cachedStatements.get(resourceId);
+		
+		if (preparedStatement == null || preparedStatement.isClosed() || preparedStatement.getConnection() != overrideConnection) {
+			preparedStatement = getStatement(overrideConnection, resourceId);
+			cachedStatements.put(resourceId, preparedStatement);
+		}
+		
+		return preparedStatement;
+	}
+	
+	/**
+	 * Adds the current parameters of the given statement to its batch, and executes 
+	 * the batch if it has reached the configured {@link #getBatchSize() batch size}.
+	 */
+	protected void addBatch(PreparedStatement preparedStatement) throws SQLException {
+		preparedStatement.addBatch();
+		
+		Integer pendingBatchCount = pendingBatchCounts.get(preparedStatement);
+		pendingBatchCount = (pendingBatchCount != null) ? pendingBatchCount + 1 : 1;
+		
+		pendingBatchCounts.put(preparedStatement, pendingBatchCount);
+		
+		if (pendingBatchCount >= batchSize) {
+			executeBatch(preparedStatement);
+		}
+	}
+	
+	/**
+	 * Executes the remaining batch of the given statement (if any). Callers must execute
+	 * all batches of a table before writing rows that reference this table.
+	 */
+	protected void executeBatch(PreparedStatement preparedStatement) throws SQLException {
+		Integer pendingBatchCount = pendingBatchCounts.remove(preparedStatement);
+		
+		if (pendingBatchCount != null && pendingBatchCount > 0) {
+			preparedStatement.executeBatch();
+		}
+	}
+	
+	/**
+	 * Clears all batches that have not been executed yet, e.g. after a failed write
+	 * and a rollback, so that they are not executed with the next write.
+	 */
+	public void clearBatches() throws SQLException {
+		for (PreparedStatement preparedStatement : pendingBatchCounts.keySet()) {
+			if (!preparedStatement.isClosed()) {
+				preparedStatement.clearBatch();
+			}
+		}
+		
+		pendingBatchCounts.clear();
+	}
+	
 	protected void runScript(String resourceId) throws SQLException, IOException {
 		SqlRunner.runScript(connection, DatabaseConnectionFactory.getStatementInputStream(resourceId));
 	}
@@ -17,6 +17,9 @@
  */
 package org.syncany.database.dao;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -24,10 +27,12 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.database.ChunkEntry;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
 import org.syncany.database.VectorClock;
 
 /**
@@ -35,20 +40,57 @@ import org.syncany.database.VectorClock;
  * on {@link ChunkEntry}s. It translates the relational data in the "chunk" table to
  * Java objects.
  * 
+ * <p>Lookups via {@link #getChunk(ChunkChecksum) getChunk()} are answered by a {@link ChunkIndex}
+ * instead of the database. If an index file is given, the index is persisted next to the
+ * database: a snapshot of the index is written after a commit, and chunks written afterwards
+ * are appended to a log file. When loaded, the index is only used if its size matches the 
+ * number of chunks in the database; otherwise it is rebuilt from the database.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class ChunkSqlDao extends AbstractSqlDao {
 	protected static final Logger logger = Logger.getLogger(ChunkSqlDao.class.getSimpleName());
-	private Map<ChunkChecksum, ChunkEntry> chunkCache;
+	
+	private static final int DEFAULT_CHECKSUM_LENGTH = 20;
+	private static final long MIN_LOG_SIZE_TO_COMPACT = 16 * 1024 * 1024;
+	
+	private File chunkIndexFile;
+	private File chunkIndexLogFile;
+	private long committedChunkIndexLogLength;
+	
+	private ChunkIndex chunkIndex;
+	private boolean chunkIndexUnavailable;
 
+	/**
+	 * Creates a chunk DAO whose chunk index is kept in memory only, and
+	 * rebuilt from the database when it is first needed.
+	 */
 	public ChunkSqlDao(Connection connection) {
+		this(connection, null);
+	}
+
+	/**
+	 * Creates a chunk DAO whose chunk index is persisted in the given index 
+	 * file (and a log file next to it). If the index file is <tt>null</tt>,
+	 * the index is kept in memory only.
+	 */
+	public ChunkSqlDao(Connection connection, File chunkIndexFile) {
 		super(connection);
-		this.chunkCache = null;
+		
+		this.chunkIndexFile = chunkIndexFile;
+		this.chunkIndexLogFile = (chunkIndexFile != null) ? new File(chunkIndexFile.getParentFile(), chunkIndexFile.getName() + ".log") : null;
+		this.committedChunkIndexLogLength = (chunkIndexLogFile != null) ? chunkIndexLogFile.length() : 0;
+		
+		this.chunkIndex = null;
+		this.chunkIndexUnavailable = false;
 	}
 
 	/**
 	 * Writes a list of {@link ChunkEntry}s to the database using <tt>INSERT</tt>s and the given connection.
 	 * 
+	 * <p>The chunks are immediately added to the chunk index, and appended to the index log
+	 * file. If the transaction is rolled back, {@link #rollbackChunkIndex()} must be called.
+	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query.
 	 * 
 	 * @param connection The connection used to execute the statements
@@ -58,18 +100,19 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	 */
 	public void writeChunks(Connection connection, long databaseVersionId, Collection<ChunkEntry> chunks) throws SQLException {
 		if (chunks.size() > 0) {
-			PreparedStatement preparedStatement = getStatement(connection, "chunk.insert.all.writeChunks.sql");
+			PreparedStatement preparedStatement = getCachedStatement(connection, "chunk.insert.all.writeChunks.sql");
 
 			for (ChunkEntry chunk : chunks) {
 				preparedStatement.setString(1, chunk.getChecksum().toString());
 				preparedStatement.setLong(2, databaseVersionId);
 				preparedStatement.setInt(3, chunk.getSize());
 
-				preparedStatement.addBatch();
+				addBatch(preparedStatement);
 			}
 
-			preparedStatement.executeBatch();
-			preparedStatement.close();
+			executeBatch(preparedStatement);
+			
+			addToChunkIndex(chunks);
 		}
 	}	
 
@@ -80,6 +123,9 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	 * <p>During the cleanup process, when file versions are deleted, unused chunks 
 	 * are left over. This method removes these chunks from the database.
 	 * 
+	 * <p>Since entries cannot be removed from the chunk index, the index and its files
+	 * are discarded, and the index is rebuilt when it is needed the next time.
+	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query. 
 	 */
 	public void removeUnreferencedChunks() {
@@ -90,37 +136,94 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		
+		discardChunkIndex();
 	}
 	
 	/**
-	 * Queries the database of a chunk with the given checksum. 
-	 * 
-	 * <p>Note: When first called, this method loads the <b>chunk cache</b> and keeps
-	 * this cache until it is cleared explicitly with {@link #clearCache()}. 
+	 * Queries the chunk index for a chunk with the given checksum. 
 	 * 
-	 * <p>Also note that this method will return <tt>null</tt> if the chunk has been
-	 * added after the cache has been filled. 
+	 * <p>Note: When first called, this method loads the <b>chunk index</b> from the index files,
+	 * or rebuilds it from the database. Chunks written with {@link #writeChunks(Connection, long, Collection) writeChunks()} 
+	 * are added to the index immediately. If the index cannot be loaded (e.g. because there 
+	 * is not enough memory), the database is queried directly.
 	 * 
 	 * @param chunkChecksum Chunk checksum of the chunk to be selected
 	 * @return Returns the chunk entry, or <tt>null</tt> if the chunk does not exist.
 	 */	
 	public synchronized ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
-		if (chunkCache == null) {
-			loadChunkCache();
+		if (chunkIndex == null && !chunkIndexUnavailable) {
+			loadChunkIndex();
+		}
+		
+		if (chunkIndex != null) {
+			int chunkSize = chunkIndex.get(chunkChecksum);
+			return (chunkSize >= 0) ? new ChunkEntry(chunkChecksum, chunkSize) : null;
+		}
+		else {
+			return getChunkFromDatabase(chunkChecksum);
 		}
-
-		return chunkCache.get(chunkChecksum);
 	}
 	
 	/**
-	 * Clears the chunk cache loaded by {@link #getChunk(ChunkChecksum) getChunk()}
-	 * and resets the cache. If {@link #getChunk(ChunkChecksum) getChunk()} is called
-	 * after the cache is cleared, it is re-populated.
+	 * Releases the chunk index loaded by {@link #getChunk(ChunkChecksum) getChunk()}. 
+	 * If {@link #getChunk(ChunkChecksum) getChunk()} is called afterwards, the index 
+	 * is loaded again. The index files are not touched.
 	 */
 	public synchronized void clearCache() {
-		if (chunkCache != null) {
-			chunkCache.clear();
-			chunkCache = null;
+		chunkIndex = null;
+		chunkIndexUnavailable = false;
+	}
+	
+	/**
+	 * Persists the chunk index after the connection has been committed. If there is no 
+	 * index snapshot yet, or the log has grown large, a new snapshot is written and the 
+	 * log is removed. Otherwise, the chunks written since the last commit remain in the log.
+	 */
+	public synchronized void commitChunkIndex() {
+		if (chunkIndexFile == null) {
+			return;
+		}
+		
+		long chunkIndexLogLength = chunkIndexLogFile.length();
+		boolean writeSnapshot = chunkIndex != null && (!chunkIndexFile.exists() 
+				|| chunkIndexLogLength > Math.max(MIN_LOG_SIZE_TO_COMPACT, chunkIndexFile.length() / 4));
+		
+		if (writeSnapshot) {
+			try {
+				logger.log(Level.INFO, "Writing chunk index snapshot ({0} chunks) to {1} ...", new Object[] { chunkIndex.size(), chunkIndexFile });
+
+				chunkIndex.save(chunkIndexFile);
+				chunkIndexLogFile.delete();
+				
+				chunkIndexLogLength = 0;
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot write chunk index snapshot; deleting index files.", e);
+				deleteChunkIndexFiles();				
+			}
+		}
+		
+		committedChunkIndexLogLength = chunkIndexLogLength;
+	}
+	
+	/**
+	 * Discards all chunks written since the last commit from the chunk index after the 
+	 * connection has been rolled back. The index log is truncated to its last committed 
+	 * length, and the in-memory index is reloaded when it is needed the next time.
+	 */
+	public synchronized void rollbackChunkIndex() {
+		chunkIndex = null;
+		chunkIndexUnavailable = false;
+
+		if (chunkIndexLogFile != null && chunkIndexLogFile.length() > committedChunkIndexLogLength) {
+			try (RandomAccessFile logFile = new RandomAccessFile(chunkIndexLogFile, "rw")) {
+				logFile.setLength(committedChunkIndexLogLength);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot truncate chunk index log; deleting index files.", e);
+				deleteChunkIndexFiles();
+			}
 		}
 	}
 
@@ -164,10 +267,79 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		return new ChunkEntry(chunkChecksum, resultSet.getInt("size"));
 	}
 	
-	protected void loadChunkCache() {
-		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkCache.sql")) {
+	protected ChunkEntry getChunkFromDatabase(ChunkChecksum chunkChecksum) {
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.getChunk.sql")) {
+			preparedStatement.setString(1, chunkChecksum.toString());
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? createChunkEntryFromRow(resultSet) : null;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	protected void loadChunkIndex() {
+		long chunkCount = getChunkCount();
+		
+		try {
+			if (chunkIndexFile != null && chunkIndexFile.exists()) {
+				chunkIndex = ChunkIndex.load(chunkIndexFile, chunkIndexLogFile);
+				
+				if (chunkIndex.size() == chunkCount) {
+					logger.log(Level.INFO, "Loaded chunk index with {0} chunks from {1}.", new Object[] { chunkCount, chunkIndexFile });
+					return;
+				}
+				
+				logger.log(Level.INFO, "Chunk index is outdated ({0} chunks, database has {1}); rebuilding ...", new Object[] { chunkIndex.size(), chunkCount });
+			}			
+		}
+		catch (IOException | IllegalArgumentException e) {
+			logger.log(Level.WARNING, "Cannot load chunk index; rebuilding ...", e);			
+		}
+		catch (OutOfMemoryError e) {
+			// A corrupt size in the index header can cause this; the rebuilt index is sized from the database
+			logger.log(Level.WARNING, "Not enough memory to load chunk index; rebuilding ...", e);
+		}
+		
+		// Old index files must not be used anymore; a new snapshot is written on the next commit
+		chunkIndex = null;
+		deleteChunkIndexFiles();
+		
+		try {
+			chunkIndex = buildChunkIndex(chunkCount);
+		}
+		catch (OutOfMemoryError e) {
+			logger.log(Level.WARNING, "Not enough memory for chunk index with " + chunkCount + " chunks; querying database instead.", e);
+			
+			chunkIndex = null;
+			chunkIndexUnavailable = true;
+		}
+	}
+	
+	private ChunkIndex buildChunkIndex(long chunkCount) {
+		ChunkIndex newChunkIndex = new ChunkIndex(DEFAULT_CHECKSUM_LENGTH, chunkCount);
+		
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkIndex.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					newChunkIndex.put(ChunkChecksum.parseChunkChecksum(resultSet.getString("checksum")), resultSet.getInt("size"));
+				}
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		
+		return newChunkIndex;
+	}
+	
+	private long getChunkCount() {
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.getChunkCount.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				chunkCache = createChunkEntries(resultSet);
+				resultSet.next();
+				return resultSet.getLong(1);
 			}
 		}
 		catch (SQLException e) {
@@ -175,6 +347,48 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		}
 	}
 	
+	private synchronized void addToChunkIndex(Collection<ChunkEntry> chunks) {
+		if (chunkIndex != null) {
+			try {
+				chunkIndex.putAll(chunks);
+			}
+			catch (IllegalArgumentException | OutOfMemoryError e) {
+				logger.log(Level.WARNING, "Cannot add chunks to chunk index; querying database instead.", e);
+				
+				discardChunkIndex();
+				chunkIndexUnavailable = true;
+			}
+		}
+		
+		if (chunkIndexFile != null && chunkIndexFile.exists()) {
+			try {
+				ChunkIndex.appendToLog(chunkIndexLogFile, chunks);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot append to chunk index log; deleting index files.", e);
+				deleteChunkIndexFiles();				
+			}
+		}
+	}
+	
+	/**
+	 * Discards the chunk index and deletes its files. The index is rebuilt from the
+	 * database when it is needed the next time.
+	 */
+	public synchronized void discardChunkIndex() {
+		chunkIndex = null;
+		deleteChunkIndexFiles();
+	}
+	
+	private void deleteChunkIndexFiles() {
+		if (chunkIndexFile != null) {
+			chunkIndexFile.delete();
+			chunkIndexLogFile.delete();
+			
+			committedChunkIndexLogLength = 0;
+		}
+	}
+	
 	/**
 	 * no commit
 	 */
@@ -0,0 +1,441 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_CHECKSUM;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_DOS_ATTRIBUTES;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_LINK_TARGET;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_POSIX_PERMISSIONS;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_UPDATED;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+
+/**
+ * This class reads a database file in the binary database format (see
+ * {@link DatabaseBinarySerializer}) from an {@link InputStream}, one database
+ * version at a time.
+ *
+ * <p>The header block at the front of the file is read when the reader is opened. It
+ * contains the headers of all database versions, as well as the length of each
+ * database version body. Callers can then use {@link #peekHeader()} to decide whether
+ * they need the next database version, and either read it via {@link #read()} or skip
+ * its body without parsing it via {@link #skip()}.
+ *
+ * <p>Unless disabled, {@link #close()} reads the remaining input until the end of the stream
+ * before closing it. This is necessary for transformers that verify the integrity of
+ * the data only after the last byte has been read. For plain (already verified) files,
+ * it can be disabled, so that skipped bodies are not read at all.
+ *
+ * @see DatabaseBinarySerializer
+ * @see DatabaseBinaryWriter
+ */
+public class DatabaseBinaryReader implements Closeable {
+	private CountingInputStream countingIn;
+	private DataInputStream dataIn;
+
+	private List<DatabaseVersionHeader> headers;
+	private List<Long> bodyLengths;
+	private int nextIndex;
+	private boolean readToEndOnClose;
+
+	public DatabaseBinaryReader(InputStream in) throws IOException {
+		this(in, true);
+	}
+
+	public DatabaseBinaryReader(InputStream in, boolean readToEndOnClose) throws IOException {
+		this.countingIn = new CountingInputStream(new BufferedInputStream(in));
+		this.dataIn = new DataInputStream(countingIn);
+
+		this.headers = new ArrayList<DatabaseVersionHeader>();
+		this.bodyLengths = new ArrayList<Long>();
+		this.nextIndex = 0;
+		this.readToEndOnClose = readToEndOnClose;
+
+		readHeaderBlock();
+	}
+
+	/**
+	 * Returns the headers of all database versions in the file,
+	 * in the order in which they were written.
+	 */
+	public List<DatabaseVersionHeader> getHeaders() {
+		return headers;
+	}
+
+	public boolean hasNext() {
+		return nextIndex < headers.size();
+	}
+
+	public DatabaseVersionHeader peekHeader() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more database versions.");
+		}
+
+		return headers.get(nextIndex);
+	}
+
+	/**
+	 * Reads the body of the next database version and returns the
+	 * full database version, including its header.
+	 */
+	public DatabaseVersion read() throws IOException {
+		DatabaseVersionHeader header = peekHeader();
+		long bodyLength = bodyLengths.get(nextIndex);
+		long bodyStartOffset = countingIn.getByteCount();
+
+		DatabaseVersion databaseVersion = new BodyReader(dataIn).read();
+		databaseVersion.setHeader(header);
+
+		long actualBodyLength = countingIn.getByteCount() - bodyStartOffset;
+
+		if (actualBodyLength != bodyLength) {
+			throw new IOException("Invalid database file: Expected body length " + bodyLength + ", but read " + actualBodyLength + " bytes.");
+		}
+
+		nextIndex++;
+		return databaseVersion;
+	}
+
+	/**
+	 * Skips the body of the next database version without parsing it. If the underlying
+	 * stream supports skipping (e.g. a plain file), the body is not read at all.
+	 */
+	public void skip() throws IOException {
+		peekHeader();
+
+		long remainingBodyLength = bodyLengths.get(nextIndex);
+
+		while (remainingBodyLength > 0) {
+			long skippedBytes = dataIn.skip(remainingBodyLength);
+
+			if (skippedBytes <= 0) {
+				if (dataIn.read() < 0) {
+					throw new EOFException("Invalid database file: Unexpected end of file while skipping database version.");
+				}
+
+				skippedBytes = 1;
+			}
+
+			remainingBodyLength -= skippedBytes;
+		}
+
+		nextIndex++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (readToEndOnClose) {
+				IOUtils.skip(dataIn, Long.MAX_VALUE);
+			}
+		}
+		finally {
+			dataIn.close();
+		}
+	}
+
+	private void readHeaderBlock() throws IOException {
+		byte[] magic = new byte[DatabaseBinarySerializer.MAGIC.length];
+		dataIn.readFully(magic);
+
+		if (!Arrays.equals(magic, DatabaseBinarySerializer.MAGIC)) {
+			throw new IOException("Invalid database file: Not in binary database format.");
+		}
+
+		int formatVersion = dataIn.readUnsignedByte();
+
+		if (formatVersion != DatabaseBinarySerializer.FORMAT_VERSION) {
+			throw new IOException("Invalid database file: Unsupported binary database format version " + formatVersion + ".");
+		}
+
+		int databaseVersionCount = readVarInt(dataIn);
+
+		for (int i = 0; i < databaseVersionCount; i++) {
+			headers.add(readHeader());
+			bodyLengths.add(readVarLong(dataIn));
+		}
+	}
+
+	private DatabaseVersionHeader readHeader() throws IOException {
+		DatabaseVersionHeader header = new DatabaseVersionHeader();
+
+		header.setDate(new Date(dataIn.readLong()));
+		header.setClient(readString(dataIn));
+
+		VectorClock vectorClock = new VectorClock();
+		int vectorClockSize = readVarInt(dataIn);
+
+		for (int i = 0; i < vectorClockSize; i++) {
+			String clientName = readString(dataIn);
+			long clientValue = readVarLong(dataIn);
+
+			vectorClock.setClock(clientName, clientValue);
+		}
+
+		header.setVectorClock(vectorClock);
+		return header;
+	}
+
+	/**
+	 * Reads the body of a single database version, resolving the checksum and folder
+	 * references against the dictionaries at the start of the body.
+	 */
+	private static class BodyReader {
+		private DataInputStream dataIn;
+		private DatabaseVersion databaseVersion;
+
+		private byte[][] checksums;
+		private String[] folders;
+
+		public BodyReader(DataInputStream dataIn) {
+			this.dataIn = dataIn;
+			this.databaseVersion = new DatabaseVersion();
+		}
+
+		public DatabaseVersion read() throws IOException {
+			readChecksumDictionary();
+			readFolderDictionary();
+
+			readChunks();
+			readMultiChunks();
+			readFileContents();
+			readFileHistories();
+
+			return databaseVersion;
+		}
+
+		private void readChecksumDictionary() throws IOException {
+			checksums = new byte[readVarInt(dataIn)][];
+
+			for (int i = 0; i < checksums.length; i++) {
+				checksums[i] = readBytes(dataIn);
+			}
+		}
+
+		private void readFolderDictionary() throws IOException {
+			folders = new String[readVarInt(dataIn)];
+
+			for (int i = 0; i < folders.length; i++) {
+				String parentFolder = getFolder(readVarInt(dataIn), i);
+				String name = readString(dataIn);
+
+				folders[i] = (parentFolder != null) ? parentFolder + "/" + name : name;
+			}
+		}
+
+		private void readChunks() throws IOException {
+			int chunkCount = readVarInt(dataIn);
+
+			for (int i = 0; i < chunkCount; i++) {
+				ChunkChecksum chunkChecksum = new ChunkChecksum(getChecksum(readVarInt(dataIn)));
+				int chunkSize = readVarInt(dataIn);
+
+				databaseVersion.addChunk(new ChunkEntry(chunkChecksum, chunkSize));
+			}
+		}
+
+		private void readMultiChunks() throws IOException {
+			int multiChunkCount = readVarInt(dataIn);
+
+			for (int i = 0; i < multiChunkCount; i++) {
+				MultiChunkId multiChunkId = new MultiChunkId(readBytes(dataIn));
+				long size = readVarLong(dataIn);
+
+				MultiChunkEntry multiChunk = new MultiChunkEntry(multiChunkId, size);
+				int chunkRefCount = readVarInt(dataIn);
+
+				for (int j = 0; j < chunkRefCount; j++) {
+					multiChunk.addChunk(new ChunkChecksum(getChecksum(readVarInt(dataIn))));
+				}
+
+				databaseVersion.addMultiChunk(multiChunk);
+			}
+		}
+
+		private void readFileContents() throws IOException {
+			int fileContentCount = readVarInt(dataIn);
+
+			for (int i = 0; i < fileContentCount; i++) {
+				FileContent fileContent = new FileContent();
+
+				fileContent.setChecksum(new FileChecksum(getChecksum(readVarInt(dataIn))));
+				fileContent.setSize(readVarLong(dataIn));
+
+				int chunkRefCount = readVarInt(dataIn);
+
+				for (int j = 0; j < chunkRefCount; j++) {
+					fileContent.addChunk(new ChunkChecksum(getChecksum(readVarInt(dataIn))));
+				}
+
+				databaseVersion.addFileContent(fileContent);
+			}
+		}
+
+		private void readFileHistories() throws IOException {
+			int fileHistoryCount = readVarInt(dataIn);
+
+			for (int i = 0; i < fileHistoryCount; i++) {
+				PartialFileHistory fileHistory = new PartialFileHistory(new FileHistoryId(readBytes(dataIn)));
+				int fileVersionCount = readVarInt(dataIn);
+
+				for (int j = 0; j < fileVersionCount; j++) {
+					fileHistory.addFileVersion(readFileVersion());
+				}
+
+				// File history might be empty if file versions are ignored!
+				if (fileHistory.getFileVersions().size() > 0) {
+					databaseVersion.addFileHistory(fileHistory);
+				}
+			}
+		}
+
+		private FileVersion readFileVersion() throws IOException {
+			FileVersion fileVersion = new FileVersion();
+
+			fileVersion.setVersion(readVarLong(dataIn));
+			fileVersion.setType(getEnumValue(DatabaseBinarySerializer.FILE_TYPES, dataIn.readUnsignedByte()));
+			fileVersion.setStatus(getEnumValue(DatabaseBinarySerializer.FILE_STATUSES, dataIn.readUnsignedByte()));
+
+			String folder = getFolder(readVarInt(dataIn), folders.length);
+			String name = readString(dataIn);
+
+			fileVersion.setPath((folder != null) ? folder + "/" + name : name);
+			fileVersion.setSize(readVarLong(dataIn));
+			fileVersion.setLastModified(new Date(dataIn.readLong()));
+
+			int flags = dataIn.readUnsignedByte();
+
+			if ((flags & FLAG_UPDATED) != 0) {
+				fileVersion.setUpdated(new Date(dataIn.readLong()));
+			}
+
+			if ((flags & FLAG_CHECKSUM) != 0) {
+				fileVersion.setChecksum(new FileChecksum(getChecksum(readVarInt(dataIn))));
+			}
+
+			if ((flags & FLAG_LINK_TARGET) != 0) {
+				fileVersion.setLinkTarget(readString(dataIn));
+			}
+
+			if ((flags & FLAG_DOS_ATTRIBUTES) != 0) {
+				fileVersion.setDosAttributes(readString(dataIn));
+			}
+
+			if ((flags & FLAG_POSIX_PERMISSIONS) != 0) {
+				fileVersion.setPosixPermissions(readString(dataIn));
+			}
+
+			return fileVersion;
+		}
+
+		private byte[] getChecksum(int checksumRef) throws IOException {
+			if (checksumRef >= checksums.length) {
+				throw new IOException("Invalid database file: Checksum reference " + checksumRef + " out of range.");
+			}
+
+			return checksums[checksumRef];
+		}
+
+		/**
+		 * Resolves a folder reference (0 for no folder, index plus one otherwise). Only
+		 * folders with an index lower than the given limit may be referenced.
+		 */
+		private String getFolder(int folderRef, int limit) throws IOException {
+			if (folderRef == 0) {
+				return null;
+			}
+			else if (folderRef > limit) {
+				throw new IOException("Invalid database file: Folder reference " + folderRef + " out of range.");
+			}
+
+			return folders[folderRef - 1];
+		}
+
+		private static <T> T getEnumValue(T[] values, int index) throws IOException {
+			if (index >= values.length) {
+				throw new IOException("Invalid database file: Unknown value " + index + ".");
+			}
+
+			return values[index];
+		}
+	}
+
+	private static String readString(DataInputStream dataIn) throws IOException {
+		return new String(readBytes(dataIn), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBytes(DataInputStream dataIn) throws IOException {
+		byte[] bytes = new byte[readVarInt(dataIn)];
+		dataIn.readFully(bytes);
+
+		return bytes;
+	}
+
+	private static int readVarInt(DataInputStream dataIn) throws IOException {
+		long value = readVarLong(dataIn);
+
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Invalid database file: Value " + value + " out of range.");
+		}
+
+		return (int) value;
+	}
+
+	private static long readVarLong(DataInputStream dataIn) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = dataIn.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid database file: Variable-length integer too long.");
+	}
+}
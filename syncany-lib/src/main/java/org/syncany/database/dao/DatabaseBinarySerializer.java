@@ -0,0 +1,168 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.chunk.Transformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.util.sign.SignException;
+
+/**
+ * Serializes a list of {@link DatabaseVersion}s to a compact binary file format, using
+ * a {@link Transformer} to compress/encrypt the file before writing, and to
+ * decompress/decrypt it before reading. It offers the same <tt>save()</tt> and
+ * <tt>load()</tt> methods as the {@link DatabaseXmlSerializer}.
+ *
+ * <p>A binary database file starts with the magic bytes <tt>SYDB</tt> and a format version,
+ * followed by a header block, and the bodies of all database versions. The header block holds
+ * the header (time, client, vector clock) and the body length of each database version, so that
+ * reading the headers only or a certain range of database versions does not require parsing the
+ * bodies of the other database versions. All records are length-prefixed; integers are written as
+ * variable-length integers, strings as UTF-8. Within a body, checksums and folders are stored once
+ * in a dictionary and referenced by index.
+ *
+ * <p>The format used for writing is negotiated via the repository config; reading
+ * detects the format by the magic bytes, see {@link DatabaseSerializer}.
+ *
+ * @see DatabaseBinaryWriter
+ * @see DatabaseBinaryReader
+ */
+public class DatabaseBinarySerializer {
+	private static final Logger logger = Logger.getLogger(DatabaseBinarySerializer.class.getSimpleName());
+
+	public static final byte[] MAGIC = "SYDB".getBytes(StandardCharsets.US_ASCII);
+	public static final int FORMAT_VERSION = 1;
+
+	// Do not change the order of these arrays; the index is written to the file
+	static final FileType[] FILE_TYPES = new FileType[] { FileType.FILE, FileType.FOLDER, FileType.SYMLINK };
+	static final FileStatus[] FILE_STATUSES = new FileStatus[] { FileStatus.NEW, FileStatus.CHANGED, FileStatus.RENAMED, FileStatus.DELETED };
+
+	static final int FLAG_UPDATED = 0x01;
+	static final int FLAG_CHECKSUM = 0x02;
+	static final int FLAG_LINK_TARGET = 0x04;
+	static final int FLAG_DOS_ATTRIBUTES = 0x08;
+	static final int FLAG_POSIX_PERMISSIONS = 0x10;
+
+	private Transformer transformer;
+
+	public DatabaseBinarySerializer() {
+		this(null);
+	}
+
+	public DatabaseBinarySerializer(Transformer transformer) {
+		this.transformer = transformer;
+	}
+
+	public void save(List<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		save(databaseVersions.iterator(), destinationFile);
+	}
+
+	public void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		OutputStream out;
+
+		if (transformer == null) {
+			out = new FileOutputStream(destinationFile);
+		}
+		else {
+			out = transformer.createOutputStream(new FileOutputStream(destinationFile));
+		}
+
+		File tempBodiesFile = new File(destinationFile.getParentFile(), destinationFile.getName() + ".bodies");
+
+		try {
+			new DatabaseBinaryWriter(databaseVersions, out, tempBodiesFile).write();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public boolean load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType)
+			throws IOException {
+
+		InputStream is;
+
+		if (transformer == null) {
+			is = new FileInputStream(databaseFile);
+		}
+		else {
+			is = transformer.createInputStream(new FileInputStream(databaseFile));
+		}
+
+		try {
+			logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+			load(db, is, fromVersion, toVersion, readType);
+
+			return true;
+		}
+		catch (SignException e) {
+			logger.log(Level.INFO, "- Wrongly signed database " + databaseFile.getName() + " ignored.");
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the database versions in the given range from the given (already decrypted)
+	 * input stream. Bodies of database versions outside the range, or all bodies if only
+	 * headers are read, are skipped without being parsed. If a transformer is set, the
+	 * stream is read to its end, so that its integrity can be verified. The stream is closed.
+	 */
+	void load(MemoryDatabase db, InputStream is, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType) throws IOException {
+		try (DatabaseBinaryReader reader = new DatabaseBinaryReader(is, transformer != null)) {
+			while (reader.hasNext()) {
+				DatabaseVersionHeader header = reader.peekHeader();
+
+				if (!DatabaseXmlParseHandler.vectorClockInRange(header.getVectorClock(), fromVersion, toVersion)) {
+					reader.skip();
+				}
+				else if (readType == DatabaseReadType.HEADER_ONLY) {
+					DatabaseVersion databaseVersion = new DatabaseVersion();
+					databaseVersion.setHeader(header);
+
+					reader.skip();
+					db.addDatabaseVersion(databaseVersion);
+
+					logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
+				}
+				else {
+					DatabaseVersion databaseVersion = reader.read();
+					db.addDatabaseVersion(databaseVersion);
+
+					logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,416 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_CHECKSUM;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_DOS_ATTRIBUTES;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_LINK_TARGET;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_POSIX_PERMISSIONS;
+import static org.syncany.database.dao.DatabaseBinarySerializer.FLAG_UPDATED;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.ObjectId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.VectorClock;
+
+/**
+ * This class writes the given {@link DatabaseVersion}s in the binary database format
+ * (see {@link DatabaseBinarySerializer}) to an {@link OutputStream}. Database versions
+ * are written sequentially, i.e. according to their position in the given iterator.
+ *
+ * <p>Because the header block at the front of the file contains the length of each
+ * database version body, the bodies are first written to a temporary file, and copied
+ * to the output stream after the header block has been written. That way, only one
+ * database version has to be held in memory at a time.
+ *
+ * @see DatabaseBinarySerializer
+ * @see DatabaseBinaryReader
+ */
+public class DatabaseBinaryWriter {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryWriter.class.getSimpleName());
+
+	private Iterator<DatabaseVersion> databaseVersions;
+	private OutputStream out;
+	private File tempBodiesFile;
+
+	public DatabaseBinaryWriter(Iterator<DatabaseVersion> databaseVersions, OutputStream out, File tempBodiesFile) {
+		this.databaseVersions = databaseVersions;
+		this.out = out;
+		this.tempBodiesFile = tempBodiesFile;
+	}
+
+	public void write() throws IOException {
+		List<DatabaseVersion> headers = new ArrayList<DatabaseVersion>();
+		List<Long> bodyLengths = new ArrayList<Long>();
+
+		try {
+			// Write bodies to temp file
+			try (DataOutputStream bodiesOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempBodiesFile)))) {
+				while (databaseVersions.hasNext()) {
+					DatabaseVersion databaseVersion = databaseVersions.next();
+					validateHeader(databaseVersion);
+
+					int bodyStartOffset = bodiesOut.size();
+					new BodyWriter(bodiesOut, databaseVersion).write();
+
+					headers.add(headerOnly(databaseVersion));
+					bodyLengths.add(getBodyLength(bodiesOut, bodyStartOffset));
+				}
+			}
+
+			// Write header block, then copy bodies
+			DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+
+			dataOut.write(DatabaseBinarySerializer.MAGIC);
+			dataOut.writeByte(DatabaseBinarySerializer.FORMAT_VERSION);
+
+			writeVarLong(dataOut, headers.size());
+
+			for (int i = 0; i < headers.size(); i++) {
+				writeHeader(dataOut, headers.get(i));
+				writeVarLong(dataOut, bodyLengths.get(i));
+			}
+
+			try (InputStream bodiesIn = new BufferedInputStream(new FileInputStream(tempBodiesFile))) {
+				IOUtils.copyLarge(bodiesIn, dataOut);
+			}
+
+			dataOut.flush();
+			dataOut.close();
+
+			logger.log(Level.FINE, "Wrote {0} database version(s) in binary format.", headers.size());
+		}
+		finally {
+			tempBodiesFile.delete();
+		}
+	}
+
+	private void validateHeader(DatabaseVersion databaseVersion) throws IOException {
+		if (databaseVersion.getTimestamp() == null || databaseVersion.getClient() == null
+				|| databaseVersion.getVectorClock() == null || databaseVersion.getVectorClock().isEmpty()) {
+
+			logger.log(Level.SEVERE, "Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+			throw new IOException("Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+		}
+	}
+
+	private DatabaseVersion headerOnly(DatabaseVersion databaseVersion) {
+		DatabaseVersion headerOnlyDatabaseVersion = new DatabaseVersion();
+		headerOnlyDatabaseVersion.setHeader(databaseVersion.getHeader());
+
+		return headerOnlyDatabaseVersion;
+	}
+
+	/**
+	 * Returns the number of bytes written since the given offset. Note that {@link DataOutputStream#size()}
+	 * overflows after 2 GB, so the length is calculated modulo 2^32. A single body larger than 4 GB is
+	 * not supported.
+	 */
+	private long getBodyLength(DataOutputStream bodiesOut, int bodyStartOffset) {
+		return (bodiesOut.size() - bodyStartOffset) & 0xFFFFFFFFL;
+	}
+
+	private void writeHeader(DataOutputStream dataOut, DatabaseVersion databaseVersion) throws IOException {
+		dataOut.writeLong(databaseVersion.getTimestamp().getTime());
+		writeString(dataOut, databaseVersion.getClient());
+
+		VectorClock vectorClock = databaseVersion.getVectorClock();
+		writeVarLong(dataOut, vectorClock.size());
+
+		for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
+			writeString(dataOut, vectorClockEntry.getKey());
+			writeVarLong(dataOut, vectorClockEntry.getValue());
+		}
+	}
+
+	/**
+	 * Writes the body of a single database version. Checksums and folders are written to
+	 * dictionaries at the start of the body, and are referenced by their index afterwards.
+	 */
+	private static class BodyWriter {
+		private DataOutputStream dataOut;
+		private DatabaseVersion databaseVersion;
+
+		private Map<ObjectId, Integer> checksumDictionary;
+		private Map<String, Integer> folderDictionary;
+		private List<String> folders;
+
+		public BodyWriter(DataOutputStream dataOut, DatabaseVersion databaseVersion) {
+			this.dataOut = dataOut;
+			this.databaseVersion = databaseVersion;
+
+			this.checksumDictionary = new HashMap<ObjectId, Integer>();
+			this.folderDictionary = new HashMap<String, Integer>();
+			this.folders = new ArrayList<String>();
+		}
+
+		public void write() throws IOException {
+			buildDictionaries();
+
+			writeChecksumDictionary();
+			writeFolderDictionary();
+
+			writeChunks(databaseVersion.getChunks());
+			writeMultiChunks(databaseVersion.getMultiChunks());
+			writeFileContents(databaseVersion.getFileContents());
+			writeFileHistories(databaseVersion.getFileHistories());
+		}
+
+		private void buildDictionaries() {
+			for (ChunkEntry chunk : databaseVersion.getChunks()) {
+				addChecksum(chunk.getChecksum());
+			}
+
+			for (MultiChunkEntry multiChunk : databaseVersion.getMultiChunks()) {
+				for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
+					addChecksum(chunkChecksum);
+				}
+			}
+
+			for (FileContent fileContent : databaseVersion.getFileContents()) {
+				addChecksum(fileContent.getChecksum());
+
+				for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
+					addChecksum(chunkChecksum);
+				}
+			}
+
+			for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
+				for (FileVersion fileVersion : fileHistory.getFileVersions().values()) {
+					if (fileVersion.getChecksum() != null) {
+						addChecksum(fileVersion.getChecksum());
+					}
+
+					if (fileVersion.getPath() != null) {
+						addFolder(getFolder(fileVersion.getPath()));
+					}
+				}
+			}
+		}
+
+		private void addChecksum(ObjectId checksum) {
+			if (!checksumDictionary.containsKey(checksum)) {
+				checksumDictionary.put(checksum, checksumDictionary.size());
+			}
+		}
+
+		/**
+		 * Adds the given folder and all of its parents to the folder dictionary. Parents are
+		 * always added before their children, so that a folder only references folders that
+		 * have been read before it.
+		 */
+		private void addFolder(String folder) {
+			if (folder != null && !folderDictionary.containsKey(folder)) {
+				addFolder(getFolder(folder));
+
+				folderDictionary.put(folder, folders.size());
+				folders.add(folder);
+			}
+		}
+
+		private void writeChecksumDictionary() throws IOException {
+			ObjectId[] checksums = new ObjectId[checksumDictionary.size()];
+
+			for (Map.Entry<ObjectId, Integer> checksumEntry : checksumDictionary.entrySet()) {
+				checksums[checksumEntry.getValue()] = checksumEntry.getKey();
+			}
+
+			writeVarLong(dataOut, checksums.length);
+
+			for (ObjectId checksum : checksums) {
+				writeBytes(dataOut, checksum.getBytes());
+			}
+		}
+
+		private void writeFolderDictionary() throws IOException {
+			writeVarLong(dataOut, folders.size());
+
+			for (String folder : folders) {
+				writeVarLong(dataOut, getFolderRef(getFolder(folder)));
+				writeString(dataOut, getName(folder));
+			}
+		}
+
+		private void writeChunks(Collection<ChunkEntry> chunks) throws IOException {
+			writeVarLong(dataOut, chunks.size());
+
+			for (ChunkEntry chunk : chunks) {
+				writeVarLong(dataOut, checksumDictionary.get(chunk.getChecksum()));
+				writeVarLong(dataOut, chunk.getSize());
+			}
+		}
+
+		private void writeMultiChunks(Collection<MultiChunkEntry> multiChunks) throws IOException {
+			writeVarLong(dataOut, multiChunks.size());
+
+			for (MultiChunkEntry multiChunk : multiChunks) {
+				writeBytes(dataOut, multiChunk.getId().getBytes());
+				writeVarLong(dataOut, multiChunk.getSize());
+				writeChecksumRefs(multiChunk.getChunks());
+			}
+		}
+
+		private void writeFileContents(Collection<FileContent> fileContents) throws IOException {
+			writeVarLong(dataOut, fileContents.size());
+
+			for (FileContent fileContent : fileContents) {
+				writeVarLong(dataOut, checksumDictionary.get(fileContent.getChecksum()));
+				writeVarLong(dataOut, fileContent.getSize());
+				writeChecksumRefs(fileContent.getChunks());
+			}
+		}
+
+		private void writeChecksumRefs(Collection<ChunkChecksum> chunkChecksums) throws IOException {
+			writeVarLong(dataOut, chunkChecksums.size());
+
+			for (ChunkChecksum chunkChecksum : chunkChecksums) {
+				writeVarLong(dataOut, checksumDictionary.get(chunkChecksum));
+			}
+		}
+
+		private void writeFileHistories(Collection<PartialFileHistory> fileHistories) throws IOException {
+			writeVarLong(dataOut, fileHistories.size());
+
+			for (PartialFileHistory fileHistory : fileHistories) {
+				Collection<FileVersion> fileVersions = fileHistory.getFileVersions().values();
+
+				writeBytes(dataOut, fileHistory.getFileHistoryId().getBytes());
+				writeVarLong(dataOut, fileVersions.size());
+
+				for (FileVersion fileVersion : fileVersions) {
+					writeFileVersion(fileVersion);
+				}
+			}
+		}
+
+		private void writeFileVersion(FileVersion fileVersion) throws IOException {
+			if (fileVersion.getVersion() == null || fileVersion.getType() == null || fileVersion.getPath() == null
+					|| fileVersion.getStatus() == null || fileVersion.getSize() == null || fileVersion.getLastModified() == null) {
+
+				throw new IOException("Unable to write file version, because one or many mandatory fields are null (version, type, path, name, status, size, last modified): " + fileVersion);
+			}
+
+			if (fileVersion.getType() == FileType.SYMLINK && fileVersion.getLinkTarget() == null) {
+				throw new IOException("Unable to write file version: All symlinks must have a target.");
+			}
+
+			writeVarLong(dataOut, fileVersion.getVersion());
+			dataOut.writeByte(Arrays.asList(DatabaseBinarySerializer.FILE_TYPES).indexOf(fileVersion.getType()));
+			dataOut.writeByte(Arrays.asList(DatabaseBinarySerializer.FILE_STATUSES).indexOf(fileVersion.getStatus()));
+			writeVarLong(dataOut, getFolderRef(getFolder(fileVersion.getPath())));
+			writeString(dataOut, getName(fileVersion.getPath()));
+			writeVarLong(dataOut, fileVersion.getSize());
+			dataOut.writeLong(fileVersion.getLastModified().getTime());
+
+			int flags = 0;
+			flags |= (fileVersion.getUpdated() != null) ? FLAG_UPDATED : 0;
+			flags |= (fileVersion.getChecksum() != null) ? FLAG_CHECKSUM : 0;
+			flags |= (fileVersion.getLinkTarget() != null) ? FLAG_LINK_TARGET : 0;
+			flags |= (fileVersion.getDosAttributes() != null) ? FLAG_DOS_ATTRIBUTES : 0;
+			flags |= (fileVersion.getPosixPermissions() != null) ? FLAG_POSIX_PERMISSIONS : 0;
+
+			dataOut.writeByte(flags);
+
+			if (fileVersion.getUpdated() != null) {
+				dataOut.writeLong(fileVersion.getUpdated().getTime());
+			}
+
+			if (fileVersion.getChecksum() != null) {
+				writeVarLong(dataOut, checksumDictionary.get(fileVersion.getChecksum()));
+			}
+
+			if (fileVersion.getLinkTarget() != null) {
+				writeString(dataOut, fileVersion.getLinkTarget());
+			}
+
+			if (fileVersion.getDosAttributes() != null) {
+				writeString(dataOut, fileVersion.getDosAttributes());
+			}
+
+			if (fileVersion.getPosixPermissions() != null) {
+				writeString(dataOut, fileVersion.getPosixPermissions());
+			}
+		}
+
+		/**
+		 * Returns the reference to the given folder: 0 if the path has no folder
+		 * (i.e. the folder is <tt>null</tt>), and the folder's index plus one otherwise.
+		 */
+		private int getFolderRef(String folder) {
+			return (folder == null) ? 0 : folderDictionary.get(folder) + 1;
+		}
+
+		private static String getFolder(String path) {
+			int lastSlashIndex = path.lastIndexOf('/');
+			return (lastSlashIndex >= 0) ? path.substring(0, lastSlashIndex) : null;
+		}
+
+		private static String getName(String path) {
+			return path.substring(path.lastIndexOf('/') + 1);
+		}
+	}
+
+	private static void writeString(DataOutputStream dataOut, String str) throws IOException {
+		writeBytes(dataOut, str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeBytes(DataOutputStream dataOut, byte[] bytes) throws IOException {
+		writeVarLong(dataOut, bytes.length);
+		dataOut.write(bytes);
+	}
+
+	/**
+	 * Writes the given value as variable-length integer (7 bits per byte,
+	 * least significant group first, high bit set if more bytes follow).
+	 */
+	private static void writeVarLong(DataOutputStream dataOut, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			dataOut.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		dataOut.writeByte((int) value);
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.chunk.Transformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.util.sign.SignException;
+
+/**
+ * Serializes a list of {@link DatabaseVersion}s in the database format configured
+ * for the repository, and reads database files in any of the supported formats.
+ *
+ * <p>Writing uses either the {@link DatabaseXmlSerializer} or the {@link DatabaseBinarySerializer},
+ * depending on the given {@link DatabaseFormat}. Reading detects the format of each file by its
+ * first bytes, so that repositories can contain files in both formats, e.g. written by older
+ * clients (which only write XML) or before the format was changed.
+ */
+public class DatabaseSerializer {
+	private static final Logger logger = Logger.getLogger(DatabaseSerializer.class.getSimpleName());
+
+	public enum DatabaseFormat {
+		XML, BINARY
+	}
+
+	private Transformer transformer;
+	private DatabaseFormat writeFormat;
+
+	private DatabaseXmlSerializer xmlSerializer;
+	private DatabaseBinarySerializer binarySerializer;
+
+	public DatabaseSerializer(Transformer transformer, DatabaseFormat writeFormat) {
+		this.transformer = transformer;
+		this.writeFormat = writeFormat;
+
+		this.xmlSerializer = new DatabaseXmlSerializer(transformer);
+		this.binarySerializer = new DatabaseBinarySerializer(transformer);
+	}
+
+	public void save(List<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		save(databaseVersions.iterator(), destinationFile);
+	}
+
+	public void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		if (writeFormat == DatabaseFormat.BINARY) {
+			binarySerializer.save(databaseVersions, destinationFile);
+		}
+		else {
+			xmlSerializer.save(databaseVersions, destinationFile);
+		}
+	}
+
+	public boolean load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType)
+			throws IOException {
+
+		InputStream is;
+
+		if (transformer == null) {
+			is = new BufferedInputStream(new FileInputStream(databaseFile));
+		}
+		else {
+			is = new BufferedInputStream(transformer.createInputStream(new FileInputStream(databaseFile)));
+		}
+
+		try {
+			DatabaseFormat format = detectFormat(is);
+			logger.log(Level.INFO, "- Loading database ({0}, {1}) from file {2} ...", new Object[] { readType, format, databaseFile });
+
+			if (format == DatabaseFormat.BINARY) {
+				binarySerializer.load(db, is, fromVersion, toVersion, readType);
+			}
+			else {
+				xmlSerializer.load(db, is, fromVersion, toVersion, readType);
+			}
+
+			return true;
+		}
+		catch (SignException e) {
+			logger.log(Level.INFO, "- Wrongly signed database " + databaseFile.getName() + " ignored.");
+			return false;
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Decrypts the given database file to the given destination file using the transformer,
+	 * and thereby verifies its integrity. The decrypted file can then be read (possibly many
+	 * times) using a serializer without transformer.
+	 *
+	 * @return <tt>true</tt> if the file was decrypted, <tt>false</tt> if it was wrongly signed
+	 */
+	public boolean decrypt(File databaseFile, File decryptedDatabaseFile) throws IOException {
+		InputStream is = (transformer == null) ? new FileInputStream(databaseFile) : transformer.createInputStream(new FileInputStream(databaseFile));
+
+		try (OutputStream os = new FileOutputStream(decryptedDatabaseFile)) {
+			logger.log(Level.INFO, "- Decrypting database file {0} to {1} ...", new Object[] { databaseFile, decryptedDatabaseFile });
+			IOUtils.copy(is, os);
+
+			return true;
+		}
+		catch (SignException e) {
+			logger.log(Level.INFO, "- Wrongly signed database " + databaseFile.getName() + " ignored.");
+			decryptedDatabaseFile.delete();
+
+			return false;
+		}
+		catch (IOException e) {
+			decryptedDatabaseFile.delete();
+			throw e;
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	private DatabaseFormat detectFormat(InputStream is) throws IOException {
+		byte[] magic = new byte[DatabaseBinarySerializer.MAGIC.length];
+		int magicLength = 0;
+
+		is.mark(magic.length);
+
+		while (magicLength < magic.length) {
+			int read = is.read(magic, magicLength, magic.length - magicLength);
+
+			if (read < 0) {
+				break;
+			}
+
+			magicLength += read;
+		}
+
+		is.reset();
+
+		return (Arrays.equals(magic, DatabaseBinarySerializer.MAGIC)) ? DatabaseFormat.BINARY : DatabaseFormat.XML;
+	}
+}
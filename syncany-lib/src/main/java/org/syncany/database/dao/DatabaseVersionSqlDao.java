@@ -104,13 +104,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 
 	public long writeDatabaseVersion(DatabaseVersion databaseVersion) {
 		try {
-			// Insert & commit database version
-			long databaseVersionId = writeDatabaseVersion(connection, databaseVersion);
-			
-			// Commit & clear local caches
-			clearCaches();
-
-			return databaseVersionId;
+			// Insert database version (chunks are added to the chunk index incrementally)
+			return writeDatabaseVersion(connection, databaseVersion);
 		}
 		catch (Exception e) {
 			logger.log(Level.SEVERE, "SQL Error: ", e);
@@ -197,17 +192,17 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 	}
 
 	private void writeVectorClock(Connection connection, long databaseVersionId, VectorClock vectorClock) throws SQLException {
-		try (PreparedStatement preparedStatement = getStatement(connection, "databaseversion.insert.all.writeVectorClock.sql")) {
-			for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
-				preparedStatement.setLong(1, databaseVersionId);
-				preparedStatement.setString(2, vectorClockEntry.getKey());
-				preparedStatement.setLong(3, vectorClockEntry.getValue());
-
-				preparedStatement.addBatch();
-			}
+		PreparedStatement preparedStatement = getCachedStatement(connection, "databaseversion.insert.all.writeVectorClock.sql");
+		
+		for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
+			preparedStatement.setLong(1, databaseVersionId);
+			preparedStatement.setString(2, vectorClockEntry.getKey());
+			preparedStatement.setLong(3, vectorClockEntry.getValue());
 
-			preparedStatement.executeBatch();
+			addBatch(preparedStatement);
 		}
+
+		executeBatch(preparedStatement);
 	}
 
 	/**
@@ -236,9 +231,9 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			removeDirtyVectorClocks();
 			removeDirtyDatabaseVersionsInt();
 
-			// Commit & clear local caches
+			// Commit & persist chunk index
 			connection.commit();
-			clearCaches();
+			chunkDao.commitChunkIndex();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException("Unable to remove dirty database versions.", e);
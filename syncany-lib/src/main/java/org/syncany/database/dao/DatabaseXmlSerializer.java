@@ -110,7 +110,22 @@ public class DatabaseXmlSerializer {
 
 		try {
 			logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+			load(db, is, fromVersion, toVersion, readType);
 
+			return true;
+		}
+		catch (SignException e) {
+			logger.log(Level.INFO, "- Wrongly signed database " + databaseFile.getName() + " ignored.");
+			return false;
+		}
+	}
+
+	/**
+	 * Parses the database versions in the given range from the given (already
+	 * decrypted) input stream, and adds them to the given memory database.
+	 */
+	void load(MemoryDatabase db, InputStream is, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType) throws IOException {
+		try {
 			SAXParserFactory factory = SAXParserFactory.newInstance();
 			SAXParser saxParser = factory.newSAXParser();
 
@@ -121,10 +136,8 @@ public class DatabaseXmlSerializer {
 				db.addDatabaseVersion(databaseVersion);
 				logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
 			}
-			return true;
-		} catch (SignException e) {
-			logger.log(Level.INFO, "- Wrongly signed database " + databaseFile.getName() + " ignored.");
-			return false;
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
@@ -51,8 +51,8 @@ public class FileContentSqlDao extends AbstractSqlDao {
 	 * table ({@link ChunkChecksum}).
 	 * 
 	 * <p>To do the latter (write chunk references), this method calls
-	 * {@link #writeFileContentChunkRefs(Connection, FileContent) writeFileContentChunkRefs()} for every 
-	 * {@link FileContent}. 
+	 * {@link #writeFileContentChunkRefs(Connection, Collection) writeFileContentChunkRefs()} after
+	 * all {@link FileContent}s have been written. Both tables are written in batches.
 	 * 
 	 * <p><b>Note:</b> This method executes, but does not commit the queries.
 	 * 
@@ -62,37 +62,39 @@ public class FileContentSqlDao extends AbstractSqlDao {
 	 * @throws SQLException If the SQL statement fails
 	 */
 	public void writeFileContents(Connection connection, long databaseVersionId, Collection<FileContent> fileContents) throws SQLException {
-		for (FileContent fileContent : fileContents) {
-			PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContents.sql");
+		PreparedStatement preparedStatement = getCachedStatement(connection, "filecontent.insert.all.writeFileContents.sql");
 
+		for (FileContent fileContent : fileContents) {
 			preparedStatement.setString(1, fileContent.getChecksum().toString());
 			preparedStatement.setLong(2, databaseVersionId);
 			preparedStatement.setLong(3, fileContent.getSize());
 			
-			preparedStatement.executeUpdate();
-			preparedStatement.close();	
-			
-			// Write chunk references
-			writeFileContentChunkRefs(connection, fileContent);			
+			addBatch(preparedStatement);
 		}
+		
+		// Write chunk references (only after all file contents are written; foreign key!)
+		executeBatch(preparedStatement);
+		writeFileContentChunkRefs(connection, fileContents);			
 	}
 	
-	private void writeFileContentChunkRefs(Connection connection, FileContent fileContent) throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContentChunkRefs.sql");
-		int order = 0;
+	private void writeFileContentChunkRefs(Connection connection, Collection<FileContent> fileContents) throws SQLException {
+		PreparedStatement preparedStatement = getCachedStatement(connection, "filecontent.insert.all.writeFileContentChunkRefs.sql");
 		
-		for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
-			preparedStatement.setInt(3, order);
+		for (FileContent fileContent : fileContents) {
+			int order = 0;
 
-			preparedStatement.addBatch();
-			
-			order++;				
+			for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
+				preparedStatement.setString(1, fileContent.getChecksum().toString());
+				preparedStatement.setString(2, chunkChecksum.toString());
+				preparedStatement.setInt(3, order);
+	
+				addBatch(preparedStatement);
+				
+				order++;				
+			}
 		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		executeBatch(preparedStatement);
 	}
 
 	/**
@@ -60,7 +60,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * Writes a list of {@link PartialFileHistory}s to the database table <i>filehistory</i> using <tt>INSERT</tt>s
 	 * and the given connection. In addition, this method also writes the corresponding {@link FileVersion}s of 
 	 * each file history to the database using 
-	 * {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, Collection) FileVersionSqlDao#writeFileVersions}.
+	 * {@link FileVersionSqlDao#writeFileVersions(Connection, long, Collection) FileVersionSqlDao#writeFileVersions}.
 	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 * 
@@ -70,28 +70,22 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * @throws SQLException If the SQL statement fails
 	 */
 	public void writeFileHistories(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
-		for (PartialFileHistory fileHistory : fileHistories) {
-			PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
+		PreparedStatement preparedStatement = getCachedStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
 
+		for (PartialFileHistory fileHistory : fileHistories) {
 			preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
 			preparedStatement.setLong(2, databaseVersionId);
 
-			int affectedRows = preparedStatement.executeUpdate();
-			
-			if (affectedRows == 0) {
-				throw new SQLException("Cannot add database version header. Affected rows is zero.");
-			}
-
-			preparedStatement.close();
-			
-			fileVersionDao.writeFileVersions(connection, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions().values());
+			addBatch(preparedStatement);
 		}
+		
+		// File versions can only be written once all file histories are written (foreign key!)
+		executeBatch(preparedStatement);
+		fileVersionDao.writeFileVersions(connection, databaseVersionId, fileHistories);
 	}
 
 	public void writePurgeFileHistories(Connection connection, long purgeDatabaseVersionId, Collection<PartialFileHistory> purgeFileHistories) throws SQLException {
-		for (PartialFileHistory purgeFileHistory : purgeFileHistories) {
-			fileVersionDao.writePurgeFileVersions(connection, purgeFileHistory.getFileHistoryId(), purgeDatabaseVersionId, purgeFileHistory.getFileVersions().values());
-		}
+		fileVersionDao.writePurgeFileVersions(connection, purgeDatabaseVersionId, purgeFileHistories);
 	}
 	
 	public void removeDirtyFileHistories() throws SQLException {
@@ -17,6 +17,10 @@
  */
 package org.syncany.database.dao;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -34,7 +38,9 @@ import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
@@ -46,67 +52,80 @@ import org.syncany.util.StringUtil;
  * The file version DAO queries and modifies the <i>fileversion</i> in
  * the SQL database. This table corresponds to the Java object {@link FileVersion}.
  * 
+ * <p>If a file tree index file is given, {@link #getCurrentFileTreeIndex()} answers queries 
+ * for the current file tree from a {@link FileTreeIndex} in that file. The index is rebuilt from
+ * the database whenever its stamp does not match the database anymore.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class FileVersionSqlDao extends AbstractSqlDao {
 	protected static final Logger logger = Logger.getLogger(FileVersionSqlDao.class.getSimpleName());
 	
+	private File fileTreeIndexFile;
+	
 	public FileVersionSqlDao(Connection connection) {
+		this(connection, null);
+	}
+	
+	public FileVersionSqlDao(Connection connection, File fileTreeIndexFile) {
 		super(connection);
+		this.fileTreeIndexFile = fileTreeIndexFile;
 	}
 	
 	/**
-	 * Writes a list of {@link FileVersion} to the database table <i>fileversion</i> using <tt>INSERT</tt>s
-	 * and the given connection.
+	 * Writes the {@link FileVersion}s of the given {@link PartialFileHistory}s to the database table 
+	 * <i>fileversion</i> using batched <tt>INSERT</tt>s and the given connection. The file histories
+	 * themselves must have been written before.
 	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 * 
 	 * @param connection The connection used to execute the statements
-	 * @param fileHistoryId References the {@link PartialFileHistory} to which the list of file versions belongs 
-	 * @param databaseVersionId References the {@link PartialFileHistory} to which the list of file versions belongs
-	 * @param fileVersions List of {@link FileVersion}s to be written to the database
+	 * @param databaseVersionId References the database version to which the file versions belong
+	 * @param fileHistories List of {@link PartialFileHistory}s whose file versions are to be written to the database
 	 * @throws SQLException If the SQL statement fails
 	 */
-	public void writeFileVersions(Connection connection, FileHistoryId fileHistoryId, long databaseVersionId, Collection<FileVersion> fileVersions) throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql");
-
-		for (FileVersion fileVersion : fileVersions) {
-			String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;					  		
+	public void writeFileVersions(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
+		PreparedStatement preparedStatement = getCachedStatement(connection, "fileversion.insert.writeFileVersions.sql");
 
-			preparedStatement.setString(1, fileHistoryId.toString());
-			preparedStatement.setInt(2, Integer.parseInt(""+fileVersion.getVersion()));
-			preparedStatement.setLong(3, databaseVersionId);
-			preparedStatement.setString(4, fileVersion.getPath());
-			preparedStatement.setString(5, fileVersion.getType().toString());
-			preparedStatement.setString(6, fileVersion.getStatus().toString());
-			preparedStatement.setLong(7, fileVersion.getSize());
-			preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
-			preparedStatement.setString(9, fileVersion.getLinkTarget());
-			preparedStatement.setString(10, fileContentChecksumStr);
-			preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
-			preparedStatement.setString(12, fileVersion.getPosixPermissions());
-			preparedStatement.setString(13, fileVersion.getDosAttributes());
-			
-			preparedStatement.addBatch();
-		}				
+		for (PartialFileHistory fileHistory : fileHistories) {
+			for (FileVersion fileVersion : fileHistory.getFileVersions().values()) {
+				String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;					  		
+	
+				preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
+				preparedStatement.setInt(2, Integer.parseInt(""+fileVersion.getVersion()));
+				preparedStatement.setLong(3, databaseVersionId);
+				preparedStatement.setString(4, fileVersion.getPath());
+				preparedStatement.setString(5, fileVersion.getType().toString());
+				preparedStatement.setString(6, fileVersion.getStatus().toString());
+				preparedStatement.setLong(7, fileVersion.getSize());
+				preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
+				preparedStatement.setString(9, fileVersion.getLinkTarget());
+				preparedStatement.setString(10, fileContentChecksumStr);
+				preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
+				preparedStatement.setString(12, fileVersion.getPosixPermissions());
+				preparedStatement.setString(13, fileVersion.getDosAttributes());
+				
+				addBatch(preparedStatement);
+			}
+		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		executeBatch(preparedStatement);
 	}
 
-	public void writePurgeFileVersions(Connection connection, FileHistoryId fileHistoryId, long databaseVersionId, Collection<FileVersion> purgeFileVersions) throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writePurgeFileVersions.sql");
+	public void writePurgeFileVersions(Connection connection, long databaseVersionId, Collection<PartialFileHistory> purgeFileHistories) throws SQLException {
+		PreparedStatement preparedStatement = getCachedStatement(connection, "fileversion.insert.writePurgeFileVersions.sql");
 
-		for (FileVersion purgeFileVersion : purgeFileVersions) {
-			preparedStatement.setString(1, fileHistoryId.toString());
-			preparedStatement.setInt(2, Integer.parseInt(""+purgeFileVersion.getVersion()));
-			preparedStatement.setLong(3, databaseVersionId);
-			
-			preparedStatement.addBatch();
-		}				
+		for (PartialFileHistory purgeFileHistory : purgeFileHistories) {
+			for (FileVersion purgeFileVersion : purgeFileHistory.getFileVersions().values()) {
+				preparedStatement.setString(1, purgeFileHistory.getFileHistoryId().toString());
+				preparedStatement.setInt(2, Integer.parseInt(""+purgeFileVersion.getVersion()));
+				preparedStatement.setLong(3, databaseVersionId);
+				
+				addBatch(preparedStatement);
+			}
+		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		executeBatch(preparedStatement);
 	}
 
 	/**
@@ -167,6 +186,74 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	}
 	
 
+	/**
+	 * Returns the current file tree like {@link #getCurrentFileTree()}, but reads it from the 
+	 * {@link FileTreeIndex} if possible. If the index does not exist or is outdated, it is rebuilt 
+	 * from the database. If the index cannot be written or read, the file tree is returned 
+	 * as returned by {@link #getCurrentFileTree()}.
+	 * 
+	 * <p>File versions read from the index only contain the properties needed to compare them 
+	 * to local files (see {@link FileTreeIndex}). The returned map must not be modified.
+	 */
+	public Map<String, FileVersion> getCurrentFileTreeIndex() {
+		if (fileTreeIndexFile == null) {
+			return getCurrentFileTree();
+		}
+		
+		String fileTreeIndexStamp = getFileTreeIndexStamp();
+		
+		if (fileTreeIndexFile.exists()) {
+			try {
+				FileTreeIndex fileTreeIndex = FileTreeIndex.load(fileTreeIndexFile);
+				
+				if (fileTreeIndexStamp.equals(fileTreeIndex.getStamp())) {
+					logger.log(Level.INFO, "Loaded file tree index with {0} file(s) from {1}.", new Object[] { fileTreeIndex.size(), fileTreeIndexFile });
+					return fileTreeIndex;
+				}
+				
+				logger.log(Level.INFO, "File tree index is outdated (stamp {0}, database has {1}); rebuilding ...", new Object[] { fileTreeIndex.getStamp(), fileTreeIndexStamp });
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot load file tree index from " + fileTreeIndexFile + "; rebuilding ...", e);
+			}
+		}
+		
+		Map<String, FileVersion> currentFileTree = getCurrentFileTree();
+		
+		try {
+			File tempFileTreeIndexFile = File.createTempFile(fileTreeIndexFile.getName(), ".tmp", fileTreeIndexFile.getParentFile());
+			
+			try {
+				FileTreeIndex.write(tempFileTreeIndexFile, fileTreeIndexStamp, currentFileTree.values());
+				Files.move(tempFileTreeIndexFile.toPath(), fileTreeIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				tempFileTreeIndexFile.delete();
+			}
+			
+			logger.log(Level.INFO, "Wrote file tree index with {0} file(s) to {1}.", new Object[] { currentFileTree.size(), fileTreeIndexFile });
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write file tree index to " + fileTreeIndexFile + "; using file tree from database.", e);
+		}
+		
+		return currentFileTree;
+	}
+	
+	private String getFileTreeIndexStamp() {
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.all.getFileTreeIndexStamp.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				
+				return resultSet.getLong("max_databaseversion_id") + "/" + resultSet.getLong("master_databaseversion_count") + "/"
+						+ resultSet.getLong("fileversion_count");
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Map<String, FileVersion> getCurrentFileTree(String prefix) {
 		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileTreeWithPrefix.sql")) {
 			preparedStatement.setString(1, prefix);
@@ -180,6 +267,31 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 	
+	/**
+	 * Queries the database for the currently active {@link FileVersion}s in the subtree
+	 * of the given path, i.e. the file version with the given path itself and all file versions
+	 * below it (if it is a folder).
+	 * 
+	 * <p>Keys in the returned map correspond to the file version's relative file path,
+	 * and values to the actual {@link FileVersion} object.
+	 * 
+	 * @param path Relative path of the file or folder (root of the subtree)
+	 * @return Returns the current file subtree as a map of relative paths to {@link FileVersion} objects
+	 */
+	public Map<String, FileVersion> getCurrentFileSubtree(String path) {
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileSubtree.sql")) {
+			String escapedPath = path.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+
+			preparedStatement.setString(1, path);
+			preparedStatement.setString(2, escapedPath + "/%");
+
+			return getFileTree(preparedStatement);
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Queries the database for the {@link FileVersion}s active at the given date and
 	 * returns it as a map.
@@ -309,6 +421,46 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 	
+	/**
+	 * Returns the last (non-deleted) versions of all files that contain at least one of the given
+	 * chunks, grouped by chunk checksum. A chunk may be contained in multiple files, so each chunk
+	 * maps to a list of candidate file versions. Chunks that are not contained in any file are not
+	 * part of the returned map.
+	 */
+	public Map<ChunkChecksum, List<FileVersion>> getFileVersionsByChunkChecksums(Collection<ChunkChecksum> chunkChecksums) {
+		String[] chunkChecksumsStr = new String[chunkChecksums.size()];
+
+		int i = 0;
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			chunkChecksumsStr[i++] = chunkChecksum.toString();
+		}
+
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFileVersionsByChunkChecksums.sql")) {
+			preparedStatement.setArray(1, connection.createArrayOf("varchar", chunkChecksumsStr));
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				Map<ChunkChecksum, List<FileVersion>> fileVersions = new HashMap<ChunkChecksum, List<FileVersion>>();
+
+				while (resultSet.next()) {
+					ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+					List<FileVersion> chunkFileVersions = fileVersions.get(chunkChecksum);
+
+					if (chunkFileVersions == null) {
+						chunkFileVersions = new ArrayList<FileVersion>();
+						fileVersions.put(chunkChecksum, chunkFileVersions);
+					}
+
+					chunkFileVersions.add(createFileVersionFromRow(resultSet));
+				}
+
+				return fileVersions;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private Map<FileHistoryId, FileVersion> getSingleVersionInHistory(PreparedStatement preparedStatement) throws SQLException {
 		try (ResultSet resultSet = preparedStatement.executeQuery()) {
 			Map<FileHistoryId, FileVersion> mostRecentPurgeFileVersions = new HashMap<FileHistoryId, FileVersion>();
@@ -22,9 +22,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,32 +56,34 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	}
 
 	public void writeMultiChunks(Connection connection, long databaseVersionId, Collection<MultiChunkEntry> multiChunks) throws SQLException {
-		for (MultiChunkEntry multiChunk : multiChunks) {
-			PreparedStatement preparedStatement = getStatement(connection, "multichunk.insert.all.writeMultiChunks.sql");
+		PreparedStatement preparedStatement = getCachedStatement(connection, "multichunk.insert.all.writeMultiChunks.sql");
 
+		for (MultiChunkEntry multiChunk : multiChunks) {
 			preparedStatement.setString(1, multiChunk.getId().toString());
 			preparedStatement.setLong(2, databaseVersionId);
 			preparedStatement.setLong(3, multiChunk.getSize());
 			
-			preparedStatement.executeUpdate();
-			preparedStatement.close();
-			
-			writeMultiChunkRefs(connection, multiChunk);			
+			addBatch(preparedStatement);
 		}
+		
+		// Chunk references can only be written once all multichunks are written (foreign key!)
+		executeBatch(preparedStatement);		
+		writeMultiChunkRefs(connection, multiChunks);
 	}
 
-	private void writeMultiChunkRefs(Connection connection, MultiChunkEntry multiChunk) throws SQLException {
-		PreparedStatement preparedStatement = getStatement("multichunk.insert.all.writeMultiChunkRefs.sql");
+	private void writeMultiChunkRefs(Connection connection, Collection<MultiChunkEntry> multiChunks) throws SQLException {
+		PreparedStatement preparedStatement = getCachedStatement(connection, "multichunk.insert.all.writeMultiChunkRefs.sql");
 		
-		for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
-			
-			preparedStatement.addBatch();			
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
+				preparedStatement.setString(1, multiChunk.getId().toString());
+				preparedStatement.setString(2, chunkChecksum.toString());
+				
+				addBatch(preparedStatement);
+			}
 		}
 		
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+		executeBatch(preparedStatement);
 	}	
 
 	public void writeMuddyMultiChunks(Map<DatabaseVersionHeader, Collection<MultiChunkEntry>> muddyMultiChunksPerDatabaseVersion) throws SQLException {
@@ -125,6 +129,36 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		preparedStatement.close();
 	}
 	
+	/**
+	 * Replaces the given multichunk by the given new multichunk, i.e. it writes the new multichunk
+	 * to the database version of the old multichunk, moves the chunk references to the new multichunk
+	 * and removes the old multichunk. The new multichunk is expected to contain all chunks that
+	 * are still referenced in the old multichunk.
+	 * 
+	 * <p><b>Note:</b> This method does not commit.
+	 */
+	public void replaceMultiChunk(MultiChunkId oldMultiChunkId, MultiChunkEntry newMultiChunk) throws SQLException {
+		try (PreparedStatement preparedStatement = getStatement("multichunk.insert.all.writeRepackagedMultiChunk.sql")) {
+			preparedStatement.setString(1, newMultiChunk.getId().toString());
+			preparedStatement.setLong(2, newMultiChunk.getSize());
+			preparedStatement.setString(3, oldMultiChunkId.toString());
+
+			preparedStatement.executeUpdate();
+		}
+
+		writeMultiChunkRefs(connection, Arrays.asList(newMultiChunk));
+
+		try (PreparedStatement preparedStatement = getStatement("multichunk.delete.all.removeMultiChunkRefs.sql")) {
+			preparedStatement.setString(1, oldMultiChunkId.toString());
+			preparedStatement.executeUpdate();
+		}
+
+		try (PreparedStatement preparedStatement = getStatement("multichunk.delete.all.removeMultiChunk.sql")) {
+			preparedStatement.setString(1, oldMultiChunkId.toString());
+			preparedStatement.executeUpdate();
+		}
+	}
+
 	public void removeNonMuddyMultiChunks() throws SQLException {
 		PreparedStatement preparedStatement = getStatement("multichunk_muddy.delete.muddy.removeNonMuddyMultiChunks.sql");
 		preparedStatement.executeUpdate();	
@@ -267,6 +301,24 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Returns all multichunks whose (still referenced) chunks make up less than the given
+	 * ratio of the multichunk size. The returned entries only contain the referenced chunks, and
+	 * are ordered by that ratio, i.e. the least used multichunks come first.
+	 */
+	public Map<MultiChunkId, MultiChunkEntry> getSparseMultiChunks(double maxUsedRatio) {
+		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getSparseMultiChunks.sql")) {
+			preparedStatement.setDouble(1, maxUsedRatio);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return createMultiChunkEntriesWithChunks(resultSet);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Map<MultiChunkId, MultiChunkEntry> getMultiChunks() {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunks.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
@@ -303,7 +355,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	}
 	
 	private Map<MultiChunkId, MultiChunkEntry> createMultiChunkEntriesWithChunks(ResultSet resultSet) throws SQLException {
-		Map<MultiChunkId, MultiChunkEntry> multiChunkEntries = new HashMap<MultiChunkId, MultiChunkEntry>();		
+		Map<MultiChunkId, MultiChunkEntry> multiChunkEntries = new LinkedHashMap<MultiChunkId, MultiChunkEntry>();		
 		MultiChunkId currentMultiChunkId = null;
 		
 		while (resultSet.next()) {			
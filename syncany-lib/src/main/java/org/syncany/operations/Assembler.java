@@ -19,14 +19,20 @@ package org.syncany.operations;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
+import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.Deduper;
 import org.syncany.chunk.MultiChunk;
@@ -48,14 +54,29 @@ import org.syncany.util.StringUtil;
  * <p>It uses the local {@link SqlDatabase} and an optional {@link MemoryDatabase}
  * to perform file checksum and chunk checksum lookups.   
  * 
+ * <p>To avoid re-opening the same multichunk for every single chunk, the assembler
+ * keeps up to {@link #MULTICHUNK_CACHE_SIZE} multichunks open (least recently used 
+ * are closed first). An assembler should therefore be shared for an entire down or
+ * restore run, and {@link #close()} must be called when it is no longer needed.
+ * 
+ * <p>If local chunk positions are set via {@link #setLocalChunkPositions(Map)}, chunks
+ * are copied from the local files instead of being read from multichunks. Each chunk read
+ * from a local file is verified by its checksum. If a local file has changed, the chunk
+ * is read from its multichunk instead, which is downloaded on demand if a {@link Downloader}
+ * has been set via {@link #setDownloader(Downloader)}.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Assembler {
 	private static final Logger logger = Logger.getLogger(Assembler.class.getSimpleName());
+	private static final int MULTICHUNK_CACHE_SIZE = 16;
 	
 	private Config config;
 	private SqlDatabase localDatabase;
 	private MemoryDatabase memoryDatabase;
+	private Map<MultiChunkId, MultiChunk> openMultiChunks;
+	private Map<ChunkChecksum, ChunkPosition> localChunkPositions;
+	private Downloader downloader;
 	
 	public Assembler(Config config, SqlDatabase localDatabase) {
 		this(config, localDatabase, null);
@@ -65,6 +86,26 @@ public class Assembler {
 		this.config = config;
 		this.localDatabase = localDatabase;
 		this.memoryDatabase = memoryDatabase;
+		this.openMultiChunks = new LinkedHashMap<MultiChunkId, MultiChunk>(MULTICHUNK_CACHE_SIZE, 0.75f, true);
+		this.localChunkPositions = Collections.emptyMap();
+		this.downloader = null;
+	}
+
+	/**
+	 * Sets the positions of chunks in local files. Chunks with a position are
+	 * copied from the local file (if it is unchanged) instead of a multichunk.
+	 */
+	public void setLocalChunkPositions(Map<ChunkChecksum, ChunkPosition> localChunkPositions) {
+		this.localChunkPositions = localChunkPositions;
+	}
+
+	/**
+	 * Sets the downloader used to download multichunks that are not in the local cache,
+	 * i.e. multichunks of chunks that were expected to be copied from local files. The
+	 * downloader may be shared by multiple assemblers.
+	 */
+	public void setDownloader(Downloader downloader) {
+		this.downloader = downloader;
 	}
 
 	/**
@@ -94,40 +135,57 @@ public class Assembler {
 				
 		// Create non-empty file
 		Chunker chunker = config.getChunker();
-		MultiChunker multiChunker = config.getMultiChunker();
 		
 		FileOutputStream reconstructedFileOutputStream = new FileOutputStream(reconstructedFileInCache);		
 		MessageDigest reconstructedFileChecksum = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
+		MessageDigest chunkChecksumDigest = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
 		
-		if (fileContent != null) { // File can be empty!
-			Collection<ChunkChecksum> fileChunks = fileContent.getChunks();
+		// Local files are opened per assembled file, and closed right after. Keeping 
+		// them open longer would block renaming/deleting them on some platforms.
+		Map<File, RandomAccessFile> openLocalFiles = new HashMap<File, RandomAccessFile>();
+		
+		try {
+			List<ChunkChecksum> fileChunks = fileContent.getChunks();
+			Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(fileChunks);
+			byte[] chunkBuffer = null;
 
 			for (ChunkChecksum chunkChecksum : fileChunks) {
-				MultiChunkId multiChunkIdForChunk = localDatabase.getMultiChunkId(chunkChecksum);
+				ChunkPosition chunkPosition = localChunkPositions.get(chunkChecksum);
+				
+				if (chunkPosition != null) {
+					byte[] chunkData = readLocalChunk(chunkPosition, chunkChecksum, chunkChecksumDigest, openLocalFiles);
+					
+					if (chunkData != null) {
+						reconstructedFileChecksum.update(chunkData);
+						reconstructedFileOutputStream.write(chunkData);
+						
+						continue;
+					}
+				}
+				
+				MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
 
 				if (multiChunkIdForChunk == null && memoryDatabase != null) {
 					multiChunkIdForChunk = memoryDatabase.getMultiChunkIdForChunk(chunkChecksum);
 				}
 
-				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkIdForChunk);
-
-				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
-				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
+				MultiChunk multiChunk = getMultiChunk(multiChunkIdForChunk);
+				Chunk chunk = multiChunk.read(chunkChecksum.getBytes(), chunkBuffer);
 
-				byte[] buffer = new byte[4096];
-				int read = 0;
-
-				while (-1 != (read = chunkInputStream.read(buffer))) {
-					reconstructedFileChecksum.update(buffer, 0, read);
-					reconstructedFileOutputStream.write(buffer, 0, read);
+				if (chunk == null) {
+					throw new IOException("Chunk " + chunkChecksum + " not found in multichunk " + multiChunkIdForChunk);
 				}
 
-				chunkInputStream.close();
-				multiChunk.close();
+				reconstructedFileChecksum.update(chunk.getContent(), 0, chunk.getSize());
+				reconstructedFileOutputStream.write(chunk.getContent(), 0, chunk.getSize());
+
+				chunkBuffer = chunk.getContent(); // Re-use buffer for the next chunk
 			}
 		}
-
-		reconstructedFileOutputStream.close();
+		finally {
+			reconstructedFileOutputStream.close();
+			closeLocalFiles(openLocalFiles);
+		}
 
 		// Validate checksum
 		byte[] reconstructedFileExpectedChecksum = fileContent.getChecksum().getBytes();
@@ -139,5 +197,115 @@ public class Assembler {
 		}
 		
 		return reconstructedFileInCache;
-	}	
+	}
+
+	/**
+	 * Reads the chunk at the given position from the local file and verifies its checksum. 
+	 * Returns the chunk data, or <tt>null</tt> if the local file has changed since it was 
+	 * indexed, or the chunk cannot be read.
+	 */
+	private byte[] readLocalChunk(ChunkPosition chunkPosition, ChunkChecksum chunkChecksum, MessageDigest chunkChecksumDigest,
+			Map<File, RandomAccessFile> openLocalFiles) {
+		
+		try {
+			RandomAccessFile localFile = openLocalFiles.get(chunkPosition.getFile());
+			
+			if (localFile == null) {
+				if (!chunkPosition.isFileUnchanged()) {
+					logger.log(Level.FINE, "     - Local file {0} has changed, cannot copy chunk from it.", chunkPosition.getFile());
+					return null;
+				}
+				
+				localFile = new RandomAccessFile(chunkPosition.getFile(), "r");
+				openLocalFiles.put(chunkPosition.getFile(), localFile);
+			}
+			
+			byte[] chunkData = new byte[chunkPosition.getSize()];
+			
+			localFile.seek(chunkPosition.getOffset());
+			localFile.readFully(chunkData);
+
+			chunkChecksumDigest.reset();
+			
+			if (!Arrays.equals(chunkChecksumDigest.digest(chunkData), chunkChecksum.getBytes())) {
+				logger.log(Level.FINE, "     - Chunk " + chunkChecksum + " in local file " + chunkPosition.getFile() + " does not match its checksum.");
+				return null;
+			}
+			
+			return chunkData;
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "     - Cannot read chunk " + chunkChecksum + " from local file " + chunkPosition.getFile(), e);
+			return null;
+		}
+	}
+	
+	private void closeLocalFiles(Map<File, RandomAccessFile> openLocalFiles) {
+		for (RandomAccessFile localFile : openLocalFiles.values()) {
+			try {
+				localFile.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot close local file.", e);
+			}
+		}
+	}
+
+	/**
+	 * Closes all multichunks that are still held open by this assembler. The
+	 * assembler can still be used after calling this method.
+	 */
+	public void close() {
+		for (MultiChunk multiChunk : openMultiChunks.values()) {
+			closeMultiChunk(multiChunk);
+		}
+
+		openMultiChunks.clear();
+	}
+
+	/**
+	 * Returns an open multichunk for the given identifier, either from the
+	 * cache of open multichunks, or by opening the decrypted multichunk file in
+	 * the local cache. If the cache is full, the least recently used multichunk
+	 * is closed. If the multichunk is not in the local cache and a downloader 
+	 * is set, the multichunk is downloaded.
+	 */
+	private MultiChunk getMultiChunk(MultiChunkId multiChunkId) throws Exception {
+		MultiChunk multiChunk = openMultiChunks.get(multiChunkId);
+
+		if (multiChunk == null) {
+			if (openMultiChunks.size() >= MULTICHUNK_CACHE_SIZE) {
+				MultiChunkId leastRecentlyUsedMultiChunkId = openMultiChunks.keySet().iterator().next();
+				closeMultiChunk(openMultiChunks.remove(leastRecentlyUsedMultiChunkId));
+			}
+
+			File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+			
+			if (!decryptedMultiChunkFile.exists() && downloader != null) {
+				// Assemblers may share a downloader, so only one of them must download a multichunk at a time 
+				synchronized (downloader) {
+					if (!decryptedMultiChunkFile.exists()) {
+						logger.log(Level.INFO, "     - Multichunk " + multiChunkId + " not in cache, downloading it ...");
+						downloader.downloadAndDecryptMultiChunks(Collections.singleton(multiChunkId));
+					}
+				}
+			}
+			
+			MultiChunker multiChunker = config.getMultiChunker();
+
+			multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
+			openMultiChunks.put(multiChunkId, multiChunk);
+		}
+
+		return multiChunk;
+	}
+
+	private void closeMultiChunk(MultiChunk multiChunk) {
+		try {
+			multiChunk.close();
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot close multichunk.", e);
+		}
+	}
 }
@@ -0,0 +1,73 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+
+/**
+ * A chunk position describes where a chunk can be found in a file on the local
+ * disk, i.e. the file, the offset of the chunk within the file and its size.
+ *
+ * <p>Since local files can change at any time, a chunk position also holds the
+ * size and last modified date the file had when it was indexed. A position must only
+ * be used if the file still matches these values, see {@link #isFileUnchanged()}.
+ *
+ * @see LocalChunkLocator
+ * @see Assembler
+ */
+public class ChunkPosition {
+	private File file;
+	private long offset;
+	private int size;
+	private long expectedFileSize;
+	private long expectedLastModified;
+
+	public ChunkPosition(File file, long offset, int size, long expectedFileSize, long expectedLastModified) {
+		this.file = file;
+		this.offset = offset;
+		this.size = size;
+		this.expectedFileSize = expectedFileSize;
+		this.expectedLastModified = expectedLastModified;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the file still has the size and last modified date it had
+	 * when the chunk position was determined. Note that this is only a cheap pre-check;
+	 * the chunk data itself must still be verified by its checksum.
+	 */
+	public boolean isFileUnchanged() {
+		return file.isFile() && file.length() == expectedFileSize && file.lastModified() == expectedLastModified;
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkPosition [file=" + file + ", offset=" + offset + ", size=" + size + "]";
+	}
+}
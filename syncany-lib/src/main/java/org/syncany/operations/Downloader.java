@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,13 +34,22 @@ import org.syncany.config.LocalEventBus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferWorkerPool;
+import org.syncany.plugins.transfer.TransferWorkerPool.TransferWorker;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
  * decrypt them and store them in the local cache folder. 
  * 
+ * <p>If more than one downloader thread is configured (see {@link Config#getDownloaderThreads()}),
+ * multiple multichunks are downloaded and decrypted concurrently. Each additional thread uses
+ * its own {@link TransferManager} (and thereby its own connection), so that the decryption
+ * of one multichunk overlaps with the download of others. If no additional transfer manager can 
+ * be created, the downloader falls back to fewer threads.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Downloader {
@@ -62,24 +72,67 @@ public class Downloader {
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
-		int multiChunkNumber = 0;
+		int downloaderThreads = Math.min(config.getDownloaderThreads(), unknownMultiChunkIds.size());
+
+		if (downloaderThreads > 1) {
+			logger.log(Level.INFO, "- Using up to {0} concurrent downloads ...", downloaderThreads);
+		}
+
+		TransferWorkerPool<MultiChunkId> workerPool = new TransferWorkerPool<MultiChunkId>(config, transferManager) {
+			@Override
+			protected TransferManager createAdditionalTransferManager() throws StorageException {
+				// Wrapped the same way as the transfer managers used by the operations
+				return new TransactionAwareTransferManager(super.createAdditionalTransferManager(), config);
+			}
+		};
+
+		try {
+			workerPool.execute(unknownMultiChunkIds, downloaderThreads, new DownloadWorker(unknownMultiChunkIds.size()));
+		}
+		catch (StorageException | IOException | RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException("Downloading multichunks failed.", e);
+		}
+
+		transferManager.disconnect();
+	}
+
+	/**
+	 * A download worker downloads and decrypts a single multichunk, using the transfer manager
+	 * of the calling worker thread.
+	 */
+	private class DownloadWorker implements TransferWorker<MultiChunkId> {
+		private AtomicInteger multiChunkNumber;
+		private int multiChunkCount;
+
+		public DownloadWorker(int multiChunkCount) {
+			this.multiChunkNumber = new AtomicInteger(0);
+			this.multiChunkCount = multiChunkCount;
+		}
+
+		@Override
+		public void process(TransferManager workerTransferManager, MultiChunkId multiChunkId) throws StorageException, IOException {
+			downloadAndDecryptMultiChunk(workerTransferManager, multiChunkId);
+		}
 
-		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
+		private void downloadAndDecryptMultiChunk(TransferManager workerTransferManager, MultiChunkId multiChunkId) throws StorageException, IOException {
 			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
 			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
 			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
 
-			multiChunkNumber++;
+			int currentMultiChunkNumber = multiChunkNumber.incrementAndGet();
 
 			if (localDecryptedMultiChunkFile.exists()) {
 				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
 			}
 			else {
-				eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
-						unknownMultiChunkIds.size()));
+				eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", currentMultiChunkNumber,
+						multiChunkCount));
 
 				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+				workerTransferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
 
 				try {
 					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
@@ -111,7 +164,5 @@ public class Downloader {
 				}
 			}
 		}
-
-		transferManager.disconnect();
 	}
 }
@@ -0,0 +1,157 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileVersion;
+import org.syncany.database.SqlDatabase;
+
+/**
+ * The local chunk locator finds chunks in the files of the local sync folder, so that
+ * they can be copied from there instead of being downloaded as part of a multichunk.
+ *
+ * <p>The locator uses the data written during indexing: The <i>filecontent_chunk</i>
+ * table maps chunks to the file contents they appear in, and the current file versions
+ * map these contents to local paths. The offset of a chunk within a file is the sum of
+ * the sizes of all preceding chunks of the file content.
+ *
+ * <p>A file is only used as chunk source if its size and last modified date still match
+ * the indexed file version. The returned {@link ChunkPosition}s must nonetheless be
+ * re-validated when they are read, because local files can change in the meantime.
+ */
+public class LocalChunkLocator {
+	private static final Logger logger = Logger.getLogger(LocalChunkLocator.class.getSimpleName());
+	private static final int FILE_CHUNK_POSITIONS_CACHE_SIZE = 128;
+
+	private Config config;
+	private SqlDatabase localDatabase;
+	private Map<String, Map<ChunkChecksum, ChunkPosition>> fileChunkPositionsCache;
+
+	public LocalChunkLocator(Config config, SqlDatabase localDatabase) {
+		this.config = config;
+		this.localDatabase = localDatabase;
+		this.fileChunkPositionsCache = new LinkedHashMap<String, Map<ChunkChecksum, ChunkPosition>>(FILE_CHUNK_POSITIONS_CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<ChunkChecksum, ChunkPosition>> eldest) {
+				return size() > FILE_CHUNK_POSITIONS_CACHE_SIZE;
+			}
+		};
+	}
+
+	/**
+	 * Finds the given chunks in the local files and returns their positions. Chunks that
+	 * cannot be found in an unchanged local file are not part of the returned map.
+	 */
+	public Map<ChunkChecksum, ChunkPosition> locateChunks(Collection<ChunkChecksum> chunkChecksums) {
+		Map<ChunkChecksum, ChunkPosition> chunkPositions = new HashMap<ChunkChecksum, ChunkPosition>();
+
+		if (chunkChecksums.isEmpty()) {
+			return chunkPositions;
+		}
+
+		Map<ChunkChecksum, List<FileVersion>> candidateFileVersions = localDatabase.getFileVersionsByChunkChecksums(new HashSet<ChunkChecksum>(chunkChecksums));
+
+		for (Map.Entry<ChunkChecksum, List<FileVersion>> candidateEntry : candidateFileVersions.entrySet()) {
+			ChunkChecksum chunkChecksum = candidateEntry.getKey();
+
+			for (FileVersion candidateFileVersion : candidateEntry.getValue()) {
+				Map<ChunkChecksum, ChunkPosition> fileChunkPositions = getFileChunkPositions(candidateFileVersion);
+				ChunkPosition chunkPosition = (fileChunkPositions != null) ? fileChunkPositions.get(chunkChecksum) : null;
+
+				if (chunkPosition != null) {
+					chunkPositions.put(chunkChecksum, chunkPosition);
+					break;
+				}
+			}
+		}
+
+		return chunkPositions;
+	}
+
+	/**
+	 * Returns the positions of all chunks of the given file version in the local file,
+	 * or <tt>null</tt> if the local file does not match the file version (anymore).
+	 */
+	private Map<ChunkChecksum, ChunkPosition> getFileChunkPositions(FileVersion fileVersion) {
+		if (fileChunkPositionsCache.containsKey(fileVersion.getPath())) {
+			return fileChunkPositionsCache.get(fileVersion.getPath());
+		}
+
+		Map<ChunkChecksum, ChunkPosition> fileChunkPositions = determineFileChunkPositions(fileVersion);
+		fileChunkPositionsCache.put(fileVersion.getPath(), fileChunkPositions);
+
+		return fileChunkPositions;
+	}
+
+	private Map<ChunkChecksum, ChunkPosition> determineFileChunkPositions(FileVersion fileVersion) {
+		File localFile = new File(config.getLocalDir(), fileVersion.getPath());
+		long expectedFileSize = fileVersion.getSize();
+		long expectedLastModified = fileVersion.getLastModified().getTime();
+
+		if (!localFile.isFile() || localFile.length() != expectedFileSize || localFile.lastModified() != expectedLastModified) {
+			logger.log(Level.FINE, "- Local file {0} does not match its last indexed version; not using it as chunk source.", fileVersion.getPath());
+			return null;
+		}
+
+		FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
+
+		if (fileContent == null) {
+			return null;
+		}
+
+		Map<ChunkChecksum, ChunkPosition> fileChunkPositions = new HashMap<ChunkChecksum, ChunkPosition>();
+		long offset = 0;
+
+		for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
+			ChunkEntry chunk = localDatabase.getChunk(chunkChecksum);
+
+			if (chunk == null) {
+				return null;
+			}
+
+			if (!fileChunkPositions.containsKey(chunkChecksum)) {
+				fileChunkPositions.put(chunkChecksum, new ChunkPosition(localFile, offset, chunk.getSize(), expectedFileSize, expectedLastModified));
+			}
+
+			offset += chunk.getSize();
+		}
+
+		// Sanity check: Chunks must add up to the file size
+		if (offset != expectedFileSize) {
+			logger.log(Level.WARNING, "- Chunks of local file {0} do not add up to its size; not using it as chunk source.", fileVersion.getPath());
+			return null;
+		}
+
+		return fileChunkPositions;
+	}
+}
@@ -18,21 +18,28 @@
 package org.syncany.operations.cleanup;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
 import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileVersion;
@@ -41,8 +48,9 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
-import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseSerializer;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.Downloader;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.ls_remote.LsRemoteOperation;
@@ -67,6 +75,8 @@ import org.syncany.plugins.transfer.files.RemoteFile;
  *   <li>Remove old {@link FileVersion} and their corresponding database entities.
  *       In particular, it also removes {@link PartialFileHistory}s, {@link FileContent}s,
  *       {@link Chunk}s and {@link MultiChunk}s.</li>
+ *   <li>Repackage multichunks that are mostly unused, i.e. rewrite the chunks that are
+ *       still used to new multichunks and delete the old multichunks.</li>
  *   <li>Merge metadata of a single client and remove old database version files
  *       from the remote storage.</li>   
  * </ul>
@@ -76,6 +86,7 @@ import org.syncany.plugins.transfer.files.RemoteFile;
  *    <ol>Lock repo and start thread that renews the lock every X seconds</ol>
  *    <ol>Find old versions / contents / ... from database</ol>
  *    <ol>Delete these versions and contents locally</ol>
+ *    <ol>Repackage mostly unused multichunks, and replace them locally</ol>
  *    <ol>Delete all remote metadata</ol>
  *    <ol>Obtain consistent database files from local database</ol> 
  *    <ol>Upload new database files to repo</ol>
@@ -109,11 +120,22 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		this.options = options;
 		this.result = new CleanupOperationResult();
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 	}
 
 	@Override
 	public CleanupOperationResult execute() throws Exception {
+		try {
+			return executeCleanup();
+		}
+		catch (Exception e) {
+			// Uncommitted changes must not remain in the shared database session; the next commit would persist them
+			localDatabase.rollback();
+			throw e;
+		}
+	}
+
+	private CleanupOperationResult executeCleanup() throws Exception {
 		logger.log(Level.INFO, "");
 		logger.log(Level.INFO, "Running 'Cleanup' at client " + config.getMachineName() + " ...");
 		logger.log(Level.INFO, "--------------------------------------------");
@@ -160,6 +182,10 @@ public class CleanupOperation extends AbstractTransferOperation {
 			removeOldVersions();
 		}
 
+		if (options.isRepackageMultiChunks()) {
+			repackageMultiChunks();
+		}
+
 		if (options.isRemoveUnreferencedTemporaryFiles()) {
 			transferManager.removeUnreferencedTemporaryFiles();
 		}
@@ -179,7 +205,8 @@ public class CleanupOperation extends AbstractTransferOperation {
 	 * @return result The original result, with the relevant {@link CleanupResultCode}
 	 */
 	private CleanupOperationResult updateResultCode(CleanupOperationResult result) {
-		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunks().size() > 0 || result.getRemovedOldVersionsCount() > 0) {
+		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunks().size() > 0 || result.getRemovedOldVersionsCount() > 0
+				|| result.getRepackagedMultiChunks().size() > 0) {
 			result.setResultCode(CleanupResultCode.OK);
 		}
 		else {
@@ -273,13 +300,137 @@ public class CleanupOperation extends AbstractTransferOperation {
 		}
 	}
 
+	/**
+	 * This method repackages multichunks of which more than a certain ratio of data is no longer used
+	 * (see {@link CleanupOperationOptions#getRepackageUnusedThreshold()}). These multichunks are downloaded, and the 
+	 * chunks that are still used are written to new multichunks, which then replace the old multichunks in the local
+	 * database. The new multichunks are uploaded and the old multichunks are deleted in the {@link RemoteTransaction}. 
+	 * 
+	 * <p>To limit the traffic of a single cleanup run, only multichunks up to a total size of 
+	 * {@link CleanupOperationOptions#getMaxRepackageSize()} are repackaged, the least used multichunks first.
+	 */
+	private void repackageMultiChunks() throws Exception {
+		double maxUsedRatio = 1 - options.getRepackageUnusedThreshold();
+		Map<MultiChunkId, MultiChunkEntry> sparseMultiChunks = localDatabase.getSparseMultiChunks(maxUsedRatio);
+
+		Map<MultiChunkId, MultiChunkEntry> repackageMultiChunks = new LinkedHashMap<MultiChunkId, MultiChunkEntry>();
+		long repackageSize = 0;
+
+		for (MultiChunkEntry sparseMultiChunk : sparseMultiChunks.values()) {
+			if (repackageSize + sparseMultiChunk.getSize() <= options.getMaxRepackageSize()) {
+				repackageMultiChunks.put(sparseMultiChunk.getId(), sparseMultiChunk);
+				repackageSize += sparseMultiChunk.getSize();
+			}
+		}
+
+		if (repackageMultiChunks.size() == 0) {
+			logger.log(Level.INFO, "- Multichunk repackaging: Not necessary (no multichunks with more than {0} unused data found).",
+					options.getRepackageUnusedThreshold());
+			return;
+		}
+
+		logger.log(Level.INFO, "- Multichunk repackaging: Found {0} multichunks that need repackaging ({1} found, {2} bytes).", new Object[] {
+				repackageMultiChunks.size(), sparseMultiChunks.size(), repackageSize });
+
+		// Download the multichunks to the local cache
+		new Downloader(config, transferManager).downloadAndDecryptMultiChunks(repackageMultiChunks.keySet());
+
+		// Local: Write new multichunks and replace the old ones; Remote: Add them to the transaction
+		for (MultiChunkEntry oldMultiChunkEntry : repackageMultiChunks.values()) {
+			MultiChunkEntry newMultiChunkEntry = repackageMultiChunk(oldMultiChunkEntry);
+			localDatabase.replaceMultiChunk(oldMultiChunkEntry.getId(), newMultiChunkEntry);
+
+			File localNewMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(newMultiChunkEntry.getId());
+
+			logger.log(Level.FINE, "  + Replacing remote multichunk " + oldMultiChunkEntry.getId() + " with " + newMultiChunkEntry.getId() + " ...");
+			remoteTransaction.upload(localNewMultiChunkFile, new MultichunkRemoteFile(newMultiChunkEntry.getId()));
+			remoteTransaction.delete(new MultichunkRemoteFile(oldMultiChunkEntry.getId()));
+		}
+
+		// Update stats
+		result.setRepackagedMultiChunks(repackageMultiChunks);
+	}
+
+	/**
+	 * This method writes the used chunks of the given (already downloaded) multichunk to a new multichunk
+	 * in the local cache, using the configured {@link MultiChunker} and transformer.
+	 * 
+	 * @param oldMultiChunkEntry Multichunk to repackage; contains only the chunks that are still used
+	 * @return The new multichunk, containing all chunks of the given multichunk
+	 */
+	private MultiChunkEntry repackageMultiChunk(MultiChunkEntry oldMultiChunkEntry) throws IOException {
+		MultiChunker multiChunker = config.getMultiChunker();
+
+		MultiChunkId oldMultiChunkId = oldMultiChunkEntry.getId();
+		MultiChunkId newMultiChunkId = MultiChunkId.secureRandomMultiChunkId();
+		MultiChunkEntry newMultiChunkEntry = new MultiChunkEntry(newMultiChunkId, 0);
+
+		File localOldMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(oldMultiChunkId);
+		File localNewMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(newMultiChunkId);
+
+		Set<ChunkChecksum> usedChunkChecksums = new HashSet<ChunkChecksum>(oldMultiChunkEntry.getChunks());
+
+		// Close the file streams as well, in case creating one of the multichunks fails
+		FileInputStream oldMultiChunkInputStream = new FileInputStream(localOldMultiChunkFile);
+		FileOutputStream newMultiChunkOutputStream = null;
+		MultiChunk newMultiChunk = null;
+
+		try {
+			newMultiChunkOutputStream = new FileOutputStream(localNewMultiChunkFile);
+
+			MultiChunk oldMultiChunk = multiChunker.createMultiChunk(oldMultiChunkInputStream);
+
+			try {
+				newMultiChunk = multiChunker.createMultiChunk(newMultiChunkId, config.getTransformer().createOutputStream(newMultiChunkOutputStream));
+
+				try {
+					Chunk chunk = null;
+					byte[] chunkBuffer = null;
+
+					while (null != (chunk = oldMultiChunk.read(chunkBuffer))) {
+						ChunkChecksum chunkChecksum = new ChunkChecksum(chunk.getChecksum());
+
+						if (usedChunkChecksums.remove(chunkChecksum)) {
+							newMultiChunk.write(chunk);
+							newMultiChunkEntry.addChunk(chunkChecksum);
+						}
+
+						chunkBuffer = chunk.getContent(); // Re-use buffer for the next chunk
+					}
+				}
+				finally {
+					newMultiChunk.close();
+				}
+			}
+			finally {
+				oldMultiChunk.close();
+			}
+		}
+		finally {
+			oldMultiChunkInputStream.close();
+
+			if (newMultiChunkOutputStream != null) {
+				newMultiChunkOutputStream.close();
+			}
+		}
+
+		if (usedChunkChecksums.size() > 0) {
+			throw new IOException("Cannot repackage multichunk " + oldMultiChunkId + "; " + usedChunkChecksums.size() + " used chunk(s) not found.");
+		}
+
+		newMultiChunkEntry.setSize(newMultiChunk.getSize());
+		localOldMultiChunkFile.delete();
+
+		return newMultiChunkEntry;
+	}
+
 	private boolean hasDirtyDatabaseVersions() {
 		Iterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions();
 		return dirtyDatabaseVersions.hasNext(); // TODO [low] Is this a resource creeper?
 	}
 
 	private boolean hasRemoteChanges() throws Exception {
-		LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config).execute();
+		LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config, transferManager).execute();
 		return lsRemoteOperationResult.getUnknownRemoteDatabases().size() > 0;
 	}
 
@@ -362,12 +513,12 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 	/**
 	 * This method decides if a merge is needed. Most of the time it will be, since we need to merge every time we remove
-	 * any FileVersions to delete them remotely. Another reason for merging is if the number of files exceeds a certain threshold.
+	 * any FileVersions or repackage multichunks to delete them remotely. Another reason for merging is if the number of files exceeds a certain threshold.
 	 * This threshold scales linearly with the number of clients that have database files.
 	 * 
 	 * @param allDatabaseFilesMap used to determine if there are too many database files.
 	 * 
-	 * @return true if there are too many database files or we have removed FileVersions, false otherwise.
+	 * @return true if there are too many database files or we have removed FileVersions or repackaged multichunks, false otherwise.
 	 */
 	private boolean needMerge(Map<String, List<DatabaseRemoteFile>> allDatabaseFilesMap) {
 		int numberOfDatabaseFiles = 0;
@@ -380,8 +531,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 		int maxDatabaseFiles = options.getMaxDatabaseFiles() * allDatabaseFilesMap.keySet().size();
 		boolean tooManyDatabaseFiles = numberOfDatabaseFiles > maxDatabaseFiles;
 		boolean removedOldVersions = result.getRemovedOldVersionsCount() > 0;
+		boolean repackagedMultiChunks = result.getRepackagedMultiChunks().size() > 0;
 
-		return removedOldVersions || tooManyDatabaseFiles;
+		return removedOldVersions || repackagedMultiChunks || tooManyDatabaseFiles;
 	}
 
 	/**
@@ -407,7 +559,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		Iterator<DatabaseVersion> lastNDatabaseVersions = localDatabase.getDatabaseVersionsTo(clientName, lastClientVersion);
 
-		DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseSerializer databaseDAO = new DatabaseSerializer(config.getTransformer(), config.getDatabaseFormat());
 		databaseDAO.save(lastNDatabaseVersions, newLocalMergeDatabaseFile);
 		allMergedDatabaseFiles.put(newLocalMergeDatabaseFile, newRemoteMergeDatabaseFile);
 	}
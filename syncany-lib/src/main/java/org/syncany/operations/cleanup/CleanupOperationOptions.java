@@ -43,10 +43,14 @@ public class CleanupOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private long minSecondsBetweenCleanups = 10800;
 
-	// TODO [medium] Implement multichunk repackaging
+	@Element(required = false)
+	private boolean repackageMultiChunks = true;
+
+	@Element(required = false)
+	private double repackageUnusedThreshold = 0.7;
 
-	// private boolean repackageMultiChunks = true; 
-	// private double repackageUnusedThreshold = 0.7;
+	@Element(required = false)
+	private long maxRepackageSize = 100 * 1024 * 1024;
 
 	public StatusOperationOptions getStatusOptions() {
 		return statusOptions;
@@ -96,6 +100,30 @@ public class CleanupOperationOptions implements OperationOptions {
 		return minSecondsBetweenCleanups;
 	}
 
+	public boolean isRepackageMultiChunks() {
+		return repackageMultiChunks;
+	}
+
+	public void setRepackageMultiChunks(boolean repackageMultiChunks) {
+		this.repackageMultiChunks = repackageMultiChunks;
+	}
+
+	public double getRepackageUnusedThreshold() {
+		return repackageUnusedThreshold;
+	}
+
+	public void setRepackageUnusedThreshold(double repackageUnusedThreshold) {
+		this.repackageUnusedThreshold = repackageUnusedThreshold;
+	}
+
+	public long getMaxRepackageSize() {
+		return maxRepackageSize;
+	}
+
+	public void setMaxRepackageSize(long maxRepackageSize) {
+		this.maxRepackageSize = maxRepackageSize;
+	}
+
 	public boolean isForce() {
 		return force;
 	}
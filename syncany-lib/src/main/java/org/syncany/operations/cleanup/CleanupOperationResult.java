@@ -33,6 +33,7 @@ public class CleanupOperationResult implements OperationResult {
 	private int mergedDatabaseFilesCount = 0;
 	private int removedOldVersionsCount = 0;
 	private Map<MultiChunkId, MultiChunkEntry> removedMultiChunks = new HashMap<MultiChunkId, MultiChunkEntry>();
+	private Map<MultiChunkId, MultiChunkEntry> repackagedMultiChunks = new HashMap<MultiChunkId, MultiChunkEntry>();
 
 	public CleanupOperationResult() {
 		// Nothing.
@@ -73,4 +74,12 @@ public class CleanupOperationResult implements OperationResult {
 	public void setRemovedMultiChunks(Map<MultiChunkId, MultiChunkEntry> removedMultiChunks) {
 		this.removedMultiChunks = removedMultiChunks;
 	}
+
+	public Map<MultiChunkId, MultiChunkEntry> getRepackagedMultiChunks() {
+		return repackagedMultiChunks;
+	}
+
+	public void setRepackagedMultiChunks(Map<MultiChunkId, MultiChunkEntry> repackagedMultiChunks) {
+		this.repackagedMultiChunks = repackagedMultiChunks;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.operations.watch.WatchOperation;
+
+/**
+ * The sync scheduler runs the syncs of many {@link WatchOperation}s on a fixed
+ * pool of worker threads, instead of one sync loop thread per folder. 
+ * 
+ * <p>Sync requests are queued by priority: Syncs triggered by the file system watcher
+ * run before syncs triggered by push notifications, which in turn run before periodic 
+ * syncs. Each folder is queued at most once; if a sync is requested while the folder's 
+ * sync is running, it is queued again as soon as it has finished. 
+ * 
+ * <p>After each sync, the next periodic sync of the folder is scheduled after the folder's
+ * sync interval, plus or minus a random jitter, so that many folders with the same interval
+ * do not all sync at the same time.
+ */
+public class SyncScheduler {
+	private static final Logger logger = Logger.getLogger(SyncScheduler.class.getSimpleName());
+	private static final int PAUSE_RETRY_DELAY = 1000;
+	
+	/**
+	 * Reasons to run a sync, in order of their priority.
+	 */
+	public enum SyncTrigger {
+		WATCHER, PUSH, PERIODIC
+	}
+	
+	/**
+	 * A folder whose syncs are run by the scheduler, typically a {@link WatchOperation}.
+	 */
+	public interface ScheduledSync {
+		/**
+		 * Runs a single sync iteration. Called on one of the scheduler's worker threads.
+		 */
+		public void runScheduledSync() throws Exception;
+		
+		/**
+		 * Returns whether syncs are paused. Paused folders are retried later.
+		 */
+		public boolean isPaused();
+	}
+	
+	private int intervalJitter;
+	private Random random;
+	
+	private ThreadPoolExecutor workerPool;
+	private ScheduledExecutorService timer;	
+	private AtomicLong taskSequence;
+	
+	private Map<ScheduledSync, FolderState> folders;
+	
+	/**
+	 * Creates a new sync scheduler.
+	 * 
+	 * @param maxConcurrentSyncs Maximum number of syncs running at the same time (= number of worker threads)
+	 * @param intervalJitter Maximum deviation from a folder's sync interval, in percent
+	 */
+	public SyncScheduler(int maxConcurrentSyncs, int intervalJitter) {
+		this.intervalJitter = Math.max(0, Math.min(100, intervalJitter));
+		this.random = new Random();
+		
+		this.workerPool = new ThreadPoolExecutor(maxConcurrentSyncs, maxConcurrentSyncs, 0, TimeUnit.MILLISECONDS, 
+				new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("SyncWorker"));
+		
+		this.workerPool.prestartAllCoreThreads(); // All tasks go through the priority queue
+		
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("SyncTimer"));
+		this.taskSequence = new AtomicLong(0);
+		
+		this.folders = new HashMap<ScheduledSync, FolderState>();
+	}
+	
+	/**
+	 * Registers a folder (typically a {@link WatchOperation}), and immediately queues its first (periodic) sync. 
+	 * Subsequent periodic syncs are scheduled after the given interval (plus/minus jitter).
+	 */
+	public synchronized void register(ScheduledSync scheduledSync, long interval) {
+		logger.log(Level.INFO, "Scheduler: Registering " + scheduledSync + ", interval " + interval + "ms ...");
+		
+		FolderState folderState = new FolderState(scheduledSync, interval);
+		folders.put(scheduledSync, folderState);
+		
+		enqueue(folderState, SyncTrigger.PERIODIC);
+	}
+	
+	/**
+	 * Unregisters a folder, and removes its queued and scheduled syncs. A sync
+	 * that is already running is not interrupted.
+	 */
+	public synchronized void unregister(ScheduledSync scheduledSync) {
+		FolderState folderState = folders.remove(scheduledSync);
+		
+		if (folderState != null) {
+			logger.log(Level.INFO, "Scheduler: Unregistering " + scheduledSync + " ...");
+			
+			cancelPeriodicSync(folderState);
+			
+			if (folderState.queuedTask != null) {
+				workerPool.remove(folderState.queuedTask);
+				folderState.queuedTask = null;
+			}
+		}
+	}
+	
+	/**
+	 * Requests a sync of the given folder. If a sync is already queued with a lower
+	 * priority, its priority is raised. If a sync is running, another sync is queued when
+	 * the running sync has finished.
+	 */
+	public synchronized void requestSync(ScheduledSync scheduledSync, SyncTrigger trigger) {
+		FolderState folderState = folders.get(scheduledSync);
+		
+		if (folderState == null) {
+			return;
+		}
+		
+		if (folderState.running) {
+			if (folderState.pendingTrigger == null || trigger.compareTo(folderState.pendingTrigger) < 0) {
+				folderState.pendingTrigger = trigger;
+			}
+		}
+		else if (folderState.queuedTask != null) {
+			if (trigger.compareTo(folderState.queuedTask.trigger) < 0) {
+				workerPool.remove(folderState.queuedTask);
+				enqueue(folderState, trigger);
+			}
+		}
+		else {
+			enqueue(folderState, trigger);
+		}
+	}
+	
+	/**
+	 * Stops the scheduler. Syncs that are already running are finished, but 
+	 * no new syncs are started.
+	 */
+	public synchronized void stop() {
+		logger.log(Level.INFO, "Scheduler: Stopping ...");
+
+		folders.clear();		
+		timer.shutdownNow();
+		
+		workerPool.getQueue().clear();
+		workerPool.shutdown();
+	}
+	
+	private void enqueue(FolderState folderState, SyncTrigger trigger) {
+		cancelPeriodicSync(folderState);
+		
+		SyncTask syncTask = new SyncTask(folderState, trigger, taskSequence.incrementAndGet());
+		folderState.queuedTask = syncTask;
+		
+		workerPool.execute(syncTask);
+	}
+	
+	private void runTask(SyncTask syncTask) {
+		FolderState folderState = syncTask.folderState;
+		ScheduledSync scheduledSync = folderState.scheduledSync;
+		
+		synchronized (this) {
+			if (folders.get(scheduledSync) != folderState || folderState.queuedTask != syncTask) {
+				return; // Unregistered or superseded
+			}
+			
+			folderState.queuedTask = null;
+			
+			if (scheduledSync.isPaused()) {
+				logger.log(Level.FINE, "Scheduler: " + scheduledSync + " is paused, retrying in " + PAUSE_RETRY_DELAY + "ms ...");
+				scheduleSync(folderState, syncTask.trigger, PAUSE_RETRY_DELAY);
+				
+				return;
+			}
+			
+			folderState.running = true;
+		}
+		
+		try {
+			logger.log(Level.INFO, "Scheduler: Running sync (" + syncTask.trigger + ") of " + scheduledSync + " ...");
+			scheduledSync.runScheduledSync();
+		}
+		catch (Exception e) {
+			logger.log(Level.INFO, "Scheduler: Sync of " + scheduledSync + " FAILED.", e);
+		}
+		finally {
+			synchronized (this) {
+				folderState.running = false;
+				
+				if (folders.get(scheduledSync) == folderState) {
+					if (folderState.pendingTrigger != null) {
+						SyncTrigger pendingTrigger = folderState.pendingTrigger;
+						folderState.pendingTrigger = null;
+						
+						enqueue(folderState, pendingTrigger);
+					}
+					else {
+						scheduleSync(folderState, SyncTrigger.PERIODIC, getJitteredInterval(folderState.interval));
+					}
+				}
+			}
+		}
+	}
+	
+	private void scheduleSync(final FolderState folderState, final SyncTrigger trigger, long delay) {
+		cancelPeriodicSync(folderState);
+		
+		if (!timer.isShutdown()) {
+			folderState.periodicSync = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					requestSync(folderState.scheduledSync, trigger);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private void cancelPeriodicSync(FolderState folderState) {
+		if (folderState.periodicSync != null) {
+			folderState.periodicSync.cancel(false);
+			folderState.periodicSync = null;
+		}
+	}
+	
+	private long getJitteredInterval(long interval) {
+		long maxJitter = interval * intervalJitter / 100;
+		
+		if (maxJitter <= 0) {
+			return interval;
+		}
+		
+		return interval - maxJitter + (long) (random.nextDouble() * 2 * maxJitter);
+	}
+	
+	private static class FolderState {
+		private ScheduledSync scheduledSync;
+		private long interval;
+		
+		private boolean running;
+		private SyncTask queuedTask;
+		private SyncTrigger pendingTrigger;
+		private ScheduledFuture<?> periodicSync;
+		
+		public FolderState(ScheduledSync scheduledSync, long interval) {
+			this.scheduledSync = scheduledSync;
+			this.interval = interval;
+		}
+	}
+	
+	private class SyncTask implements Runnable, Comparable<SyncTask> {
+		private FolderState folderState;
+		private SyncTrigger trigger;
+		private long sequence;
+		
+		public SyncTask(FolderState folderState, SyncTrigger trigger, long sequence) {
+			this.folderState = folderState;
+			this.trigger = trigger;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			runTask(this);
+		}
+
+		@Override
+		public int compareTo(SyncTask other) {
+			int triggerComparison = trigger.compareTo(other.trigger);
+			return (triggerComparison != 0) ? triggerComparison : Long.compare(sequence, other.sequence);
+		}
+	}
+	
+	private static class NamedThreadFactory implements ThreadFactory {
+		private String namePrefix;
+		private AtomicInteger threadNumber;
+		
+		public NamedThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+			this.threadNumber = new AtomicInteger(0);
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, namePrefix + "/" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	}
+}
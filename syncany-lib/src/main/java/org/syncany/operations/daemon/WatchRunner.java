@@ -42,6 +42,9 @@ import com.google.common.eventbus.Subscribe;
  * underlying thred can be started using the {@link #start()} method, and stopped
  * gracefully using {@link #stop()}. 
  * 
+ * <p>If a {@link SyncScheduler} is given, no thread is started. Instead, the watch
+ * operation is registered with the scheduler, which runs its syncs.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class WatchRunner {
@@ -53,10 +56,17 @@ public class WatchRunner {
 	private WatchOperation watchOperation;
 	private WatchOperationResult watchOperationResult;
 	private LocalEventBus eventBus;
+	private SyncScheduler scheduler;
+	private boolean stopped;
 
 	public WatchRunner(Config config, WatchOperationOptions watchOperationOptions, PortTO portTO) throws ConfigException {
+		this(config, watchOperationOptions, portTO, null);
+	}
+	
+	public WatchRunner(Config config, WatchOperationOptions watchOperationOptions, PortTO portTO, SyncScheduler scheduler) throws ConfigException {
 		this.config = config;
 		this.portTO = portTO;
+		this.scheduler = scheduler;
 		this.watchOperation = new WatchOperation(config, watchOperationOptions);
 
 		this.eventBus = LocalEventBus.getInstance();
@@ -64,6 +74,27 @@ public class WatchRunner {
 	}
 
 	public void start() {
+		if (scheduler != null) {
+			startScheduled();
+		}
+		else {
+			startThread();
+		}
+	}
+	
+	private void startScheduled() {
+		try {
+			logger.log(Level.INFO, "STARTING watch at " + config.getLocalDir() + " (scheduled)");
+			
+			writePortFile();
+			watchOperation.start(scheduler);
+		}
+		catch (Exception e) {
+			logger.log(Level.SEVERE, "ERROR while starting watch at " + config.getLocalDir(), e);
+		}
+	}
+	
+	private void startThread() {
 		watchThread = new Thread(new Runnable() {
 			@Override
 			public void run() {
@@ -72,12 +103,7 @@ public class WatchRunner {
 					watchOperationResult = null;
 
 					// Write port to portFile
-					File portFile = config.getPortFile();
-
-					portFile.createNewFile();
-					portFile.deleteOnExit();
-
-					new Persister().write(portTO, portFile);
+					writePortFile();
 
 					// Start operation (blocks!)
 					watchOperationResult = watchOperation.execute();
@@ -93,15 +119,30 @@ public class WatchRunner {
 		watchThread.start();
 	}
 
+	private void writePortFile() throws Exception {
+		File portFile = config.getPortFile();
+
+		portFile.createNewFile();
+		portFile.deleteOnExit();
+
+		new Persister().write(portTO, portFile);
+	}
+
 	public void stop() {
 		watchOperation.stop();
 		config.getPortFile().delete();
 
 		watchThread = null;
+		stopped = true;
 	}
 
 	public boolean hasStopped() {
-		return watchOperationResult != null;
+		if (scheduler != null) {
+			return stopped && !watchOperation.isScheduledSyncRunning();
+		}
+		else {
+			return watchOperationResult != null;
+		}
 	}
 	
 	public boolean isSyncRunning() {
@@ -117,17 +158,22 @@ public class WatchRunner {
 			logger.log(Level.INFO, "Received " + folderRequest);
 			
 			try {
-				if (!watchOperation.isSyncRunning() && !watchOperation.isSyncRequested()) {
+				// Handlers use the shared database session; no sync must run while they do
+				if (watchOperation.tryLockDatabase()) {
 					watchOperation.pause();
 					
-					FolderRequestHandler handler = FolderRequestHandler.createFolderRequestHandler(folderRequest, config);
-					Response response = handler.handleRequest(folderRequest);
-					
-					if (response != null) {
-						eventBus.post(response);
+					try {
+						FolderRequestHandler handler = FolderRequestHandler.createFolderRequestHandler(folderRequest, config);
+						Response response = handler.handleRequest(folderRequest);
+						
+						if (response != null) {
+							eventBus.post(response);
+						}
+					}
+					finally {
+						watchOperation.resume();
+						watchOperation.unlockDatabase();
 					}
-					
-					watchOperation.resume();
 				}
 				else {
 					logger.log(Level.WARNING, "FolderRequest discarded : ", folderRequest);
@@ -32,6 +32,7 @@ import org.syncany.config.DaemonConfigHelper;
 import org.syncany.config.LocalEventBus;
 import org.syncany.config.to.DaemonConfigTO;
 import org.syncany.config.to.FolderTO;
+import org.syncany.config.to.SyncSchedulerTO;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.daemon.Watch.SyncStatus;
 import org.syncany.operations.daemon.messages.AddWatchManagementRequest;
@@ -63,6 +64,9 @@ import com.google.common.eventbus.Subscribe;
  * and then runs new threads for each configured Syncany folder. Invalid or non-existing folders
  * are ignored.
  * 
+ * <p>Unless disabled in the daemon configuration, the syncs of all folders are run by a 
+ * shared {@link SyncScheduler} with a fixed number of worker threads.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class WatchServer {	
@@ -70,6 +74,7 @@ public class WatchServer {
 	
 	private DaemonConfigTO daemonConfig;	
 	private Map<File, WatchRunner> watchOperations;
+	private SyncScheduler syncScheduler;
 	private LocalEventBus eventBus;
 	
 	public WatchServer() {
@@ -95,6 +100,7 @@ public class WatchServer {
 			Map<File, FolderTO> watchedFolders = getFolderMap(daemonConfigTO.getFolders());
 			
 			stopAllWatchOperations();
+			restartSyncScheduler(daemonConfigTO.getSyncScheduler());
 			startWatchOperations(watchedFolders);
 			
 			fireDaemonReloadedEvent();
@@ -117,6 +123,24 @@ public class WatchServer {
 			
 			watchOperations.remove(localDir);
 		}
+		
+		stopSyncScheduler();
+	}
+
+	private void restartSyncScheduler(SyncSchedulerTO syncSchedulerTO) {
+		stopSyncScheduler();
+		
+		if (syncSchedulerTO != null && syncSchedulerTO.getMaxConcurrentSyncs() > 0) {
+			logger.log(Level.INFO, "Starting sync scheduler with " + syncSchedulerTO.getMaxConcurrentSyncs() + " worker(s) ...");
+			syncScheduler = new SyncScheduler(syncSchedulerTO.getMaxConcurrentSyncs(), syncSchedulerTO.getIntervalJitter());
+		}
+	}
+	
+	private void stopSyncScheduler() {
+		if (syncScheduler != null) {
+			syncScheduler.stop();
+			syncScheduler = null;
+		}
 	}
 
 	private void startWatchOperations(Map<File, FolderTO> newWatchedFolderTOs) throws ConfigException, ServiceAlreadyStartedException {
@@ -135,7 +159,7 @@ public class WatchServer {
 						watchOptions = new WatchOperationOptions();
 					}
 					
-					WatchRunner watchRunner = new WatchRunner(watchConfig, watchOptions, daemonConfig.getPortTO());	
+					WatchRunner watchRunner = new WatchRunner(watchConfig, watchOptions, daemonConfig.getPortTO(), syncScheduler);	
 					watchRunner.start();
 	
 					watchOperations.put(localDir, watchRunner);
@@ -97,7 +97,7 @@ public class WebServer {
 		this.clientChannels = new ArrayList<WebSocketChannel>();
 		
 		initCaches();
-		initEventBus();
+		initEventBus(daemonConfig);
 		initServer(daemonConfig);
 	}
 
@@ -108,6 +108,8 @@ public class WebServer {
 	public void stop() {
 		try {
 			logger.log(Level.INFO, "Shutting down websocket server.");
+			
+			eventBus.unregister(this);
 			webServer.stop();
 		}
 		catch (Exception e) {
@@ -126,9 +128,18 @@ public class WebServer {
 				.concurrencyLevel(2).expireAfterAccess(1, TimeUnit.MINUTES).build();
 	}
 
-	private void initEventBus() {
+	private void initEventBus(DaemonConfigTO daemonConfigTO) {
+		WebServerTO webServerConfig = daemonConfigTO.getWebServer();
 		eventBus = LocalEventBus.getInstance();
-		eventBus.register(this);
+		
+		// Deliver events and responses to (possibly slow) clients asynchronously,
+		// so that the sync threads do not wait for the web sockets
+		if (webServerConfig.getEventQueueSize() > 0) {
+			eventBus.registerAsync(this, webServerConfig.getEventQueueSize(), webServerConfig.getMaxProgressEventsPerSecond());
+		}
+		else {
+			eventBus.register(this);
+		}
 	}
 
 	private void initServer(DaemonConfigTO daemonConfigTO) throws Exception {
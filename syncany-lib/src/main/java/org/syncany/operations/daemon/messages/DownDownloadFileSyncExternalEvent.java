@@ -18,8 +18,9 @@
 package org.syncany.operations.daemon.messages;
 
 import org.simpleframework.xml.Element;
+import org.syncany.operations.daemon.messages.api.ProgressEvent;
 
-public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent {
+public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent implements ProgressEvent {
 	@Element
 	private String fileDescription;
 	
@@ -52,4 +53,9 @@ public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent {
 	public int getMaxFileCount() {
 		return maxFileCount;
 	}
+	
+	@Override
+	public String getProgressKey() {
+		return getRoot();
+	}
 }
@@ -0,0 +1,72 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages;
+
+import org.simpleframework.xml.Element;
+import org.syncany.operations.daemon.messages.api.FolderResponse;
+
+public class GetCacheStatsFolderResponse extends FolderResponse {
+	@Element(required = true)
+	private String root;
+
+	@Element(required = true)
+	private long hitCount;
+
+	@Element(required = true)
+	private long missCount;
+
+	@Element(required = true)
+	private long evictionCount;
+
+	@Element(required = true)
+	private long keepBytes;
+
+	public GetCacheStatsFolderResponse() {
+		// Nothing
+	}
+
+	public GetCacheStatsFolderResponse(int requestId, String root, long hitCount, long missCount, long evictionCount, long keepBytes) {
+		super(200, requestId, null);
+
+		this.root = root;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.keepBytes = keepBytes;
+	}
+
+	public String getRoot() {
+		return root;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getKeepBytes() {
+		return keepBytes;
+	}
+}
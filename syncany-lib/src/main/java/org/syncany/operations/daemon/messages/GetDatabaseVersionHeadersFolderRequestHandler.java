@@ -26,12 +26,16 @@ import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
 
+/**
+ * Returns the headers of all non-empty database versions. The headers are read through 
+ * the shared local database session, which no sync uses while the handler runs.
+ */
 public class GetDatabaseVersionHeadersFolderRequestHandler extends FolderRequestHandler {
 	private SqlDatabase localDatabase;
 
 	public GetDatabaseVersionHeadersFolderRequestHandler(Config config) {
 		super(config);
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 	}
 
 	@Override
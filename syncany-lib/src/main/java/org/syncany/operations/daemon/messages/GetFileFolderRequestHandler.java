@@ -39,6 +39,11 @@ import org.syncany.operations.daemon.messages.api.Response;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.util.StringUtil;
 
+/**
+ * Reassembles a file version to the cache. Reads the file and its chunks through the shared
+ * local database session; this is safe, because the handler is never called during a sync 
+ * (see {@link FolderRequestHandler}).
+ */
 public class GetFileFolderRequestHandler extends FolderRequestHandler {
 	private SqlDatabase localDatabase;
 	private LocalEventBus eventBus;
@@ -46,7 +51,7 @@ public class GetFileFolderRequestHandler extends FolderRequestHandler {
 	public GetFileFolderRequestHandler(Config config) {
 		super(config);		
 		
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
@@ -64,11 +69,19 @@ public class GetFileFolderRequestHandler extends FolderRequestHandler {
 
 			TransferManager transferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
 			Downloader downloader = new Downloader(config, transferManager);
-			Assembler assembler = new Assembler(config, localDatabase);
 
 			downloader.downloadAndDecryptMultiChunks(new HashSet<MultiChunkId>(multiChunks.values()));
 
-			File tempFile = assembler.assembleToCache(fileVersion);
+			Assembler assembler = new Assembler(config, localDatabase);
+			File tempFile;
+
+			try {
+				tempFile = assembler.assembleToCache(fileVersion);
+			}
+			finally {
+				assembler.close();
+			}
+
 			String tempFileToken = StringUtil.toHex(ObjectId.secureRandomBytes(40));
 			
 			GetFileFolderResponse fileResponse = new GetFileFolderResponse(concreteRequest.getId(), concreteRequest.getRoot(), tempFileToken);
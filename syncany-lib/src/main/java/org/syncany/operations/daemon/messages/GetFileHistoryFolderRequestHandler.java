@@ -27,6 +27,10 @@ import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
 
+/**
+ * Returns all versions of a file history, as read from the shared local database
+ * session. Like all folder request handlers, it is not called during a sync.
+ */
 @Deprecated
 // TODO [medium] The file history id should be selectable via 'LsRequest'
 public class GetFileHistoryFolderRequestHandler extends FolderRequestHandler {
@@ -34,7 +38,7 @@ public class GetFileHistoryFolderRequestHandler extends FolderRequestHandler {
 
 	public GetFileHistoryFolderRequestHandler(Config config) {
 		super(config);
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 	}
 
 	@Override
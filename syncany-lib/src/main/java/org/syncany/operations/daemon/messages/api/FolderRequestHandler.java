@@ -21,6 +21,12 @@ import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 
+/**
+ * Base class of all handlers for requests regarding a managed folder. Handlers are 
+ * created and called by the folder's {@link org.syncany.operations.daemon.WatchRunner WatchRunner}, 
+ * which holds the watch operation's database lock while a handler runs. Handlers may therefore 
+ * use the folder's shared local database session ({@link Config#getDatabase()}).
+ */
 public abstract class FolderRequestHandler extends RequestHandler {
 	protected static final Logger logger = Logger.getLogger(FolderRequestHandler.class.getSimpleName());
 	protected Config config;
@@ -0,0 +1,34 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages.api;
+
+/**
+ * Progress events report the progress of a long running task, e.g. the
+ * upload or download of a single file. A progress event supersedes all previous
+ * progress events of the same type and with the same progress key.
+ * 
+ * <p>Asynchronous subscribers of the {@link org.syncany.config.InternalEventBus InternalEventBus}
+ * may therefore coalesce or drop progress events, if they cannot keep up.
+ */
+public interface ProgressEvent {
+	/**
+	 * Returns the key that identifies the task whose progress is reported,
+	 * e.g. the local folder of a sync event. 
+	 */
+	public String getProgressKey();
+}
@@ -17,7 +17,9 @@
  */
 package org.syncany.operations.down;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +35,10 @@ import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
+import org.syncany.operations.Assembler;
+import org.syncany.operations.ChunkPosition;
 import org.syncany.operations.Downloader;
+import org.syncany.operations.LocalChunkLocator;
 import org.syncany.operations.Operation;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
@@ -47,7 +52,8 @@ import org.syncany.plugins.transfer.TransferManager;
  * <ul>
  *  <li>Determine whether the local branch needs to be updated (new database versions); if so, determine
  *      local {@link FileSystemAction}s</li>
- *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions
+ *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions;
+ *      chunks that can be found in unchanged local files are copied from there instead of being downloaded
  *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase, MemoryDatabase) determineMultiChunksToDownload()},
  *      and {@link #downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()})</li>
  *  <li>Apply file system actions locally, creating conflict files where necessary if local file does
@@ -61,6 +67,8 @@ public class ApplyChangesOperation extends Operation {
 
 	private SqlDatabase localDatabase;
 	private Downloader downloader;
+	private LocalChunkLocator localChunkLocator;
+	private Map<ChunkChecksum, ChunkPosition> localChunkPositions;
 
 	private MemoryDatabase winnersDatabase;
 	private DownOperationResult result;
@@ -75,6 +83,8 @@ public class ApplyChangesOperation extends Operation {
 		
 		this.localDatabase = localDatabase;
 		this.downloader = new Downloader(config, transferManager);
+		this.localChunkLocator = new LocalChunkLocator(config, localDatabase);
+		this.localChunkPositions = new HashMap<ChunkChecksum, ChunkPosition>();
 		this.winnersDatabase = winnersDatabase;
 		this.result = result;
 		this.cleanupOccurred = cleanupOccurred;
@@ -107,62 +117,79 @@ public class ApplyChangesOperation extends Operation {
 	
 	/**
 	 * Finds the multichunks that need to be downloaded to apply the given file system actions.
-	 * The method looks at all {@link FileCreatingFileSystemAction}s and returns their multichunks. 
+	 * The method looks at all {@link FileCreatingFileSystemAction}s and returns the multichunks of
+	 * all chunks that cannot be copied from local files. 
 	 */
 	private Set<MultiChunkId> determineRequiredMultiChunks(List<FileSystemAction> actions, MemoryDatabase winnersDatabase) {
 		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
 
 		for (FileSystemAction action : actions) {
-			if (action instanceof FileCreatingFileSystemAction) { // TODO [low] This adds ALL multichunks even though some might be available locally
+			if (action instanceof FileCreatingFileSystemAction) {
 				multiChunksToDownload.addAll(determineMultiChunksToDownload(action.getFile2(), winnersDatabase));
 			}
 		}
 
+		logger.log(Level.INFO, "- Found {0} chunk(s) in local files, need to download {1} multichunk(s).", new Object[] { localChunkPositions.size(),
+				multiChunksToDownload.size() });
+
 		return multiChunksToDownload;
 	}
 	
 	/**
 	 * Finds the multichunks that need to be downloaded for the given file version -- using the local 
-	 * database and given winners database. Returns a set of multichunk identifiers.
+	 * database and given winners database. Chunks that can be found in local files are added to the 
+	 * local chunk positions instead. Returns a set of multichunk identifiers.
 	 */
 	private Collection<MultiChunkId> determineMultiChunksToDownload(FileVersion fileVersion, MemoryDatabase winnersDatabase) {
 		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
 
-		// First: Check if we know this file locally!
-		List<MultiChunkId> multiChunkIds = localDatabase.getMultiChunkIds(fileVersion.getChecksum());
+		// First: Check if we know this file locally; if not, it must be from the winners database
+		FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
 		
-		if (multiChunkIds.size() > 0) {
-			multiChunksToDownload.addAll(multiChunkIds);
+		if (fileContent == null) {
+			fileContent = winnersDatabase.getContent(fileVersion.getChecksum());
 		}
-		else {
-			// Second: We don't know it locally; must be from the winners database
-			FileContent winningFileContent = winnersDatabase.getContent(fileVersion.getChecksum());			
-			boolean winningFileHasContent = winningFileContent != null;
-
-			if (winningFileHasContent) { // File can be empty!
-				List<ChunkChecksum> fileChunks = winningFileContent.getChunks(); 
-				
-				// TODO [medium] Instead of just looking for multichunks to download here, we should look for chunks in local files as well
-				// and return the chunk positions in the local files ChunkPosition (chunk123 at file12, offset 200, size 250)
-				
-				Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(fileChunks);
+		
+		if (fileContent == null) { // File can be empty!
+			return multiChunksToDownload;
+		}
+		
+		// Second: Look for the chunks in local files
+		List<ChunkChecksum> fileChunks = fileContent.getChunks();
+		Map<ChunkChecksum, ChunkPosition> fileChunkPositions = localChunkLocator.locateChunks(fileChunks);
+		
+		localChunkPositions.putAll(fileChunkPositions);
+		
+		List<ChunkChecksum> missingChunks = new ArrayList<ChunkChecksum>();
+		
+		for (ChunkChecksum chunkChecksum : fileChunks) {
+			if (!fileChunkPositions.containsKey(chunkChecksum)) {
+				missingChunks.add(chunkChecksum);
+			}
+		}
+		
+		if (missingChunks.isEmpty()) {
+			return multiChunksToDownload;
+		}
+		
+		// Third: Download the multichunks of all chunks that are not available locally
+		Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(missingChunks);
+		
+		for (ChunkChecksum chunkChecksum : missingChunks) {
+			MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
+			
+			if (multiChunkIdForChunk == null) {
+				multiChunkIdForChunk = winnersDatabase.getMultiChunkIdForChunk(chunkChecksum);
 				
-				for (ChunkChecksum chunkChecksum : fileChunks) {
-					MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
-					if (multiChunkIdForChunk == null) {
-						multiChunkIdForChunk = winnersDatabase.getMultiChunkIdForChunk(chunkChecksum);
-						
-						if (multiChunkIdForChunk == null) {
-							throw new RuntimeException("Cannot find multichunk for chunk "+chunkChecksum);	
-						}
-					}
-					
-					if (!multiChunksToDownload.contains(multiChunkIdForChunk)) {
-						logger.log(Level.INFO, "  + Adding multichunk " + multiChunkIdForChunk + " to download list ...");
-						multiChunksToDownload.add(multiChunkIdForChunk);
-					}
+				if (multiChunkIdForChunk == null) {
+					throw new RuntimeException("Cannot find multichunk for chunk "+chunkChecksum);	
 				}
 			}
+			
+			if (!multiChunksToDownload.contains(multiChunkIdForChunk)) {
+				logger.log(Level.INFO, "  + Adding multichunk " + multiChunkIdForChunk + " to download list ...");
+				multiChunksToDownload.add(multiChunkIdForChunk);
+			}
 		}
 		
 		return multiChunksToDownload;
@@ -171,7 +198,12 @@ public class ApplyChangesOperation extends Operation {
 	/**
 	 * Applies the given file system actions in a sensible order. To do that, 
 	 * the given actions are first sorted using the {@link FileSystemActionComparator} and
-	 * then executed individually using {@link FileSystemAction#execute()}.
+	 * then executed using the {@link FileSystemActionExecutor} -- concurrently, if more than
+	 * one applier thread is configured (see {@link Config#getApplierThreads()}).
+	 * 
+	 * <p>Each applier thread uses its own {@link Assembler}, shared by all of the 
+	 * {@link FileCreatingFileSystemAction}s it executes, so that multichunks are 
+	 * not re-opened for every file.
 	 */
 	private void applyFileSystemActions(List<FileSystemAction> actions) throws Exception {
 		// Sort
@@ -181,17 +213,24 @@ public class ApplyChangesOperation extends Operation {
 		logger.log(Level.FINER, "- Applying file system actions (sorted!) ...");
 
 		// Apply
-		for (FileSystemAction action : actions) {
-			if (logger.isLoggable(Level.FINER)) {
-				logger.log(Level.FINER, "   +  {0}", action);
-			}
-
-			// Execute the file system action
+		List<Assembler> assemblers = new ArrayList<Assembler>();
+		
+		for (int i = 0; i < Math.max(1, config.getApplierThreads()); i++) {
+			Assembler assembler = new Assembler(config, localDatabase, winnersDatabase);
 			
-			// Note that exceptions are not caught here, to prevent 
-			// apply-failed-delete-on-up situations.
+			assembler.setLocalChunkPositions(localChunkPositions);
+			assembler.setDownloader(downloader);
 			
-			action.execute(); 
+			assemblers.add(assembler);
+		}
+		
+		try {
+			new FileSystemActionExecutor(assemblers).execute(actions);
+		}
+		finally {
+			for (Assembler assembler : assemblers) {
+				assembler.close();
+			}
 		}
 	}
 }
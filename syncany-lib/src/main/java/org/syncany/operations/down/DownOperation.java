@@ -23,7 +23,6 @@ import java.sql.SQLException;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -41,7 +40,7 @@ import org.syncany.database.MultiChunkEntry;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
-import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.cleanup.CleanupOperation;
@@ -100,7 +99,8 @@ public class DownOperation extends AbstractTransferOperation {
 
 	private SqlDatabase localDatabase;
 	private DatabaseReconciliator databaseReconciliator;
-	private DatabaseXmlSerializer databaseSerializer;
+	private DatabaseSerializer databaseSerializer;
+	private DatabaseSerializer decryptedDatabaseSerializer;
 
 	public DownOperation(Config config) {
 		this(config, new DownOperationOptions());
@@ -114,9 +114,10 @@ public class DownOperation extends AbstractTransferOperation {
 		this.options = options;
 		this.result = new DownOperationResult();
 
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.databaseReconciliator = new DatabaseReconciliator();
-		this.databaseSerializer = new DatabaseXmlSerializer(config.getTransformer());
+		this.databaseSerializer = new DatabaseSerializer(config.getTransformer(), config.getDatabaseFormat());
+		this.decryptedDatabaseSerializer = new DatabaseSerializer(null, config.getDatabaseFormat());
 	}
 
 	/**
@@ -124,6 +125,7 @@ public class DownOperation extends AbstractTransferOperation {
 	 * 
 	 * <ul>
 	 *  <li>Download the remote databases to the local cache folder
+	 *  <li>Decrypt and verify the remote databases (once)
 	 *  <li>Read version headers (vector clocks)
 	 *  <li>Determine winner branch
 	 *  <li>Prune local stuff (if local conflicts exist)
@@ -133,6 +135,17 @@ public class DownOperation extends AbstractTransferOperation {
 	 */
 	@Override
 	public DownOperationResult execute() throws Exception {
+		try {
+			return executeDown();
+		}
+		catch (Exception e) {
+			// Uncommitted changes must not remain in the shared database session; the next commit would persist them
+			localDatabase.rollback();
+			throw e;
+		}
+	}
+
+	private DownOperationResult executeDown() throws Exception {
 		logger.log(Level.INFO, "");
 		logger.log(Level.INFO, "Running 'Sync down' at client " + config.getMachineName() + " ...");
 		logger.log(Level.INFO, "--------------------------------------------");
@@ -154,50 +167,58 @@ public class DownOperation extends AbstractTransferOperation {
 		List<DatabaseRemoteFile> newRemoteDatabases = result.getLsRemoteResult().getUnknownRemoteDatabases();
 
 		TreeMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(newRemoteDatabases);
-		TreeMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
-		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
+		TreeMap<File, DatabaseRemoteFile> decryptedRemoteDatabasesInCache = decryptUnknownRemoteDatabases(unknownRemoteDatabasesInCache);
 
-		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
-		boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
+		// Decrypted databases must be deleted from the cache, even if the operation fails
+		try {
+			TreeMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(decryptedRemoteDatabasesInCache);
+			Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, decryptedRemoteDatabasesInCache);
 
-		List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion = null;
+			Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
+			boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
 
-		if (cleanupOccurred) {
-			logger.log(Level.INFO, "Cleanup occurred. Capturing local file histories, then deleting entire database ...");
+			List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion = null;
 
-			// Capture file histories
-			preDeleteFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
+			if (cleanupOccurred) {
+				logger.log(Level.INFO, "Cleanup occurred. Capturing local file histories, then deleting entire database ...");
 
-			// Get rid of local database
-			localDatabase.deleteAll();
-			localDatabase.commit();
+				// Capture file histories
+				preDeleteFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
 
-			// Set last cleanup values
-			long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
+				// Get rid of local database
+				localDatabase.deleteAll();
+				localDatabase.commit();
 
-			localDatabase.writeCleanupNumber(lastRemoteCleanupNumber);
-			localDatabase.writeCleanupTime(System.currentTimeMillis() / 1000);
+				// Set last cleanup values
+				long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
 
-			localBranch = new DatabaseBranch();
-		}
+				localDatabase.writeCleanupNumber(lastRemoteCleanupNumber);
+				localDatabase.writeCleanupTime(System.currentTimeMillis() / 1000);
 
-		try {
-			DatabaseBranches allBranches = populateDatabaseBranches(localBranch, remoteDatabaseHeaders);
-			Map.Entry<String, DatabaseBranch> winnersBranch = determineWinnerBranch(allBranches);
+				localBranch = new DatabaseBranch();
+			}
+
+			try {
+				DatabaseBranches allBranches = populateDatabaseBranches(localBranch, remoteDatabaseHeaders);
+				Map.Entry<String, DatabaseBranch> winnersBranch = determineWinnerBranch(allBranches);
 
-			purgeConflictingLocalBranch(localBranch, winnersBranch);
-			applyWinnersBranch(localBranch, winnersBranch, databaseVersionLocations, cleanupOccurred,
-					preDeleteFileHistoriesWithLastVersion);
+				purgeConflictingLocalBranch(localBranch, winnersBranch);
+				applyWinnersBranch(localBranch, winnersBranch, databaseVersionLocations, cleanupOccurred,
+						preDeleteFileHistoriesWithLastVersion);
 
-			persistMuddyMultiChunks(winnersBranch, allBranches, databaseVersionLocations);
-			removeNonMuddyMultiChunks();
+				persistMuddyMultiChunks(winnersBranch, allBranches, databaseVersionLocations);
+				removeNonMuddyMultiChunks();
 
-			localDatabase.writeKnownRemoteDatabases(newRemoteDatabases);
-			localDatabase.commit();
+				localDatabase.writeKnownRemoteDatabases(newRemoteDatabases);
+				localDatabase.commit();
+			}
+			catch (Exception e) {
+				localDatabase.rollback();
+				throw e;
+			}
 		}
-		catch (Exception e) {
-			localDatabase.rollback();
-			throw e;
+		finally {
+			deleteDecryptedRemoteDatabases(decryptedRemoteDatabasesInCache);
 		}
 
 		finishOperation();
@@ -296,7 +317,55 @@ public class DownOperation extends AbstractTransferOperation {
 	}
 
 	/**
-	 * Read the given database files into individual per-user {@link DatabaseBranch}es. This method only
+	 * Decrypts the given downloaded database files to the local cache, and returns a map with the
+	 * decrypted files mapped to the given remote database files. Database files that are not correctly
+	 * signed are deleted, and not part of the returned map.
+	 * 
+	 * <p>Decrypting (and verifying) each database file only once allows reading its headers and
+	 * later the required database versions without running the transformer again. For binary database
+	 * files, reading the headers and skipping unneeded database versions does not require reading
+	 * the rest of the file.
+	 */
+	private TreeMap<File, DatabaseRemoteFile> decryptUnknownRemoteDatabases(TreeMap<File, DatabaseRemoteFile> remoteDatabases) throws IOException {
+		logger.log(Level.INFO, "Decrypting unknown databases ...");
+
+		TreeMap<File, DatabaseRemoteFile> decryptedRemoteDatabasesInCache = new TreeMap<File, DatabaseRemoteFile>();
+
+		try {
+			for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
+				File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
+				DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
+				File decryptedRemoteDatabaseFileInCache = config.getCache().getDecryptedDatabaseFile(remoteDatabaseFile.getName());
+
+				// Register file before decrypting, so that partially decrypted files are deleted as well
+				decryptedRemoteDatabasesInCache.put(decryptedRemoteDatabaseFileInCache, remoteDatabaseFile);
+				boolean correctlySigned = databaseSerializer.decrypt(remoteDatabaseFileInCache, decryptedRemoteDatabaseFileInCache);
+
+				if (!correctlySigned) {
+					decryptedRemoteDatabasesInCache.remove(decryptedRemoteDatabaseFileInCache);
+					decryptedRemoteDatabaseFileInCache.delete();
+				}
+			}
+		}
+		catch (Exception e) {
+			deleteDecryptedRemoteDatabases(decryptedRemoteDatabasesInCache);
+			throw e;
+		}
+
+		return decryptedRemoteDatabasesInCache;
+	}
+
+	/**
+	 * Deletes the decrypted database files from the local cache. 
+	 */
+	private void deleteDecryptedRemoteDatabases(TreeMap<File, DatabaseRemoteFile> decryptedRemoteDatabasesInCache) {
+		for (File decryptedRemoteDatabaseFileInCache : decryptedRemoteDatabasesInCache.keySet()) {
+			decryptedRemoteDatabaseFileInCache.delete();
+		}
+	}
+
+	/**
+	 * Read the given (decrypted) database files into individual per-user {@link DatabaseBranch}es. This method only
 	 * reads the headers from the local database files, and not the entire databases into memory.
 	 * 
 	 * <p>The returned database branches contain only the per-client {@link DatabaseVersionHeader}s, and not
@@ -310,20 +379,14 @@ public class DownOperation extends AbstractTransferOperation {
 		// Read database files
 		TreeMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = new TreeMap<DatabaseRemoteFile, List<DatabaseVersion>>();
 
-		Iterator<Entry<File, DatabaseRemoteFile>> remoteDatabasesIt = remoteDatabases.entrySet().iterator();
-		while(remoteDatabasesIt.hasNext()) {
-			Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry = remoteDatabasesIt.next();
+		for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
 			MemoryDatabase remoteDatabase = new MemoryDatabase(); // Database cannot be reused, since these might be different clients
 
 			File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
 			DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
 
-			boolean correctlySigned = databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
-
-			if (correctlySigned)
-				remoteDatabaseHeaders.put(remoteDatabaseFile, remoteDatabase.getDatabaseVersions());
-			else
-				remoteDatabasesIt.remove();
+			decryptedDatabaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
+			remoteDatabaseHeaders.put(remoteDatabaseFile, remoteDatabase.getDatabaseVersions());
 		}
 
 		return remoteDatabaseHeaders;
@@ -554,7 +617,7 @@ public class DownOperation extends AbstractTransferOperation {
 			boolean rangeEnds = lastDatabaseVersionHeader || !nextDatabaseVersionInSameFile;
 
 			if (rangeEnds) {
-				databaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL);
+				decryptedDatabaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL);
 				rangeClientName = null;
 			}
 		}
@@ -634,7 +697,7 @@ public class DownOperation extends AbstractTransferOperation {
 						VectorClock toVersion = muddyDatabaseVersionHeader.getVectorClock();
 
 						logger.log(Level.INFO, "  - Loading " + muddyDatabaseVersionHeader + " from file " + localFileForMuddyDatabaseVersion);
-						databaseSerializer.load(muddyMultiChunksDatabase, localFileForMuddyDatabaseVersion, fromVersion, toVersion,
+						decryptedDatabaseSerializer.load(muddyMultiChunksDatabase, localFileForMuddyDatabaseVersion, fromVersion, toVersion,
 								DatabaseReadType.FULL);
 
 						boolean hasMuddyMultiChunks = muddyMultiChunksDatabase.getMultiChunks().size() > 0;
@@ -0,0 +1,318 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.FileVersion;
+import org.syncany.operations.Assembler;
+import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
+import org.syncany.operations.down.actions.FileSystemAction;
+
+/**
+ * The file system action executor applies a list of {@link FileSystemAction}s, which must
+ * have been sorted by the {@link FileSystemActionComparator}, using one or more threads.
+ *
+ * <p>With a single {@link Assembler} (i.e. a single thread), the actions are executed one by
+ * one in the given order. With multiple assemblers, the executor first builds a dependency
+ * graph: An action depends on all preceding actions that touch the same path, any of its parent
+ * paths or any path below it. This covers parent folders being created before their children,
+ * deletes happening before creates on the same path, rename chains and folders being deleted
+ * after their contents. Actions whose dependencies are all done are executed concurrently,
+ * preferring actions that come first in the given order.
+ *
+ * <p>Since dependent actions are executed in the same relative order as in the sorted list,
+ * the outcome (including the creation of conflict files) is the same as applying the list
+ * sequentially. Paths are compared case-insensitively to be safe on case-insensitive file
+ * systems. If an action fails, no further actions are started, and the first exception is
+ * thrown after all running actions have finished.
+ */
+public class FileSystemActionExecutor {
+	private static final Logger logger = Logger.getLogger(FileSystemActionExecutor.class.getSimpleName());
+
+	private List<Assembler> assemblers;
+
+	/**
+	 * Creates a new executor. Each of the given assemblers is used by one thread
+	 * at a time, so the number of assemblers determines the number of threads.
+	 */
+	public FileSystemActionExecutor(List<Assembler> assemblers) {
+		this.assemblers = assemblers;
+	}
+
+	public void execute(List<FileSystemAction> sortedActions) throws Exception {
+		if (assemblers.size() == 1 || sortedActions.size() <= 1) {
+			executeSequentially(sortedActions);
+		}
+		else {
+			executeConcurrently(sortedActions);
+		}
+	}
+
+	private void executeSequentially(List<FileSystemAction> sortedActions) throws Exception {
+		Assembler assembler = assemblers.get(0);
+
+		for (FileSystemAction action : sortedActions) {
+			executeAction(action, assembler);
+		}
+	}
+
+	private void executeConcurrently(List<FileSystemAction> sortedActions) throws Exception {
+		int threads = assemblers.size();
+		List<ActionNode> actionNodes = buildDependencyGraph(sortedActions);
+
+		logger.log(Level.INFO, "- Applying {0} file system actions using up to {1} threads ...", new Object[] { sortedActions.size(), threads });
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<ActionNode> completionService = new ExecutorCompletionService<ActionNode>(executor);
+		BlockingQueue<Assembler> idleAssemblers = new LinkedBlockingQueue<Assembler>(assemblers);
+
+		PriorityQueue<ActionNode> readyActionNodes = new PriorityQueue<ActionNode>(actionNodes.size(), new Comparator<ActionNode>() {
+			@Override
+			public int compare(ActionNode node1, ActionNode node2) {
+				return Integer.compare(node1.index, node2.index);
+			}
+		});
+
+		for (ActionNode actionNode : actionNodes) {
+			if (actionNode.unfinishedDependencies == 0) {
+				readyActionNodes.add(actionNode);
+			}
+		}
+
+		int runningActions = 0;
+		Throwable firstFailure = null;
+
+		try {
+			while (true) {
+				// Start ready actions (unless an action has failed)
+				while (firstFailure == null && runningActions < threads && !readyActionNodes.isEmpty()) {
+					completionService.submit(new ActionWorker(readyActionNodes.poll(), idleAssemblers));
+					runningActions++;
+				}
+
+				if (runningActions == 0) {
+					break;
+				}
+
+				// Wait for next action to finish, and release its dependents
+				try {
+					ActionNode finishedActionNode = completionService.take().get();
+
+					for (ActionNode dependentActionNode : finishedActionNode.dependents) {
+						if (--dependentActionNode.unfinishedDependencies == 0) {
+							readyActionNodes.add(dependentActionNode);
+						}
+					}
+				}
+				catch (ExecutionException e) {
+					if (firstFailure == null) {
+						firstFailure = e.getCause();
+					}
+				}
+				finally {
+					runningActions--;
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		if (firstFailure instanceof Exception) {
+			throw (Exception) firstFailure;
+		}
+		else if (firstFailure != null) {
+			throw new Exception("Applying file system actions failed.", firstFailure);
+		}
+	}
+
+	/**
+	 * Builds the dependency graph for the given sorted actions. To avoid comparing all
+	 * pairs of actions, each path (and each of its parent paths) remembers the last action
+	 * that touched it exactly, as well as the actions that touched it or a path below it
+	 * since then. Dependencies on earlier actions are covered transitively.
+	 */
+	private List<ActionNode> buildDependencyGraph(List<FileSystemAction> sortedActions) {
+		List<ActionNode> actionNodes = new ArrayList<ActionNode>(sortedActions.size());
+		Map<String, PathEntry> pathEntries = new HashMap<String, PathEntry>();
+
+		for (int i = 0; i < sortedActions.size(); i++) {
+			ActionNode actionNode = new ActionNode(i, sortedActions.get(i));
+			Set<String> actionPaths = getActionPaths(actionNode.action);
+			Set<ActionNode> dependencies = new LinkedHashSet<ActionNode>();
+
+			// Determine dependencies
+			for (String actionPath : actionPaths) {
+				for (String parentPath : getParentPaths(actionPath)) {
+					PathEntry parentPathEntry = pathEntries.get(parentPath);
+
+					if (parentPathEntry != null && parentPathEntry.lastAction != null) {
+						dependencies.add(parentPathEntry.lastAction);
+					}
+				}
+
+				PathEntry pathEntry = pathEntries.get(actionPath);
+
+				if (pathEntry != null) {
+					dependencies.addAll(pathEntry.subtreeActions);
+				}
+			}
+
+			for (ActionNode dependency : dependencies) {
+				dependency.dependents.add(actionNode);
+				actionNode.unfinishedDependencies++;
+			}
+
+			// Register action for its paths
+			for (String actionPath : actionPaths) {
+				PathEntry pathEntry = getOrCreatePathEntry(pathEntries, actionPath);
+
+				pathEntry.lastAction = actionNode;
+				pathEntry.subtreeActions.clear();
+				pathEntry.subtreeActions.add(actionNode);
+
+				for (String parentPath : getParentPaths(actionPath)) {
+					getOrCreatePathEntry(pathEntries, parentPath).subtreeActions.add(actionNode);
+				}
+			}
+
+			actionNodes.add(actionNode);
+		}
+
+		return actionNodes;
+	}
+
+	private Set<String> getActionPaths(FileSystemAction action) {
+		Set<String> actionPaths = new LinkedHashSet<String>();
+
+		for (FileVersion fileVersion : new FileVersion[] { action.getFile1(), action.getFile2() }) {
+			if (fileVersion != null) {
+				actionPaths.add(fileVersion.getPath().toLowerCase(Locale.ROOT));
+			}
+		}
+
+		return actionPaths;
+	}
+
+	private List<String> getParentPaths(String path) {
+		List<String> parentPaths = new ArrayList<String>();
+		int lastSlashIndex = path.lastIndexOf('/');
+
+		while (lastSlashIndex > 0) {
+			path = path.substring(0, lastSlashIndex);
+			parentPaths.add(path);
+
+			lastSlashIndex = path.lastIndexOf('/');
+		}
+
+		return parentPaths;
+	}
+
+	private PathEntry getOrCreatePathEntry(Map<String, PathEntry> pathEntries, String path) {
+		PathEntry pathEntry = pathEntries.get(path);
+
+		if (pathEntry == null) {
+			pathEntry = new PathEntry();
+			pathEntries.put(path, pathEntry);
+		}
+
+		return pathEntry;
+	}
+
+	private static void executeAction(FileSystemAction action, Assembler assembler) throws Exception {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.log(Level.FINER, "   +  {0}", action);
+		}
+
+		if (action instanceof FileCreatingFileSystemAction) {
+			((FileCreatingFileSystemAction) action).setAssembler(assembler);
+		}
+
+		// Execute the file system action
+
+		// Note that exceptions are not caught here, to prevent
+		// apply-failed-delete-on-up situations.
+
+		action.execute();
+	}
+
+	private static class ActionNode {
+		private int index;
+		private FileSystemAction action;
+		private List<ActionNode> dependents;
+		private int unfinishedDependencies;
+
+		public ActionNode(int index, FileSystemAction action) {
+			this.index = index;
+			this.action = action;
+			this.dependents = new ArrayList<ActionNode>();
+			this.unfinishedDependencies = 0;
+		}
+	}
+
+	private static class PathEntry {
+		private ActionNode lastAction;
+		private List<ActionNode> subtreeActions = new ArrayList<ActionNode>();
+	}
+
+	/**
+	 * An action worker executes a single action with an idle assembler, and
+	 * returns the assembler to the idle assemblers afterwards.
+	 */
+	private static class ActionWorker implements Callable<ActionNode> {
+		private ActionNode actionNode;
+		private BlockingQueue<Assembler> idleAssemblers;
+
+		public ActionWorker(ActionNode actionNode, BlockingQueue<Assembler> idleAssemblers) {
+			this.actionNode = actionNode;
+			this.idleAssemblers = idleAssemblers;
+		}
+
+		@Override
+		public ActionNode call() throws Exception {
+			Assembler assembler = idleAssemblers.take();
+
+			try {
+				executeAction(actionNode.action, assembler);
+				return actionNode;
+			}
+			finally {
+				idleAssemblers.add(assembler);
+			}
+		}
+	}
+}
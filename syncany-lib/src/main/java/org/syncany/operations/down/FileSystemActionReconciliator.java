@@ -136,7 +136,7 @@ public class FileSystemActionReconciliator {
 	public FileSystemActionReconciliator(Config config, ChangeSet changeSet) {
 		this.config = config; 
 		this.changeSet = changeSet;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
 	}
 	
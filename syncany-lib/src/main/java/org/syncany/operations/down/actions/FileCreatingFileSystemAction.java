@@ -24,14 +24,24 @@ import org.syncany.config.Config;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
-import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Assembler;
 import org.syncany.util.NormalizedPath;
 
 public abstract class FileCreatingFileSystemAction extends FileSystemAction {
+	private Assembler assembler;
+	
 	public FileCreatingFileSystemAction(Config config, MemoryDatabase winningDatabase, FileVersion file1, FileVersion file2) {
 		super(config, winningDatabase, file1, file2);				
 	}
+	
+	/**
+	 * Sets the assembler used to reassemble files. Setting a shared assembler allows reusing
+	 * open multichunks across file system actions. If no assembler is set, a new assembler
+	 * is created for each file.
+	 */
+	public void setAssembler(Assembler assembler) {
+		this.assembler = assembler;
+	}
 
 	protected void createFileFolderOrSymlink(FileVersion reconstructedFileVersion) throws Exception {
 		if (reconstructedFileVersion.getType() == FileType.FILE) {
@@ -76,10 +86,21 @@ public abstract class FileCreatingFileSystemAction extends FileSystemAction {
 	}
 	
 	protected File assembleFileToCache(FileVersion reconstructedFileVersion) throws Exception {
-		SqlDatabase localDatabase = new SqlDatabase(config);
-		Assembler assembler = new Assembler(config, localDatabase, winningDatabase);
-
-		File reconstructedFileInCache = assembler.assembleToCache(reconstructedFileVersion);
+		File reconstructedFileInCache = null;
+		
+		if (assembler != null) {
+			reconstructedFileInCache = assembler.assembleToCache(reconstructedFileVersion);
+		}
+		else {
+			Assembler fileAssembler = new Assembler(config, config.getDatabase(), winningDatabase);
+			
+			try {
+				reconstructedFileInCache = fileAssembler.assembleToCache(reconstructedFileVersion);
+			}
+			finally {
+				fileAssembler.close();
+			}
+		}
 		 
 		setFileAttributes(reconstructedFileVersion, reconstructedFileInCache);
 		setLastModified(reconstructedFileVersion, reconstructedFileInCache);
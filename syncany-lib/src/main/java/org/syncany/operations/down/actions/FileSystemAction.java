@@ -198,7 +198,8 @@ public abstract class FileSystemAction {
 			logger.log(Level.INFO, "     - Creating folder at " + targetDir.toFile() + " ...");
 			boolean targetDirCreated = targetDir.toFile().mkdirs();
 			
-			if (!targetDirCreated) {
+			// Folder might have been created concurrently by another action
+			if (!targetDirCreated && !FileUtil.isDirectory(targetDir.toFile())) {
 				throw new Exception("Cannot create target dir: "+targetDir);
 			}
 		}
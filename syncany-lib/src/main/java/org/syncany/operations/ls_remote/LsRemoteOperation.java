@@ -58,7 +58,7 @@ public class LsRemoteOperation extends Operation {
 		super(config);
 
 		this.loadedTransferManager = transferManager;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
@@ -75,25 +75,25 @@ public class LsRemoteOperation extends Operation {
 				: config.getTransferPlugin().createTransferManager(config.getConnection(), config);
 
 		List<DatabaseRemoteFile> knownDatabases = localDatabase.getKnownDatabases();
-		List<DatabaseRemoteFile> unknownRemoteDatabases = listUnknownRemoteDatabases(transferManager, knownDatabases);
+		Map<String, DatabaseRemoteFile> remoteDatabases = listRemoteDatabases(transferManager);
+		List<DatabaseRemoteFile> unknownRemoteDatabases = findUnknownRemoteDatabases(remoteDatabases, knownDatabases);
 
 		transferManager.disconnect();
 
 		boolean hasChanges = unknownRemoteDatabases.size() > 0;
 		eventBus.post(new LsRemoteEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), hasChanges));
 
-		return new LsRemoteOperationResult(new ArrayList<>(unknownRemoteDatabases));
+		return new LsRemoteOperationResult(new ArrayList<>(unknownRemoteDatabases), new ArrayList<>(remoteDatabases.values()));
 	}
 
-	private List<DatabaseRemoteFile> listUnknownRemoteDatabases(TransferManager transferManager, List<DatabaseRemoteFile> knownDatabases)
-			throws StorageException {
+	private Map<String, DatabaseRemoteFile> listRemoteDatabases(TransferManager transferManager) throws StorageException {
 		logger.log(Level.INFO, "Retrieving remote database list.");
+		return transferManager.list(DatabaseRemoteFile.class);
+	}
 
+	private List<DatabaseRemoteFile> findUnknownRemoteDatabases(Map<String, DatabaseRemoteFile> remoteDatabaseFiles, List<DatabaseRemoteFile> knownDatabases) {
 		List<DatabaseRemoteFile> unknownRemoteDatabases = new ArrayList<DatabaseRemoteFile>();
 
-		// List all remote database files
-		Map<String, DatabaseRemoteFile> remoteDatabaseFiles = transferManager.list(DatabaseRemoteFile.class);
-
 		for (DatabaseRemoteFile remoteDatabaseFile : remoteDatabaseFiles.values()) {
 			// This does NOT filter 'lock' files!
 			if (knownDatabases.contains(remoteDatabaseFile)) {
@@ -24,16 +24,30 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 
 public class LsRemoteOperationResult implements OperationResult {
 	private ArrayList<DatabaseRemoteFile> unknownRemoteDatabases;
+	private ArrayList<DatabaseRemoteFile> remoteDatabases;
 
 	public LsRemoteOperationResult() {
 		// Nothing.
 	}
 	
 	public LsRemoteOperationResult(ArrayList<DatabaseRemoteFile> unknownRemoteDatabases) {
+		this(unknownRemoteDatabases, null);
+	}
+	
+	public LsRemoteOperationResult(ArrayList<DatabaseRemoteFile> unknownRemoteDatabases, ArrayList<DatabaseRemoteFile> remoteDatabases) {
 		this.unknownRemoteDatabases = unknownRemoteDatabases;
+		this.remoteDatabases = remoteDatabases;
 	}
 
 	public ArrayList<DatabaseRemoteFile> getUnknownRemoteDatabases() {
 		return unknownRemoteDatabases;
 	}
+
+	/**
+	 * Returns all remote databases (known and unknown) as listed by the operation,
+	 * or <tt>null</tt> if they are not known.
+	 */
+	public ArrayList<DatabaseRemoteFile> getRemoteDatabases() {
+		return remoteDatabases;
+	}
 }
\ No newline at end of file
@@ -53,7 +53,7 @@ public class RestoreOperation extends AbstractTransferOperation {
 		super(config, ACTION_ID);
 		
 		this.options = options;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.downloader = new Downloader(config, transferManager);
 	}
 
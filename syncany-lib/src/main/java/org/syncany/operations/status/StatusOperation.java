@@ -23,10 +23,17 @@ import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +54,14 @@ import org.syncany.util.FileUtil;
  * The status operation analyzes the local file tree and compares it to the current local
  * database. It uses the {@link FileVersionComparator} to determine differences and returns
  * new/changed/deleted files in form of a {@link ChangeSet}.
+ * 
+ * <p>If the options contain a set of dirty paths (e.g. collected by a file watcher),
+ * only the subtrees of these paths are analyzed and compared to the database. Otherwise,
+ * the entire local folder is walked, and compared to the current file tree as read from
+ * the file tree index (see {@link SqlDatabase#getCurrentFileTreeIndex()}).
+ * 
+ * <p>Files are only checked for locks if they appear to be new or changed, because
+ * unchanged files would not be indexed anyway.
  *   
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -67,7 +82,7 @@ public class StatusOperation extends Operation {
 		super(config);		
 		
 		this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.options = options;		
 		
 		this.eventBus = LocalEventBus.getInstance();
@@ -83,16 +98,30 @@ public class StatusOperation extends Operation {
 			logger.log(Level.INFO, "Force checksum ENABLED.");
 		}
 		
+		// Reload ignore rules (only if .syignore has changed)
+		if (config.getIgnoredFiles().reloadPatternsIfModified()) {
+			logger.log(Level.INFO, "Ignore file changed, reloaded ignore patterns.");
+		}
+		
 		// Get local database
 		logger.log(Level.INFO, "Querying current file tree from database ...");				
 		eventBus.post(new StatusStartSyncExternalEvent(config.getLocalDir().getAbsolutePath()));		
 		
-		// Path to actual file version
-		final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
-
-		// Find local changes
-		logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
-		ChangeSet localChanges = findLocalChanges(filesInDatabase);
+		Set<String> dirtyPaths = (options != null) ? options.getDirtyPaths() : null;
+		ChangeSet localChanges;
+		
+		if (dirtyPaths == null) {
+			// Path to actual file version
+			final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTreeIndex();
+	
+			// Find local changes
+			logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
+			localChanges = findLocalChanges(filesInDatabase);
+		}
+		else {
+			logger.log(Level.INFO, "Analyzing " + dirtyPaths.size() + " dirty path(s) in local folder "+config.getLocalDir()+" ...");
+			localChanges = findLocalChangesInSubtrees(dirtyPaths);
+		}
 		
 		if (!localChanges.hasChanges()) {
 			logger.log(Level.INFO, "- No changes to local database");
@@ -114,6 +143,90 @@ public class StatusOperation extends Operation {
 		return localChanges;
 	}		
 	
+	/**
+	 * Analyzes only the subtrees of the given dirty paths (relative to the local folder),
+	 * and compares them to the corresponding subtrees in the database. Everything outside of
+	 * these subtrees is assumed to be unchanged.
+	 */
+	private ChangeSet findLocalChangesInSubtrees(Set<String> dirtyPaths) throws FileNotFoundException, IOException {
+		Path rootPath = Paths.get(config.getLocalDir().getAbsolutePath());
+		Set<String> subtreePaths = findSubtreePaths(dirtyPaths);
+		
+		Map<String, FileVersion> filesInDatabase = new HashMap<String, FileVersion>();
+		List<Path> subtreeRootPaths = new ArrayList<Path>();
+		
+		for (String subtreePath : subtreePaths) {
+			if (subtreePath.isEmpty()) { // Root folder is dirty
+				return findLocalChanges(localDatabase.getCurrentFileTreeIndex());
+			}
+			
+			if (isInIgnoredFolder(subtreePath)) {
+				logger.log(Level.FINEST, "- Ignoring dirty path (in ignored folder): {0}", subtreePath);
+				continue;
+			}
+			
+			filesInDatabase.putAll(localDatabase.getCurrentFileSubtree(subtreePath));
+			subtreeRootPaths.add(rootPath.resolve(subtreePath));
+		}
+		
+		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);
+		
+		for (Path subtreeRootPath : subtreeRootPaths) {
+			if (Files.exists(subtreeRootPath, LinkOption.NOFOLLOW_LINKS)) {
+				Files.walkFileTree(subtreeRootPath, fileVisitor);
+			}
+		}
+		
+		ChangeSet localChanges = fileVisitor.getChangeSet();
+		findAndAppendDeletedFiles(localChanges, filesInDatabase);
+
+		return localChanges;
+	}
+	
+	/**
+	 * Removes all paths whose parent folders are in the set as well, because
+	 * their subtrees are already covered by the parent folder's subtree.
+	 */
+	private Set<String> findSubtreePaths(Set<String> dirtyPaths) {
+		Set<String> subtreePaths = new HashSet<String>();
+		
+		for (String dirtyPath : new TreeSet<String>(dirtyPaths)) {
+			if (!FileUtil.isDatabasePathInSubtrees(dirtyPath, subtreePaths)) {
+				subtreePaths.add(dirtyPath);
+			}
+		}
+		
+		return subtreePaths;
+	}
+	
+	/**
+	 * Checks whether one of the parent folders of the given path is ignored. A full
+	 * tree walk would have skipped these folders (unless they are already known).
+	 */
+	private boolean isInIgnoredFolder(String path) {
+		int lastSlashIndex = path.lastIndexOf('/');
+		
+		while (lastSlashIndex > 0) {
+			String parentPath = path.substring(0, lastSlashIndex);
+			
+			if (config.getIgnoredFiles().isFileIgnored(parentPath) && !isKnownPath(parentPath)) {
+				return true;
+			}
+			
+			lastSlashIndex = parentPath.lastIndexOf('/');
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Checks whether the given path is part of the current file tree. Ignored folders
+	 * rarely contain known files, so the subtree query is typically empty.
+	 */
+	private boolean isKnownPath(String path) {
+		return localDatabase.getCurrentFileSubtree(path).containsKey(path);
+	}
+	
 	private ChangeSet findLocalChangedAndNewFiles(final File root, Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
 		Path rootPath = Paths.get(root.getAbsolutePath());
 		
@@ -176,11 +289,10 @@ public class StatusOperation extends Operation {
 				return FileVisitResult.SKIP_SUBTREE;
 			}
 				
-			// Check if file is locked
-			boolean fileLocked = FileUtil.isFileLocked(actualLocalFile.toFile());
+			// Check if file is locked (before reading it to calculate the checksum)
+			boolean forceChecksum = options != null && options.isForceChecksum();
 			
-			if (fileLocked) {
-				logger.log(Level.FINEST, "- Ignoring file (locked): {0}", relativeFilePath);						
+			if (forceChecksum && isFileLocked(actualLocalFile, relativeFilePath)) {
 				return FileVisitResult.CONTINUE;
 			}				
 			
@@ -189,18 +301,21 @@ public class StatusOperation extends Operation {
 			
 			if (expectedLastFileVersion != null) {				
 				// Compare
-				boolean forceChecksum = options != null && options.isForceChecksum();
 				FileVersionComparison fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), forceChecksum); 
 				
 				if (fileVersionComparison.equals()) {
 					changeSet.getUnchangedFiles().add(relativeFilePath);
 				}
-				else {
+				else if (forceChecksum || !isFileLocked(actualLocalFile, relativeFilePath)) {
 					changeSet.getChangedFiles().add(relativeFilePath);
 				}					
 			}
 			else {
 				if (!config.getIgnoredFiles().isFileIgnored(relativeFilePath)) {
+					if (!forceChecksum && isFileLocked(actualLocalFile, relativeFilePath)) {
+						return FileVisitResult.CONTINUE;
+					}
+					
 					changeSet.getNewFiles().add(relativeFilePath);
 					logger.log(Level.FINEST, "- New file: "+relativeFilePath);
 				}
@@ -222,6 +337,16 @@ public class StatusOperation extends Operation {
 			}
 		}
 		
+		private boolean isFileLocked(Path actualLocalFile, String relativeFilePath) {
+			boolean fileLocked = FileUtil.isFileLocked(actualLocalFile.toFile());
+			
+			if (fileLocked) {
+				logger.log(Level.FINEST, "- Ignoring file (locked): {0}", relativeFilePath);
+			}
+			
+			return fileLocked;
+		}
+		
 		@Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException { 
 			return visitFile(dir, attrs);
 		}
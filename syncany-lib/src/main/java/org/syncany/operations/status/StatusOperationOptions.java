@@ -17,6 +17,8 @@
  */
 package org.syncany.operations.status;
 
+import java.util.Set;
+
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 import org.syncany.operations.OperationOptions;
@@ -26,11 +28,26 @@ public class StatusOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean forceChecksum = false;
 
+	private Set<String> dirtyPaths = null;
+
 	public boolean isForceChecksum() {
 		return forceChecksum;
 	}
 
 	public void setForceChecksum(boolean forceChecksum) {
 		this.forceChecksum = forceChecksum;
+	}
+
+	/**
+	 * Returns the relative paths of the files and folders that might have
+	 * changed since the last status, or <tt>null</tt> if the entire local
+	 * folder must be analyzed. Folders include their subtrees.
+	 */
+	public Set<String> getDirtyPaths() {
+		return dirtyPaths;
+	}
+
+	public void setDirtyPaths(Set<String> dirtyPaths) {
+		this.dirtyPaths = dirtyPaths;
 	}				
 }
\ No newline at end of file
@@ -24,8 +24,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,6 +76,11 @@ import org.syncany.util.StringUtil;
  * dirty database into account. Lookups for chunks and file histories are performed 
  * on both databases.
  * 
+ * <p>The indexer can be called multiple times to index a large set of files in batches
+ * (see {@link #index(List, Set, boolean) index()}). The file histories loaded from the
+ * database are kept across calls, and are updated with the new database version after
+ * each call. The caller must persist each new database version before the next call.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Indexer {
@@ -88,10 +95,18 @@ public class Indexer {
 
 	private LocalEventBus eventBus;
 
+	private Map<FileHistoryId, PartialFileHistory> fileHistoryCache;
+	private Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache;
+	private Map<String, PartialFileHistory> filePathCache;
+
 	public Indexer(Config config, Deduper deduper) {
+		this(config, deduper, config.getDatabase());
+	}
+
+	public Indexer(Config config, Deduper deduper, SqlDatabase localDatabase) {
 		this.config = config;
 		this.deduper = deduper;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = localDatabase;
 
 		this.eventBus = LocalEventBus.getInstance();
 	}
@@ -110,56 +125,128 @@ public class Indexer {
 	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
 	 */
 	public DatabaseVersion index(List<File> files) throws IOException {
-		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
+		return index(files, null);
+	}
 
-		// Load file history cache
-		List<PartialFileHistory> fileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
+	/**
+	 * Same as {@link #index(List)}, but only looks for deleted files in the subtrees of the 
+	 * given dirty paths (relative to the local folder). If <tt>dirtyPaths</tt> is <tt>null</tt>,
+	 * all known files are checked.
+	 * 
+	 * @param files List of files to be deduplicated
+	 * @param dirtyPaths Relative paths of the files/folders that might have changed, or <tt>null</tt>
+	 * @return New database version containing new/changed/deleted entities
+	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
+	 */
+	public DatabaseVersion index(List<File> files, Set<String> dirtyPaths) throws IOException {
+		return index(files, dirtyPaths, true);
+	}
 
-		// TODO [medium] This should be in FileHistoryDao
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = fillFileChecksumCache(fileHistoriesWithLastVersion);
-		Map<String, PartialFileHistory> filePathCache = fillFilePathCache(fileHistoriesWithLastVersion);
+	/**
+	 * Same as {@link #index(List, Set)}, but only looks for deleted files if <tt>lookForDeletedFiles</tt>
+	 * is set. This method is used to index a large set of files in multiple batches: Each batch results 
+	 * in a separate database version, and deleted files are only detected in the last batch (so that 
+	 * files moved across batches are still detected as renamed).
+	 * 
+	 * <p>The file histories loaded from the database in the first call are updated with the returned
+	 * database version. The caller must therefore persist the returned database version before this
+	 * method is called again.
+	 * 
+	 * @param files List of files to be deduplicated
+	 * @param dirtyPaths Relative paths of the files/folders that might have changed, or <tt>null</tt>
+	 * @param lookForDeletedFiles Whether to add deleted versions for vanished files
+	 * @return New database version containing new/changed(/deleted) entities
+	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
+	 */
+	public DatabaseVersion index(List<File> files, Set<String> dirtyPaths, boolean lookForDeletedFiles) throws IOException {
+		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
+
+		// Load file history cache (only in first call)
+		if (fileHistoryCache == null) {
+			loadFileHistoryCaches();
+		}
 
 		// Find and index new files
 		deduper.deduplicate(files, new IndexerDeduperListener(newDatabaseVersion, fileChecksumCache, filePathCache));
 
 		// Find and remove deleted files
-		removeDeletedFiles(newDatabaseVersion, fileHistoriesWithLastVersion);
+		if (lookForDeletedFiles) {
+			removeDeletedFiles(newDatabaseVersion, fileHistoryCache.values(), dirtyPaths);
+		}
+
+		// Update file history caches for the next call
+		updateFileHistoryCaches(newDatabaseVersion);
 
 		return newDatabaseVersion;
 	}
 
-	private Map<String, PartialFileHistory> fillFilePathCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<String, PartialFileHistory> filePathCache = new HashMap<String, PartialFileHistory>();
+	private void loadFileHistoryCaches() {
+		List<PartialFileHistory> fileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
+
+		// TODO [medium] This should be in FileHistoryDao
+		fileHistoryCache = new LinkedHashMap<FileHistoryId, PartialFileHistory>();
+		fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+		filePathCache = new HashMap<String, PartialFileHistory>();
 
 		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			filePathCache.put(fileHistory.getLastVersion().getPath(), fileHistory);
+			addToFileHistoryCaches(fileHistory);
 		}
-
-		return filePathCache;
 	}
 
-	private Map<FileChecksum, List<PartialFileHistory>> fillFileChecksumCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+	private void updateFileHistoryCaches(DatabaseVersion newDatabaseVersion) {
+		for (PartialFileHistory newFileHistory : newDatabaseVersion.getFileHistories()) {
+			PartialFileHistory lastFileHistory = fileHistoryCache.get(newFileHistory.getFileHistoryId());
 
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			FileChecksum fileChecksum = fileHistory.getLastVersion().getChecksum();
+			if (lastFileHistory != null) {
+				removeFromFileHistoryCaches(lastFileHistory);
+			}
 
-			if (fileChecksum != null) {
-				List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileChecksum);
+			addToFileHistoryCaches(newFileHistory);
+		}
+	}
 
-				if (fileHistoriesWithSameChecksum == null) {
-					fileHistoriesWithSameChecksum = new ArrayList<PartialFileHistory>();
-				}
+	private void addToFileHistoryCaches(PartialFileHistory fileHistory) {
+		FileChecksum fileChecksum = fileHistory.getLastVersion().getChecksum();
 
-				fileHistoriesWithSameChecksum.add(fileHistory);
+		fileHistoryCache.put(fileHistory.getFileHistoryId(), fileHistory);
+		filePathCache.put(fileHistory.getLastVersion().getPath(), fileHistory);
+
+		if (fileChecksum != null) {
+			List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileChecksum);
+
+			if (fileHistoriesWithSameChecksum == null) {
+				fileHistoriesWithSameChecksum = new ArrayList<PartialFileHistory>();
 				fileChecksumCache.put(fileChecksum, fileHistoriesWithSameChecksum);
 			}
+
+			fileHistoriesWithSameChecksum.add(fileHistory);
 		}
+	}
 
-		return fileChecksumCache;
+	private void removeFromFileHistoryCaches(PartialFileHistory fileHistory) {
+		FileChecksum fileChecksum = fileHistory.getLastVersion().getChecksum();
+		String filePath = fileHistory.getLastVersion().getPath();
+
+		fileHistoryCache.remove(fileHistory.getFileHistoryId());
+
+		if (filePathCache.get(filePath) == fileHistory) {
+			filePathCache.remove(filePath);
+		}
+
+		if (fileChecksum != null) {
+			List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileChecksum);
+
+			if (fileHistoriesWithSameChecksum != null) {
+				fileHistoriesWithSameChecksum.remove(fileHistory);
+
+				if (fileHistoriesWithSameChecksum.isEmpty()) {
+					fileChecksumCache.remove(fileChecksum);
+				}
+			}
+		}
 	}
 
-	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion, List<PartialFileHistory> fileHistoriesWithLastVersion) {
+	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion, Collection<PartialFileHistory> fileHistoriesWithLastVersion, Set<String> dirtyPaths) {
 		logger.log(Level.FINER, "- Looking for deleted files ...");
 
 		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
@@ -177,12 +264,16 @@ public class Indexer {
 				continue;
 			}
 
+			// Ignore this file history if it is not affected by any changes (if known)
+			if (dirtyPaths != null && !FileUtil.isDatabasePathInSubtrees(lastLocalVersion.getPath(), dirtyPaths)) {
+				continue;
+			}
+
 			// Add this file history if a new file with this name has been added (file type change)
-			PartialFileHistory newFileWithSameName = getFileHistoryByPathFromDatabaseVersion(newDatabaseVersion, fileHistory.getLastVersion()
-					.getPath());
+			boolean replacedByNewFile = isReplacedByNewFile(newDatabaseVersion, fileHistory);
 
 			// If file has VANISHED, mark as DELETED
-			if (!FileUtil.exists(lastLocalVersionOnDisk) || newFileWithSameName != null) {
+			if (!FileUtil.exists(lastLocalVersionOnDisk) || replacedByNewFile) {
 				PartialFileHistory deletedFileHistory = new PartialFileHistory(fileHistory.getFileHistoryId());
 				FileVersion deletedVersion = lastLocalVersion.clone();
 
@@ -199,18 +290,22 @@ public class Indexer {
 		}
 	}
 
-	private PartialFileHistory getFileHistoryByPathFromDatabaseVersion(DatabaseVersion databaseVersion, String path) {
-		// TODO [medium] Extremely performance intensive, because this is called inside a loop above. Implement better caching for database version!!!
+	/**
+	 * Checks whether another file history has taken over the path of the given file history, either
+	 * in the given database version, or in a database version of a previous batch. The latter is
+	 * reflected in the path cache, which is updated after each batch.
+	 */
+	private boolean isReplacedByNewFile(DatabaseVersion newDatabaseVersion, PartialFileHistory fileHistory) {
+		String path = fileHistory.getLastVersion().getPath();
 
-		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
-			FileVersion lastVersion = fileHistory.getLastVersion();
+		PartialFileHistory newFileWithSameName = newDatabaseVersion.getFileHistoryByPath(path);
+		PartialFileHistory lastFileWithSameName = filePathCache.get(path);
 
-			if (lastVersion.getStatus() != FileStatus.DELETED && lastVersion.getPath().equals(path)) {
-				return fileHistory;
-			}
-		}
+		boolean replacedInThisBatch = newFileWithSameName != null;
+		boolean replacedInPreviousBatch = lastFileWithSameName != null && lastFileWithSameName.getLastVersion().getStatus() != FileStatus.DELETED
+				&& !lastFileWithSameName.getFileHistoryId().equals(fileHistory.getFileHistoryId());
 
-		return null;
+		return replacedInThisBatch || replacedInPreviousBatch;
 	}
 
 	public static class IndexerException extends RuntimeException {
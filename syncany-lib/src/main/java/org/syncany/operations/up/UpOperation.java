@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +44,7 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
@@ -84,6 +86,12 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  *   <li>Add delta database to local database and store it locally</li>
  * </ol>
  * 
+ * <p>If a transaction file or size limit is set in the {@link UpOperationOptions}, the changed files
+ * are split into batches, and steps 4-7 are performed for each batch: every batch results in its own
+ * database version and remote transaction. This bounds the memory and cache space needed for large 
+ * changesets, makes changes visible remotely before the entire changeset is uploaded, and limits
+ * the amount of work lost if the operation is interrupted to a single batch.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class UpOperation extends AbstractTransferOperation {
@@ -109,12 +117,23 @@ public class UpOperation extends AbstractTransferOperation {
 		this.eventBus = LocalEventBus.getInstance();
 		this.options = options;
 		this.result = new UpOperationResult();
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
 		this.remoteTransaction = new RemoteTransaction(config, transferManager);
 	}
 
 	@Override
 	public UpOperationResult execute() throws Exception {
+		try {
+			return executeUp();
+		}
+		catch (Exception e) {
+			// Uncommitted changes must not remain in the shared database session; the next commit would persist them
+			localDatabase.rollback();
+			throw e;
+		}
+	}
+
+	private UpOperationResult executeUp() throws Exception {
 		logger.log(Level.INFO, "");
 		logger.log(Level.INFO, "Running 'Sync up' at client " + config.getMachineName() + " ...");
 		logger.log(Level.INFO, "--------------------------------------------");
@@ -129,15 +148,15 @@ public class UpOperation extends AbstractTransferOperation {
 		// Upload action file (lock for cleanup)
 		startOperation();
 
-		DatabaseVersion newDatabaseVersion = null;
+		DatabaseVersion resumeDatabaseVersion = null;
 		TransactionRemoteFile transactionRemoteFile = null;
 		boolean resuming = false;
 
 		if (options.isResume()) {
 			// If we want to resume, we look for the local files that contain data about a resumable transaction.
-			newDatabaseVersion = attemptResumeTransaction();
+			resumeDatabaseVersion = attemptResumeTransaction();
 
-			if (newDatabaseVersion != null) {
+			if (resumeDatabaseVersion != null) {
 				logger.log(Level.INFO, "Found local transaction to resume.");
 				resuming = true;
 
@@ -165,7 +184,11 @@ public class UpOperation extends AbstractTransferOperation {
 			}
 		}
 
-		if (!resuming) {
+		if (resuming) {
+			// If we are resuming, the multichunks and the database are already in the transaction.
+			commitDatabaseVersion(resumeDatabaseVersion, transactionRemoteFile);
+		}
+		else {
 			// If we are not resuming, we need to clean transactions and index local files.
 			boolean blockingTransactionExist = !transferManager.cleanTransactions();
 
@@ -177,10 +200,10 @@ public class UpOperation extends AbstractTransferOperation {
 			ChangeSet localChanges = result.getStatusResult().getChangeSet();
 			List<File> locallyUpdatedFiles = extractLocallyUpdatedFiles(localChanges);
 
-			// Index
-			newDatabaseVersion = index(locallyUpdatedFiles);
+			// Index and upload (in batches, if limits are set)
+			boolean changesUploaded = indexAndUpload(locallyUpdatedFiles);
 
-			if (newDatabaseVersion.getFileHistories().size() == 0) {
+			if (!changesUploaded) {
 				logger.log(Level.INFO, "Local database is up-to-date. NOTHING TO DO!");
 				result.setResultCode(UpResultCode.OK_NO_CHANGES);
 
@@ -189,12 +212,121 @@ public class UpOperation extends AbstractTransferOperation {
 
 				return result;
 			}
+		}
+
+		// Finish 'up' before 'cleanup' starts
+		finishOperation();
+
+		logger.log(Level.INFO, "Sync up done.");
+
+		// Result
+		result.setResultCode(UpResultCode.OK_CHANGES_UPLOADED);
+
+		fireEndEvent();
+
+		return result;
+	}
+
+	/**
+	 * Splits the given files into batches (see {@link #splitIntoBatches(List)}), and indexes and
+	 * uploads each batch in a separate transaction. Deleted files are detected in the last batch.
+	 * 
+	 * <p>Because each batch is committed locally before the next batch is indexed, the {@link Indexer} 
+	 * shares the local database with this operation. 
+	 * 
+	 * @param locallyUpdatedFiles New and changed files, as determined by the status operation
+	 * @return Returns <tt>true</tt> if any changes have been uploaded, <tt>false</tt> otherwise
+	 */
+	private boolean indexAndUpload(List<File> locallyUpdatedFiles) throws Exception {
+		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer(), config.getDeduperThreads());
+		Indexer indexer = new Indexer(config, deduper, localDatabase);
+
+		List<List<File>> batches = splitIntoBatches(locallyUpdatedFiles);
+		boolean changesUploaded = false;
+
+		for (int batchIndex = 0; batchIndex < batches.size(); batchIndex++) {
+			boolean lastBatch = batchIndex == batches.size() - 1;
+
+			if (batches.size() > 1) {
+				logger.log(Level.INFO, "Indexing batch {0} of {1} ({2} file(s)) ...", new Object[] { batchIndex + 1, batches.size(),
+						batches.get(batchIndex).size() });
+			}
+
+			// Index
+			DatabaseVersion newDatabaseVersion = index(indexer, batches.get(batchIndex), lastBatch);
+
+			if (newDatabaseVersion.getFileHistories().size() == 0) {
+				logger.log(Level.INFO, "No changes in this batch. Nothing to upload.");
+				continue;
+			}
+
+			// Every batch needs its own transaction
+			if (changesUploaded) {
+				remoteTransaction = new RemoteTransaction(config, transferManager);
+			}
 
 			// Add multichunks to transaction
 			logger.log(Level.INFO, "Uploading new multichunks ...");
 			addMultiChunksToTransaction(newDatabaseVersion.getMultiChunks());
+
+			// Create delta database and commit transaction
+			commitDatabaseVersion(newDatabaseVersion, null);
+			changesUploaded = true;
+
+			// Uploaded multichunks are not needed anymore; free cache space before the next batch
+			if (!lastBatch) {
+				config.getCache().clear();
+			}
 		}
 
+		return changesUploaded;
+	}
+
+	/**
+	 * Splits the given files into batches, according to the transaction file and size limits in
+	 * the {@link UpOperationOptions}. If no limits are set, all files are returned in a single batch.
+	 * 
+	 * <p>A batch is closed if it has reached the file limit, or if its files (by size on disk) have
+	 * reached the size limit. At least one (potentially empty) batch is returned.
+	 */
+	private List<List<File>> splitIntoBatches(List<File> files) {
+		int transactionFileLimit = options.getTransactionFileLimit();
+		long transactionSizeLimit = options.getTransactionSizeLimit();
+
+		List<List<File>> batches = new ArrayList<List<File>>();
+		List<File> currentBatch = new ArrayList<File>();
+		long currentBatchSize = 0;
+
+		batches.add(currentBatch);
+
+		for (File file : files) {
+			boolean fileLimitReached = transactionFileLimit > 0 && currentBatch.size() >= transactionFileLimit;
+			boolean sizeLimitReached = transactionSizeLimit > 0 && currentBatchSize >= transactionSizeLimit;
+
+			if (fileLimitReached || sizeLimitReached) {
+				currentBatch = new ArrayList<File>();
+				currentBatchSize = 0;
+
+				batches.add(currentBatch);
+			}
+
+			currentBatch.add(file);
+			currentBatchSize += file.length();
+		}
+
+		return batches;
+	}
+
+	/**
+	 * Creates and uploads the delta database for the given database version, commits the remote
+	 * transaction, and persists the database version in the local database. 
+	 * 
+	 * @param newDatabaseVersion New database version, with all multichunks already added to the transaction
+	 * @param transactionRemoteFile Transaction file to resume, or <tt>null</tt> if not resuming
+	 */
+	private void commitDatabaseVersion(DatabaseVersion newDatabaseVersion, TransactionRemoteFile transactionRemoteFile) throws Exception {
+		boolean resuming = transactionRemoteFile != null;
+
 		// Create delta database and commit transaction
 		writeAndAddDeltaDatabase(newDatabaseVersion, resuming);
 
@@ -237,18 +369,8 @@ public class UpOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "Removing DIRTY database versions from database ...");
 		localDatabase.removeDirtyDatabaseVersions(newDatabaseVersionId);
 
-		// Finish 'up' before 'cleanup' starts
-		finishOperation();
-
-		logger.log(Level.INFO, "Sync up done.");
-
 		// Result
 		addNewDatabaseChangesToResultChanges(newDatabaseVersion, result.getChangeSet());
-		result.setResultCode(UpResultCode.OK_CHANGES_UPLOADED);
-
-		fireEndEvent();
-
-		return result;
 	}
 
 	/**
@@ -418,12 +540,13 @@ public class UpOperation extends AbstractTransferOperation {
 	}
 
 	/**
-	 * Serializes a {@link MemoryDatabase} to a file, using the configured transformer.
+	 * Serializes a {@link MemoryDatabase} to a file, using the configured transformer
+	 * and the database format of the repository.
 	 */
 	protected void saveDeltaDatabase(MemoryDatabase db, File localDatabaseFile) throws IOException {
 		logger.log(Level.INFO, "- Saving database to " + localDatabaseFile + " ...");
 
-		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseSerializer dao = new DatabaseSerializer(config.getTransformer(), config.getDatabaseFormat());
 		dao.save(db.getDatabaseVersions(), localDatabaseFile);
 	}
 
@@ -546,16 +669,16 @@ public class UpOperation extends AbstractTransferOperation {
 	/**
 	 * This method starts the indexing process, using the configured Chunker, MultiChunker and Transformer.
 	 * 
+	 * @param indexer Indexer to use; shared by all batches of this operation
 	 * @param localFiles List of Files that have been altered in some way.
+	 * @param lastBatch Whether this is the last batch, i.e. deleted files must be detected
 	 * 
 	 * @return @{link DatabaseVersion} containing the indexed data.
 	 */
-	private DatabaseVersion index(List<File> localFiles) throws FileNotFoundException, IOException {
+	private DatabaseVersion index(Indexer indexer, List<File> localFiles, boolean lastBatch) throws FileNotFoundException, IOException {
 		// Index
-		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer());
-		Indexer indexer = new Indexer(config, deduper);
-
-		DatabaseVersion newDatabaseVersion = indexer.index(localFiles);
+		Set<String> dirtyPaths = (options.getStatusOptions() != null) ? options.getStatusOptions().getDirtyPaths() : null;
+		DatabaseVersion newDatabaseVersion = indexer.index(localFiles, dirtyPaths, lastBatch);
 
 		VectorClock newVectorClock = findNewVectorClock();
 		newDatabaseVersion.setVectorClock(newVectorClock);
@@ -33,6 +33,12 @@ public class UpOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean resume = true;
 
+	@Element(required = false)
+	private int transactionFileLimit = 0;
+
+	@Element(required = false)
+	private long transactionSizeLimit = 0;
+
 	public StatusOperationOptions getStatusOptions() {
 		return statusOptions;
 	}
@@ -56,4 +62,28 @@ public class UpOperationOptions implements OperationOptions {
 	public void setResume(boolean resume) {
 		this.resume = resume;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the maximum number of files indexed and uploaded in a single 
+	 * transaction (and database version), or <tt>0</tt> if there is no limit.
+	 */
+	public int getTransactionFileLimit() {
+		return transactionFileLimit;
+	}
+
+	public void setTransactionFileLimit(int transactionFileLimit) {
+		this.transactionFileLimit = transactionFileLimit;
+	}
+
+	/**
+	 * Returns the size (in bytes) of the files after which a transaction (and 
+	 * database version) is closed, or <tt>0</tt> if there is no limit.
+	 */
+	public long getTransactionSizeLimit() {
+		return transactionSizeLimit;
+	}
+
+	public void setTransactionSizeLimit(long transactionSizeLimit) {
+		this.transactionSizeLimit = transactionSizeLimit;
+	}
+}
@@ -29,6 +29,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -45,7 +46,9 @@ import java.util.logging.Level;
  * Linux/Unix-based operating systems and uses the Java 7 {@link WatchService}.
  * 
  * <p>The class walks through the file tree and registers to a watch to every sub-folder.
- * For new folders, a new watch is registered, and stale watches are removed.
+ * For new folders, a new watch is registered, and watches of deleted folders are removed.
+ * The paths of all events are marked dirty. Only if the watch service overflows, the
+ * entire tree is walked again and a full scan is requested.
  * 
  * <p>When a file event occurs, a timer is started to wait for the file operations
  * to settle. It is reset whenever a new event occurs. When the timer times out,
@@ -56,12 +59,14 @@ import java.util.logging.Level;
 public class DefaultRecursiveWatcher extends RecursiveWatcher {
 	private WatchService watchService;
 	private Map<Path, WatchKey> watchPathKeyMap;
+	private volatile boolean overflowOccurred;
 
 	public DefaultRecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
 		super(root, ignorePaths, settleDelay, listener);
 		
 		this.watchService = null;
 		this.watchPathKeyMap = new HashMap<Path, WatchKey>();
+		this.overflowOccurred = false;
 	}
 
 	@Override
@@ -71,25 +76,61 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 	
 	@Override
 	protected void beforePollEventLoop() {
-		walkTreeAndSetWatches();
+		walkTreeAndSetWatches(root);
 	}
 	
 	@Override
 	protected boolean pollEvents() throws Exception {
-		// Take events, but don't care what they are!
 		WatchKey watchKey = watchService.take();
-		
-		watchKey.pollEvents(); 
-		watchKey.reset();
-		
-		// Events are always relevant; ignored paths are not monitored
-		return true; 
+		Path watchedDir = (Path) watchKey.watchable();
+		boolean hasRelevantEvents = false;
+
+		for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+			if (watchEvent.kind() == OVERFLOW) {
+				logger.log(Level.INFO, "Watch service overflow. Events lost; full scan and re-registration required.");
+
+				overflowOccurred = true;
+				markFullScanRequired();
+
+				hasRelevantEvents = true;
+			}
+			else {
+				Path eventPath = watchedDir.resolve((Path) watchEvent.context());
+
+				if (isIgnoredPath(eventPath)) {
+					continue;
+				}
+
+				if (watchEvent.kind() == ENTRY_CREATE && Files.isDirectory(eventPath, LinkOption.NOFOLLOW_LINKS)) {
+					walkTreeAndSetWatches(eventPath);
+				}
+				else if (watchEvent.kind() == ENTRY_DELETE) {
+					unregisterWatches(eventPath);
+				}
+
+				markDirty(eventPath);
+				hasRelevantEvents = true;
+			}
+		}
+
+		boolean watchKeyValid = watchKey.reset();
+
+		if (!watchKeyValid) {
+			unregisterWatch(watchedDir);
+		}
+
+		return hasRelevantEvents;
 	}
 
 	@Override
 	protected void watchEventsOccurred() {
-		walkTreeAndSetWatches();
-		unregisterStaleWatches();
+		// New and deleted folders are handled in pollEvents(), only re-walk after an overflow 
+		if (overflowOccurred) {
+			overflowOccurred = false;
+
+			walkTreeAndSetWatches(root);
+			unregisterStaleWatches();
+		}
 	}
 
 	@Override
@@ -97,11 +138,11 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 		watchService.close();
 	}
 
-	private synchronized void walkTreeAndSetWatches() {
+	private synchronized void walkTreeAndSetWatches(Path startDir) {
 		logger.log(Level.INFO, "Registering new folders at watch service ...");
 
 		try {
-			Files.walkFileTree(root, new FileVisitor<Path>() {
+			Files.walkFileTree(startDir, new FileVisitor<Path>() {
 				@Override
 				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
 					if (ignorePaths.contains(dir)) {
@@ -167,6 +208,16 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 		}
 	}
 
+	private synchronized void unregisterWatches(Path deletedPath) {
+		Set<Path> paths = new HashSet<Path>(watchPathKeyMap.keySet());
+
+		for (Path path : paths) {
+			if (path.startsWith(deletedPath)) {
+				unregisterWatch(path);
+			}
+		}
+	}
+
 	private synchronized void unregisterWatch(Path dir) {
 		WatchKey watchKey = watchPathKeyMap.get(dir);
 
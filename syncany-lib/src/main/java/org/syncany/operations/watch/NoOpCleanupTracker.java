@@ -0,0 +1,83 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.watch;
+
+import java.util.Objects;
+import java.util.Set;
+
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.operations.cleanup.CleanupOperation;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+
+/**
+ * Remembers the last {@link CleanupOperation} that did nothing, together with the
+ * remote database names and the last local database version header at that time. 
+ * 
+ * <p>As long as neither the remote databases nor the local database change, another
+ * cleanup would not do anything either, so that its listings, the status operation, and
+ * the repository lock can be skipped. The cleanup is still run at least once per cleanup
+ * interval.
+ */
+public class NoOpCleanupTracker {
+	private long cleanupInterval;
+	
+	private Set<String> remoteDatabaseNames;
+	private DatabaseVersionHeader lastLocalDatabaseVersionHeader;
+	private long cleanupTime;
+	
+	/**
+	 * @param cleanupInterval Interval in milliseconds after which a cleanup is run even if nothing changed
+	 */
+	public NoOpCleanupTracker(long cleanupInterval) {
+		this.cleanupInterval = cleanupInterval;
+	}
+	
+	/**
+	 * Checks whether the last cleanup did nothing, and whether neither the remote databases nor
+	 * the local database have changed since. If the remote database names are unknown (<tt>null</tt>),
+	 * the cleanup is never considered unnecessary.
+	 */
+	public boolean isCleanupUnnecessary(Set<String> remoteDatabaseNames, DatabaseVersionHeader lastLocalDatabaseVersionHeader) {
+		if (this.remoteDatabaseNames == null || remoteDatabaseNames == null) {
+			return false;
+		}
+		
+		boolean cleanupIntervalPassed = System.currentTimeMillis() - cleanupTime >= cleanupInterval;
+		boolean remoteDatabasesChanged = !this.remoteDatabaseNames.equals(remoteDatabaseNames);
+		boolean localDatabaseChanged = !Objects.equals(this.lastLocalDatabaseVersionHeader, lastLocalDatabaseVersionHeader);
+		
+		return !cleanupIntervalPassed && !remoteDatabasesChanged && !localDatabaseChanged;
+	}
+	
+	/**
+	 * Remembers the given cleanup result, if the cleanup did nothing. Otherwise, the 
+	 * previously remembered state is discarded, so that the next cleanup is run.
+	 */
+	public void rememberCleanupResult(CleanupOperationResult cleanupOperationResult, Set<String> remoteDatabaseNames, DatabaseVersionHeader lastLocalDatabaseVersionHeader) {
+		if (cleanupOperationResult.getResultCode() == CleanupResultCode.OK_NOTHING_DONE && remoteDatabaseNames != null) {
+			this.remoteDatabaseNames = remoteDatabaseNames;
+			this.lastLocalDatabaseVersionHeader = lastLocalDatabaseVersionHeader;
+			this.cleanupTime = System.currentTimeMillis();
+		}
+		else {
+			this.remoteDatabaseNames = null;
+			this.lastLocalDatabaseVersionHeader = null;
+		}
+	}
+}
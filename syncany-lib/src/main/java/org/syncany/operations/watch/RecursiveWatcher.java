@@ -18,7 +18,9 @@
 package org.syncany.operations.watch;
 
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -34,6 +36,12 @@ import org.syncany.util.EnvironmentUtil;
  * to settle. It is reset whenever a new event occurs. When the timer times out,
  * an event is thrown through the {@link WatchListener}.
  * 
+ * <p>While watching, the paths of all created, modified and deleted files and folders
+ * are collected. Consumers may retrieve them via {@link #takeDirtyPaths()} to limit
+ * the subsequent analysis of the file tree to the affected subtrees. If the watcher
+ * cannot tell which paths have changed (e.g. after an event overflow), a full scan
+ * is required.
+ * 
  * <p>This is an abstract class, using several template methods that are called
  * in different lifecycle states: {@link #beforeStart()}, {@link #beforePollEventLoop()},
  * {@link #pollEvents()}, and {@link #afterStop()}.
@@ -52,6 +60,9 @@ public abstract class RecursiveWatcher {
 
 	private Thread watchThread;	
 	private Timer timer;
+
+	private Set<Path> dirtyPaths;
+	private boolean fullScanRequired;
 	
 	public RecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
 		this.root = root;
@@ -60,6 +71,9 @@ public abstract class RecursiveWatcher {
 		this.listener = listener;		
 		
 		this.running = new AtomicBoolean(false);
+
+		this.dirtyPaths = new HashSet<Path>();
+		this.fullScanRequired = true;
 	}
 	
 	/**
@@ -104,6 +118,9 @@ public abstract class RecursiveWatcher {
 				running.set(true);
 				beforePollEventLoop(); // Call before-loop hook
 				
+				// Changes before or during the registration may have been missed
+				markFullScanRequired();
+				
 				while (running.get()) {
 					try {
 						boolean relevantEvents = pollEvents();
@@ -142,6 +159,60 @@ public abstract class RecursiveWatcher {
 		}		
 	}
 
+	/**
+	 * Returns the (absolute) paths of all files and folders that have changed since the
+	 * last call of this method and resets the set of dirty paths. If a path is a folder,
+	 * its entire subtree must be considered changed.
+	 * 
+	 * <p>If the watcher cannot reliably tell which paths have changed, e.g. because it is
+	 * not running, has just been started, or because events have been lost, this method
+	 * returns <tt>null</tt>. In this case, the caller must analyze the entire file tree.
+	 */
+	public synchronized Set<Path> takeDirtyPaths() {
+		if (fullScanRequired || !running.get()) {
+			fullScanRequired = false;
+			dirtyPaths = new HashSet<Path>();
+
+			return null;
+		}
+		else {
+			Set<Path> takenDirtyPaths = dirtyPaths;
+			dirtyPaths = new HashSet<Path>();
+
+			return takenDirtyPaths;
+		}
+	}
+
+	/**
+	 * Marks the given (absolute) path as changed. Paths within a folder do not need
+	 * to be marked if the folder itself is marked.
+	 */
+	protected synchronized void markDirty(Path path) {
+		if (!fullScanRequired) {
+			dirtyPaths.add(path);
+		}
+	}
+
+	/**
+	 * Marks the entire file tree as changed, i.e. the next call of {@link #takeDirtyPaths()}
+	 * will return <tt>null</tt>. This is called by subclasses if events have been lost, or by
+	 * consumers if they were not able to process the dirty paths.
+	 */
+	protected synchronized void markFullScanRequired() {
+		fullScanRequired = true;
+		dirtyPaths.clear();
+	}
+
+	protected boolean isIgnoredPath(Path path) {
+		for (Path ignorePath : ignorePaths) {
+			if (path.startsWith(ignorePath.toAbsolutePath().normalize())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	private synchronized void restartWaitSettlementTimer() {
 		logger.log(Level.FINE, "File system events registered. Waiting " + settleDelay + "ms for settlement ....");
 
@@ -185,7 +256,9 @@ public abstract class RecursiveWatcher {
 	/**
 	 * Called in the watch service polling thread, inside
 	 * of the {@link #pollEvents()} loop. This method is called
-	 * multiple times.
+	 * multiple times. Implementations must mark changed paths via
+	 * {@link #markDirty(Path)}, or call {@link #markFullScanRequired()}
+	 * if they cannot determine them.
 	 */
 	protected abstract boolean pollEvents() throws Exception;	
 	
@@ -20,32 +20,42 @@ package org.syncany.operations.watch;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Operation;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.cleanup.CleanupOperationResult;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.operations.daemon.SyncScheduler;
+import org.syncany.operations.daemon.SyncScheduler.ScheduledSync;
+import org.syncany.operations.daemon.SyncScheduler.SyncTrigger;
 import org.syncany.operations.daemon.messages.WatchEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.WatchStartSyncExternalEvent;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.down.DownOperationResult;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
+import org.syncany.operations.status.StatusOperationOptions;
 import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationResult;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.operations.watch.NotificationListener.NotificationListenerListener;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -69,15 +79,20 @@ import org.syncany.util.StringUtil;
  * As of now, this operation never returns, because it runs in a loop. The user
  * has to manually abort the operation on the command line.
  * 
+ * <p>Alternatively, the operation can be started with {@link #start(SyncScheduler)}. In this
+ * case, it does not run its own sync loop; instead, the syncs are run by the given
+ * {@link SyncScheduler}, which is shared by many watch operations.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
-public class WatchOperation extends Operation implements NotificationListenerListener, WatchListener {
+public class WatchOperation extends Operation implements NotificationListenerListener, WatchListener, ScheduledSync {
 	private static final Logger logger = Logger.getLogger(WatchOperation.class.getSimpleName());
 	private static final int STOP_GRACE_PERIOD = 15*1000; 
 	
 	private WatchOperationOptions options;
 	
 	private SqlDatabase localDatabase;
+	private ReentrantLock databaseLock;
 
 	private Thread watchThread;
 	private AtomicBoolean syncRunning;
@@ -85,6 +100,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private AtomicBoolean stopRequested;
 	private AtomicBoolean pauseRequested;
 	private AtomicInteger upCount;
+	
+	private SyncScheduler scheduler;
+	private boolean scheduledSyncRunning;
+	
+	private NoOpCleanupTracker noOpCleanupTracker;
 
 	private RecursiveWatcher recursiveWatcher;
 	private NotificationListener notificationListener;
@@ -98,7 +118,8 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 		this.options = options;
 
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = config.getDatabase();
+		this.databaseLock = new ReentrantLock();
 		
 		this.watchThread = null;
 		this.syncRunning = new AtomicBoolean(false);
@@ -106,6 +127,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		this.stopRequested = new AtomicBoolean(false);
 		this.pauseRequested = new AtomicBoolean(false);
 		this.upCount = new AtomicInteger(0);
+		this.noOpCleanupTracker = new NoOpCleanupTracker(options.getCleanupInterval());
 
 		this.recursiveWatcher = null;
 		this.notificationListener = null;
@@ -178,11 +200,59 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			stopRecursiveWatcher();
 		}
 		
-		localDatabase.shutdown();
+		config.closeDatabase();
 		
 		return new WatchOperationResult();
 	}
 
+	/**
+	 * Starts the operation in scheduled mode, i.e. starts the file watcher and the notification
+	 * listener (if enabled), and registers the operation with the given scheduler. Unlike 
+	 * {@link #execute()}, this method returns immediately. Syncs are run by the scheduler
+	 * via {@link #runScheduledSync()} until the operation is stopped with {@link #stop()}.
+	 */
+	public void start(SyncScheduler scheduler) {
+		this.scheduler = scheduler;
+		
+		if (options.announcementsEnabled()) {
+			startNotificationListener();
+		}
+
+		if (options.watcherEnabled()) {
+			startRecursiveWatcher();
+		}
+		
+		scheduler.register(this, options.getInterval());
+	}
+	
+	/**
+	 * Runs a single sync iteration in scheduled mode. This method is called 
+	 * by the {@link SyncScheduler} on one of its worker threads.
+	 */
+	@Override
+	public void runScheduledSync() throws Exception {
+		synchronized (this) {
+			if (stopRequested.get()) {
+				return;
+			}
+			
+			scheduledSyncRunning = true;
+		}
+		
+		try {
+			runSync();
+		}
+		finally {
+			synchronized (this) {
+				scheduledSyncRunning = false;
+				
+				if (stopRequested.get()) {
+					config.closeDatabase();
+				}
+			}
+		}
+	}
+
 	private void startRecursiveWatcher() {
 		logger.log(Level.INFO, "Starting recursive watcher for " + config.getLocalDir() + " ...");
 		
@@ -231,15 +301,19 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	/**
 	 * Runs one iteration of the main synchronization loop, containing a {@link DownOperation},
 	 * an {@link UpOperation} and (if required), a {@link CleanupOperation}. 
+	 * 
+	 * <p>The sync holds the database lock (see {@link #tryLockDatabase()}), because the
+	 * operations use the shared local database session.
 	 */
 	private void runSync() throws Exception {
-		if (!syncRunning.get()) {
-			syncRunning.set(true);
+		if (syncRunning.compareAndSet(false, true)) {
 			syncRequested.set(false);
 
 			logger.log(Level.INFO, "RUNNING SYNC ...");
 			fireStartEvent();
 			
+			databaseLock.lock();
+			
 			try {
 				boolean notifyChanges = false;
 				
@@ -250,18 +324,29 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 					// TODO [low] Do something?
 				}
 				
-				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				// Run up (only analyze dirty paths, if the watcher knows them)
+				UpOperationResult upOperationResult = runUp();
 
 				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED && upOperationResult.getChangeSet().hasChanges()) {
 					upCount.incrementAndGet();
 					notifyChanges = true;
 				}		
 
-				CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions()).execute();
-				
-				if (cleanupOperationResult.getResultCode() == CleanupResultCode.OK) {
-					notifyChanges = true;
+				// Run cleanup (unless it would do nothing anyway)
+				Set<String> remoteDatabaseNames = getRemoteDatabaseNames(downResult);
+				DatabaseVersionHeader lastLocalDatabaseVersionHeader = localDatabase.getLastDatabaseVersionHeader();
+
+				if (noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, lastLocalDatabaseVersionHeader)) {
+					logger.log(Level.INFO, "Skipping cleanup; neither remote nor local database changed since last cleanup.");
+				}
+				else {
+					CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions()).execute();
+					
+					if (cleanupOperationResult.getResultCode() == CleanupResultCode.OK) {
+						notifyChanges = true;
+					}
+					
+					noOpCleanupTracker.rememberCleanupResult(cleanupOperationResult, remoteDatabaseNames, lastLocalDatabaseVersionHeader);
 				}
 				
 				// Fire change event if up and/or cleanup  
@@ -272,6 +357,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			finally {
 				logger.log(Level.INFO, "SYNC DONE.");
 				syncRunning.set(false);
+				databaseLock.unlock();
 				
 				fireEndEvent();
 			}
@@ -284,9 +370,87 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 
+	/**
+	 * Returns the names of all remote databases, as listed by the given down operation result, or
+	 * <tt>null</tt> if the down operation did not list them. Since the down operation has listed 
+	 * the remote databases anyway, this is a free probe to detect remote changes.
+	 */
+	private Set<String> getRemoteDatabaseNames(DownOperationResult downResult) {
+		if (downResult.getLsRemoteResult() == null || downResult.getLsRemoteResult().getRemoteDatabases() == null) {
+			return null;
+		}
+		
+		Set<String> remoteDatabaseNames = new HashSet<String>();
+		
+		for (DatabaseRemoteFile remoteDatabase : downResult.getLsRemoteResult().getRemoteDatabases()) {
+			remoteDatabaseNames.add(remoteDatabase.getName());
+		}
+		
+		return remoteDatabaseNames;
+	}
+	
+	/**
+	 * Runs the {@link UpOperation}. If the recursive watcher knows which paths have changed
+	 * since the last run, only these paths are analyzed. If the up operation did not process
+	 * the local changes (fails or is blocked), the paths are handed back to the watcher so 
+	 * that they are analyzed in the next run.
+	 */
+	private UpOperationResult runUp() throws Exception {
+		StatusOperationOptions statusOptions = options.getUpOptions().getStatusOptions();
+		Set<Path> dirtyPaths = (recursiveWatcher != null) ? recursiveWatcher.takeDirtyPaths() : null;
+		boolean upProcessedChanges = false;
+
+		try {
+			statusOptions.setDirtyPaths(toRelativeDatabasePaths(dirtyPaths));
+			UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+
+			upProcessedChanges = upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED
+					|| upOperationResult.getResultCode() == UpResultCode.OK_NO_CHANGES;
+
+			return upOperationResult;
+		}
+		finally {
+			statusOptions.setDirtyPaths(null);
+
+			if (!upProcessedChanges && recursiveWatcher != null) {
+				restoreDirtyPaths(dirtyPaths);
+			}
+		}
+	}
+
+	private Set<String> toRelativeDatabasePaths(Set<Path> dirtyPaths) {
+		if (dirtyPaths == null) {
+			return null;
+		}
+
+		Set<String> relativeDirtyPaths = new HashSet<String>();
+
+		for (Path dirtyPath : dirtyPaths) {
+			relativeDirtyPaths.add(FileUtil.getRelativeDatabasePath(config.getLocalDir(), dirtyPath.toFile()));
+		}
+
+		return relativeDirtyPaths;
+	}
+
+	private void restoreDirtyPaths(Set<Path> dirtyPaths) {
+		if (dirtyPaths == null) {
+			recursiveWatcher.markFullScanRequired();
+		}
+		else {
+			for (Path dirtyPath : dirtyPaths) {
+				recursiveWatcher.markDirty(dirtyPath);
+			}
+		}
+	}
+
 	@Override
 	public void pushNotificationReceived(String channel, String message) {
 		if (channel.equals(notificationChannel) && !message.equals(notificationInstanceId)) {
+			if (scheduler != null) {
+				scheduler.requestSync(this, SyncTrigger.PUSH);
+				return;
+			}
+			
 			try {
 				waitWhilePaused();
 				runSync();
@@ -299,6 +463,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 	@Override
 	public void watchEventsOccurred() {
+		if (scheduler != null) {
+			scheduler.requestSync(this, SyncTrigger.WATCHER);
+			return;
+		}
+		
 		try {
 			waitWhilePaused();
 			runSync();
@@ -323,7 +492,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	}
 
 	public void stop() {
-		if (!stopRequested.get()) {
+		if (scheduler != null) {
+			stopScheduled();
+		}
+		else if (!stopRequested.get()) {
 			stopRequested.set(true);
 
 			if (syncRunning.get()) {
@@ -340,14 +512,83 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 	
+	private void stopScheduled() {
+		if (stopRequested.get()) {
+			logger.log(Level.INFO, "Stop requested AGAIN, but was requested before. IGNORING.");
+			return;
+		}
+		
+		logger.log(Level.INFO, "Stop requested, unregistering from scheduler. A running sync is finished first.");
+		scheduler.unregister(this);
+		
+		if (options.announcementsEnabled()) {
+			stopNotificationListener();
+		}
+
+		if (options.watcherEnabled()) {
+			stopRecursiveWatcher();
+		}
+
+		synchronized (this) {
+			stopRequested.set(true);
+			
+			if (!scheduledSyncRunning) {
+				config.closeDatabase();
+			}
+		}
+	}
+	
+	@Override
+	public boolean isPaused() {
+		return pauseRequested.get();
+	}
+	
 	public boolean isSyncRunning() {
 		return syncRunning.get();
 	}
+	
+	/**
+	 * Returns whether {@link #runScheduledSync()} is currently executed by the scheduler. Unlike
+	 * {@link #isSyncRunning()}, this also covers the time before and after the actual sync, 
+	 * e.g. while the database is being closed after a stop request.
+	 */
+	public synchronized boolean isScheduledSyncRunning() {
+		return scheduledSyncRunning;
+	}
 
 	public boolean isSyncRequested() {
 		return syncRequested.get();
 	}
 	
+	/**
+	 * Acquires the database lock if no sync is running or requested. While the lock is held,
+	 * no sync is started, so that the caller can use the shared local database session (see
+	 * {@link Config#getDatabase()}) without interfering with a sync. 
+	 * 
+	 * <p>If this method returns <tt>true</tt>, the lock must be released with {@link #unlockDatabase()}
+	 * by the same thread.
+	 * 
+	 * @return <tt>true</tt> if the lock was acquired, <tt>false</tt> otherwise
+	 */
+	public boolean tryLockDatabase() {
+		if (databaseLock.tryLock()) {
+			if (!syncRunning.get() && !syncRequested.get()) {
+				return true;
+			}
+			
+			databaseLock.unlock();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Releases the database lock acquired by {@link #tryLockDatabase()}.
+	 */
+	public void unlockDatabase() {
+		databaseLock.unlock();
+	}
+	
 	private void waitWhilePaused() throws InterruptedException {
 		while (pauseRequested.get()) {
 			Thread.sleep(1000);
@@ -395,4 +636,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private void fireEndEvent() {
 		eventBus.post(new WatchEndSyncExternalEvent(config.getLocalDir().getAbsolutePath()));	
 	}
+	
+	@Override
+	public String toString() {
+		return WatchOperation.class.getSimpleName() + "[" + config.getLocalDir() + "]";
+	}
 }
@@ -24,7 +24,6 @@ import static name.pachler.nio.file.StandardWatchEventKind.OVERFLOW;
 import static name.pachler.nio.file.ext.ExtendedWatchEventModifier.FILE_TREE;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.List;
 
 import name.pachler.nio.file.FileSystems;
@@ -80,26 +79,21 @@ public class WindowsRecursiveWatcher extends RecursiveWatcher {
 		List<WatchEvent<?>> watchEvents = watchKey.pollEvents(); 
 		boolean hasRelevantEvents = false;
 		
-		// Filter ignored events
+		// Filter ignored events, and mark others dirty
 		for (WatchEvent<?> watchEvent : watchEvents) {
 			if (watchEvent.kind() == ENTRY_CREATE || watchEvent.kind() == ENTRY_MODIFY || watchEvent.kind() == ENTRY_DELETE) {				
-				boolean ignoreEvent = false;		
-
 				name.pachler.nio.file.Path extLibFilePath = (name.pachler.nio.file.Path) watchEvent.context();
-				Path filePath = Paths.get(extLibFilePath.toString()).toAbsolutePath().normalize();
-				
-				for (Path ignorePath : ignorePaths) {
-					if (filePath.startsWith(ignorePath.toAbsolutePath().normalize())) {
-						ignoreEvent = true;
-						break;
-					}
-				}
+				Path filePath = root.resolve(extLibFilePath.toString()).toAbsolutePath().normalize();
 				
-				if (!ignoreEvent) {
+				if (!isIgnoredPath(filePath)) {
+					markDirty(filePath);
 					hasRelevantEvents = true;
-					break;
 				}
 			}
+			else if (watchEvent.kind() == OVERFLOW) {
+				markFullScanRequired();
+				hasRelevantEvents = true;
+			}
 		}
 
 		watchKey.reset();
@@ -18,6 +18,9 @@
 package org.syncany.plugins.transfer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +29,7 @@ import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.TransferWorkerPool.TransferWorker;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -38,6 +42,15 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  * This class represents a transaction in a remote system. It will keep track of
  * what files are to be added and ensures atomic operation.
  *
+ * <p>If more than one uploader thread is configured (see {@link Config#getUploaderThreads()}),
+ * the uploads/moves to the temporary location and the moves to the final location are
+ * performed concurrently, each thread using its own {@link TransferManager}. The order of
+ * the commit steps is the same as for a sequential commit: The transaction file is uploaded
+ * first, all temporary files are uploaded before the first file is moved to its final location,
+ * and the transaction file is deleted last. The {@link ActionStatus} of an action is updated
+ * as soon as the action is completed, so that the state written by {@link #writeToFile(Transformer, File) writeToFile()}
+ * can always be resumed.
+ *
  * @author Pim Otte
  */
 public class RemoteTransaction {
@@ -49,6 +62,10 @@ public class RemoteTransaction {
 
 	private LocalEventBus eventBus;
 
+	private interface ActionExecutor {
+		public void execute(TransferManager actionTransferManager, ActionTO action) throws StorageException;
+	}
+
 	public RemoteTransaction(Config config, TransferManager transferManager) {
 		this(config, transferManager, new TransactionTO(config.getMachineName()));
 	}
@@ -151,7 +168,7 @@ public class RemoteTransaction {
 	 * 
 	 * @param transactionFile The file where the transaction will be written to.
 	 */
-	public void writeToFile(Transformer transformer, File transactionFile) throws StorageException {
+	public synchronized void writeToFile(Transformer transformer, File transactionFile) throws StorageException {
 		try {
 			transactionTO.save(transformer, transactionFile);
 			logger.log(Level.INFO, "Wrote transaction manifest to temporary file: " + transactionFile);
@@ -202,12 +219,21 @@ public class RemoteTransaction {
 	 * the most likely part to be interrupted on weak connections.
 	 */
 	private void uploadAndMoveToTempLocation() throws StorageException {
-		TransactionStats stats = gatherTransactionStats();
-		int uploadFileIndex = 0;
+		final TransactionStats stats = gatherTransactionStats();
+		final AtomicInteger uploadFileIndex = new AtomicInteger(0);
+
+		List<ActionTO> unstartedActions = new ArrayList<ActionTO>();
 
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getStatus().equals(ActionStatus.UNSTARTED)) {
 				// If we are resuming, this has not been started yet.
+				unstartedActions.add(action);
+			}
+		}
+
+		executeActions(unstartedActions, new ActionExecutor() {
+			@Override
+			public void execute(TransferManager actionTransferManager, ActionTO action) throws StorageException {
 				RemoteFile tempRemoteFile = action.getTempRemoteFile();
 
 				if (action.getType().equals(ActionType.UPLOAD)) {
@@ -215,12 +241,12 @@ public class RemoteTransaction {
 					File localFile = action.getLocalTempLocation();
 					long localFileSize = localFile.length();
 
-					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), ++uploadFileIndex,
-							stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
+					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), uploadFileIndex
+							.incrementAndGet(), stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
 
 					logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
-					transferManager.upload(localFile, tempRemoteFile);
-					action.setStatus(ActionStatus.STARTED);
+					actionTransferManager.upload(localFile, tempRemoteFile);
+					setActionStatus(action, ActionStatus.STARTED);
 				}
 				else if (action.getType().equals(ActionType.DELETE)) {
 					// The action is a DELETE, move file to temporary remote location.
@@ -228,15 +254,15 @@ public class RemoteTransaction {
 
 					try {
 						logger.log(Level.INFO, "- Moving {0} to temp. file {1} ...", new Object[] { remoteFile, tempRemoteFile });
-						transferManager.move(remoteFile, tempRemoteFile);
+						actionTransferManager.move(remoteFile, tempRemoteFile);
 					}
 					catch (StorageMoveException e) {
 						logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
 					}
-					action.setStatus(ActionStatus.STARTED);
+					setActionStatus(action, ActionStatus.STARTED);
 				}
 			}
-		}
+		});
 	}
 
 	/**
@@ -262,15 +288,66 @@ public class RemoteTransaction {
 	 * now moved to their final location.
 	 */
 	private void moveToFinalLocation() throws StorageException {
+		List<ActionTO> uploadActions = new ArrayList<ActionTO>();
+
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getType().equals(ActionType.UPLOAD)) {
+				uploadActions.add(action);
+			}
+		}
+
+		executeActions(uploadActions, new ActionExecutor() {
+			@Override
+			public void execute(TransferManager actionTransferManager, ActionTO action) throws StorageException {
 				RemoteFile tempRemoteFile = action.getTempRemoteFile();
 				RemoteFile finalRemoteFile = action.getRemoteFile();
 
 				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
-				transferManager.move(tempRemoteFile, finalRemoteFile);
-				action.setStatus(ActionStatus.DONE);
+				actionTransferManager.move(tempRemoteFile, finalRemoteFile);
+				setActionStatus(action, ActionStatus.DONE);
 			}
+		});
+	}
+
+	/**
+	 * Updates the status of an action. Synchronized with {@link #writeToFile(Transformer, File) writeToFile()}, 
+	 * so that the shutdown hook of the {@link org.syncany.operations.up.UpOperation UpOperation} never
+	 * serializes a half-updated transaction.
+	 */
+	private synchronized void setActionStatus(ActionTO action, ActionStatus status) {
+		action.setStatus(status);
+	}
+
+	/**
+	 * Executes the given actions, either sequentially with the main transfer manager, or concurrently
+	 * with up to {@link Config#getUploaderThreads()} threads. 
+	 * 
+	 * <p>In the concurrent case, the method waits for all running actions to finish, even if one of 
+	 * them failed. That way, the {@link ActionStatus} of all actions is final when the method returns
+	 * (or throws an exception), and a failed commit can be resumed safely.
+	 */
+	private void executeActions(List<ActionTO> actions, final ActionExecutor actionExecutor) throws StorageException {
+		int uploaderThreads = (config.getUploaderThreads() > 1) ? Math.min(config.getUploaderThreads(), actions.size()) : 1;
+
+		if (uploaderThreads > 1) {
+			logger.log(Level.INFO, "- Executing {0} action(s) with up to {1} threads ...", new Object[] { actions.size(), uploaderThreads });
+		}
+
+		TransferWorkerPool<ActionTO> workerPool = new TransferWorkerPool<ActionTO>(config, transferManager);
+
+		try {
+			workerPool.execute(actions, uploaderThreads, new TransferWorker<ActionTO>() {
+				@Override
+				public void process(TransferManager workerTransferManager, ActionTO action) throws StorageException {
+					actionExecutor.execute(workerTransferManager, action);
+				}
+			});
+		}
+		catch (StorageException | RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new StorageException("Executing transaction actions failed.", e);
 		}
 	}
 
@@ -43,6 +43,9 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  * The TransactionAwareTransferManager adds all functionality regarding transactions
  * to existing transfer managers. 
  * 
+ * <p>Remote transaction files are cached in the {@link TransactionFileCache} of the 
+ * config (if available), so that each transaction file is only downloaded once.
+ * 
  * @author Pim Otte
  */
 public class TransactionAwareTransferManager implements TransferManager {
@@ -50,10 +53,12 @@ public class TransactionAwareTransferManager implements TransferManager {
 
 	private TransferManager underlyingTransferManager;
 	private Config config;
+	private TransactionFileCache transactionFileCache;
 
 	public TransactionAwareTransferManager(TransferManager underlyingTransferManager, Config config) {
 		this.underlyingTransferManager = underlyingTransferManager;
 		this.config = config;
+		this.transactionFileCache = (config != null) ? config.getTransactionFileCache() : new TransactionFileCache();
 	}
 
 	@Override
@@ -125,11 +130,19 @@ public class TransactionAwareTransferManager implements TransferManager {
 
 	@Override
 	public void upload(final File localFile, final RemoteFile remoteFile) throws StorageException {
+		if (remoteFile instanceof TransactionRemoteFile) {
+			transactionFileCache.remove(remoteFile.getName());
+		}
+
 		underlyingTransferManager.upload(localFile, remoteFile);
 	}
 
 	@Override
 	public boolean delete(final RemoteFile remoteFile) throws StorageException {
+		if (remoteFile instanceof TransactionRemoteFile) {
+			transactionFileCache.remove(remoteFile.getName());
+		}
+
 		return underlyingTransferManager.delete(remoteFile);
 	}
 
@@ -405,32 +418,49 @@ public class TransactionAwareTransferManager implements TransferManager {
 		return dummyDeletedFiles;
 	}
 
+	/**
+	 * Lists all remote transaction files and returns their contents. Transaction files
+	 * that have been downloaded before are taken from the {@link TransactionFileCache};
+	 * only newly appeared transaction files are downloaded and decrypted.
+	 */
 	private Map<TransactionTO, TransactionRemoteFile> retrieveRemoteTransactions() throws StorageException {
 		Map<String, TransactionRemoteFile> transactionFiles = list(TransactionRemoteFile.class);
 		Map<TransactionTO, TransactionRemoteFile> transactions = new HashMap<TransactionTO, TransactionRemoteFile>();
 
-		for (TransactionRemoteFile transaction : transactionFiles.values()) {
-			try {
-				File transactionFile = createTempFile("transaction");
-
-				// Download transaction file
-				download(transaction, transactionFile);
+		transactionFileCache.retainAll(transactionFiles.keySet());
 
-				Transformer transformer = config == null ? null : config.getTransformer();
-				TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+		for (TransactionRemoteFile transaction : transactionFiles.values()) {
+			TransactionTO transactionTO = transactionFileCache.get(transaction.getName());
 
-				// Extract final locations
-				transactions.put(transactionTO, transaction);
-				transactionFile.delete();
-			}
-			catch (Exception e) {
-				throw new StorageException("Failed to read transactionFile", e);
+			if (transactionTO == null) {
+				transactionTO = downloadRemoteTransaction(transaction);
+				transactionFileCache.put(transaction.getName(), transactionTO);
 			}
+
+			transactions.put(transactionTO, transaction);
 		}
 
 		return transactions;
 	}
 
+	private TransactionTO downloadRemoteTransaction(TransactionRemoteFile transaction) throws StorageException {
+		try {
+			File transactionFile = createTempFile("transaction");
+
+			// Download transaction file
+			download(transaction, transactionFile);
+
+			Transformer transformer = config == null ? null : config.getTransformer();
+			TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+
+			transactionFile.delete();
+			return transactionTO;
+		}
+		catch (Exception e) {
+			throw new StorageException("Failed to read transactionFile", e);
+		}
+	}
+
 	/**
 	 * Creates a temporary file, either using the config (if initialized) or 
 	 * using the global temporary directory.
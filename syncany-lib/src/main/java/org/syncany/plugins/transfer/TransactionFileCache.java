@@ -0,0 +1,89 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.TransactionTO;
+
+/**
+ * The transaction file cache holds the already downloaded and parsed contents of
+ * {@link TransactionRemoteFile}s, keyed by their remote file name. It is used by the
+ * {@link TransactionAwareTransferManager} to avoid downloading and decrypting the same
+ * transaction files over and over again.
+ *
+ * <p>Transaction files are written only once and never changed, so an entry stays valid
+ * as long as a file with that name exists remotely. Entries of files that have disappeared
+ * from the remote storage are removed via {@link #retainAll(Collection)}. Files that are
+ * uploaded or deleted by the transfer manager itself are removed via {@link #remove(String)}.
+ *
+ * <p>The cache is held by the {@link org.syncany.config.Config Config} and is thereby shared
+ * by all operations of one folder. All methods are thread-safe.
+ */
+public class TransactionFileCache {
+	private static final Logger logger = Logger.getLogger(TransactionFileCache.class.getSimpleName());
+
+	private Map<String, TransactionTO> transactions;
+
+	public TransactionFileCache() {
+		this.transactions = new HashMap<String, TransactionTO>();
+	}
+
+	/**
+	 * Returns the cached transaction for the given remote file name, or
+	 * <tt>null</tt> if the transaction file has not been cached.
+	 */
+	public synchronized TransactionTO get(String transactionFileName) {
+		return transactions.get(transactionFileName);
+	}
+
+	public synchronized void put(String transactionFileName, TransactionTO transaction) {
+		transactions.put(transactionFileName, transaction);
+	}
+
+	public synchronized void remove(String transactionFileName) {
+		transactions.remove(transactionFileName);
+	}
+
+	/**
+	 * Removes all cached transactions whose remote file names are not contained in the given
+	 * list of names, i.e. transactions that have been completed or rolled back since the last
+	 * listing.
+	 */
+	public synchronized void retainAll(Collection<String> transactionFileNames) {
+		int cachedTransactionCount = transactions.size();
+		transactions.keySet().retainAll(transactionFileNames);
+
+		if (cachedTransactionCount != transactions.size()) {
+			logger.log(Level.FINE, "Removed {0} stale transaction(s) from the transaction file cache.", cachedTransactionCount - transactions.size());
+		}
+	}
+
+	public synchronized int size() {
+		return transactions.size();
+	}
+
+	public synchronized void clear() {
+		transactions.clear();
+	}
+}
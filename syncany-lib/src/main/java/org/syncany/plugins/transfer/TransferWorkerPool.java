@@ -0,0 +1,213 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+
+/**
+ * The transfer worker pool processes a collection of items (e.g. files to download or 
+ * upload) with multiple threads. Each thread uses its own {@link TransferManager}, and 
+ * thereby its own connection: The first thread uses the given transfer manager, and every
+ * additional thread creates a new one. If an additional transfer manager cannot be created,
+ * fewer threads are used.
+ * 
+ * <p>The items are taken from a shared queue. If processing an item fails, the other threads
+ * stop taking new items, but the pool still waits for all running items to finish. That way,
+ * no thread is still working when {@link #execute(Collection, int, TransferWorker)} returns
+ * or throws an exception.
+ * 
+ * <p>Additional transfer managers are wrapped in a {@link RetriableTransferManager}. Subclasses
+ * may override {@link #createAdditionalTransferManager()} to wrap them differently.
+ */
+public class TransferWorkerPool<T> {
+	private static final Logger logger = Logger.getLogger(TransferWorkerPool.class.getSimpleName());
+
+	/**
+	 * Processes a single item, using the given transfer manager.
+	 */
+	public interface TransferWorker<T> {
+		public void process(TransferManager workerTransferManager, T item) throws Exception;
+	}
+
+	protected Config config;
+	protected TransferManager transferManager;
+
+	public TransferWorkerPool(Config config, TransferManager transferManager) {
+		this.config = config;
+		this.transferManager = transferManager;
+	}
+
+	/**
+	 * Processes the given items with up to <tt>threadCount</tt> threads. If only one thread is used,
+	 * the items are processed by the calling thread, using the main transfer manager.
+	 * 
+	 * <p>Additional transfer managers are disconnected before this method returns; the main
+	 * transfer manager is not.
+	 * 
+	 * @throws Exception The first exception thrown by the worker (or an {@link InterruptedException})
+	 */
+	public void execute(Collection<T> items, int threadCount, TransferWorker<T> worker) throws Exception {
+		Queue<T> itemQueue = new ConcurrentLinkedQueue<T>(items);
+		AtomicBoolean failed = new AtomicBoolean(false);
+
+		if (threadCount <= 1) {
+			new WorkerThread(transferManager, itemQueue, worker, failed).call();
+		}
+		else {
+			executeConcurrently(itemQueue, threadCount, worker, failed);
+		}
+	}
+
+	private void executeConcurrently(Queue<T> itemQueue, int threadCount, TransferWorker<T> worker, AtomicBoolean failed) throws Exception {
+		List<TransferManager> transferManagers = createTransferManagers(threadCount);
+		ExecutorService executor = Executors.newFixedThreadPool(transferManagers.size());
+
+		List<Future<Void>> workerFutures = new ArrayList<Future<Void>>();
+
+		try {
+			for (TransferManager workerTransferManager : transferManagers) {
+				workerFutures.add(executor.submit(new WorkerThread(workerTransferManager, itemQueue, worker, failed)));
+			}
+
+			// Wait for all workers (even if one failed), so that no worker is still running when we return
+			Throwable firstFailure = null;
+
+			for (Future<Void> workerFuture : workerFutures) {
+				try {
+					workerFuture.get();
+				}
+				catch (ExecutionException e) {
+					failed.set(true);
+
+					if (firstFailure == null) {
+						firstFailure = e.getCause();
+					}
+				}
+				catch (InterruptedException e) {
+					failed.set(true);
+
+					if (firstFailure == null) {
+						firstFailure = e;
+					}
+				}
+			}
+
+			if (firstFailure instanceof Exception) {
+				throw (Exception) firstFailure;
+			}
+			else if (firstFailure instanceof Error) {
+				throw (Error) firstFailure;
+			}
+		}
+		finally {
+			executor.shutdownNow();
+
+			// Disconnect additional transfer managers; the main one is disconnected by the caller
+			for (TransferManager workerTransferManager : transferManagers) {
+				if (workerTransferManager != transferManager) {
+					try {
+						workerTransferManager.disconnect();
+					}
+					catch (StorageException e) {
+						logger.log(Level.FINE, "Disconnecting additional transfer manager failed.", e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the main transfer manager plus up to <tt>count - 1</tt> additional transfer managers,
+	 * each with its own connection. If an additional transfer manager cannot be created, fewer 
+	 * threads are used.
+	 */
+	private List<TransferManager> createTransferManagers(int count) {
+		List<TransferManager> transferManagers = new ArrayList<TransferManager>();
+		transferManagers.add(transferManager);
+
+		for (int i = 1; i < count; i++) {
+			try {
+				transferManagers.add(createAdditionalTransferManager());
+			}
+			catch (Exception e) {
+				logger.log(Level.WARNING, "Cannot create additional transfer manager. Using " + transferManagers.size() + " thread(s).", e);
+				break;
+			}
+		}
+
+		return transferManagers;
+	}
+
+	/**
+	 * Creates a transfer manager for an additional thread. 
+	 */
+	protected TransferManager createAdditionalTransferManager() throws StorageException {
+		TransferManager pluginTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+		return new RetriableTransferManager(pluginTransferManager);
+	}
+
+	/**
+	 * A worker thread takes items from the shared queue and processes them one by one,
+	 * using its own transfer manager. It stops if the queue is empty, or if another worker 
+	 * thread has failed.
+	 */
+	private class WorkerThread implements Callable<Void> {
+		private TransferManager workerTransferManager;
+		private Queue<T> itemQueue;
+		private TransferWorker<T> worker;
+		private AtomicBoolean failed;
+
+		public WorkerThread(TransferManager workerTransferManager, Queue<T> itemQueue, TransferWorker<T> worker, AtomicBoolean failed) {
+			this.workerTransferManager = workerTransferManager;
+			this.itemQueue = itemQueue;
+			this.worker = worker;
+			this.failed = failed;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			T item;
+
+			while (!failed.get() && (item = itemQueue.poll()) != null) {
+				try {
+					worker.process(workerTransferManager, item);
+				}
+				catch (Exception e) {
+					failed.set(true);
+					throw e;
+				}
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,9 @@
+-- Returns a stamp that changes whenever the current file tree may have changed:
+-- New database versions increase the max. ID, marking versions DIRTY changes the
+-- MASTER count, and removing file versions (e.g. during cleanup) changes the count.
+
+select 
+	(select coalesce(max(id), 0) from databaseversion) as max_databaseversion_id,
+	(select count(*) from databaseversion where status='MASTER') as master_databaseversion_count,
+	(select count(*) from fileversion) as fileversion_count
+from (values(0))
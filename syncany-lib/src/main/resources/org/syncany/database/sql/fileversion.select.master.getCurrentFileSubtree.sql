@@ -0,0 +1,3 @@
+select * 
+from fileversion_master_last
+where path = ? or path like ? escape '\'
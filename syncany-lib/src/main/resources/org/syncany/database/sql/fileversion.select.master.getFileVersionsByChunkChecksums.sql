@@ -0,0 +1,15 @@
+-- Selects the last versions of all files that contain one of the given chunks,
+-- starting from the chunks to avoid evaluating the full file tree
+
+select fcc.chunk_checksum, fv.*
+from filecontent_chunk fcc
+join fileversion_master fv on fv.filecontent_checksum=fcc.filecontent_checksum
+where fcc.chunk_checksum in ( unnest(?) )
+	and fv.type='FILE'
+	and fv.status<>'DELETED'
+	and not exists (
+		select 1
+		from fileversion_master fvnewer
+		where fvnewer.filehistory_id=fv.filehistory_id
+			and fvnewer.version>fv.version
+	)
@@ -0,0 +1,4 @@
+insert into multichunk (id, databaseversion_id, size)
+select ?, databaseversion_id, ?
+from multichunk
+where id=?
@@ -0,0 +1,14 @@
+-- Determine all multichunks (with their remaining chunks) whose remaining chunks make up
+-- less than the given ratio of the multichunk size, least used multichunks first.
+
+select mc.id multichunk_id, mc.size, mcc.chunk_checksum
+from multichunk mc
+join (
+	select mcc1.multichunk_id, sum(c.size) live_size
+	from multichunk_chunk mcc1
+	join chunk c on mcc1.chunk_checksum=c.checksum
+	group by mcc1.multichunk_id
+) live on mc.id=live.multichunk_id
+join multichunk_chunk mcc on mc.id=mcc.multichunk_id
+where mc.size > 0 and live.live_size < mc.size * cast(? as double)
+order by cast(live.live_size as double) / mc.size, mc.id
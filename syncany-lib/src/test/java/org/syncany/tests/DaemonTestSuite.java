@@ -22,11 +22,13 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.syncany.tests.daemon.BasicWatchServerTest;
 import org.syncany.tests.daemon.NoCliRequestsWhileSyncingTest;
+import org.syncany.tests.daemon.SyncSchedulerTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
 	BasicWatchServerTest.class,
-	NoCliRequestsWhileSyncingTest.class
+	NoCliRequestsWhileSyncingTest.class,
+	SyncSchedulerTest.class
 })
 
 public class DaemonTestSuite {
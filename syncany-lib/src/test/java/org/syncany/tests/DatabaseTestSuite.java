@@ -20,13 +20,17 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.database.ChunkIndexTest;
 import org.syncany.tests.database.DatabaseReconciliatorTest;
+import org.syncany.tests.database.DatabaseVersionTest;
+import org.syncany.tests.database.FileTreeIndexTest;
 import org.syncany.tests.database.FileVersionComparatorTest;
 import org.syncany.tests.database.MemoryDatabaseCacheTest;
 import org.syncany.tests.database.ObjectIdTest;
 import org.syncany.tests.database.PartialFileHistoryTest;
 import org.syncany.tests.database.VectorClockTest;
 import org.syncany.tests.database.dao.ApplicationDaoTest;
+import org.syncany.tests.database.dao.BinaryDatabaseDaoTest;
 import org.syncany.tests.database.dao.ChunkDaoTest;
 import org.syncany.tests.database.dao.DatabaseVersionDaoTest;
 import org.syncany.tests.database.dao.FileContentDaoTest;
@@ -38,9 +42,13 @@ import org.syncany.tests.database.dao.XmlDatabaseDaoTest;
 @RunWith(Suite.class)
 @SuiteClasses({
 	ApplicationDaoTest.class,
+	BinaryDatabaseDaoTest.class,
 	ChunkDaoTest.class,
+	ChunkIndexTest.class,
 	DatabaseReconciliatorTest.class,
 	DatabaseVersionDaoTest.class,
+	DatabaseVersionTest.class,
+	FileTreeIndexTest.class,
 	FileVersionComparatorTest.class,
 	FileVersionDaoTest.class,
 	FileHistoryDaoTest.class,
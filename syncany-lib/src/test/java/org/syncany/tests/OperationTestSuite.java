@@ -27,6 +27,7 @@ import org.syncany.tests.operations.FileSystemActionComparatorTest;
 import org.syncany.tests.operations.FileSystemActionReconciliatorTest;
 import org.syncany.tests.operations.IndexerTest;
 import org.syncany.tests.operations.InitOperationTest;
+import org.syncany.tests.operations.NoOpCleanupTrackerTest;
 import org.syncany.tests.operations.NotificationListenerTest;
 import org.syncany.tests.operations.OperationPerformanceTest;
 import org.syncany.tests.operations.PluginOperationTest;
@@ -43,6 +44,7 @@ import org.syncany.tests.operations.SyncUpOperationTest;
 	FileSystemActionReconciliatorTest.class,
 	IndexerTest.class,
 	InitOperationTest.class,
+	NoOpCleanupTrackerTest.class,
 	NotificationListenerTest.class,
 	OperationPerformanceTest.class,
 	PluginOperationTest.class,
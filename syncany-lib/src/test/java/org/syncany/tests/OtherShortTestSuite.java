@@ -20,13 +20,17 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.chunk.DeduperTest;
 import org.syncany.tests.chunk.FixedOffsetChunkerTest;
 import org.syncany.tests.chunk.FrameworkCombinationTest;
 import org.syncany.tests.chunk.MultiChunkerTest;
+import org.syncany.tests.chunk.TTTDChunkerCompatibilityTest;
 import org.syncany.tests.chunk.TTTDChunkerTest;
 import org.syncany.tests.config.CacheTest;
 import org.syncany.tests.config.ConfigHelperTest;
 import org.syncany.tests.config.ConfigTest;
+import org.syncany.tests.config.IgnoredFilesTest;
+import org.syncany.tests.config.LocalEventBusTest;
 import org.syncany.tests.crypto.AesGcmWithBcInputStreamTest;
 import org.syncany.tests.crypto.CipherSessionTest;
 import org.syncany.tests.crypto.CipherSpecsTest;
@@ -35,6 +39,7 @@ import org.syncany.tests.crypto.MultiCipherStreamsTest;
 import org.syncany.tests.operations.*;
 import org.syncany.tests.plugins.PluginOptionsTest;
 import org.syncany.tests.plugins.PluginsTest;
+import org.syncany.tests.plugins.TransactionAwareTransferManagerTest;
 import org.syncany.tests.plugins.TransferSettingsTest;
 import org.syncany.tests.plugins.local.LocalTransferManagerPluginTest;
 import org.syncany.tests.plugins.unreliable_local.CleanupInterruptedTest;
@@ -57,13 +62,16 @@ import org.syncany.tests.util.SqlRunnerTest;
 		MultiChunkerTest.class,
 		FixedOffsetChunkerTest.class,
 		TTTDChunkerTest.class,
+		TTTDChunkerCompatibilityTest.class,
 		FrameworkCombinationTest.class,
+		DeduperTest.class,
 
 		// Connection
 		PluginsTest.class,
 		LocalTransferManagerPluginTest.class,
 		UploadInterruptedTest.class,
 		CleanupInterruptedTest.class,
+		TransactionAwareTransferManagerTest.class,
 		TransferSettingsTest.class,
 		PluginOptionsTest.class,
 
@@ -84,7 +92,9 @@ import org.syncany.tests.util.SqlRunnerTest;
 		// Config
 		CacheTest.class,
 		ConfigHelperTest.class,
-		ConfigTest.class
+		ConfigTest.class,
+		IgnoredFilesTest.class,
+		LocalEventBusTest.class
 })
 public class OtherShortTestSuite {
 	// This class executes all tests
@@ -21,10 +21,13 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.syncany.tests.scenarios.AllFilePossibilitiesScenarioTest;
+import org.syncany.tests.scenarios.BinaryDatabaseFormatScenarioTest;
 import org.syncany.tests.scenarios.CallUpWhileStillWritingFileScenarioTest;
 import org.syncany.tests.scenarios.ChangedAttributesScenarioTest;
 import org.syncany.tests.scenarios.ChangedTypeScenarioTest;
 import org.syncany.tests.scenarios.CleanupMergeDatabaseFilesScenarioTest;
+import org.syncany.tests.scenarios.ConcurrentDownloadScenarioTest;
+import org.syncany.tests.scenarios.ConcurrentUploadScenarioTest;
 import org.syncany.tests.scenarios.CreateSimilarFileParallelScenarioTest;
 import org.syncany.tests.scenarios.DirtyDatabaseScenarioTest;
 import org.syncany.tests.scenarios.DirtyDatabaseVersionsScenarioTest;
@@ -46,6 +49,7 @@ import org.syncany.tests.scenarios.Issue247ScenarioTest;
 import org.syncany.tests.scenarios.Issue288ScenarioTest;
 import org.syncany.tests.scenarios.Issue303ScenarioTest;
 import org.syncany.tests.scenarios.Issue316ScenarioTest;
+import org.syncany.tests.scenarios.LocalChunksScenarioTest;
 import org.syncany.tests.scenarios.ManyRenamesScenarioTest;
 import org.syncany.tests.scenarios.ManySyncUpsAndDatabaseFileCleanupScenarioTest;
 import org.syncany.tests.scenarios.ManySyncUpsAndOtherClientSyncDownScenarioTest;
@@ -62,14 +66,18 @@ import org.syncany.tests.scenarios.SignatureScenarioTest;
 import org.syncany.tests.scenarios.SingleFileNoConflictsScenarioTest;
 import org.syncany.tests.scenarios.SingleFolderNoConflictsScenarioTest;
 import org.syncany.tests.scenarios.SymlinkSyncScenarioTest;
+import org.syncany.tests.scenarios.UpInBatchesScenarioTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
 		AllFilePossibilitiesScenarioTest.class,
+		BinaryDatabaseFormatScenarioTest.class,
 		CallUpWhileStillWritingFileScenarioTest.class,
 		ChangedAttributesScenarioTest.class,
 		ChangedTypeScenarioTest.class,
 		CleanupMergeDatabaseFilesScenarioTest.class,
+		ConcurrentDownloadScenarioTest.class,
+		ConcurrentUploadScenarioTest.class,
 		CreateSimilarFileParallelScenarioTest.class,
 		DirtyDatabaseScenarioTest.class,
 		DirtyDatabaseVersionsScenarioTest.class,
@@ -91,6 +99,7 @@ import org.syncany.tests.scenarios.SymlinkSyncScenarioTest;
 		Issue288ScenarioTest.class,
 		Issue303ScenarioTest.class,
 		Issue316ScenarioTest.class,
+		LocalChunksScenarioTest.class,
 		ManyRenamesScenarioTest.class,
 		ManySyncUpsAndDatabaseFileCleanupScenarioTest.class,
 		ManySyncUpsLargeFileScenarioTest.class,
@@ -107,6 +116,7 @@ import org.syncany.tests.scenarios.SymlinkSyncScenarioTest;
 		SingleFolderNoConflictsScenarioTest.class,
 		SymlinkSyncScenarioTest.class,
 		SignatureScenarioTest.class,
+		UpInBatchesScenarioTest.class,
 })
 public class ScenarioTestSuite {
 	// This class executes all tests
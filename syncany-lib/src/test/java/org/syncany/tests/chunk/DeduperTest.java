@@ -0,0 +1,232 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.Deduper;
+import org.syncany.chunk.DeduperListener;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.Transformer;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Logging;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.MasterKey;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+public class DeduperTest {
+	private File tempDir;
+	private List<File> inputFiles;
+	private Transformer transformer;
+
+	static {
+		Logging.init();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		inputFiles = new ArrayList<File>();
+
+		// Mix of small and large files, duplicates, empty files and folders
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 200 * 1024, 5));
+		inputFiles.addAll(TestFileUtil.createRandomFilesInDirectory(tempDir, 3 * 1024, 20));
+		inputFiles.add(TestFileUtil.copyFile(inputFiles.get(0), new File(tempDir, "duplicate-of-first-file")));
+		inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, 0));
+
+		File folder = new File(tempDir, "folder");
+		folder.mkdir();
+
+		inputFiles.add(3, folder);
+
+		// Transformer
+		MasterKey masterKey = CipherUtil.createMasterKey("some password", "some other password");
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+		cipherSpecs.add(CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM));
+
+		transformer = new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey));
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testPipelinedDeduperWithFixedChunker() throws Exception {
+		// Fixed chunker re-uses its chunk buffer!
+		testPipelinedDeduperEqualsSequentialDeduper(new FixedChunker(16 * 1024));
+	}
+
+	@Test
+	public void testPipelinedDeduperWithTttdChunker() throws Exception {
+		testPipelinedDeduperEqualsSequentialDeduper(new TttdChunker(8 * 1024));
+	}
+
+	private void testPipelinedDeduperEqualsSequentialDeduper(Chunker chunker) throws Exception {
+		MultiChunker multiChunker = new ZipMultiChunker(64); // in KB, results in many multichunks
+
+		DeduperTraceListener sequentialListener = new DeduperTraceListener(new File(tempDir, "sequential"));
+		DeduperTraceListener pipelinedListener = new DeduperTraceListener(new File(tempDir, "pipelined"));
+
+		new Deduper(chunker, multiChunker, transformer, 1).deduplicate(inputFiles, sequentialListener);
+		new Deduper(chunker, multiChunker, transformer, 4).deduplicate(inputFiles, pipelinedListener);
+
+		assertTrue("Expected more than one multichunk.", sequentialListener.multiChunkFiles.size() > 1);
+		assertEquals(sequentialListener.trace, pipelinedListener.trace);
+		assertEquals(sequentialListener.multiChunkFiles.size(), pipelinedListener.multiChunkFiles.size());
+
+		for (int i = 0; i < sequentialListener.multiChunkFiles.size(); i++) {
+			List<Chunk> sequentialChunks = readMultiChunk(multiChunker, sequentialListener.multiChunkFiles.get(i));
+			List<Chunk> pipelinedChunks = readMultiChunk(multiChunker, pipelinedListener.multiChunkFiles.get(i));
+
+			assertEquals(sequentialChunks.size(), pipelinedChunks.size());
+
+			for (int j = 0; j < sequentialChunks.size(); j++) {
+				assertArrayEquals("Chunk checksums differ", sequentialChunks.get(j).getChecksum(), pipelinedChunks.get(j).getChecksum());
+				assertArrayEquals("Chunk contents differ", sequentialChunks.get(j).getContent(), pipelinedChunks.get(j).getContent());
+			}
+		}
+	}
+
+	private List<Chunk> readMultiChunk(MultiChunker multiChunker, File multiChunkFile) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		byte[] multiChunkBytes = IOUtils.toByteArray(transformer.createInputStream(new FileInputStream(multiChunkFile)));
+		MultiChunk multiChunk = multiChunker.createMultiChunk(new ByteArrayInputStream(multiChunkBytes));
+
+		Chunk chunk = null;
+
+		while (null != (chunk = multiChunk.read())) {
+			chunks.add(chunk);
+		}
+
+		multiChunk.close();
+		return chunks;
+	}
+
+	private static class DeduperTraceListener implements DeduperListener {
+		private File multiChunkDir;
+		private List<String> trace;
+		private List<File> multiChunkFiles;
+		private Set<String> knownChunks;
+
+		public DeduperTraceListener(File multiChunkDir) {
+			this.multiChunkDir = multiChunkDir;
+			this.multiChunkDir.mkdir();
+
+			this.trace = new ArrayList<String>();
+			this.multiChunkFiles = new ArrayList<File>();
+			this.knownChunks = new HashSet<String>();
+		}
+
+		@Override
+		public boolean onFileFilter(File file) {
+			trace.add("filter " + file.getName());
+			return true;
+		}
+
+		@Override
+		public boolean onFileStart(File file, int fileNumber) {
+			trace.add("start " + file.getName() + " " + fileNumber);
+			return file.isFile();
+		}
+
+		@Override
+		public void onFileAddChunk(File file, Chunk chunk) {
+			trace.add("add " + file.getName() + " " + StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		@Override
+		public void onFileEnd(File file, byte[] checksum) {
+			trace.add("end " + file.getName() + " " + ((checksum != null) ? StringUtil.toHex(checksum) : null));
+		}
+
+		@Override
+		public boolean onChunk(Chunk chunk) {
+			String chunkChecksum = StringUtil.toHex(chunk.getChecksum());
+			trace.add("chunk " + chunkChecksum + " " + chunk.getSize());
+
+			return knownChunks.add(chunkChecksum);
+		}
+
+		@Override
+		public void onMultiChunkOpen(MultiChunk multiChunk) {
+			trace.add("open " + multiChunk.getId());
+		}
+
+		@Override
+		public MultiChunkId createNewMultiChunkId(Chunk firstChunk) {
+			return new MultiChunkId(firstChunk.getChecksum());
+		}
+
+		@Override
+		public File getMultiChunkFile(MultiChunkId multiChunkId) {
+			File multiChunkFile = new File(multiChunkDir, "multichunk-" + multiChunkId);
+			multiChunkFiles.add(multiChunkFile);
+
+			return multiChunkFile;
+		}
+
+		@Override
+		public void onMultiChunkWrite(MultiChunk multiChunk, Chunk chunk) {
+			trace.add("write " + multiChunk.getId() + " " + StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		@Override
+		public void onMultiChunkClose(MultiChunk multiChunk) {
+			trace.add("close " + multiChunk.getId() + " " + multiChunk.getSize());
+		}
+
+		@Override
+		public void onStart(int size) {
+			trace.add("onstart " + size);
+		}
+
+		@Override
+		public void onFinish() {
+			trace.add("onfinish");
+		}
+	}
+}
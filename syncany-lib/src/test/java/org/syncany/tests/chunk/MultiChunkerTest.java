@@ -17,16 +17,26 @@
  */
 package org.syncany.tests.chunk;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
@@ -35,6 +45,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
@@ -42,10 +53,12 @@ import org.syncany.chunk.FixedChunker;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
+import org.syncany.chunk.PackMultiChunker;
 import org.syncany.chunk.Transformer;
 import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
 
 public class MultiChunkerTest {
 	private static Logger logger = Logger.getLogger(MultiChunkerTest.class.getSimpleName());
@@ -61,7 +74,8 @@ public class MultiChunkerTest {
 		
 		MultiChunker[] multiChunkers = new MultiChunker[] { 
 			//new CustomMultiChunker(minMultiChunkSize),
-			new ZipMultiChunker(minMultiChunkSize) 
+			new ZipMultiChunker(minMultiChunkSize),
+			new PackMultiChunker(minMultiChunkSize)
 		};
 		
 		for (Chunker chunker : chunkers) {
@@ -72,6 +86,83 @@ public class MultiChunkerTest {
 		}
 	}
 	
+	@Test
+	public void testWriteAndReadMultiChunk() throws Exception {
+		MultiChunker[] multiChunkers = new MultiChunker[] { 
+			new ZipMultiChunker(512),
+			new PackMultiChunker(512)
+		};
+		
+		for (MultiChunker multiChunker : multiChunkers) {
+			logger.log(Level.INFO, "Running with "+multiChunker.getClass());				
+			writeAndReadMultiChunk(multiChunker);
+		}
+	}
+	
+	private void writeAndReadMultiChunk(MultiChunker multiChunker) throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 300*1024);
+		File multiChunkFile = new File(tempDir+"/multichunk");
+		
+		// Write multichunk (chunkers re-use their buffers, so the chunk contents are copied)
+		Map<String, byte[]> chunkContents = new LinkedHashMap<String, byte[]>();
+		
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));
+		Enumeration<Chunk> chunks = new FixedChunker(16*1024, "SHA1").createChunks(inputFile);
+		
+		while (chunks.hasMoreElements()) {
+			Chunk chunk = chunks.nextElement();
+			
+			multiChunk.write(chunk);
+			chunkContents.put(StringUtil.toHex(chunk.getChecksum()), Arrays.copyOf(chunk.getContent(), chunk.getSize()));
+		}
+		
+		multiChunk.close();
+		
+		// Read sequentially, re-using the buffer
+		multiChunk = multiChunker.createMultiChunk(new FileInputStream(multiChunkFile));
+		Iterator<String> expectedChecksums = chunkContents.keySet().iterator();
+		
+		Chunk chunk = null;
+		byte[] chunkBuffer = null;
+		
+		while (null != (chunk = multiChunk.read(chunkBuffer))) {
+			String expectedChecksum = expectedChecksums.next();
+			
+			assertEquals(expectedChecksum, StringUtil.toHex(chunk.getChecksum()));
+			assertArrayEquals(chunkContents.get(expectedChecksum), Arrays.copyOf(chunk.getContent(), chunk.getSize()));
+			
+			chunkBuffer = chunk.getContent();
+		}
+		
+		assertFalse(expectedChecksums.hasNext());
+		multiChunk.close();
+		
+		// Read in random access mode, in reverse order
+		multiChunk = multiChunker.createMultiChunk(multiChunkFile);
+		
+		List<String> reverseChecksums = new ArrayList<String>(chunkContents.keySet());
+		Collections.reverse(reverseChecksums);
+		
+		for (String checksum : reverseChecksums) {
+			chunk = multiChunk.read(StringUtil.fromHex(checksum), chunkBuffer);
+			assertArrayEquals(chunkContents.get(checksum), Arrays.copyOf(chunk.getContent(), chunk.getSize()));
+			
+			InputStream chunkInputStream = multiChunk.getChunkInputStream(StringUtil.fromHex(checksum));
+			assertArrayEquals(chunkContents.get(checksum), IOUtils.toByteArray(chunkInputStream));
+			chunkInputStream.close();
+			
+			chunkBuffer = chunk.getContent();
+		}
+		
+		assertNull(multiChunk.read(new byte[20], null));
+		assertNull(multiChunk.getChunkInputStream(new byte[20]));
+		
+		multiChunk.close();
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
 	@Test
 	public void testZipRandomAccess() throws Exception {
 		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
@@ -0,0 +1,292 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.chunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.Fingerprinter;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+/**
+ * Verifies that the buffered TTTD chunker emits exactly the same chunk boundaries
+ * and checksums as the original byte-by-byte implementation. The original algorithm
+ * is kept in this class as a reference.
+ */
+public class TTTDChunkerCompatibilityTest {
+	private static final int[] AVG_CHUNK_SIZES = new int[] { 1024, 8*1024, 512*1024 };
+
+	private File tempDir;
+	private List<File> corpus;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		corpus = createCorpus();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testFileChunksEqualReferenceChunks() throws Exception {
+		for (int avgChunkSize : AVG_CHUNK_SIZES) {
+			TttdChunker chunker = new TttdChunker(avgChunkSize);
+
+			for (File file : corpus) {
+				List<String> expectedChunks = createReferenceChunks(avgChunkSize, new FileInputStream(file));
+				List<String> actualChunks = readChunks(chunker.createChunks(file));
+
+				assertEquals("Chunks differ for " + file.getName() + " with " + chunker, expectedChunks, actualChunks);
+			}
+		}
+	}
+
+	@Test
+	public void testStreamChunksEqualReferenceChunks() throws Exception {
+		for (int avgChunkSize : AVG_CHUNK_SIZES) {
+			TttdChunker chunker = new TttdChunker(avgChunkSize);
+
+			for (File file : corpus) {
+				List<String> expectedChunks = createReferenceChunks(avgChunkSize, new FileInputStream(file));
+				List<String> actualChunks = readChunks(chunker.new TTTDEnumeration(new ShortReadInputStream(new FileInputStream(file))));
+
+				assertEquals("Chunks differ for " + file.getName() + " with " + chunker, expectedChunks, actualChunks);
+			}
+		}
+	}
+
+	@Test
+	public void testTrailingEmptyChunkIfFileEndsAtBreakpoint() throws Exception {
+		File randomFile = createFile("random-for-breakpoint", randomBytes(200*1024, 42));
+		List<String> chunks = createReferenceChunks(8*1024, new FileInputStream(randomFile));
+
+		assertTrue("Expected more than one chunk.", chunks.size() > 1);
+
+		// Cut the file right after the first breakpoint
+		int firstChunkSize = Integer.parseInt(chunks.get(0).split(" ")[1]);
+		byte[] firstChunkBytes = Arrays.copyOf(randomBytes(200*1024, 42), firstChunkSize);
+
+		File breakpointFile = createFile("ends-at-breakpoint", firstChunkBytes);
+		List<String> actualChunks = readChunks(new TttdChunker(8*1024).createChunks(breakpointFile));
+
+		assertEquals(createReferenceChunks(8*1024, new FileInputStream(breakpointFile)), actualChunks);
+		assertEquals("Expected trailing zero-size chunk.", 2, actualChunks.size());
+		assertTrue(actualChunks.get(1).contains(" 0 "));
+	}
+
+	private List<File> createCorpus() throws IOException {
+		List<File> files = new ArrayList<File>();
+		int seed = 0;
+
+		// Sizes around the thresholds of the tested chunkers and around read buffer sizes
+		int[] sizes = new int[] { 0, 1, 47, 48, 49, 460, 461, 2800, 2801, 3627, 22598, 22599, 8191, 8192, 8193, 3 * 8192,
+				1024*1024 - 1, 1024*1024, 1024*1024 + 1, 5*1024*1024 / 2 };
+
+		for (int size : sizes) {
+			files.add(createFile("random-" + size, randomBytes(size, seed++)));
+		}
+
+		// Data without any breakpoints, i.e. chunks are cut at Tmax
+		files.add(createFile("zeros", new byte[3*1024*1024]));
+
+		// Repetitive text data
+		StringBuilder text = new StringBuilder();
+
+		while (text.length() < 2*1024*1024) {
+			text.append("The quick brown fox jumps over the lazy dog, line ").append(text.length() % 977).append('\n');
+		}
+
+		files.add(createFile("text", text.toString().getBytes()));
+
+		return files;
+	}
+
+	private byte[] randomBytes(int size, long seed) {
+		byte[] bytes = new byte[size];
+		new Random(seed).nextBytes(bytes);
+
+		return bytes;
+	}
+
+	private File createFile(String name, byte[] contents) throws IOException {
+		File file = new File(tempDir, name);
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+			fileOutputStream.write(contents);
+		}
+
+		return file;
+	}
+
+	private List<String> readChunks(ChunkEnumeration chunkEnumeration) {
+		List<String> chunks = new ArrayList<String>();
+
+		while (chunkEnumeration.hasMoreElements()) {
+			chunks.add(toString(chunkEnumeration.nextElement()));
+		}
+
+		chunkEnumeration.close();
+		return chunks;
+	}
+
+	private String toString(Chunk chunk) {
+		String fileChecksum = (chunk.getFileChecksum() != null) ? StringUtil.toHex(chunk.getFileChecksum()) : null;
+		return StringUtil.toHex(chunk.getChecksum()) + " " + chunk.getSize() + " " + fileChecksum;
+	}
+
+	/**
+	 * Original TTTD chunking loop (byte-by-byte reads, one buffer per chunk), used
+	 * as a reference for the chunk boundaries and checksums.
+	 */
+	private List<String> createReferenceChunks(int avgChunkSize, InputStream in) throws Exception {
+		int Tmin = (int) Math.round(460.0*avgChunkSize/1015.0);
+		int Tmax = (int) Math.round(2800.0*avgChunkSize/1015.0);
+		int D = (int) Math.round(540.0*avgChunkSize/1015.0);
+		int windowSize = TttdChunker.DEFAULT_WINDOW_SIZE;
+
+		Fingerprinter fingerprinter = Fingerprinter.getInstance(TttdChunker.DEFAULT_FINGERPRINT_ALG);
+		MessageDigest chunkDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+		MessageDigest fileDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+
+		List<String> chunks = new ArrayList<String>();
+
+		byte[] c = new byte[8192];
+		int clen = -1;
+		int cpos = -1;
+		boolean closed = false;
+
+		while (!closed) {
+			chunkDigest.reset();
+			fingerprinter.reset();
+
+			int breakpoint = -1;
+			byte[] buf = new byte[Tmax];
+			int bufpos = -1;
+
+			while (bufpos < buf.length-1) {
+				if (cpos == -1 || cpos == clen-1) {
+					cpos = -1;
+					clen = readFully(c, in);
+
+					if (clen == -1) {
+						break;
+					}
+
+					fileDigest.update(c, 0, clen);
+				}
+
+				bufpos++; cpos++;
+				buf[bufpos] = c[cpos];
+
+				if (bufpos < Tmin) {
+					continue;
+				}
+				else if (bufpos == Tmin) {
+					fingerprinter.check(buf, bufpos-windowSize, windowSize);
+				}
+				else {
+					fingerprinter.roll(buf[bufpos]);
+				}
+
+				if ((fingerprinter.getValue() % D) == D-1) {
+					breakpoint = bufpos;
+					break;
+				}
+			}
+
+			if (clen == -1) {
+				in.close();
+				closed = true;
+			}
+
+			if (breakpoint == -1) {
+				breakpoint = bufpos;
+			}
+
+			breakpoint++;
+			chunkDigest.update(buf, 0, breakpoint);
+
+			String fileChecksum = (clen == -1) ? StringUtil.toHex(fileDigest.digest()) : null;
+			chunks.add(StringUtil.toHex(chunkDigest.digest()) + " " + breakpoint + " " + fileChecksum);
+		}
+
+		return chunks;
+	}
+
+	private int readFully(byte[] buffer, InputStream in) throws IOException {
+		int bytesRead = 0;
+
+		while (bytesRead < buffer.length) {
+			int byteRead = in.read();
+
+			if (byteRead == -1) {
+				break;
+			}
+
+			buffer[bytesRead++] = (byte) byteRead;
+		}
+
+		return (bytesRead != 0) ? bytesRead : -1;
+	}
+
+	/**
+	 * Returns fewer bytes than requested (and sometimes none at all), like
+	 * some cipher streams do.
+	 */
+	private static class ShortReadInputStream extends FilterInputStream {
+		private int readCount;
+
+		public ShortReadInputStream(InputStream in) {
+			super(in);
+			this.readCount = 0;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			readCount++;
+
+			if (readCount % 5 == 0) {
+				return 0;
+			}
+
+			return super.read(b, off, Math.min(len, 7777));
+		}
+	}
+}
@@ -23,6 +23,7 @@ import java.io.File;
 
 import org.junit.Test;
 import org.syncany.config.Cache;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.tests.util.TestFileUtil;
 
 public class CacheTest {
@@ -113,4 +114,136 @@ public class CacheTest {
 		
 		TestFileUtil.deleteDirectory(testCacheFolder);
 	}
+	
+	@Test
+	public void testCacheAccessUpdatesOrder() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		cache.setKeepBytes(50*1024);
+		
+		MultiChunkId multiChunkId1 = MultiChunkId.parseMultiChunkId("1111");
+		MultiChunkId multiChunkId2 = MultiChunkId.parseMultiChunkId("2222");
+		MultiChunkId multiChunkId3 = MultiChunkId.parseMultiChunkId("3333");
+
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId1), 20*1024);
+		Thread.sleep(1001);	// Linux/ext3 only has 1s accuracy
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId2), 20*1024);
+		Thread.sleep(1001);		
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId3), 20*1024);
+		
+		cache.clear(); // Deletes 1
+		
+		assertFalse(cache.getEncryptedMultiChunkFile(multiChunkId1).exists());
+		assertTrue(cache.getEncryptedMultiChunkFile(multiChunkId2).exists());
+		assertTrue(cache.getEncryptedMultiChunkFile(multiChunkId3).exists());
+		
+		// Access 2, then shrink: 3 must be deleted, because it is now the least recently used
+		cache.getEncryptedMultiChunkFile(multiChunkId2);		
+		cache.clear(30*1024);
+		
+		assertTrue(cache.getEncryptedMultiChunkFile(multiChunkId2).exists());
+		assertFalse(cache.getEncryptedMultiChunkFile(multiChunkId3).exists());
+		assertEquals(2, cache.getEvictionCount());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCacheIndexPersisted() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		File testIndexFile = new File(testCacheFolder + "-index");
+
+		MultiChunkId multiChunkId1 = MultiChunkId.parseMultiChunkId("1111");
+		MultiChunkId multiChunkId2 = MultiChunkId.parseMultiChunkId("2222");
+		
+		Cache cache = new Cache(testCacheFolder, testIndexFile);
+		
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId1), 20*1024);
+		Thread.sleep(1001);	// Linux/ext3 only has 1s accuracy
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId2), 20*1024);
+
+		cache.getEncryptedMultiChunkFile(multiChunkId1); // 1 is now the most recently used
+		cache.clear();
+		
+		assertTrue(testIndexFile.exists());
+		
+		// New cache instance must use the order from the index, not the last modified date
+		Cache newCache = new Cache(testCacheFolder, testIndexFile);
+		newCache.clear(30*1024);
+		
+		assertTrue(newCache.getEncryptedMultiChunkFile(multiChunkId1).exists());
+		assertFalse(newCache.getEncryptedMultiChunkFile(multiChunkId2).exists());
+		
+		testIndexFile.delete();
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCacheFileDeletedAndRewritten() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		cache.setKeepBytes(30*1024);
+		
+		MultiChunkId multiChunkId1 = MultiChunkId.parseMultiChunkId("1111");
+		MultiChunkId multiChunkId2 = MultiChunkId.parseMultiChunkId("2222");
+
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId1), 10*1024);
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId2), 10*1024);
+		
+		cache.clear(); // Sizes are now known, nothing deleted
+		assertEquals(0, cache.getEvictionCount());
+		
+		// Delete 2 and write it again with a larger size; the new size must be used when cleaning
+		new File(testCacheFolder, "multichunk-2222").delete();
+		TestFileUtil.createRandomFile(cache.getEncryptedMultiChunkFile(multiChunkId2), 40*1024);
+		
+		cache.clear();
+		
+		assertFalse(cache.getEncryptedMultiChunkFile(multiChunkId1).exists());
+		assertFalse(cache.getEncryptedMultiChunkFile(multiChunkId2).exists());
+		assertEquals(2, cache.getEvictionCount());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCacheDirectoryOnlyListedOnce() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		
+		TestFileUtil.createRandomFile(new File(testCacheFolder, "before"), 10*1024);
+		cache.clear(); // Lists the directory, nothing deleted
+		
+		// Files created by other means after the index was loaded are not known to the cache
+		TestFileUtil.createRandomFile(new File(testCacheFolder, "after"), 10*1024);
+		cache.clear(0);
+		
+		assertFalse(new File(testCacheFolder, "before").exists());
+		assertTrue(new File(testCacheFolder, "after").exists());
+		assertEquals(1, cache.getEvictionCount());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCacheHitsAndMisses() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		MultiChunkId multiChunkId = MultiChunkId.parseMultiChunkId("1111");
+		
+		TestFileUtil.createRandomFile(cache.getDecryptedMultiChunkFile(multiChunkId), 1024); // Miss
+		cache.getDecryptedMultiChunkFile(multiChunkId); // Hit
+		cache.getDecryptedMultiChunkFile(multiChunkId); // Hit
+		cache.getEncryptedMultiChunkFile(multiChunkId); // Miss
+		
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
 }
@@ -0,0 +1,122 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.config;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.config.IgnoredFiles;
+import org.syncany.tests.util.TestFileUtil;
+
+public class IgnoredFilesTest {
+	@Test
+	public void testIgnoredFilesExactWildcardAndRegex() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+		
+		TestFileUtil.createFileWithContent(ignoreFile, "folder/exact.txt\n*.bak\nregex:.*/tmp[0-9]+\nregex:(a)b\\1\n");
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		
+		assertTrue(ignoredFiles.isFileIgnored("folder/exact.txt"));
+		assertFalse(ignoredFiles.isFileIgnored("folder/exact.txt2"));
+		assertFalse(ignoredFiles.isFileIgnored("exact.txt"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+		assertTrue(ignoredFiles.isFileIgnored("some/folder/file.bak"));
+		assertFalse(ignoredFiles.isFileIgnored("file.bak2"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("some/tmp123"));
+		assertFalse(ignoredFiles.isFileIgnored("some/tmp123x"));
+		
+		assertTrue(ignoredFiles.isFileIgnored("aba"));
+		assertFalse(ignoredFiles.isFileIgnored("abb"));
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testIgnoredFilesInvalidRegexSkipped() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+		
+		TestFileUtil.createFileWithContent(ignoreFile, "regex:invalid(\n*.bak\n");
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+		assertFalse(ignoredFiles.isFileIgnored("invalid("));
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testIgnoredFilesConflictingRegexMatchedSeparately() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+		
+		// Each pattern is valid, but they cannot be combined (duplicate group name, comment swallows closing bracket)
+		TestFileUtil.createFileWithContent(ignoreFile, "regex:(?<n>a)x\nregex:(?<n>b)y\nregex:(?x)c d # comment\n*.bak\n");
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		
+		assertTrue(ignoredFiles.isFileIgnored("ax"));
+		assertTrue(ignoredFiles.isFileIgnored("by"));
+		assertTrue(ignoredFiles.isFileIgnored("cd"));
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+		
+		assertFalse(ignoredFiles.isFileIgnored("ay"));
+		assertFalse(ignoredFiles.isFileIgnored("c d"));
+		assertFalse(ignoredFiles.isFileIgnored("file.tmp"));
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	@Test
+	public void testIgnoredFilesReloadIfModified() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+		
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		
+		assertFalse(ignoredFiles.reloadPatternsIfModified());
+		assertFalse(ignoredFiles.isFileIgnored("file.bak"));
+		
+		// Create
+		TestFileUtil.createFileWithContent(ignoreFile, "*.bak");
+		
+		assertTrue(ignoredFiles.reloadPatternsIfModified());
+		assertFalse(ignoredFiles.reloadPatternsIfModified());
+		assertTrue(ignoredFiles.isFileIgnored("file.bak"));
+		
+		// Change (rules that were removed must not be ignored anymore)
+		TestFileUtil.writeToFile("*.tmp\nother.txt".getBytes(), ignoreFile);
+		
+		assertTrue(ignoredFiles.reloadPatternsIfModified());
+		assertFalse(ignoredFiles.isFileIgnored("file.bak"));
+		assertTrue(ignoredFiles.isFileIgnored("file.tmp"));
+		assertTrue(ignoredFiles.isFileIgnored("other.txt"));
+		
+		// Delete
+		TestFileUtil.deleteFile(ignoreFile);
+		
+		assertTrue(ignoredFiles.reloadPatternsIfModified());
+		assertFalse(ignoredFiles.isFileIgnored("file.tmp"));
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+}
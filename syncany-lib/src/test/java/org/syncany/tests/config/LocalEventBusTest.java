@@ -0,0 +1,159 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.config;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.syncany.config.LocalEventBus;
+import org.syncany.operations.daemon.messages.ShowMessageExternalEvent;
+import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
+import org.syncany.operations.daemon.messages.api.ExternalEvent;
+
+import com.google.common.eventbus.Subscribe;
+
+public class LocalEventBusTest {
+	@Test
+	public void testAsyncSubscriberReceivesEventsInOrder() throws Exception {
+		LocalEventBus eventBus = LocalEventBus.getInstance();
+		BlockingSubscriber subscriber = new BlockingSubscriber(0, 5);
+		
+		eventBus.registerAsync(subscriber, 2, 0);
+		
+		for (int i = 0; i < 5; i++) {
+			eventBus.post(new ShowMessageExternalEvent("Message " + i));
+		}
+		
+		assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+		eventBus.unregister(subscriber);
+		
+		assertEquals(5, subscriber.events.size());
+		
+		for (int i = 0; i < 5; i++) {
+			assertEquals("Message " + i, ((ShowMessageExternalEvent) subscriber.events.get(i)).getMessage());
+		}		
+	}
+	
+	@Test
+	public void testAsyncSubscriberCoalescesProgressEvents() throws Exception {
+		LocalEventBus eventBus = LocalEventBus.getInstance();
+		BlockingSubscriber subscriber = new BlockingSubscriber(1, 3);
+		
+		eventBus.registerAsync(subscriber, 10, 0);
+		
+		// First event blocks the subscriber, so that all progress events are queued
+		eventBus.post(new ShowMessageExternalEvent("Start"));
+		
+		for (int i = 1; i <= 100; i++) {
+			eventBus.post(new UpUploadFileInTransactionSyncExternalEvent("/some/root", i, 100, 1, 100));
+		}
+		
+		eventBus.post(new ShowMessageExternalEvent("End"));
+		subscriber.unblock.countDown();
+		
+		assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+		eventBus.unregister(subscriber);
+		
+		assertEquals(3, subscriber.events.size());
+		assertEquals("Start", ((ShowMessageExternalEvent) subscriber.events.get(0)).getMessage());
+		assertEquals(100, ((UpUploadFileInTransactionSyncExternalEvent) subscriber.events.get(1)).getCurrentFileIndex());
+		assertEquals("End", ((ShowMessageExternalEvent) subscriber.events.get(2)).getMessage());
+	}
+	
+	@Test
+	public void testAsyncSubscriberDeliversLastRateLimitedProgressEvent() throws Exception {
+		LocalEventBus eventBus = LocalEventBus.getInstance();
+		BlockingSubscriber subscriber = new BlockingSubscriber(0, 0);
+		
+		eventBus.registerAsync(subscriber, 10, 2);
+		
+		for (int i = 1; i <= 100; i++) {
+			eventBus.post(new UpUploadFileInTransactionSyncExternalEvent("/some/root", i, 100, 1, 100));
+		}
+		
+		// Last event is rate-limited, but must be delivered once the interval (500ms) has passed
+		for (int i = 0; i < 50 && getLastFileIndex(subscriber) != 100; i++) {
+			Thread.sleep(100);
+		}
+		
+		eventBus.unregister(subscriber);
+		
+		assertEquals(100, getLastFileIndex(subscriber));
+		assertTrue(subscriber.events.size() <= 2);
+	}
+	
+	@Test
+	public void testAsyncSubscriberDeliversRateLimitedProgressEventBeforeOtherEvents() throws Exception {
+		LocalEventBus eventBus = LocalEventBus.getInstance();
+		BlockingSubscriber subscriber = new BlockingSubscriber(0, 0);
+		
+		eventBus.registerAsync(subscriber, 10, 1);
+		
+		for (int i = 1; i <= 100; i++) {
+			eventBus.post(new UpUploadFileInTransactionSyncExternalEvent("/some/root", i, 100, 1, 100));
+		}
+		
+		eventBus.post(new ShowMessageExternalEvent("End"));
+		
+		for (int i = 0; i < 50 && !(getLastEvent(subscriber) instanceof ShowMessageExternalEvent); i++) {
+			Thread.sleep(100);
+		}
+		
+		eventBus.unregister(subscriber);
+		
+		int eventCount = subscriber.events.size();
+		
+		assertTrue(eventCount >= 2 && eventCount <= 3);
+		assertEquals(100, ((UpUploadFileInTransactionSyncExternalEvent) subscriber.events.get(eventCount - 2)).getCurrentFileIndex());
+		assertEquals("End", ((ShowMessageExternalEvent) subscriber.events.get(eventCount - 1)).getMessage());
+	}
+	
+	private ExternalEvent getLastEvent(BlockingSubscriber subscriber) {
+		List<ExternalEvent> events = subscriber.events;
+		return (events.size() > 0) ? events.get(events.size() - 1) : null;
+	}
+	
+	private int getLastFileIndex(BlockingSubscriber subscriber) {
+		ExternalEvent lastEvent = getLastEvent(subscriber);
+		return (lastEvent != null) ? ((UpUploadFileInTransactionSyncExternalEvent) lastEvent).getCurrentFileIndex() : -1;
+	}
+	
+	public static class BlockingSubscriber {
+		private List<ExternalEvent> events = new CopyOnWriteArrayList<ExternalEvent>();
+		private CountDownLatch unblock;
+		private CountDownLatch received;
+		
+		public BlockingSubscriber(int blockCount, int expectedEventCount) {
+			this.unblock = new CountDownLatch(blockCount);
+			this.received = new CountDownLatch(expectedEventCount);
+		}
+		
+		@Subscribe
+		public void onEvent(ExternalEvent event) throws InterruptedException {
+			unblock.await();
+			
+			events.add(event);
+			received.countDown();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.syncany.operations.daemon.SyncScheduler;
+import org.syncany.operations.daemon.SyncScheduler.ScheduledSync;
+import org.syncany.operations.daemon.SyncScheduler.SyncTrigger;
+import org.syncany.operations.watch.WatchOperation;
+import org.syncany.operations.watch.WatchOperationOptions;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class SyncSchedulerTest {
+	@Test
+	public void testSchedulerSyncsTwoFoldersWithOneWorker() throws Exception {
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		SyncScheduler syncScheduler = new SyncScheduler(1, 10);
+
+		WatchOperation watchOperationA = new WatchOperation(clientA.getConfig(), createWatchOptions());
+		WatchOperation watchOperationB = new WatchOperation(clientB.getConfig(), createWatchOptions());
+
+		watchOperationA.start(syncScheduler);
+		watchOperationB.start(syncScheduler);
+
+		// A -> B
+		clientA.createNewFile("file-from-A");
+		assertTrue(waitForFile(clientB.getLocalFile("file-from-A")));
+
+		// B -> A
+		clientB.createNewFile("file-from-B");
+		assertTrue(waitForFile(clientA.getLocalFile("file-from-B")));
+
+		// Stopped folders are not synced anymore
+		watchOperationA.stop();
+		watchOperationB.stop();
+
+		clientA.createNewFile("file-after-stop");
+		Thread.sleep(2000);
+
+		assertFalse(clientB.getLocalFile("file-after-stop").exists());
+
+		// Tear down
+		syncScheduler.stop();
+
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testSchedulerRunsWatcherBeforePushBeforePeriodic() throws Exception {
+		SyncScheduler syncScheduler = new SyncScheduler(1, 0);
+		List<String> runs = new CopyOnWriteArrayList<String>();
+		
+		// Blocks the only worker, so that the others are queued
+		StubSync blockingSync = new StubSync("blocking", runs, 1);
+		syncScheduler.register(blockingSync, 60000);
+		assertTrue(blockingSync.started.await(5, TimeUnit.SECONDS));
+		
+		StubSync periodicSync = new StubSync("periodic", runs, 0);
+		StubSync pushSync = new StubSync("push", runs, 0);
+		StubSync watcherSync = new StubSync("watcher", runs, 0);
+		
+		syncScheduler.register(periodicSync, 60000);
+		syncScheduler.register(pushSync, 60000);
+		syncScheduler.register(watcherSync, 60000);
+		
+		syncScheduler.requestSync(pushSync, SyncTrigger.PUSH);
+		syncScheduler.requestSync(watcherSync, SyncTrigger.WATCHER);
+		
+		blockingSync.unblock.countDown();
+		assertTrue(periodicSync.finished.await(5, TimeUnit.SECONDS));
+		
+		assertEquals(Arrays.asList("blocking", "watcher", "push", "periodic"), runs);		
+		syncScheduler.stop();
+	}
+	
+	@Test
+	public void testSchedulerRaisesPriorityOfQueuedSync() throws Exception {
+		SyncScheduler syncScheduler = new SyncScheduler(1, 0);
+		List<String> runs = new CopyOnWriteArrayList<String>();
+		
+		StubSync blockingSync = new StubSync("blocking", runs, 1);
+		syncScheduler.register(blockingSync, 60000);
+		assertTrue(blockingSync.started.await(5, TimeUnit.SECONDS));
+		
+		StubSync firstSync = new StubSync("first", runs, 0);
+		StubSync secondSync = new StubSync("second", runs, 0);
+		
+		syncScheduler.register(firstSync, 60000);
+		syncScheduler.register(secondSync, 60000);
+		
+		// Same priority: first queued, first run; lower priority does not change anything
+		syncScheduler.requestSync(firstSync, SyncTrigger.PUSH);
+		syncScheduler.requestSync(secondSync, SyncTrigger.PUSH);
+		syncScheduler.requestSync(firstSync, SyncTrigger.PERIODIC);
+		
+		// Higher priority moves second ahead of first
+		syncScheduler.requestSync(secondSync, SyncTrigger.WATCHER);
+		
+		blockingSync.unblock.countDown();
+		assertTrue(firstSync.finished.await(5, TimeUnit.SECONDS));
+		
+		assertEquals(Arrays.asList("blocking", "second", "first"), runs);
+		syncScheduler.stop();
+	}
+	
+	@Test
+	public void testSchedulerRequeuesSyncRequestedWhileRunning() throws Exception {
+		SyncScheduler syncScheduler = new SyncScheduler(2, 0);
+		List<String> runs = new CopyOnWriteArrayList<String>();
+		
+		StubSync stubSync = new StubSync("stub", runs, 1);
+		syncScheduler.register(stubSync, 60000);
+		assertTrue(stubSync.started.await(5, TimeUnit.SECONDS));
+		
+		// Requests during a running sync are collapsed into one additional sync
+		syncScheduler.requestSync(stubSync, SyncTrigger.WATCHER);
+		syncScheduler.requestSync(stubSync, SyncTrigger.PUSH);
+		
+		stubSync.unblock.countDown();		
+		Thread.sleep(1000);
+		
+		assertEquals(Arrays.asList("stub", "stub"), runs);
+		syncScheduler.stop();
+	}
+	
+	@Test
+	public void testSchedulerJittersPeriodicSyncInterval() throws Exception {
+		SyncScheduler syncScheduler = new SyncScheduler(4, 50);
+		List<String> runs = new CopyOnWriteArrayList<String>();
+		List<StubSync> stubSyncs = new CopyOnWriteArrayList<StubSync>();
+		
+		for (int i = 0; i < 8; i++) {
+			StubSync stubSync = new StubSync("stub" + i, runs, 0);
+			
+			stubSyncs.add(stubSync);
+			syncScheduler.register(stubSync, 400);
+		}
+		
+		Thread.sleep(2500);
+		syncScheduler.stop();
+		
+		// Interval 400ms, jitter 50%: next sync between 200ms and 600ms after the previous one
+		long minDelay = Long.MAX_VALUE;
+		long maxDelay = 0;
+		
+		for (StubSync stubSync : stubSyncs) {
+			assertTrue(stubSync.startTimes.size() >= 3);
+			
+			for (int i = 1; i < stubSync.startTimes.size(); i++) {
+				long delay = stubSync.startTimes.get(i) - stubSync.endTimes.get(i - 1);
+				
+				minDelay = Math.min(minDelay, delay);
+				maxDelay = Math.max(maxDelay, delay);
+			}
+		}
+		
+		assertTrue("Delay too short: " + minDelay, minDelay >= 200);
+		assertTrue("Delay too long: " + maxDelay, maxDelay <= 600 + 200); // Timer/worker latency
+		assertTrue("Delays not jittered: " + minDelay + " - " + maxDelay, maxDelay - minDelay > 20);
+	}
+
+	private WatchOperationOptions createWatchOptions() {
+		WatchOperationOptions watchOptions = new WatchOperationOptions();
+
+		watchOptions.setAnnouncements(false);
+		watchOptions.setWatcher(false);
+		watchOptions.setInterval(500);
+
+		return watchOptions;
+	}
+
+	private boolean waitForFile(File file) throws InterruptedException {
+		for (int i = 0; i < 200 && !file.exists(); i++) {
+			Thread.sleep(100);
+		}
+
+		return file.exists();
+	}
+
+	private static class StubSync implements ScheduledSync {
+		private String name;
+		private List<String> runs;
+		
+		private CountDownLatch started;
+		private CountDownLatch unblock;
+		private CountDownLatch finished;
+		
+		private List<Long> startTimes;
+		private List<Long> endTimes;
+		
+		public StubSync(String name, List<String> runs, int blockCount) {
+			this.name = name;
+			this.runs = runs;
+			
+			this.started = new CountDownLatch(1);
+			this.unblock = new CountDownLatch(blockCount);
+			this.finished = new CountDownLatch(1);
+			
+			this.startTimes = new CopyOnWriteArrayList<Long>();
+			this.endTimes = new CopyOnWriteArrayList<Long>();
+		}
+		
+		@Override
+		public void runScheduledSync() throws Exception {
+			startTimes.add(System.currentTimeMillis());
+			runs.add(name);
+			
+			started.countDown();
+			unblock.await();
+			
+			endTimes.add(System.currentTimeMillis());
+			finished.countDown();
+		}
+
+		@Override
+		public boolean isPaused() {
+			return false;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
+import org.syncany.tests.util.TestFileUtil;
+
+public class ChunkIndexTest {
+	@Test
+	public void testChunkIndexPutAndGet() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+
+		for (int i = 0; i < 10000; i++) {
+			chunkIndex.put(createChecksum(i), i);
+		}
+
+		assertEquals(10000, chunkIndex.size());
+
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i, chunkIndex.get(createChecksum(i)));
+		}
+
+		for (int i = 10000; i < 20000; i++) {
+			assertEquals(-1, chunkIndex.get(createChecksum(i)));
+		}
+	}
+
+	@Test
+	public void testChunkIndexPutExisting() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+
+		chunkIndex.put(createChecksum(1), 100);
+		chunkIndex.put(createChecksum(1), 200);
+
+		assertEquals(1, chunkIndex.size());
+		assertEquals(200, chunkIndex.get(createChecksum(1)));
+	}
+
+	@Test
+	public void testChunkIndexOtherChecksumLength() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+
+		chunkIndex.put(new ChunkChecksum(new byte[] { 1, 2, 3 }), 5);
+
+		assertEquals(3, chunkIndex.getChecksumLength());
+		assertEquals(5, chunkIndex.get(new ChunkChecksum(new byte[] { 1, 2, 3 })));
+		assertEquals(-1, chunkIndex.get(createChecksum(1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChunkIndexMixedChecksumLength() {
+		ChunkIndex chunkIndex = new ChunkIndex(20, 10);
+
+		chunkIndex.put(createChecksum(1), 1);
+		chunkIndex.put(new ChunkChecksum(new byte[] { 1, 2, 3 }), 5);
+	}
+
+	@Test
+	public void testChunkIndexSaveAndLoadWithLog() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File snapshotFile = new File(tempDir, "chunk-index");
+		File logFile = new File(tempDir, "chunk-index.log");
+
+		ChunkIndex chunkIndex = new ChunkIndex(20, 0);
+
+		for (int i = 0; i < 5000; i++) {
+			chunkIndex.put(createChecksum(i), i);
+		}
+
+		// Run
+		chunkIndex.save(snapshotFile);
+		ChunkIndex.appendToLog(logFile, Arrays.asList(new ChunkEntry(createChecksum(5000), 5000), new ChunkEntry(createChecksum(5001), 5001)));
+
+		ChunkIndex loadedChunkIndex = ChunkIndex.load(snapshotFile, logFile);
+
+		// Test
+		assertEquals(5002, loadedChunkIndex.size());
+
+		for (int i = 0; i < 5002; i++) {
+			assertEquals(i, loadedChunkIndex.get(createChecksum(i)));
+		}
+
+		assertEquals(-1, loadedChunkIndex.get(createChecksum(5002)));
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private ChunkChecksum createChecksum(int number) {
+		byte[] checksum = new byte[20];
+
+		for (int i = 0; i < checksum.length; i++) {
+			checksum[i] = (byte) ((number >>> ((i % 4) * 8)) ^ i);
+		}
+
+		return new ChunkChecksum(checksum);
+	}
+}
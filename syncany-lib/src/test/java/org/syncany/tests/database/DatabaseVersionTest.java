@@ -0,0 +1,136 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class DatabaseVersionTest {
+	@Test
+	public void testFileHistoryPathIndex() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		PartialFileHistory fileHistoryA = new PartialFileHistory(FileHistoryId.parseFileId("aaaa"));
+		fileHistoryA.addFileVersion(TestDatabaseUtil.createFileVersion("file-a"));
+
+		PartialFileHistory fileHistoryB = new PartialFileHistory(FileHistoryId.parseFileId("bbbb"));
+		fileHistoryB.addFileVersion(TestDatabaseUtil.createFileVersion("file-b"));
+
+		databaseVersion.addFileHistory(fileHistoryA);
+		databaseVersion.addFileHistory(fileHistoryB);
+
+		assertEquals(fileHistoryA, databaseVersion.getFileHistoryByPath("file-a"));
+		assertEquals(fileHistoryB, databaseVersion.getFileHistoryByPath("file-b"));
+		assertNull(databaseVersion.getFileHistoryByPath("file-c"));
+	}
+
+	@Test
+	public void testFileHistoryPathIndexRenameAndDelete() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		// Add 'file-a'
+		FileVersion fileVersion1 = TestDatabaseUtil.createFileVersion("file-a");
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.parseFileId("aaaa"));
+		fileHistory.addFileVersion(fileVersion1);
+
+		databaseVersion.addFileHistory(fileHistory);
+		assertEquals(fileHistory, databaseVersion.getFileHistoryByPath("file-a"));
+
+		// Replace with history that renames 'file-a' to 'file-a-renamed'
+		FileVersion fileVersion2 = TestDatabaseUtil.createFileVersion("file-a-renamed", fileVersion1);
+		PartialFileHistory renamedFileHistory = new PartialFileHistory(FileHistoryId.parseFileId("aaaa"));
+		renamedFileHistory.addFileVersion(fileVersion2);
+
+		databaseVersion.addFileHistory(renamedFileHistory);
+
+		assertNull(databaseVersion.getFileHistoryByPath("file-a"));
+		assertEquals(renamedFileHistory, databaseVersion.getFileHistoryByPath("file-a-renamed"));
+		assertEquals(1, databaseVersion.getFileHistoriesByChecksum(fileVersion2.getChecksum()).size());
+
+		// Add deleted version to existing history, and add it again
+		FileVersion fileVersion3 = TestDatabaseUtil.createFileVersion("file-a-renamed", fileVersion2);
+		fileVersion3.setStatus(FileStatus.DELETED);
+
+		renamedFileHistory.addFileVersion(fileVersion3);
+		databaseVersion.addFileHistory(renamedFileHistory);
+
+		assertNull(databaseVersion.getFileHistoryByPath("file-a-renamed"));
+		assertEquals(1, databaseVersion.getFileHistories().size());
+	}
+
+	@Test
+	public void testFileHistoryChecksumIndex() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		FileVersion fileVersionA = TestDatabaseUtil.createFileVersion("file-a");
+		FileVersion fileVersionB = TestDatabaseUtil.createFileVersion("file-b", fileVersionA); // same checksum
+		FileVersion fileVersionC = TestDatabaseUtil.createFileVersion("file-c");
+
+		PartialFileHistory fileHistoryA = new PartialFileHistory(FileHistoryId.parseFileId("aaaa"));
+		PartialFileHistory fileHistoryB = new PartialFileHistory(FileHistoryId.parseFileId("bbbb"));
+		PartialFileHistory fileHistoryC = new PartialFileHistory(FileHistoryId.parseFileId("cccc"));
+
+		fileHistoryA.addFileVersion(fileVersionA);
+		fileHistoryB.addFileVersion(fileVersionB);
+		fileHistoryC.addFileVersion(fileVersionC);
+
+		databaseVersion.addFileHistory(fileHistoryA);
+		databaseVersion.addFileHistory(fileHistoryB);
+		databaseVersion.addFileHistory(fileHistoryC);
+
+		assertEquals(2, databaseVersion.getFileHistoriesByChecksum(fileVersionA.getChecksum()).size());
+		assertEquals(1, databaseVersion.getFileHistoriesByChecksum(fileVersionC.getChecksum()).size());
+
+		// Replace history B with a different content
+		FileVersion fileVersionB2 = TestDatabaseUtil.createFileVersion("file-b");
+		fileVersionB2.setVersion(2L);
+
+		PartialFileHistory changedFileHistoryB = new PartialFileHistory(FileHistoryId.parseFileId("bbbb"));
+		changedFileHistoryB.addFileVersion(fileVersionB2);
+
+		databaseVersion.addFileHistory(changedFileHistoryB);
+
+		assertEquals(1, databaseVersion.getFileHistoriesByChecksum(fileVersionA.getChecksum()).size());
+		assertEquals(fileHistoryA, databaseVersion.getFileHistoriesByChecksum(fileVersionA.getChecksum()).get(0));
+		assertEquals(changedFileHistoryB, databaseVersion.getFileHistoriesByChecksum(fileVersionB2.getChecksum()).get(0));
+		assertEquals(changedFileHistoryB, databaseVersion.getFileHistoryByPath("file-b"));
+	}
+
+	@Test
+	public void testFileHistoryIndexesAfterClone() {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		FileVersion fileVersion = TestDatabaseUtil.createFileVersion("file-a");
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.parseFileId("aaaa"));
+		fileHistory.addFileVersion(fileVersion);
+
+		databaseVersion.addFileHistory(fileHistory);
+		DatabaseVersion clonedDatabaseVersion = databaseVersion.clone();
+
+		assertEquals(fileHistory, clonedDatabaseVersion.getFileHistoryByPath("file-a"));
+		assertEquals(fileHistory, clonedDatabaseVersion.getFileHistoriesByChecksum(fileVersion.getChecksum()).get(0));
+	}
+}
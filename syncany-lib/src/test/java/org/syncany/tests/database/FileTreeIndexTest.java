@@ -0,0 +1,149 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileTreeIndex;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.tests.util.TestFileUtil;
+
+public class FileTreeIndexTest {
+	@Test
+	public void testFileTreeIndexWriteAndLoad() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "file-tree-index");
+
+		List<FileVersion> fileVersions = new ArrayList<FileVersion>();
+
+		for (int i = 0; i < 1000; i++) {
+			fileVersions.add(createFileVersion("folder/file" + i, FileType.FILE, i));
+		}
+
+		fileVersions.add(createFileVersion("folder", FileType.FOLDER, 0));
+		fileVersions.add(createFileVersion("äöü-中文", FileType.FILE, 1));
+
+		FileVersion symlinkFileVersion = createFileVersion("symlink", FileType.SYMLINK, 0);
+		symlinkFileVersion.setLinkTarget("/some/target");
+		symlinkFileVersion.setChecksum(null);
+		symlinkFileVersion.setPosixPermissions(null);
+		symlinkFileVersion.setStatus(FileStatus.DELETED);
+		fileVersions.add(symlinkFileVersion);
+
+		// Run
+		FileTreeIndex.write(indexFile, "1/2/3", fileVersions);
+		FileTreeIndex fileTreeIndex = FileTreeIndex.load(indexFile);
+
+		// Test
+		assertEquals("1/2/3", fileTreeIndex.getStamp());
+		assertEquals(1003, fileTreeIndex.size());
+
+		for (FileVersion expectedFileVersion : fileVersions) {
+			assertFileVersionEquals(expectedFileVersion, fileTreeIndex.get(expectedFileVersion.getPath()));
+		}
+
+		assertNull(fileTreeIndex.get("folder/file1000"));
+		assertNull(fileTreeIndex.get("does-not-exist"));
+		assertFalse(fileTreeIndex.containsKey("folder/"));
+		assertTrue(fileTreeIndex.containsKey("folder/file999"));
+
+		assertEquals(1003, fileTreeIndex.values().size());
+		assertEquals(1003, new TreeSet<String>(fileTreeIndex.keySet()).size());
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testFileTreeIndexGetSubtree() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "file-tree-index");
+
+		List<FileVersion> fileVersions = new ArrayList<FileVersion>();
+
+		fileVersions.add(createFileVersion("folder", FileType.FOLDER, 0));
+		fileVersions.add(createFileVersion("folder/file1", FileType.FILE, 1));
+		fileVersions.add(createFileVersion("folder/sub", FileType.FOLDER, 0));
+		fileVersions.add(createFileVersion("folder/sub/file2", FileType.FILE, 2));
+		fileVersions.add(createFileVersion("folder-other", FileType.FILE, 3));
+		fileVersions.add(createFileVersion("folder0", FileType.FILE, 4));
+		fileVersions.add(createFileVersion("file", FileType.FILE, 5));
+
+		// Run
+		FileTreeIndex.write(indexFile, "stamp", fileVersions);
+		FileTreeIndex fileTreeIndex = FileTreeIndex.load(indexFile);
+
+		Map<String, FileVersion> folderSubtree = fileTreeIndex.getSubtree("folder");
+		Map<String, FileVersion> subSubtree = fileTreeIndex.getSubtree("folder/sub");
+		Map<String, FileVersion> fileSubtree = fileTreeIndex.getSubtree("file");
+		Map<String, FileVersion> nonExistingSubtree = fileTreeIndex.getSubtree("fold");
+
+		// Test
+		assertEquals(new TreeSet<String>(Arrays.asList("folder", "folder/file1", "folder/sub", "folder/sub/file2")), new TreeSet<String>(folderSubtree.keySet()));
+		assertEquals(new TreeSet<String>(Arrays.asList("folder/sub", "folder/sub/file2")), new TreeSet<String>(subSubtree.keySet()));
+		assertEquals(new TreeSet<String>(Arrays.asList("file")), new TreeSet<String>(fileSubtree.keySet()));
+		assertEquals(0, nonExistingSubtree.size());
+
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private FileVersion createFileVersion(String path, FileType type, long size) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setPath(path);
+		fileVersion.setType(type);
+		fileVersion.setStatus(FileStatus.NEW);
+		fileVersion.setSize(size);
+		fileVersion.setLastModified(new Date(1400000000000L + size * 1000));
+		fileVersion.setChecksum((type == FileType.FILE) ? FileChecksum.parseFileChecksum(String.format("%040x", size + 1)) : null);
+		fileVersion.setPosixPermissions("rw-r--r--");
+		fileVersion.setDosAttributes((size % 2 == 0) ? "--a-" : null);
+
+		return fileVersion;
+	}
+
+	private void assertFileVersionEquals(FileVersion expectedFileVersion, FileVersion actualFileVersion) {
+		assertEquals(expectedFileVersion.getPath(), actualFileVersion.getPath());
+		assertEquals(expectedFileVersion.getType(), actualFileVersion.getType());
+		assertEquals(expectedFileVersion.getStatus(), actualFileVersion.getStatus());
+		assertEquals(expectedFileVersion.getSize(), actualFileVersion.getSize());
+		assertEquals(expectedFileVersion.getLastModified(), actualFileVersion.getLastModified());
+		assertEquals(expectedFileVersion.getChecksum(), actualFileVersion.getChecksum());
+		assertEquals(expectedFileVersion.getLinkTarget(), actualFileVersion.getLinkTarget());
+		assertEquals(expectedFileVersion.getPosixPermissions(), actualFileVersion.getPosixPermissions());
+		assertEquals(expectedFileVersion.getDosAttributes(), actualFileVersion.getDosAttributes());
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.database.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertDatabaseVersionEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.config.Logging;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseBinaryReader;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseFormat;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class BinaryDatabaseDaoTest {
+	private File tempDir;
+
+	static {
+		Logging.init();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWriteAndReadChunksWithMultiChunksAndFileContents() throws IOException {
+		// Prepare
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion newDatabaseVersion = createDatabaseVersion(null);
+
+		ChunkEntry chunkA1 = new ChunkEntry(new ChunkChecksum(new byte[] { 1, 2, 3, 4, 5, 7, 8, 9, 0 }), 12);
+		ChunkEntry chunkA2 = new ChunkEntry(new ChunkChecksum(new byte[] { 9, 8, 7, 6, 5, 4, 3, 2, 1 }), 512 * 1024);
+
+		newDatabaseVersion.addChunk(chunkA1);
+		newDatabaseVersion.addChunk(chunkA2);
+
+		MultiChunkEntry multiChunkA = new MultiChunkEntry(new MultiChunkId(new byte[] { 6, 6, 6, 6, 6, 6, 6, 6, 6 }), 4 * 1024 * 1024);
+		multiChunkA.addChunk(chunkA1.getChecksum());
+		multiChunkA.addChunk(chunkA2.getChecksum());
+		newDatabaseVersion.addMultiChunk(multiChunkA);
+
+		FileContent contentA = new FileContent();
+		contentA.setChecksum(new FileChecksum(new byte[] { 5, 5, 5, 4, 4, 5, 5, 5, 5 }));
+		contentA.setSize(12L + 2 * 512 * 1024);
+		contentA.addChunk(chunkA2.getChecksum());
+		contentA.addChunk(chunkA1.getChecksum());
+		contentA.addChunk(chunkA2.getChecksum());
+		newDatabaseVersion.addFileContent(contentA);
+
+		newDatabase.addDatabaseVersion(newDatabaseVersion);
+
+		// Write database to disk, read it again, and compare them
+		MemoryDatabase loadedDatabase = writeReadAndCompareDatabase(newDatabase);
+
+		// Check
+		assertEquals("Chunk not found in database loaded.", chunkA2, loadedDatabase.getChunk(chunkA2.getChecksum()));
+		assertArrayEquals("Chunks differ in loaded multichunk.", multiChunkA.getChunks().toArray(),
+				loadedDatabase.getMultiChunk(multiChunkA.getId()).getChunks().toArray());
+		assertArrayEquals("Chunks differ in loaded file content.", contentA.getChunks().toArray(),
+				loadedDatabase.getContent(contentA.getChecksum()).getChunks().toArray());
+	}
+
+	@Test
+	public void testWriteAndReadFileHistoryAndFileVersion() throws IOException {
+		// Prepare
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion newDatabaseVersion = createDatabaseVersion(null);
+
+		PartialFileHistory fileHistoryA = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+		newDatabaseVersion.addFileHistory(fileHistoryA);
+
+		fileHistoryA.addFileVersion(createFileVersion(1L, FileType.FOLDER, "Pictures/2013/New York Folder", FileStatus.NEW));
+		fileHistoryA.addFileVersion(createFileVersion(2L, FileType.FOLDER, "Pictures/2013/New York", FileStatus.RENAMED));
+
+		PartialFileHistory fileHistoryB = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+		newDatabaseVersion.addFileHistory(fileHistoryB);
+
+		FileVersion versionB1 = createFileVersion(1L, FileType.FILE, "root file with ümlauts.txt", FileStatus.NEW);
+		versionB1.setChecksum(new FileChecksum(new byte[] { 1, 2, 3, 4 }));
+		versionB1.setSize(1234L);
+		versionB1.setUpdated(new Date(1400000000000L));
+		versionB1.setPosixPermissions("rw-r--r--");
+		versionB1.setDosAttributes("--a-");
+		fileHistoryB.addFileVersion(versionB1);
+
+		FileVersion versionB2 = createFileVersion(2L, FileType.SYMLINK, "Pictures/link", FileStatus.CHANGED);
+		versionB2.setLinkTarget("/some/target");
+		fileHistoryB.addFileVersion(versionB2);
+
+		FileVersion versionB3 = createFileVersion(3L, FileType.SYMLINK, "Pictures/link", FileStatus.DELETED);
+		versionB3.setLinkTarget("/some/target");
+		fileHistoryB.addFileVersion(versionB3);
+
+		newDatabase.addDatabaseVersion(newDatabaseVersion);
+
+		// Write database to disk, read it again, and compare them
+		MemoryDatabase loadedDatabase = writeReadAndCompareDatabase(newDatabase);
+
+		// File histories
+		PartialFileHistory loadedFileHistoryA = loadedDatabase.getFileHistory(fileHistoryA.getFileHistoryId());
+		PartialFileHistory loadedFileHistoryB = loadedDatabase.getFileHistory(fileHistoryB.getFileHistoryId());
+
+		assertArrayEquals("File versions differ in loaded database.", fileHistoryA.getFileVersions().values().toArray(),
+				loadedFileHistoryA.getFileVersions().values().toArray());
+
+		assertArrayEquals("File versions differ in loaded database.", fileHistoryB.getFileVersions().values().toArray(),
+				loadedFileHistoryB.getFileVersions().values().toArray());
+	}
+
+	@Test
+	public void testReadPartialDatabaseAndHeadersOnly() throws IOException {
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		List<DatabaseVersion> writtenDatabaseVersions = createDatabaseVersionsWithChunks(writtenDatabase, 10);
+
+		File writtenDatabaseFile = new File(tempDir, "db-binary");
+		new DatabaseBinarySerializer().save(writtenDatabase.getDatabaseVersions(), writtenDatabaseFile);
+
+		// Read range (versions 3 to 6)
+		MemoryDatabase rangeDatabase = new MemoryDatabase();
+		VectorClock fromVersion = writtenDatabaseVersions.get(2).getVectorClock();
+		VectorClock toVersion = writtenDatabaseVersions.get(5).getVectorClock();
+
+		new DatabaseBinarySerializer().load(rangeDatabase, writtenDatabaseFile, fromVersion, toVersion, DatabaseReadType.FULL);
+
+		assertEquals(4, rangeDatabase.getDatabaseVersions().size());
+
+		for (int i = 2; i <= 5; i++) {
+			DatabaseVersion writtenDatabaseVersion = writtenDatabaseVersions.get(i);
+			DatabaseVersion readDatabaseVersion = rangeDatabase.getDatabaseVersion(writtenDatabaseVersion.getVectorClock());
+
+			assertNotNull(readDatabaseVersion);
+			assertDatabaseVersionEquals(writtenDatabaseVersion, readDatabaseVersion);
+		}
+
+		// Read headers only
+		MemoryDatabase headersDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer().load(headersDatabase, writtenDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(10, headersDatabase.getDatabaseVersions().size());
+
+		for (int i = 0; i < 10; i++) {
+			DatabaseVersion readDatabaseVersion = headersDatabase.getDatabaseVersions().get(i);
+
+			assertEquals(writtenDatabaseVersions.get(i).getHeader(), readDatabaseVersion.getHeader());
+			assertEquals(0, readDatabaseVersion.getChunks().size());
+		}
+
+		// Streaming API: all headers are available before reading any body
+		try (DatabaseBinaryReader reader = new DatabaseBinaryReader(new FileInputStream(writtenDatabaseFile))) {
+			assertEquals(10, reader.getHeaders().size());
+
+			reader.skip();
+			assertDatabaseVersionEquals(writtenDatabaseVersions.get(1), reader.read());
+		}
+	}
+
+	@Test
+	public void testSerializerReadsXmlAndBinaryFormat() throws IOException {
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		createDatabaseVersionsWithChunks(writtenDatabase, 3);
+
+		File xmlDatabaseFile = new File(tempDir, "db-xml");
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		new DatabaseSerializer(null, DatabaseFormat.XML).save(writtenDatabase.getDatabaseVersions(), xmlDatabaseFile);
+		new DatabaseSerializer(null, DatabaseFormat.BINARY).save(writtenDatabase.getDatabaseVersions(), binaryDatabaseFile);
+
+		assertTrue("Binary database should be smaller than XML database.", binaryDatabaseFile.length() < xmlDatabaseFile.length());
+
+		// Format is detected when reading, regardless of the write format
+		for (File databaseFile : new File[] { xmlDatabaseFile, binaryDatabaseFile }) {
+			MemoryDatabase readDatabase = new MemoryDatabase();
+			new DatabaseSerializer(null, DatabaseFormat.XML).load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+			TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+		}
+	}
+
+	@Test
+	public void testDecryptAndReadDecryptedFile() throws IOException {
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		List<DatabaseVersion> writtenDatabaseVersions = createDatabaseVersionsWithChunks(writtenDatabase, 5);
+
+		File transformedDatabaseFile = new File(tempDir, "db-binary");
+		File decryptedDatabaseFile = new File(tempDir, "db-binary-decrypted");
+
+		DatabaseSerializer transformingSerializer = new DatabaseSerializer(new GzipTransformer(), DatabaseFormat.BINARY);
+		transformingSerializer.save(writtenDatabase.getDatabaseVersions(), transformedDatabaseFile);
+
+		assertTrue(transformingSerializer.decrypt(transformedDatabaseFile, decryptedDatabaseFile));
+
+		// Read last version from the decrypted file, without transformer
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		VectorClock lastVersion = writtenDatabaseVersions.get(4).getVectorClock();
+
+		new DatabaseSerializer(null, DatabaseFormat.XML).load(readDatabase, decryptedDatabaseFile, lastVersion, lastVersion, DatabaseReadType.FULL);
+
+		assertEquals(1, readDatabase.getDatabaseVersions().size());
+		assertDatabaseVersionEquals(writtenDatabaseVersions.get(4), readDatabase.getDatabaseVersions().get(0));
+	}
+
+	private DatabaseVersion createDatabaseVersion(DatabaseVersion basedOnDatabaseVersion) {
+		VectorClock vectorClock = (basedOnDatabaseVersion != null) ? basedOnDatabaseVersion.getVectorClock().clone() : new VectorClock();
+		vectorClock.incrementClock("someclient");
+
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		databaseVersion.setClient("someclient");
+		databaseVersion.setTimestamp(new Date());
+		databaseVersion.setVectorClock(vectorClock);
+
+		return databaseVersion;
+	}
+
+	private List<DatabaseVersion> createDatabaseVersionsWithChunks(MemoryDatabase database, int count) {
+		List<DatabaseVersion> databaseVersions = new ArrayList<DatabaseVersion>();
+
+		for (int i = 0; i < count; i++) {
+			DatabaseVersion basedOnDatabaseVersion = (i > 0) ? databaseVersions.get(i - 1) : null;
+			DatabaseVersion newDatabaseVersion = createDatabaseVersion(basedOnDatabaseVersion);
+
+			newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 32 * 1024));
+			newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 32 * 1024));
+
+			database.addDatabaseVersion(newDatabaseVersion);
+			databaseVersions.add(newDatabaseVersion);
+		}
+
+		return databaseVersions;
+	}
+
+	private FileVersion createFileVersion(long version, FileType type, String path, FileStatus status) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setVersion(version);
+		fileVersion.setType(type);
+		fileVersion.setPath(path);
+		fileVersion.setStatus(status);
+		fileVersion.setSize(0L);
+		fileVersion.setLastModified(new Date());
+
+		return fileVersion;
+	}
+
+	private MemoryDatabase writeReadAndCompareDatabase(MemoryDatabase writtenDatabase) throws IOException {
+		File writtenDatabaseFile = new File(tempDir, "db-binary");
+		new DatabaseBinarySerializer().save(writtenDatabase.getDatabaseVersions(), writtenDatabaseFile);
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer().load(readDatabase, writtenDatabaseFile, null, null, DatabaseReadType.FULL);
+
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+
+		return readDatabase;
+	}
+}
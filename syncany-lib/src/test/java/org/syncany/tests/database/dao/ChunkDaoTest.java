@@ -20,8 +20,11 @@ package org.syncany.tests.database.dao;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Test;
@@ -105,4 +108,50 @@ public class ChunkDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+
+	@Test
+	public void testGetChunkWithPersistedChunkIndex() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+		File chunkIndexFile = new File(testConfig.getDatabaseDir(), Config.FILE_CHUNK_INDEX);
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+		databaseConnection.commit();
+
+		ChunkChecksum committedChunkChecksum = ChunkChecksum.parseChunkChecksum("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		ChunkChecksum rolledBackChunkChecksum = ChunkChecksum.parseChunkChecksum("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+
+		// Run
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection, chunkIndexFile);
+
+		assertNotNull(chunkDao.getChunk(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457")));
+		chunkDao.commitChunkIndex();
+
+		assertTrue(chunkIndexFile.exists());
+
+		chunkDao.writeChunks(databaseConnection, 0, Arrays.asList(new ChunkEntry(committedChunkChecksum, 1234)));
+		databaseConnection.commit();
+		chunkDao.commitChunkIndex();
+
+		chunkDao.writeChunks(databaseConnection, 0, Arrays.asList(new ChunkEntry(rolledBackChunkChecksum, 5678)));
+		assertNotNull(chunkDao.getChunk(rolledBackChunkChecksum));
+
+		databaseConnection.rollback();
+		chunkDao.rollbackChunkIndex();
+
+		ChunkSqlDao otherChunkDao = new ChunkSqlDao(databaseConnection, chunkIndexFile);
+
+		// Test
+		assertNull(chunkDao.getChunk(rolledBackChunkChecksum));
+		assertEquals(1234, chunkDao.getChunk(committedChunkChecksum).getSize());
+
+		assertNull(otherChunkDao.getChunk(rolledBackChunkChecksum));
+		assertEquals(1234, otherChunkDao.getChunk(committedChunkChecksum).getSize());
+		assertEquals(8387, otherChunkDao.getChunk(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457")).getSize());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
 }
@@ -42,6 +42,7 @@ import org.syncany.database.MultiChunkEntry;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.AbstractSqlDao;
 import org.syncany.database.dao.ChunkSqlDao;
 import org.syncany.database.dao.DatabaseVersionSqlDao;
 import org.syncany.database.dao.FileContentSqlDao;
@@ -49,6 +50,7 @@ import org.syncany.database.dao.FileHistorySqlDao;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.database.dao.MultiChunkSqlDao;
 import org.syncany.operations.down.DatabaseBranch;
+import org.syncany.tests.util.TestAssertUtil;
 import org.syncany.tests.util.TestCollectionUtil;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestDatabaseUtil;
@@ -255,6 +257,47 @@ public class DatabaseVersionDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testPersistDatabaseVersionsWithSmallBatchSize() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		Config otherTestConfig = TestConfigUtil.createTestLocalConfig();
+		Connection otherDatabaseConnection = otherTestConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set1.sql");
+		
+		DatabaseVersionSqlDao databaseVersionDao = createDatabaseVersionDao(databaseConnection, AbstractSqlDao.DEFAULT_BATCH_SIZE);
+		DatabaseVersionSqlDao otherDatabaseVersionDao = createDatabaseVersionDao(otherDatabaseConnection, 2);
+		
+		List<DatabaseVersion> databaseVersions = TestCollectionUtil.toList(databaseVersionDao.getDatabaseVersionsTo("A", 5));
+		
+		for (DatabaseVersion databaseVersion : databaseVersions) {
+			otherDatabaseVersionDao.writeDatabaseVersion(databaseVersion); // Statements are re-used across versions
+		}
+		
+		otherDatabaseConnection.commit();
+		
+		List<DatabaseVersion> otherDatabaseVersions = TestCollectionUtil.toList(otherDatabaseVersionDao.getDatabaseVersionsTo("A", 5));
+
+		// Test
+		assertEquals(5, databaseVersions.size());
+		assertEquals(databaseVersions.size(), otherDatabaseVersions.size());
+		
+		for (int i = 0; i < databaseVersions.size(); i++) {
+			TestAssertUtil.assertDatabaseVersionEquals(databaseVersions.get(i), otherDatabaseVersions.get(i));
+		}
+		
+		// Tear down
+		databaseConnection.close();
+		otherDatabaseConnection.close();
+		
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+		TestConfigUtil.deleteTestLocalConfigAndData(otherTestConfig);
+	}
+	
 	@Test
 	public void testGetLocalDatabaseBranch1() throws Exception {
 		// Setup
@@ -460,5 +503,23 @@ public class DatabaseVersionDaoTest {
 		// Tear down
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
-	}	
+	}
+	
+	private DatabaseVersionSqlDao createDatabaseVersionDao(Connection databaseConnection, int batchSize) {
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+		FileContentSqlDao fileContentDao = new FileContentSqlDao(databaseConnection);
+		DatabaseVersionSqlDao databaseVersionDao = new DatabaseVersionSqlDao(databaseConnection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
+		
+		chunkDao.setBatchSize(batchSize);
+		multiChunkDao.setBatchSize(batchSize);
+		fileVersionDao.setBatchSize(batchSize);
+		fileHistoryDao.setBatchSize(batchSize);
+		fileContentDao.setBatchSize(batchSize);
+		databaseVersionDao.setBatchSize(batchSize);
+		
+		return databaseVersionDao;
+	}
 }
@@ -21,7 +21,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.sql.Connection;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -30,6 +32,7 @@ import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
+import org.syncany.database.FileTreeIndex;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.dao.FileVersionSqlDao;
@@ -39,7 +42,7 @@ import org.syncany.tests.util.TestSqlUtil;
 /**
  * Tests the {@link FileVersionSqlDao}
  * <p>
- * Note: {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, java.util.Collection) is
+ * Note: {@link FileVersionSqlDao#writeFileVersions(Connection, long, java.util.Collection) is
  * tested in combination with the rest of the database write functioins. 
  */
 public class FileVersionDaoTest {	
@@ -67,6 +70,52 @@ public class FileVersionDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testFileVersionGetCurrentFileTreeIndex() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+		File fileTreeIndexFile = new File(testConfig.getDatabaseDir(), Config.FILE_FILE_TREE_INDEX);
+				
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection, fileTreeIndexFile);				
+		Map<String, FileVersion> currentFileTree = fileVersionDao.getCurrentFileTree();
+		Map<String, FileVersion> currentFileTreeFromDatabase = fileVersionDao.getCurrentFileTreeIndex(); // Builds index
+		Map<String, FileVersion> currentFileTreeFromIndex = fileVersionDao.getCurrentFileTreeIndex();
+		
+		// Test
+		assertTrue(fileTreeIndexFile.exists());
+		assertFalse(currentFileTreeFromDatabase instanceof FileTreeIndex);
+		assertTrue(currentFileTreeFromIndex instanceof FileTreeIndex);
+		
+		assertEquals(currentFileTree.keySet(), currentFileTreeFromIndex.keySet());
+		
+		for (FileVersion expectedFileVersion : currentFileTree.values()) {
+			FileVersion actualFileVersion = currentFileTreeFromIndex.get(expectedFileVersion.getPath());
+			
+			assertEquals(expectedFileVersion.getType(), actualFileVersion.getType());
+			assertEquals(expectedFileVersion.getStatus(), actualFileVersion.getStatus());
+			assertEquals(expectedFileVersion.getSize(), actualFileVersion.getSize());
+			assertEquals(expectedFileVersion.getLastModified().getTime(), actualFileVersion.getLastModified().getTime());
+			assertEquals(expectedFileVersion.getChecksum(), actualFileVersion.getChecksum());
+		}
+		
+		// Run (index is outdated after the database changed)
+		databaseConnection.createStatement().executeUpdate("update databaseversion set status='DIRTY' where id=(select max(id) from databaseversion)");
+		
+		Map<String, FileVersion> currentFileTreeAfterChange = fileVersionDao.getCurrentFileTreeIndex();
+		
+		// Test
+		assertFalse(currentFileTreeAfterChange instanceof FileTreeIndex);
+		assertTrue(fileVersionDao.getCurrentFileTreeIndex() instanceof FileTreeIndex);
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	@Test
 	public void testFileVersionGetFileTreeAtDate() throws Exception {
 		// Setup
@@ -18,6 +18,7 @@
 package org.syncany.tests.operations;
 
 import static org.junit.Assert.*;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -78,6 +79,32 @@ public class AssemblerTest {
 		
 		assertTrue(exceptionThrown);
 		
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+	
+	/**
+	 * Creates more multichunks than the assembler keeps open, and assembles
+	 * files from all of them in a single down operation.
+	 */
+	@Test
+	public void testAssemblerWithManyMultiChunks() throws Exception {	
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		
+		for (int i = 1; i <= 20; i++) {
+			clientA.createNewFile("file" + i + "-1.jpg", 50*1024); // each 'up' creates a new multichunk
+			clientA.createNewFile("file" + i + "-2.jpg", 20);
+			clientA.upWithForceChecksum();
+		}
+
+		assertEquals(20, new File(testConnection.getPath(), "multichunks").listFiles().length);
+		
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		
 		clientA.deleteTestData();
 		clientB.deleteTestData();
 	}	
@@ -614,4 +614,88 @@ public class CleanupOperationTest {
 		// Tear down
 		clientA.deleteTestData();
 	}
+
+	@Test
+	public void testCleanupRepackageMultiChunks() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		java.sql.Connection databaseConnectionA = clientA.getConfig().createDatabaseConnection();
+
+		CleanupOperationOptions options = new CleanupOperationOptions();
+		options.setRemoveOldVersions(true);
+		options.setMinSecondsBetweenCleanups(0);
+		options.setMaxRepackageSize(100 * 1024); // Less than the multichunk size
+
+		File repoMultiChunkDir = new File(testConnection.getPath() + "/multichunks");
+
+		// Run
+
+		// A: Create five files; their chunks will all be in one multichunk
+		for (int i = 1; i <= 5; i++) {
+			clientA.createNewFile("file" + i + ".jpg");
+		}
+
+		clientA.upWithForceChecksum();
+
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk", databaseConnectionA));
+		assertEquals("5", TestSqlUtil.runSqlSelect("select count(*) from multichunk_chunk", databaseConnectionA));
+
+		String oldMultiChunkId = TestSqlUtil.runSqlSelect("select id from multichunk", databaseConnectionA);
+
+		// A: Delete four of them; the multichunk will be 80% useless after cleanup
+		for (int i = 2; i <= 5; i++) {
+			clientA.deleteFile("file" + i + ".jpg");
+		}
+
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		// A: Cleanup, multichunk exceeds the repackage budget, so it is not repackaged
+		CleanupOperationResult cleanupOperationResult = clientA.cleanup(options);
+		assertEquals(CleanupResultCode.OK, cleanupOperationResult.getResultCode());
+		assertEquals(0, cleanupOperationResult.getRemovedMultiChunks().size());
+		assertEquals(0, cleanupOperationResult.getRepackagedMultiChunks().size());
+		assertEquals(4, cleanupOperationResult.getRemovedOldVersionsCount());
+
+		assertEquals(oldMultiChunkId, TestSqlUtil.runSqlSelect("select id from multichunk", databaseConnectionA));
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk_chunk", databaseConnectionA));
+
+		// A: Cleanup again, with default budget <<<< This is the interesting part!!! <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+		options.setMaxRepackageSize(new CleanupOperationOptions().getMaxRepackageSize());
+		options.setForce(true);
+
+		cleanupOperationResult = clientA.cleanup(options);
+		assertEquals(CleanupResultCode.OK, cleanupOperationResult.getResultCode());
+		assertEquals(0, cleanupOperationResult.getRemovedMultiChunks().size());
+		assertEquals(1, cleanupOperationResult.getRepackagedMultiChunks().size());
+		assertEquals(0, cleanupOperationResult.getRemovedOldVersionsCount());
+
+		String newMultiChunkId = TestSqlUtil.runSqlSelect("select id from multichunk", databaseConnectionA);
+
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk", databaseConnectionA));
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from multichunk_chunk", databaseConnectionA));
+		assertEquals("51200", TestSqlUtil.runSqlSelect("select size from multichunk", databaseConnectionA));
+		assertTrue(!oldMultiChunkId.equals(newMultiChunkId));
+
+		// Test the repo
+		assertEquals(1, repoMultiChunkDir.list().length);
+		assertEquals("multichunk-" + newMultiChunkId, repoMultiChunkDir.list()[0]);
+
+		// B: Sync down cleanup
+		clientB.down();
+		TestAssertUtil.assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// C: Restore the file from the new multichunk
+		TestClient clientC = new TestClient("C", testConnection);
+		clientC.down();
+
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
 }
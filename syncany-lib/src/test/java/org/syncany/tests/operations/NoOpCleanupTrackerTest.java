@@ -0,0 +1,111 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.operations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.operations.watch.NoOpCleanupTracker;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class NoOpCleanupTrackerTest {
+	@Test
+	public void testCleanupSkippedAfterNoOpCleanup() throws Exception {
+		NoOpCleanupTracker noOpCleanupTracker = new NoOpCleanupTracker(60000);
+		
+		Set<String> remoteDatabaseNames = createRemoteDatabaseNames("database-A-0000000001", "database-B-0000000001");
+		DatabaseVersionHeader lastLocalDatabaseVersionHeader = TestDatabaseUtil.createFromString("A/(A1,B1)/T=1000");
+		
+		// First cycle: nothing remembered yet
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, lastLocalDatabaseVersionHeader));
+		
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK_NOTHING_DONE), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		
+		// Next cycle: nothing changed
+		assertTrue(noOpCleanupTracker.isCleanupUnnecessary(createRemoteDatabaseNames("database-B-0000000001", "database-A-0000000001"), 
+				TestDatabaseUtil.createFromString("A/(A1,B1)/T=1000")));
+		
+		// Unknown remote databases (e.g. down did not list them)
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(null, lastLocalDatabaseVersionHeader));
+	}
+	
+	@Test
+	public void testCleanupRunIfRemoteDatabasesChanged() throws Exception {
+		NoOpCleanupTracker noOpCleanupTracker = new NoOpCleanupTracker(60000);
+		
+		Set<String> remoteDatabaseNames = createRemoteDatabaseNames("database-A-0000000001");
+		DatabaseVersionHeader lastLocalDatabaseVersionHeader = TestDatabaseUtil.createFromString("A/(A1)/T=1000");
+		
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK_NOTHING_DONE), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(createRemoteDatabaseNames("database-A-0000000001", "database-B-0000000001"), lastLocalDatabaseVersionHeader));
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(createRemoteDatabaseNames(), lastLocalDatabaseVersionHeader));
+	}
+	
+	@Test
+	public void testCleanupRunIfLocalDatabaseChanged() throws Exception {
+		NoOpCleanupTracker noOpCleanupTracker = new NoOpCleanupTracker(60000);
+		
+		Set<String> remoteDatabaseNames = createRemoteDatabaseNames("database-A-0000000001");
+		DatabaseVersionHeader lastLocalDatabaseVersionHeader = TestDatabaseUtil.createFromString("A/(A1)/T=1000");
+		
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK_NOTHING_DONE), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, TestDatabaseUtil.createFromString("A/(A2)/T=2000")));
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, null));
+	}
+	
+	@Test
+	public void testCleanupRunAfterCleanupInterval() throws Exception {
+		NoOpCleanupTracker noOpCleanupTracker = new NoOpCleanupTracker(500);
+		
+		Set<String> remoteDatabaseNames = createRemoteDatabaseNames("database-A-0000000001");
+		DatabaseVersionHeader lastLocalDatabaseVersionHeader = TestDatabaseUtil.createFromString("A/(A1)/T=1000");
+		
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK_NOTHING_DONE), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		assertTrue(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, lastLocalDatabaseVersionHeader));
+		
+		Thread.sleep(600);
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, lastLocalDatabaseVersionHeader));
+	}
+	
+	@Test
+	public void testCleanupRunAfterCleanupThatDidSomething() throws Exception {
+		NoOpCleanupTracker noOpCleanupTracker = new NoOpCleanupTracker(60000);
+		
+		Set<String> remoteDatabaseNames = createRemoteDatabaseNames("database-A-0000000001");
+		DatabaseVersionHeader lastLocalDatabaseVersionHeader = TestDatabaseUtil.createFromString("A/(A1)/T=1000");
+		
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK_NOTHING_DONE), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		noOpCleanupTracker.rememberCleanupResult(new CleanupOperationResult(CleanupResultCode.OK), remoteDatabaseNames, lastLocalDatabaseVersionHeader);
+		
+		assertFalse(noOpCleanupTracker.isCleanupUnnecessary(remoteDatabaseNames, lastLocalDatabaseVersionHeader));
+	}
+	
+	private Set<String> createRemoteDatabaseNames(String... remoteDatabaseNames) {
+		return new HashSet<String>(Arrays.asList(remoteDatabaseNames));
+	}
+}
@@ -20,12 +20,14 @@ package org.syncany.tests.operations;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -273,5 +275,49 @@ public class RecursiveWatcherTest {
 		
 		// Tear down	
 		TestFileUtil.deleteDirectory(tempDir);
-	}	
+	}
+	
+	@Test
+	public void testWatchDirtyPaths() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();		
+		File subDir1 = new File(tempDir+"/subdir1");
+		File subDir2 = new File(tempDir+"/subdir2");
+		
+		subDir1.mkdir();
+		
+		// Test
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, null);
+		
+		// Start watcher; first call must request a full scan
+		watcher.start();		
+		Thread.sleep(100);
+		
+		assertNull(watcher.takeDirtyPaths());
+		assertEquals(0, watcher.takeDirtyPaths().size());
+		
+		// Events in existing and NEW subfolders
+		File file1 = TestFileUtil.createRandomFileInDirectory(subDir1, 10);
+		subDir2.mkdir();
+		Thread.sleep(100);
+		
+		File file2 = TestFileUtil.createRandomFileInDirectory(subDir2, 10);
+		Thread.sleep(100);
+		
+		Set<Path> dirtyPaths = watcher.takeDirtyPaths();
+		
+		assertTrue(dirtyPaths.contains(Paths.get(file1.getAbsolutePath())));
+		assertTrue(dirtyPaths.contains(Paths.get(subDir2.getAbsolutePath())));
+		assertTrue(dirtyPaths.contains(Paths.get(file2.getAbsolutePath())));
+		assertFalse(dirtyPaths.contains(Paths.get(subDir1.getAbsolutePath())));
+		
+		// Dirty paths are reset after taking them
+		assertEquals(0, watcher.takeDirtyPaths().size());
+
+		// Stop watcher (close watches)
+		watcher.stop();
+		
+		// Tear down	
+		TestFileUtil.deleteDirectory(tempDir);
+	}
 }
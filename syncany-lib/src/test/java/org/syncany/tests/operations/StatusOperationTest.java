@@ -18,9 +18,13 @@
 package org.syncany.tests.operations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import org.syncany.config.Config;
@@ -29,6 +33,7 @@ import org.syncany.operations.status.StatusOperation;
 import org.syncany.operations.status.StatusOperationOptions;
 import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestFileUtil;
 
@@ -161,4 +166,117 @@ public class StatusOperationTest {
 		// Cleanup 
 		TestConfigUtil.deleteTestLocalConfigAndData(config);
 	}
+	
+	@Test
+	public void testStatusWithDirtyPaths() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		
+		File folder1 = new File(config.getLocalDir(), "folder1");
+		File folder2 = new File(config.getLocalDir(), "folder2_%");
+		File folder2Similar = new File(config.getLocalDir(), "folder2_%x");
+		
+		folder1.mkdir();
+		folder2.mkdir();
+		folder2Similar.mkdir();
+
+		File file1 = TestFileUtil.createRandomFileInDirectory(folder1, 40*1024);
+		File file2 = TestFileUtil.createRandomFileInDirectory(folder2, 40*1024);
+		File file2Similar = TestFileUtil.createRandomFileInDirectory(folder2Similar, 40*1024);
+		
+		new UpOperation(config).execute();
+		
+		// Change files in all folders, delete folder 2
+		Thread.sleep(2000);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(file1);
+		TestFileUtil.changeRandomPartOfBinaryFile(file2Similar);
+		TestFileUtil.createRandomFileInDirectory(folder1, 40*1024);
+		TestFileUtil.deleteDirectory(folder2);
+		
+		// Run 'status' with dirty paths in folder 1 and deleted folder 2 only
+		Set<String> dirtyPaths = new HashSet<String>();
+		dirtyPaths.add("folder1");
+		dirtyPaths.add("folder1/" + file1.getName());
+		dirtyPaths.add("folder2_%");
+
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setDirtyPaths(dirtyPaths);
+
+		ChangeSet changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		
+		assertEquals(1, changeSet.getNewFiles().size());
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(2, changeSet.getDeletedFiles().size());
+		assertTrue(changeSet.getChangedFiles().contains("folder1/" + file1.getName()));
+		assertTrue(changeSet.getDeletedFiles().contains("folder2_%/" + file2.getName()));
+		
+		// Run 'status' without dirty paths, this SHOULD find the other change as well
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		
+		assertEquals(1, changeSet.getNewFiles().size());
+		assertEquals(2, changeSet.getChangedFiles().size());
+		assertEquals(2, changeSet.getDeletedFiles().size());
+
+		// Run 'up' with dirty paths, this should only upload changes in these paths
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setStatusOptions(statusOptions);
+
+		UpOperationResult upResult = new UpOperation(config, upOptions).execute();
+		
+		assertEquals(1, upResult.getChangeSet().getNewFiles().size());
+		assertEquals(1, upResult.getChangeSet().getChangedFiles().size());
+		assertEquals(2, upResult.getChangeSet().getDeletedFiles().size());
+
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+
+		assertEquals(0, changeSet.getNewFiles().size());
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(0, changeSet.getDeletedFiles().size());
+		assertTrue(changeSet.getChangedFiles().contains("folder2_%x/" + file2Similar.getName()));
+
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+	
+	@Test
+	public void testUpWithDirtyRootPath() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		
+		File folder1 = new File(config.getLocalDir(), "folder1");
+		folder1.mkdir();
+
+		File file1 = TestFileUtil.createRandomFileInDirectory(folder1, 40*1024);
+		File file2 = TestFileUtil.createRandomFileInDirectory(config.getLocalDir(), 40*1024);
+		
+		new UpOperation(config).execute();
+		
+		// Delete files, mark root folder as dirty
+		TestFileUtil.deleteDirectory(folder1);
+		file2.delete();
+		
+		Set<String> dirtyPaths = new HashSet<String>();
+		dirtyPaths.add("");
+
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setDirtyPaths(dirtyPaths);
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setStatusOptions(statusOptions);
+
+		// Run 'up' with the dirty root path, this must upload all deletions
+		UpOperationResult upResult = new UpOperation(config, upOptions).execute();
+		
+		assertEquals(3, upResult.getChangeSet().getDeletedFiles().size());
+		assertTrue(upResult.getChangeSet().getDeletedFiles().contains("folder1/" + file1.getName()));
+
+		ChangeSet changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		
+		assertFalse(changeSet.hasChanges());
+		assertEquals(0, changeSet.getUnchangedFiles().size());
+
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
 }
@@ -0,0 +1,88 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.ActionTO;
+import org.syncany.plugins.transfer.to.ActionTO.ActionType;
+import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class TransactionAwareTransferManagerTest {
+	@Test
+	public void testTransactionFileCache() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		File repoDir = ((LocalTransferSettings) config.getConnection()).getPath();
+
+		TransferManager underlyingTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+		TransactionAwareTransferManager transferManager = new TransactionAwareTransferManager(underlyingTransferManager, config);
+
+		// Upload a multichunk and a transaction that includes it
+		MultichunkRemoteFile multiChunkFile = new MultichunkRemoteFile("multichunk-abcdef");
+		File localMultiChunkFile = TestFileUtil.createRandomFileInDirectory(config.getCacheDir(), 1024);
+
+		ActionTO uploadAction = new ActionTO();
+		uploadAction.setType(ActionType.UPLOAD);
+		uploadAction.setRemoteLocation(multiChunkFile);
+		uploadAction.setRemoteTempLocation(new TempRemoteFile(multiChunkFile));
+
+		TransactionTO transaction = new TransactionTO("otherclient");
+		transaction.addAction(uploadAction);
+
+		File localTransactionFile = new File(config.getCacheDir(), "transaction-file");
+		transaction.save(config.getTransformer(), localTransactionFile);
+
+		underlyingTransferManager.upload(localMultiChunkFile, multiChunkFile);
+		underlyingTransferManager.upload(localTransactionFile, new TransactionRemoteFile("transaction-1234"));
+
+		// List: Multichunk is in a transaction and must be hidden
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(1, config.getTransactionFileCache().size());
+
+		// Corrupt remote transaction file; list must still work, because the transaction is cached
+		File remoteTransactionFile = new File(repoDir, "transactions/transaction-1234");
+
+		remoteTransactionFile.delete();
+		TestFileUtil.createRandomFile(remoteTransactionFile, 100);
+
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(0, new TransactionAwareTransferManager(underlyingTransferManager, config).list(MultichunkRemoteFile.class).size());
+
+		// Remove remote transaction file; it must be removed from the cache
+		remoteTransactionFile.delete();
+
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(0, config.getTransactionFileCache().size());
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.scenarios;
+
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ConcurrentDownloadScenarioTest {
+	@Test
+	public void testConcurrentDownloadManyMultiChunks() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientB.getConfig().setDownloaderThreads(4);
+
+		// Run (each large file results in its own multichunks)
+		for (int i = 1; i <= 12; i++) {
+			clientA.createNewFile("file" + i, 2 * 1024 * 1024);
+		}
+
+		clientA.createNewFolder("folder");
+		clientA.createNewFile("folder/small-file", 100);
+		clientA.up();
+
+		assertTrue(new File(testConnection.getPath(), "multichunks").listFiles().length > 4);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testConcurrentApplyManyFileSystemActions() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientB.getConfig().setApplierThreads(4);
+
+		// Run (many new files and folders)
+		for (int i = 1; i <= 5; i++) {
+			clientA.createNewFolder("folder" + i);
+			clientA.createNewFolder("folder" + i + "/subfolder");
+
+			for (int j = 1; j <= 10; j++) {
+				clientA.createNewFile("folder" + i + "/file" + j, 10 * 1024);
+				clientA.createNewFile("folder" + i + "/subfolder/file" + j, 10 * 1024);
+			}
+		}
+
+		clientA.up();
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Run (renames, changes, deletes, rename chains, and a folder replaced by a file)
+		clientA.moveFile("folder1/file1", "folder2/file1-moved");
+		clientA.moveFile("folder2/file1", "folder1/file1");
+		clientA.changeFile("folder3/file1");
+		clientA.deleteFile("folder4/subfolder");
+		clientA.createNewFile("folder4/subfolder", 1024);
+		clientA.deleteFile("folder5");
+		clientA.createNewFolder("folder6/subfolder");
+		clientA.createNewFile("folder6/subfolder/file1");
+		clientA.upWithForceChecksum();
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
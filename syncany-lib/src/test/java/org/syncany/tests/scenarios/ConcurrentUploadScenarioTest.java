@@ -0,0 +1,107 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ConcurrentUploadScenarioTest {
+	@Test
+	public void testConcurrentUploadManyMultiChunks() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setUploaderThreads(4);
+
+		// Run (each large file results in its own multichunks)
+		for (int i = 1; i <= 12; i++) {
+			clientA.createNewFile("file" + i, 2 * 1024 * 1024);
+		}
+
+		clientA.createNewFolder("folder");
+		clientA.createNewFile("folder/small-file", 100);
+		clientA.up();
+
+		assertTrue(new File(testConnection.getPath(), "multichunks").listFiles().length > 4);
+		assertEquals(1, new File(testConnection.getPath(), "databases").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath(), "temporary").listFiles().length);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testConcurrentDeleteInCleanup() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setUploaderThreads(4);
+
+		CleanupOperationOptions options = new CleanupOperationOptions();
+		options.setRemoveOldVersions(false);
+		options.setMinSecondsBetweenCleanups(0);
+
+		// Run (create many database files, then merge them)
+		clientA.createNewFile("file.jpg");
+
+		for (int i = 1; i <= 16; i++) {
+			clientA.changeFile("file.jpg");
+			clientA.upWithForceChecksum();
+		}
+
+		CleanupOperationResult cleanupOperationResult = clientA.cleanup(options);
+
+		assertEquals(CleanupResultCode.OK, cleanupOperationResult.getResultCode());
+		assertEquals(16, cleanupOperationResult.getMergedDatabaseFilesCount());
+		assertTrue(new File(testConnection.getPath(), "databases").listFiles().length < 16);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath(), "temporary").listFiles().length);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
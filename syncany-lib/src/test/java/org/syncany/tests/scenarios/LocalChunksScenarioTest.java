@@ -0,0 +1,107 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.scenarios;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class LocalChunksScenarioTest {
+	@Test
+	public void testChangedFileDownloadsOnlyNewMultiChunks() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run
+
+		// Prepare, create large file at A (more than one multichunk), sync it to B
+		clientA.createNewFile("A-file1", 6*1024*1024);
+		clientA.up();
+
+		DownOperationResult downOperationResult = clientB.down();
+		assertTrue("More than one multichunk should have been downloaded.", downOperationResult.getDownloadedMultiChunks().size() > 1);
+
+		// Change a small part of the file; unchanged chunks must be taken from B's local file
+		clientA.changeFile("A-file1");
+		clientA.upWithForceChecksum();
+
+		downOperationResult = clientB.down();
+		assertEquals("Only the new multichunk should have been downloaded.", 1, downOperationResult.getDownloadedMultiChunks().size());
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testChangedLocalFileIsNotUsed() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run
+
+		// Prepare, create file at A, sync it to B
+		clientA.createNewFile("A-file1", 1024*1024);
+		clientA.up();
+		clientB.down();
+
+		// Copy file at A; B can take all chunks from its local file
+		clientA.copyFile("A-file1", "A-file1-copy1");
+		clientA.up();
+
+		DownOperationResult downOperationResult = clientB.down();
+		assertEquals("No multichunks should have been downloaded.", 0, downOperationResult.getDownloadedMultiChunks().size());
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Change files at B (without up), and copy file at A again; B's local files must not be used
+		for (String changedFileName : new String[] { "A-file1", "A-file1-copy1" }) {
+			File changedFile = clientB.getLocalFile(changedFileName);
+
+			clientB.changeFile(changedFileName);
+			changedFile.setLastModified(changedFile.lastModified() + 5000);
+		}
+
+		clientA.copyFile("A-file1", "A-file1-copy2");
+		clientA.up();
+
+		downOperationResult = clientB.down();
+		assertEquals("Multichunk should have been downloaded.", 1, downOperationResult.getDownloadedMultiChunks().size());
+		assertArrayEquals(TestFileUtil.createChecksum(clientA.getLocalFile("A-file1-copy2")), TestFileUtil.createChecksum(clientB.getLocalFile("A-file1-copy2")));
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.sql.Connection;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.operations.up.UpOperationResult.UpResultCode;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class UpInBatchesScenarioTest {
+	@Test
+	public void testUpWithTransactionFileLimit() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setTransactionFileLimit(3);
+
+		// Run (10 files -> 4 database versions)
+		for (int i = 1; i <= 10; i++) {
+			clientA.createNewFile("file" + i, 10 * 1024);
+		}
+
+		UpOperationResult upResult = clientA.up(upOptions);
+
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(10, upResult.getChangeSet().getNewFiles().size());
+		assertEquals(4, new File(testConnection.getPath(), "databases").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").listFiles().length);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Run (rename, delete and add files across batches)
+		clientA.moveFile("file1", "file1-moved");
+		clientA.deleteFile("file2");
+
+		for (int i = 11; i <= 15; i++) {
+			clientA.createNewFile("file" + i, 10 * 1024);
+		}
+
+		upResult = clientA.up(upOptions);
+
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(1, upResult.getChangeSet().getDeletedFiles().size());
+		assertEquals(1, upResult.getChangeSet().getChangedFiles().size()); // Renamed
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testUpWithTypeChangeInFirstBatch() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setTransactionFileLimit(3);
+
+		clientA.createNewFile("a-typechange", 10 * 1024);
+
+		for (int i = 1; i <= 5; i++) {
+			clientA.createNewFile("file" + i, 10 * 1024);
+		}
+
+		clientA.up(upOptions);
+		clientB.down();
+
+		// Run (file -> folder in the first batch, deleted version must still be added in the last batch)
+		clientA.deleteFile("a-typechange");
+		clientA.createNewFolder("a-typechange");
+
+		for (int i = 1; i <= 5; i++) {
+			TestFileUtil.writeToFile(("changed file " + i).getBytes(), clientA.getLocalFile("file" + i)); // Size changes
+		}
+
+		UpOperationResult upResult = clientA.up(upOptions);
+
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(4, new File(testConnection.getPath(), "databases").listFiles().length);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// The file history of the old file must be marked as deleted
+		Connection databaseConnectionA = DatabaseConnectionFactory.createConnection(clientA.getDatabaseFile());
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from fileversion_master_last where path='a-typechange' and status<>'DELETED'", databaseConnectionA));
+		databaseConnectionA.close();
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testUpWithTransactionSizeLimit() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setTransactionSizeLimit(1024 * 1024);
+
+		// Run (each large file exceeds the limit -> one database version per file)
+		for (int i = 1; i <= 3; i++) {
+			clientA.createNewFile("file" + i, 2 * 1024 * 1024);
+		}
+
+		clientA.up(upOptions);
+
+		assertEquals(3, new File(testConnection.getPath(), "databases").listFiles().length);
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -30,6 +30,7 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.DosFileAttributes;
 import java.security.MessageDigest;
 import java.text.DecimalFormat;
+import java.util.Set;
 
 /**
  * A file utility class
@@ -60,6 +61,29 @@ public class FileUtil {
 		}	
 	}
 
+	/**
+	 * Checks whether the given relative database path (with '/' as separator)
+	 * equals one of the given paths, or is located below one of them. The empty
+	 * path denotes the root folder, i.e. all paths are located below it.
+	 */
+	public static boolean isDatabasePathInSubtrees(String databasePath, Set<String> subtreeDatabasePaths) {
+		String currentPath = databasePath;
+
+		while (true) {
+			if (subtreeDatabasePaths.contains(currentPath)) {
+				return true;
+			}
+
+			int lastSlashIndex = currentPath.lastIndexOf('/');
+
+			if (lastSlashIndex < 0) {
+				return subtreeDatabasePaths.contains("");
+			}
+
+			currentPath = currentPath.substring(0, lastSlashIndex);
+		}
+	}
+
 	public static String removeTrailingSlash(String filename) {
 		if (filename.endsWith("/")) {
 			return filename.substring(0, filename.length() - 1);
@@ -26,6 +26,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 import org.syncany.util.EnvironmentUtil;
@@ -186,4 +189,25 @@ public class FileUtilTest {
 		// Tear down
 		TestFileUtil.deleteDirectory(tempDir);
 	}
+	
+	@Test
+	public void testIsDatabasePathInSubtrees() {
+		Set<String> subtreePaths = new HashSet<String>(Arrays.asList("folder1", "folder2/sub"));
+		
+		assertTrue(FileUtil.isDatabasePathInSubtrees("folder1", subtreePaths));
+		assertTrue(FileUtil.isDatabasePathInSubtrees("folder1/file", subtreePaths));
+		assertTrue(FileUtil.isDatabasePathInSubtrees("folder2/sub/a/b", subtreePaths));
+		assertFalse(FileUtil.isDatabasePathInSubtrees("folder2", subtreePaths));
+		assertFalse(FileUtil.isDatabasePathInSubtrees("folder1x/file", subtreePaths));
+		assertFalse(FileUtil.isDatabasePathInSubtrees("file", subtreePaths));
+	}
+	
+	@Test
+	public void testIsDatabasePathInSubtreesWithRoot() {
+		Set<String> subtreePaths = new HashSet<String>(Arrays.asList(""));
+		
+		assertTrue(FileUtil.isDatabasePathInSubtrees("", subtreePaths));
+		assertTrue(FileUtil.isDatabasePathInSubtrees("file", subtreePaths));
+		assertTrue(FileUtil.isDatabasePathInSubtrees("folder1/file", subtreePaths));
+	}
 }